@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Objects of this class contain the options for aggregating the results of a query on the client.
+ * See {@link EntityManager#aggregate(CompiledQuery, AggregationOptions, Object...)} for more
+ * details.
+ *
+ * @author Sai Pullabhotla
+ */
+public class AggregationOptions {
+
+  /** Default number of results fetched per request */
+  public static final int DEFAULT_PAGE_SIZE = 1000;
+
+  /** Default number of partitions */
+  public static final int DEFAULT_PARTITIONS = 1;
+
+  /** Name of the numeric field to aggregate */
+  private String valueField;
+
+  /** Name of the field to group by */
+  private String groupByField;
+
+  /** Number of results fetched per request */
+  private int pageSize;
+
+  /** Number of partitions */
+  private int partitions;
+
+  /** Creates a new instance of <code>AggregationOptions</code>. */
+  public AggregationOptions() {
+    this.pageSize = DEFAULT_PAGE_SIZE;
+    this.partitions = DEFAULT_PARTITIONS;
+  }
+
+  /**
+   * Returns the name of the numeric field whose values are aggregated.
+   *
+   * @return the name of the numeric field whose values are aggregated. May be <code>null</code>.
+   */
+  public String getValueField() {
+    return valueField;
+  }
+
+  /**
+   * Sets the name of the numeric field whose values are aggregated. If not set, only the number of
+   * entities is computed.
+   *
+   * @param valueField the name of the field in the entity class
+   */
+  public void setValueField(String valueField) {
+    this.valueField = valueField;
+  }
+
+  /**
+   * Returns the name of the field by which the results are grouped.
+   *
+   * @return the name of the field by which the results are grouped. May be <code>null</code>.
+   */
+  public String getGroupByField() {
+    return groupByField;
+  }
+
+  /**
+   * Sets the name of the field by which the results are grouped. If not set, the results are not
+   * grouped.
+   *
+   * @param groupByField the name of the field in the entity class
+   */
+  public void setGroupByField(String groupByField) {
+    this.groupByField = groupByField;
+  }
+
+  /**
+   * Returns the number of results fetched per request.
+   *
+   * @return the number of results fetched per request.
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Sets the number of results fetched per request. A value of zero or less resets the page size
+   * to the default, {@link #DEFAULT_PAGE_SIZE}.
+   *
+   * @param pageSize the number of results fetched per request
+   */
+  public void setPageSize(int pageSize) {
+    this.pageSize = pageSize <= 0 ? DEFAULT_PAGE_SIZE : pageSize;
+  }
+
+  /**
+   * Returns the number of partitions the scan is split into.
+   *
+   * @return the number of partitions the scan is split into.
+   */
+  public int getPartitions() {
+    return partitions;
+  }
+
+  /**
+   * Sets the number of partitions the scan is split into. Partitions are ranges of keys that are
+   * scanned in parallel. A value of zero or less resets the number of partitions to the default,
+   * {@link #DEFAULT_PARTITIONS}, which scans the results sequentially.
+   *
+   * @param partitions the number of partitions
+   */
+  public void setPartitions(int partitions) {
+    this.partitions = partitions <= 0 ? DEFAULT_PARTITIONS : partitions;
+  }
+}
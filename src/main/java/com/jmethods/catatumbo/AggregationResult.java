@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The result of an aggregation. If the aggregation had a value field, the result contains the
+ * number of values aggregated along with their sum, minimum, maximum and average; otherwise, only
+ * the number of entities is available. If the aggregation was grouped, the result also contains a
+ * result for each distinct value of the group-by field.
+ *
+ * <p>Values are aggregated as <code>double</code>s, so sums of very large integers may lose
+ * precision. If the aggregation had no value field, or no values were found, the sum is zero and
+ * the minimum, maximum and average are {@link Double#NaN}.
+ *
+ * @author Sai Pullabhotla
+ */
+public class AggregationResult {
+
+  /** Number of entities or values */
+  private final long count;
+
+  /** Sum of the values */
+  private final double sum;
+
+  /** Smallest value */
+  private final double min;
+
+  /** Largest value */
+  private final double max;
+
+  /** Results by group */
+  private final Map<Object, AggregationResult> groups;
+
+  /**
+   * Creates a new instance of <code>AggregationResult</code>.
+   *
+   * @param count the number of entities or values
+   * @param sum the sum of the values
+   * @param min the smallest value, {@link Double#NaN} if there were no values
+   * @param max the largest value, {@link Double#NaN} if there were no values
+   * @param groups the results by group
+   */
+  public AggregationResult(
+      long count, double sum, double min, double max, Map<Object, AggregationResult> groups) {
+    this.count = count;
+    this.sum = sum;
+    this.min = min;
+    this.max = max;
+    this.groups = Collections.unmodifiableMap(groups);
+  }
+
+  /**
+   * Returns the number of entities, or the number of values, if the aggregation had a value field.
+   *
+   * @return the number of entities or values.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Returns the sum of the values.
+   *
+   * @return the sum of the values, or zero, if there were none.
+   */
+  public double getSum() {
+    return sum;
+  }
+
+  /**
+   * Returns the smallest value.
+   *
+   * @return the smallest value, or {@link Double#NaN}, if there were none.
+   */
+  public double getMin() {
+    return min;
+  }
+
+  /**
+   * Returns the largest value.
+   *
+   * @return the largest value, or {@link Double#NaN}, if there were none.
+   */
+  public double getMax() {
+    return max;
+  }
+
+  /**
+   * Returns the average of the values.
+   *
+   * @return the average of the values, or {@link Double#NaN}, if there were none.
+   */
+  public double getAverage() {
+    return Double.isNaN(min) ? Double.NaN : sum / count;
+  }
+
+  /**
+   * Returns the results by group. The keys are the values of the group-by property as returned by
+   * the Datastore (for example, <code>String</code>, <code>Long</code> or <code>Boolean</code>).
+   *
+   * @return the results by group. Empty, if the aggregation was not grouped.
+   */
+  public Map<Object, AggregationResult> getGroups() {
+    return groups;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "AggregationResult [count=%d, sum=%s, min=%s, max=%s, groups=%d]",
+        count, sum, min, max, groups.size());
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Handles exceptions thrown by asynchronous callback methods. Asynchronous callbacks (post
+ * callbacks with <code>async=true</code>) run on a background thread, so any exception they throw
+ * cannot be propagated to the caller of the {@link EntityManager}. Instead, the exception is sent
+ * to the error handler registered using {@link AsyncCallbackOptions#setErrorHandler}.
+ *
+ * @author Sai Pullabhotla
+ */
+public interface AsyncCallbackErrorHandler {
+
+  /**
+   * Invoked when an asynchronous callback method throws an exception.
+   *
+   * @param entity the entity for which the callback was invoked. For batch callbacks, this is the
+   *     list of entities.
+   * @param exception the exception. The cause of the exception is the exception that was thrown by
+   *     the callback method.
+   */
+  void handleError(Object entity, EntityManagerException exception);
+}
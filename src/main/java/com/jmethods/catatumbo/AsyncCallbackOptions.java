@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Objects of this class contain the options for executing asynchronous callbacks. Post callbacks
+ * (e.g. {@link PostInsert}, {@link PostLoad}) with <code>async=true</code> are executed on a
+ * bounded pool of background threads managed by the {@link EntityManager}. Instances of this class
+ * can be sent to {@link EntityManager#setAsyncCallbackOptions(AsyncCallbackOptions)} to configure
+ * the pool.
+ *
+ * <p>Each thread has its own queue. Callbacks for a given entity key are always routed to the same
+ * thread, so they are executed in the order they were triggered. When a queue is full, the thread
+ * triggering the callback blocks until there is room in the queue.
+ *
+ * @author Sai Pullabhotla
+ */
+public class AsyncCallbackOptions {
+
+  /** Default number of threads */
+  public static final int DEFAULT_THREADS = 4;
+
+  /** Default capacity of the queue of each thread */
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  /** Number of threads */
+  private int threads;
+
+  /** Capacity of the queue of each thread */
+  private int queueCapacity;
+
+  /** Error handler */
+  private AsyncCallbackErrorHandler errorHandler;
+
+  /** Creates a new instance of <code>AsyncCallbackOptions</code>. */
+  public AsyncCallbackOptions() {
+    this.threads = DEFAULT_THREADS;
+    this.queueCapacity = DEFAULT_QUEUE_CAPACITY;
+  }
+
+  /**
+   * Returns the number of threads for executing asynchronous callbacks.
+   *
+   * @return the number of threads for executing asynchronous callbacks.
+   */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Sets the number of threads for executing asynchronous callbacks. A value of zero or less
+   * resets the number of threads to the default, {@link #DEFAULT_THREADS}.
+   *
+   * @param threads the number of threads
+   */
+  public void setThreads(int threads) {
+    this.threads = threads <= 0 ? DEFAULT_THREADS : threads;
+  }
+
+  /**
+   * Returns the capacity of the queue of each thread.
+   *
+   * @return the capacity of the queue of each thread.
+   */
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  /**
+   * Sets the capacity of the queue of each thread. A value of zero or less resets the capacity to
+   * the default, {@link #DEFAULT_QUEUE_CAPACITY}.
+   *
+   * @param queueCapacity the capacity of the queue of each thread
+   */
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity <= 0 ? DEFAULT_QUEUE_CAPACITY : queueCapacity;
+  }
+
+  /**
+   * Returns the error handler.
+   *
+   * @return the error handler. May be <code>null</code>.
+   */
+  public AsyncCallbackErrorHandler getErrorHandler() {
+    return errorHandler;
+  }
+
+  /**
+   * Sets the handler for exceptions thrown by asynchronous callbacks. If no error handler is set,
+   * exceptions are sent to the uncaught exception handler of the callback thread.
+   *
+   * @param errorHandler the error handler
+   */
+  public void setErrorHandler(AsyncCallbackErrorHandler errorHandler) {
+    this.errorHandler = errorHandler;
+  }
+}
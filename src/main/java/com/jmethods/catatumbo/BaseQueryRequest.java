@@ -41,6 +41,9 @@ public abstract class BaseQueryRequest implements QueryRequest {
   /** Whether or not to allow literals in the query */
   protected boolean allowLiterals = false;
 
+  /** Timeout, in milliseconds, for executing the query. Zero means no timeout. */
+  protected long timeout = 0;
+
   /**
    * Creates a new instance of <code>BaseQueryRequest</code>.
    *
@@ -163,4 +166,29 @@ public abstract class BaseQueryRequest implements QueryRequest {
   public void setAllowLiterals(boolean allowLiterals) {
     this.allowLiterals = allowLiterals;
   }
+
+  /**
+   * Returns the timeout, in milliseconds, for executing this query.
+   *
+   * @return the timeout, in milliseconds. Zero means no timeout.
+   */
+  public long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Sets the timeout, in milliseconds, for executing this query. The timeout covers all RPCs made
+   * for the query, including retries. If the timeout elapses, the query fails with a {@link
+   * DeadlineExceededException}. If a {@link Deadline} is also set on the calling thread, the
+   * earlier of the two applies.
+   *
+   * @param timeout the timeout, in milliseconds. Zero means no timeout.
+   * @throws IllegalArgumentException if the timeout is negative.
+   */
+  public void setTimeout(long timeout) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout must not be negative");
+    }
+    this.timeout = timeout;
+  }
 }
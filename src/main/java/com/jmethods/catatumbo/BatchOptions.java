@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Objects of this class contain the options for auto-flushing batches, which are created using
+ * {@link EntityManager#newBatch(BatchOptions)}. The Datastore rejects commits with more than 500
+ * mutations or more than 10 MiB of data. An auto-flushing batch keeps track of the number of
+ * mutations and the estimated size of the data as they are added, and sends the mutations added
+ * so far as a sub-batch before either limit is reached. Sub-batches may be sent in parallel. The
+ * remaining mutations are sent when the batch is submitted.
+ *
+ * <p>Unlike a regular batch, an auto-flushing batch is not applied atomically. Sub-batches that
+ * were sent before a failure remain committed.
+ *
+ * @author Sai Pullabhotla
+ */
+public class BatchOptions {
+
+  /** Maximum number of mutations the Datastore allows in one commit */
+  public static final int MAX_MUTATIONS = 500;
+
+  /** Default maximum number of mutations in a sub-batch */
+  public static final int DEFAULT_MAX_MUTATIONS = MAX_MUTATIONS;
+
+  /** Maximum size of a commit the Datastore allows, in bytes */
+  public static final long MAX_BYTES = 10L * 1024 * 1024;
+
+  /**
+   * Default maximum estimated size of a sub-batch, in bytes. This leaves room for the overhead the
+   * estimate does not account for.
+   */
+  public static final long DEFAULT_MAX_BYTES = 9L * 1024 * 1024;
+
+  /** Default number of sub-batches sent in parallel */
+  public static final int DEFAULT_PARALLELISM = 1;
+
+  /** Maximum number of mutations in a sub-batch */
+  private int maxMutations;
+
+  /** Maximum estimated size of a sub-batch, in bytes */
+  private long maxBytes;
+
+  /** Number of sub-batches sent in parallel */
+  private int parallelism;
+
+  /** Creates a new instance of <code>BatchOptions</code>. */
+  public BatchOptions() {
+    this.maxMutations = DEFAULT_MAX_MUTATIONS;
+    this.maxBytes = DEFAULT_MAX_BYTES;
+    this.parallelism = DEFAULT_PARALLELISM;
+  }
+
+  /**
+   * Returns the maximum number of mutations in a sub-batch.
+   *
+   * @return the maximum number of mutations in a sub-batch.
+   */
+  public int getMaxMutations() {
+    return maxMutations;
+  }
+
+  /**
+   * Sets the maximum number of mutations in a sub-batch. Values outside of the range [1, {@link
+   * #MAX_MUTATIONS}] reset the maximum to the default, {@link #DEFAULT_MAX_MUTATIONS}.
+   *
+   * @param maxMutations the maximum number of mutations in a sub-batch
+   */
+  public void setMaxMutations(int maxMutations) {
+    this.maxMutations =
+        maxMutations > 0 && maxMutations <= MAX_MUTATIONS ? maxMutations : DEFAULT_MAX_MUTATIONS;
+  }
+
+  /**
+   * Returns the maximum estimated size of a sub-batch, in bytes.
+   *
+   * @return the maximum estimated size of a sub-batch, in bytes.
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Sets the maximum estimated size of a sub-batch, in bytes. Values outside of the range [1,
+   * {@link #MAX_BYTES}] reset the maximum to the default, {@link #DEFAULT_MAX_BYTES}. A single
+   * mutation larger than the maximum is rejected with an {@link IllegalArgumentException}, when it
+   * is added to the batch.
+   *
+   * @param maxBytes the maximum estimated size of a sub-batch, in bytes
+   */
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes > 0 && maxBytes <= MAX_BYTES ? maxBytes : DEFAULT_MAX_BYTES;
+  }
+
+  /**
+   * Returns the number of sub-batches sent in parallel.
+   *
+   * @return the number of sub-batches sent in parallel.
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Sets the number of sub-batches sent in parallel. With a parallelism of 1, a sub-batch is sent
+   * by the thread that adds the mutation that fills it, and the thread waits for the commit. With
+   * a higher parallelism, sub-batches are sent by background threads, and the thread that adds
+   * mutations waits only when that many sub-batches are in flight. Values less than 1 reset the
+   * parallelism to the default, {@link #DEFAULT_PARALLELISM}.
+   *
+   * @param parallelism the number of sub-batches sent in parallel
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = parallelism > 0 ? parallelism : DEFAULT_PARALLELISM;
+  }
+}
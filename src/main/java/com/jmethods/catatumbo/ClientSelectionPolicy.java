@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Policies for selecting one of the Datastore clients of an {@link EntityManager} that is backed
+ * by more than one client. See {@link ConnectionParameters#setClientPoolSize(int)}.
+ *
+ * @author Sai Pullabhotla
+ */
+public enum ClientSelectionPolicy {
+
+  /** Clients are selected in turn. */
+  ROUND_ROBIN,
+
+  /**
+   * The client with the fewest operations in progress is selected. Ties are broken in round-robin
+   * order.
+   */
+  LEAST_IN_FLIGHT
+}
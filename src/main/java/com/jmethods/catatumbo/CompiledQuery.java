@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * A query that was built, and validated, using a {@link QueryBuilder}. Compiled queries are
+ * immutable and may be executed any number of times, from any number of threads, using {@link
+ * DatastoreAccess#executeQuery(CompiledQuery, Object...)}. Only the values of the parameters
+ * change from one execution to the next.
+ *
+ * @author Sai Pullabhotla
+ * @param <E> the entity type
+ */
+public interface CompiledQuery<E> {
+
+  /**
+   * Returns the entity class.
+   *
+   * @return the entity class.
+   */
+  Class<E> getEntityClass();
+
+  /**
+   * Returns the number of parameters, which is the number of values that must be supplied when
+   * executing this query.
+   *
+   * @return the number of parameters.
+   */
+  int getParameterCount();
+}
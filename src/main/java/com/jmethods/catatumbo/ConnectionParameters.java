@@ -49,6 +49,25 @@ public class ConnectionParameters {
   /** Default read timeout */
   public static final int DEFAULT_READ_TIMEOUT = 20000;
 
+  /** Default maximum number of pooled HTTP connections */
+  public static final int DEFAULT_MAX_CONNECTIONS = 100;
+
+  /** Default time, in milliseconds, for which an idle connection is kept open for reuse */
+  public static final long DEFAULT_KEEP_ALIVE_TIME = 60000L;
+
+  /** Default time, in milliseconds, after which idle connections are evicted from the pool */
+  public static final long DEFAULT_IDLE_TIMEOUT = 30000L;
+
+  /** Default minimum size, in bytes, of request bodies that are compressed */
+  public static final int DEFAULT_REQUEST_COMPRESSION_THRESHOLD = 1024;
+
+  /** Default number of Datastore clients */
+  public static final int DEFAULT_CLIENT_POOL_SIZE = 1;
+
+  /** Default policy for selecting a Datastore client */
+  public static final ClientSelectionPolicy DEFAULT_CLIENT_SELECTION_POLICY =
+      ClientSelectionPolicy.ROUND_ROBIN;
+
   /** Service URL */
   private String serviceURL;
 
@@ -73,11 +92,38 @@ public class ConnectionParameters {
   /** HTTP Transport Factory */
   private HttpTransportFactory httpTransportFactory;
 
+  /** Maximum number of pooled HTTP connections */
+  private int maxConnections;
+
+  /** Time for which an idle connection is kept open for reuse */
+  private long keepAliveTime;
+
+  /** Time after which idle connections are evicted from the pool */
+  private long idleTimeout;
+
+  /** Whether or not request bodies are compressed */
+  private boolean requestCompressionEnabled;
+
+  /** Minimum size of request bodies that are compressed */
+  private int requestCompressionThreshold;
+
+  /** Number of Datastore clients */
+  private int clientPoolSize;
+
+  /** Policy for selecting a Datastore client */
+  private ClientSelectionPolicy clientSelectionPolicy;
+
   /** Creates a new instance of <code>ConnectionParameters</code>. */
   public ConnectionParameters() {
     this.serviceURL = DEFAULT_SERVICE_URL;
     this.connectionTimeout = DEFAULT_CONNECTION_TIMEOUT;
     this.readTimeout = DEFAULT_READ_TIMEOUT;
+    this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+    this.keepAliveTime = DEFAULT_KEEP_ALIVE_TIME;
+    this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    this.requestCompressionThreshold = DEFAULT_REQUEST_COMPRESSION_THRESHOLD;
+    this.clientPoolSize = DEFAULT_CLIENT_POOL_SIZE;
+    this.clientSelectionPolicy = DEFAULT_CLIENT_SELECTION_POLICY;
   }
 
   /**
@@ -240,7 +286,10 @@ public class ConnectionParameters {
   }
 
   /**
-   * Sets the HttpTransportFactory.
+   * Sets the HttpTransportFactory. If not set, a transport backed by a pool of persistent
+   * connections is used, which is configured using the connection pool and compression settings of
+   * these parameters. Those settings have no effect on a transport factory that is set using this
+   * method.
    *
    * @param httpTransportFactory the HttpTransportFactory
    */
@@ -248,6 +297,155 @@ public class ConnectionParameters {
     this.httpTransportFactory = httpTransportFactory;
   }
 
+  /**
+   * Returns the maximum number of pooled HTTP connections.
+   *
+   * @return the maximum number of pooled HTTP connections.
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * Sets the maximum number of pooled HTTP connections, which is also the maximum number of
+   * requests that can be in flight at the same time. Requests beyond this limit wait for a
+   * connection to become available. A value of zero or less resets the maximum to the default,
+   * {@link #DEFAULT_MAX_CONNECTIONS}.
+   *
+   * @param maxConnections the maximum number of pooled HTTP connections
+   */
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections <= 0 ? DEFAULT_MAX_CONNECTIONS : maxConnections;
+  }
+
+  /**
+   * Returns the time, in milliseconds, for which an idle connection is kept open for reuse.
+   *
+   * @return the time, in milliseconds, for which an idle connection is kept open for reuse.
+   */
+  public long getKeepAliveTime() {
+    return keepAliveTime;
+  }
+
+  /**
+   * Sets the time, in milliseconds, for which an idle connection is kept open for reuse. If the
+   * server asks for a shorter time, the server's time is used. A value of zero disables the reuse
+   * of connections. A negative value implies to use the default, {@link #DEFAULT_KEEP_ALIVE_TIME}.
+   *
+   * @param keepAliveTime the keep-alive time, in milliseconds.
+   */
+  public void setKeepAliveTime(long keepAliveTime) {
+    this.keepAliveTime = keepAliveTime < 0 ? DEFAULT_KEEP_ALIVE_TIME : keepAliveTime;
+  }
+
+  /**
+   * Returns the time, in milliseconds, after which idle connections are evicted from the pool.
+   *
+   * @return the time, in milliseconds, after which idle connections are evicted from the pool.
+   */
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Sets the time, in milliseconds, after which idle connections are evicted from the pool by a
+   * background thread. Eviction closes connections that the server may have dropped, before a
+   * request tries to use them. A value of zero disables the background eviction. A negative value
+   * implies to use the default, {@link #DEFAULT_IDLE_TIMEOUT}.
+   *
+   * @param idleTimeout the idle timeout, in milliseconds.
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = idleTimeout < 0 ? DEFAULT_IDLE_TIMEOUT : idleTimeout;
+  }
+
+  /**
+   * Tells whether or not request bodies are compressed.
+   *
+   * @return <code>true</code>, if request bodies are compressed; <code>false</code>, otherwise.
+   */
+  public boolean isRequestCompressionEnabled() {
+    return requestCompressionEnabled;
+  }
+
+  /**
+   * Sets whether or not request bodies are gzip compressed. Compression is disabled by default. It
+   * reduces the bandwidth used by large batch writes at the cost of CPU time on the client.
+   *
+   * @param requestCompressionEnabled whether or not to compress request bodies
+   */
+  public void setRequestCompressionEnabled(boolean requestCompressionEnabled) {
+    this.requestCompressionEnabled = requestCompressionEnabled;
+  }
+
+  /**
+   * Returns the minimum size, in bytes, of request bodies that are compressed.
+   *
+   * @return the minimum size, in bytes, of request bodies that are compressed.
+   */
+  public int getRequestCompressionThreshold() {
+    return requestCompressionThreshold;
+  }
+
+  /**
+   * Sets the minimum size, in bytes, of request bodies that are compressed, if compression is
+   * enabled. Smaller bodies are sent as is, because compressing them saves little. Bodies whose
+   * size is not known in advance are always compressed. A negative value implies to use the
+   * default, {@link #DEFAULT_REQUEST_COMPRESSION_THRESHOLD}.
+   *
+   * @param requestCompressionThreshold the minimum size, in bytes, of compressed request bodies
+   */
+  public void setRequestCompressionThreshold(int requestCompressionThreshold) {
+    this.requestCompressionThreshold =
+        requestCompressionThreshold < 0
+            ? DEFAULT_REQUEST_COMPRESSION_THRESHOLD
+            : requestCompressionThreshold;
+  }
+
+  /**
+   * Returns the number of Datastore clients that back the EntityManager.
+   *
+   * @return the number of Datastore clients that back the EntityManager.
+   */
+  public int getClientPoolSize() {
+    return clientPoolSize;
+  }
+
+  /**
+   * Sets the number of Datastore clients that back the EntityManager. Each client has its own HTTP
+   * transport, so spreading the operations over several clients avoids contention in a single
+   * transport when many threads share the EntityManager. Each operation runs on one client, chosen
+   * by the {@link #setClientSelectionPolicy(ClientSelectionPolicy) client selection policy}, while
+   * transactions and batches stay on the client they were created with. A value of zero or less
+   * resets the pool size to the default, {@link #DEFAULT_CLIENT_POOL_SIZE}.
+   *
+   * @param clientPoolSize the number of Datastore clients
+   */
+  public void setClientPoolSize(int clientPoolSize) {
+    this.clientPoolSize = clientPoolSize <= 0 ? DEFAULT_CLIENT_POOL_SIZE : clientPoolSize;
+  }
+
+  /**
+   * Returns the policy for selecting a Datastore client.
+   *
+   * @return the policy for selecting a Datastore client.
+   */
+  public ClientSelectionPolicy getClientSelectionPolicy() {
+    return clientSelectionPolicy;
+  }
+
+  /**
+   * Sets the policy for selecting a Datastore client, when the client pool size is more than one. A
+   * value of <code>null</code> resets the policy to the default, {@link
+   * #DEFAULT_CLIENT_SELECTION_POLICY}.
+   *
+   * @param clientSelectionPolicy the policy for selecting a Datastore client
+   */
+  public void setClientSelectionPolicy(ClientSelectionPolicy clientSelectionPolicy) {
+    this.clientSelectionPolicy =
+        clientSelectionPolicy == null ? DEFAULT_CLIENT_SELECTION_POLICY : clientSelectionPolicy;
+  }
+
   /**
    * Tells whether or not these connection parameters indicate a connection to a Datastore Emulator.
    *
@@ -276,6 +474,20 @@ public class ConnectionParameters {
         + readTimeout
         + ", httpTransportFactory="
         + httpTransportFactory
+        + ", maxConnections="
+        + maxConnections
+        + ", keepAliveTime="
+        + keepAliveTime
+        + ", idleTimeout="
+        + idleTimeout
+        + ", requestCompressionEnabled="
+        + requestCompressionEnabled
+        + ", requestCompressionThreshold="
+        + requestCompressionThreshold
+        + ", clientPoolSize="
+        + clientPoolSize
+        + ", clientSelectionPolicy="
+        + clientSelectionPolicy
         + ", emulator="
         + isEmulator()
         + "]";
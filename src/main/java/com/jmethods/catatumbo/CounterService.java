@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Maintains named counters that sustain high rates of increments. A single entity can only be
+ * updated about once per second, so each counter is split into shards. An increment updates one
+ * randomly chosen shard in a small transaction, and reading a counter sums all of its shards using
+ * a single lookup. Counters live in the namespace that is in effect when they are used. A
+ * <code>CounterService</code> is obtained from {@link EntityManager#newCounterService(
+ * ShardedCounterOptions)} and is safe for use by multiple threads.
+ *
+ * @author Sai Pullabhotla
+ */
+public interface CounterService {
+
+  /**
+   * Increments the given counter by one.
+   *
+   * @param name the name of the counter
+   * @throws EntityManagerException if any error occurs while incrementing.
+   */
+  void increment(String name);
+
+  /**
+   * Increments the given counter by the given amount.
+   *
+   * @param name the name of the counter
+   * @param delta the amount to add, which may be negative
+   * @throws EntityManagerException if any error occurs while incrementing.
+   */
+  void increment(String name, long delta);
+
+  /**
+   * Returns the value of the given counter.
+   *
+   * @param name the name of the counter
+   * @return the value of the given counter, which is zero for counters that were never incremented.
+   * @throws EntityManagerException if any error occurs while reading the counter.
+   */
+  long getCount(String name);
+
+  /**
+   * Returns the number of shards of the given counter.
+   *
+   * @param name the name of the counter
+   * @return the number of shards of the given counter.
+   * @throws EntityManagerException if any error occurs while reading the counter.
+   */
+  int getShardCount(String name);
+
+  /**
+   * Deletes the given counter, including all of its shards.
+   *
+   * @param name the name of the counter
+   * @throws EntityManagerException if any error occurs while deleting the counter.
+   */
+  void delete(String name);
+}
@@ -17,6 +17,7 @@
 package com.jmethods.catatumbo;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * An interface for working with (reading from and writing to) the Cloud Datastore.
@@ -35,7 +36,9 @@ public interface DatastoreAccess {
   <E> E insert(E entity);
 
   /**
-   * Inserts the given list of entities into the Cloud Datastore.
+   * Inserts the given list of entities into the Cloud Datastore. The list may contain entities of
+   * different types (for example, an order along with its line items), all of which are inserted
+   * in a single request.
    *
    * @param entities the entities to insert.
    * @return the inserted entities. The inserted entities will not be same as the passed in
@@ -56,7 +59,8 @@ public interface DatastoreAccess {
   <E> E update(E entity);
 
   /**
-   * Updates the given list of entities in the Cloud Datastore.
+   * Updates the given list of entities in the Cloud Datastore. The list may contain entities of
+   * different types.
    *
    * @param entities the entities to update. The passed in entities must have their ID set for the
    *     update to work.
@@ -77,7 +81,8 @@ public interface DatastoreAccess {
 
   /**
    * Updates or inserts the given list of entities in the Cloud Datastore. If the entities do not
-   * have a valid ID, IDs may be generated.
+   * have a valid ID, IDs may be generated. The list may contain entities of different types, all
+   * of which are saved in a single request.
    *
    * @param entities the entities to update/or insert.
    * @return the updated or inserted entities
@@ -94,7 +99,8 @@ public interface DatastoreAccess {
   void delete(Object entity);
 
   /**
-   * Deletes the given entities from the Cloud Datastore.
+   * Deletes the given entities from the Cloud Datastore. The list may contain entities of different
+   * types.
    *
    * @param entities the entities to delete. The entities must have it ID set for the deletion to
    *     succeed.
@@ -256,6 +262,22 @@ public interface DatastoreAccess {
    */
   <E> List<E> loadByKey(Class<E> entityClass, List<DatastoreKey> keys);
 
+  /**
+   * Loads and returns the entities for the given keys, which may be of different Kinds, using a
+   * single lookup. Each entity is converted to the class, from the given entity classes, that maps
+   * to the Kind of its key. For example, the users, organizations and projects that a page refers
+   * to can be loaded in one round trip, rather than in one lookup per Kind.
+   *
+   * @param keys entity keys to load
+   * @param entityClasses the entity classes for the Kinds of the given keys
+   * @return the Entity objects that exist, keyed by their keys and in the same order as the given
+   *     keys. Keys that do not exist in the Cloud Datastore are not included in the returned map.
+   * @throws IllegalArgumentException if two of the given classes map to the same Kind, or if none
+   *     of the given classes maps to the Kind of one of the keys.
+   * @throws EntityManagerException if any error occurs while accessing the Cloud Datastore.
+   */
+  Map<DatastoreKey, Object> loadByKey(List<DatastoreKey> keys, Class<?>... entityClasses);
+
   /**
    * Creates and returns a new {@link EntityQueryRequest} for the given GQL query string. The
    * returned {@link EntityQueryRequest} can be further customized to set any bindings (positional
@@ -316,4 +338,35 @@ public interface DatastoreAccess {
    * @return the query response
    */
   QueryResponse<DatastoreKey> executeKeyQueryRequest(KeyQueryRequest request);
+
+  /**
+   * Executes the given compiled query and returns the response.
+   *
+   * @param query the compiled query
+   * @param parameterValues the values of the parameters of the query, in the order the parameters
+   *     were added to the {@link QueryBuilder}.
+   * @param <E> the entity type
+   * @return the query response
+   * @throws IllegalArgumentException if the number of values does not match the number of
+   *     parameters.
+   * @throws EntityManagerException if any error occurs while running the query.
+   */
+  <E> QueryResponse<E> executeQuery(CompiledQuery<E> query, Object... parameterValues);
+
+  /**
+   * Executes the given compiled query, starting at the given cursor, and returns the response.
+   *
+   * @param query the compiled query
+   * @param startCursor the cursor at which the results start, typically the end cursor of a
+   *     previous execution. May be <code>null</code>.
+   * @param parameterValues the values of the parameters of the query, in the order the parameters
+   *     were added to the {@link QueryBuilder}.
+   * @param <E> the entity type
+   * @return the query response
+   * @throws IllegalArgumentException if the number of values does not match the number of
+   *     parameters.
+   * @throws EntityManagerException if any error occurs while running the query.
+   */
+  <E> QueryResponse<E> executeQuery(
+      CompiledQuery<E> query, DatastoreCursor startCursor, Object... parameterValues);
 }
@@ -16,7 +16,9 @@
 
 package com.jmethods.catatumbo;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Interface that provides the metadata of the Datastore, such as the namespaces in the Datastore,
@@ -25,10 +27,18 @@ import java.util.List;
  * <p>Objects of this class may be obtained from the {@link EntityManager} by calling the {@link
  * EntityManager#getDatastoreMetadata()}.
  *
+ * <p>Tools that need the whole schema should use {@link #getSchemaSnapshot()}, which reads the
+ * Kinds and Properties of all namespaces concurrently. A metadata object returned by {@link
+ * #withCache(long, TimeUnit)} serves the schema snapshot from a cache, which is shared by the
+ * {@link EntityManager} and its namespace bound views, until it expires.
+ *
  * @author Sai Pullabhotla
  */
 public interface DatastoreMetadata {
 
+  /** Default number of concurrent queries used for discovering the schema. */
+  int DEFAULT_PARALLELISM = 8;
+
   /**
    * Returns all the namespaces in the Datastore. The results will be ordered by name in ascending
    * order. Exercise caution when using this method on a Datastore that has many many namespaces.
@@ -56,7 +66,8 @@ public interface DatastoreMetadata {
    * Returns the namespaces, up to the specified limit, from the specified cursor location. The
    * results will be ordered by name in ascending order.
    *
-   * @param fromCursor the cursor location from which the results should start.
+   * @param fromCursor the cursor location from which the results should start. A <code>null
+   *     </code> cursor, or a cursor without a position, starts from the first namespace.
    * @param limit the maximum number of namespaces to return
    * @return the namespaces from the specified cursor location. The default namespace, if exists,
    *     would be returned as an empty string.
@@ -99,4 +110,54 @@ public interface DatastoreMetadata {
    * @throws EntityManagerException if any error occurs while accessing the Datastore.
    */
   List<DatastoreProperty> getProperties(String kind);
+
+  /**
+   * Returns the schema of all namespaces in the Datastore. The Kinds and Properties of each
+   * namespace are discovered concurrently, using up to {@link #DEFAULT_PARALLELISM} queries at a
+   * time. If this metadata object was obtained using {@link #withCache(long, TimeUnit)} and the
+   * cache has a snapshot that has not expired, the cached snapshot is returned. Otherwise, a new
+   * snapshot is created and cached.
+   *
+   * @return the schema of all namespaces in the Datastore.
+   * @throws EntityManagerException if any error occurs while accessing the Datastore.
+   */
+  SchemaSnapshot getSchemaSnapshot();
+
+  /**
+   * Returns the schema of the given namespaces. The Kinds and Properties of the namespaces are
+   * discovered concurrently, using up to <code>parallelism</code> queries at a time. The returned
+   * snapshot is neither read from, nor stored in the cache.
+   *
+   * @param namespaces the namespaces. The default namespace is represented by an empty string.
+   * @param parallelism the maximum number of queries to run concurrently
+   * @return the schema of the given namespaces.
+   * @throws EntityManagerException if any error occurs while accessing the Datastore.
+   */
+  SchemaSnapshot getSchemaSnapshot(Collection<String> namespaces, int parallelism);
+
+  /**
+   * Re-reads the Properties of the given Kinds from the given namespace and merges them into the
+   * cached schema snapshot. Kinds that no longer exist are removed from the snapshot. The cached
+   * snapshot is replaced with the merged snapshot, which retains the creation time of the original
+   * snapshot. If there is no cached snapshot, a full snapshot is created as if by calling {@link
+   * #getSchemaSnapshot()}.
+   *
+   * @param namespace the namespace. The default namespace is represented by an empty string.
+   * @param kinds the Kinds to refresh
+   * @return the refreshed snapshot
+   * @throws EntityManagerException if any error occurs while accessing the Datastore.
+   */
+  SchemaSnapshot refreshSchemaSnapshot(String namespace, Collection<String> kinds);
+
+  /**
+   * Returns a metadata object that serves {@link #getSchemaSnapshot()} from a cache, as long as
+   * the cached snapshot is not older than the given duration. All other methods always query the
+   * Datastore.
+   *
+   * @param duration how long a cached schema snapshot may be used. A duration of zero or less
+   *     disables caching.
+   * @param unit the unit of the duration
+   * @return a metadata object that uses the cache.
+   */
+  DatastoreMetadata withCache(long duration, TimeUnit unit);
 }
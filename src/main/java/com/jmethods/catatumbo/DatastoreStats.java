@@ -16,22 +16,32 @@
 
 package com.jmethods.catatumbo;
 
+import com.jmethods.catatumbo.stats.NamespaceSummarySnapshot;
 import com.jmethods.catatumbo.stats.StatCompositeIndex;
 import com.jmethods.catatumbo.stats.StatCompositeIndexNs;
 import com.jmethods.catatumbo.stats.StatKind;
 import com.jmethods.catatumbo.stats.StatKindNs;
 import com.jmethods.catatumbo.stats.StatTotal;
 import com.jmethods.catatumbo.stats.StatTotalNs;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides access to various Datastore statistics. An instance of {@link DatastoreStats} is
  * obtained by calling {@link EntityManager#getDatastoreStats()}.
  *
+ * <p>The Datastore updates the statistics only every few hours, so callers that read them often
+ * may want to use {@link #withCache(long, TimeUnit)}, which serves the statistics from a cache
+ * that is shared by all <code>DatastoreStats</code> of an {@link EntityManager}.
+ *
  * @author Sai Pullabhotla
  */
 public interface DatastoreStats {
 
+  /** Default number of concurrent requests for retrieving statistics of multiple namespaces */
+  int DEFAULT_PARALLELISM = 8;
+
   /**
    * Returns the Summary statistic. This includes the information from all namespaces.
    *
@@ -137,4 +147,41 @@ public interface DatastoreStats {
    * @return the statistics for composite indexes for the given namespace.
    */
   List<StatCompositeIndexNs> getCompositeIndexesNs(String namespace);
+
+  /**
+   * Returns the summary statistics for each of the given namespaces. The statistics are fetched
+   * concurrently, using up to {@link #DEFAULT_PARALLELISM} threads.
+   *
+   * @param namespaces the namespaces
+   * @return a snapshot of the summary statistics of the given namespaces. Namespaces for which the
+   *     statistics are not available are not included in the snapshot.
+   * @throws EntityManagerException if any error occurs while retrieving the statistics.
+   */
+  NamespaceSummarySnapshot getSummariesNs(Collection<String> namespaces)
+      throws EntityManagerException;
+
+  /**
+   * Returns the summary statistics for each of the given namespaces. The statistics are fetched
+   * concurrently, using up to the given number of threads.
+   *
+   * @param namespaces the namespaces
+   * @param parallelism the maximum number of concurrent requests
+   * @return a snapshot of the summary statistics of the given namespaces. Namespaces for which the
+   *     statistics are not available are not included in the snapshot.
+   * @throws EntityManagerException if any error occurs while retrieving the statistics.
+   */
+  NamespaceSummarySnapshot getSummariesNs(Collection<String> namespaces, int parallelism)
+      throws EntityManagerException;
+
+  /**
+   * Returns a <code>DatastoreStats</code> that serves statistics from a cache, as long as the
+   * cached statistics are not older than the given duration. Statistics that are not in the cache,
+   * or are older than the given duration, are fetched from the Datastore and added to the cache.
+   * Lists returned from the cache are unmodifiable.
+   *
+   * @param duration the maximum age of cached statistics. Zero or less disables caching.
+   * @param unit the unit of the duration
+   * @return a <code>DatastoreStats</code> that serves statistics from a cache.
+   */
+  DatastoreStats withCache(long duration, TimeUnit unit);
 }
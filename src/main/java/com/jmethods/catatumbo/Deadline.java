@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Used for setting a deadline for the Datastore operations of the current thread. This class
+ * maintains a {@link ThreadLocal}, like {@link Tenant}. By default, there is no deadline.
+ *
+ * <p>Once a deadline is set, every operation of an {@link EntityManager} or a {@link
+ * DatastoreTransaction} that is executed by the current thread must complete before the deadline.
+ * The deadline is checked before each operation and between the chunks of work an operation is
+ * split into (e.g. lookup batches, pages, partitions), and it caps the timeouts of each RPC,
+ * including retries. Work that is outstanding when the deadline passes is cancelled and a {@link
+ * DeadlineExceededException} is thrown. A typical use is to apply the time budget of an incoming
+ * request to all of the Datastore work done for it:
+ *
+ * <pre>
+ * Deadline.setTimeout(500, TimeUnit.MILLISECONDS);
+ * try {
+ *   List&lt;Task&gt; tasks = em.loadByKey(Task.class, keys);
+ *   ...
+ * } finally {
+ *   Deadline.clear();
+ * }
+ * </pre>
+ *
+ * @author Sai Pullabhotla
+ */
+public class Deadline {
+
+  /** Time at which the deadline of the current thread expires, as per System.nanoTime() */
+  private static final ThreadLocal<Long> EXPIRATION = new ThreadLocal<>();
+
+  /**
+   * Longest timeout, in nanoseconds (about 146 years). Longer timeouts are capped, so that adding
+   * them to System.nanoTime() does not overflow.
+   */
+  private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 2;
+
+  /** Hide the implicit constructor */
+  private Deadline() {
+    // Do nothing.
+  }
+
+  /**
+   * Sets the deadline of the current thread to the given time from now, replacing any existing
+   * deadline. Timeouts longer than about 146 years are capped at that.
+   *
+   * @param timeout the time from now
+   * @param unit the unit of the timeout
+   * @throws IllegalArgumentException if the timeout is negative, or if the unit is <code>null
+   *     </code>.
+   */
+  public static void setTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout cannot be negative");
+    }
+    if (unit == null) {
+      throw new IllegalArgumentException("unit cannot be null");
+    }
+    EXPIRATION.set(System.nanoTime() + Math.min(unit.toNanos(timeout), MAX_TIMEOUT_NANOS));
+  }
+
+  /** Clears the deadline of the current thread. */
+  public static void clear() {
+    EXPIRATION.remove();
+  }
+
+  /**
+   * Tells whether or not the current thread has a deadline.
+   *
+   * @return <code>true</code>, if the current thread has a deadline; <code>false</code>, otherwise.
+   */
+  public static boolean isSet() {
+    return EXPIRATION.get() != null;
+  }
+
+  /**
+   * Returns the time remaining until the deadline of the current thread.
+   *
+   * @param unit the unit of the returned time
+   * @return the time remaining until the deadline, which is zero or negative, if the deadline has
+   *     passed. Returns {@link Long#MAX_VALUE}, if the current thread does not have a deadline.
+   */
+  public static long getRemainingTime(TimeUnit unit) {
+    Long expiration = EXPIRATION.get();
+    if (expiration == null) {
+      return Long.MAX_VALUE;
+    }
+    return unit.convert(expiration - System.nanoTime(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Tells whether or not the deadline of the current thread has passed.
+   *
+   * @return <code>true</code>, if the current thread has a deadline and it has passed; <code>false
+   *     </code>, otherwise.
+   */
+  public static boolean isExpired() {
+    Long expiration = EXPIRATION.get();
+    return expiration != null && expiration - System.nanoTime() <= 0;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Exception thrown by EntityManager to indicate that an operation did not complete before its
+ * deadline. Deadlines are set for the current thread using {@link Deadline}, or for a query using
+ * {@link BaseQueryRequest#setTimeout(long)}. Work that was still outstanding when the deadline
+ * passed, such as remaining lookup batches or pages, is cancelled.
+ *
+ * @author Sai Pullabhotla
+ */
+public class DeadlineExceededException extends EntityManagerException {
+
+  /** Serial version UID */
+  private static final long serialVersionUID = 4807245178934260384L;
+
+  /**
+   * Creates a new instance of {@code DeadlineExceededException} without detail message.
+   */
+  public DeadlineExceededException() {
+    super();
+  }
+
+  /**
+   * Constructs an instance of {@code DeadlineExceededException} with the specified detail message.
+   *
+   * @param msg the detail message.
+   */
+  public DeadlineExceededException(String msg) {
+    super(msg);
+  }
+
+  /**
+   * Creates an instance of {@code DeadlineExceededException} with the given message and cause.
+   *
+   * @param message the message
+   * @param cause the cause
+   */
+  public DeadlineExceededException(String message, Throwable cause) {
+    super(message, cause);
+  }
+
+  /**
+   * Creates a new instance of {@code DeadlineExceededException} with the given cause.
+   *
+   * @param cause the cause.
+   */
+  public DeadlineExceededException(Throwable cause) {
+    super(cause);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Objects of this class contain the options for scheduling writes by entity group. When enabled
+ * using {@link EntityManager#setEntityGroupWriteOptions(EntityGroupWriteOptions)}, single entity
+ * writes (<code>insert</code>, <code>update</code>, <code>upsert</code> and <code>delete</code>)
+ * that are not part of a transaction or a batch are queued by the root key of their entity group.
+ * Writes to the same group are committed one commit at a time, and writes that queue up while a
+ * commit is in progress are coalesced into the next commit. Writes to different groups proceed in
+ * parallel.
+ *
+ * @author Sai Pullabhotla
+ */
+public class EntityGroupWriteOptions {
+
+  /** Default maximum number of writes coalesced into one commit */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  /** Maximum number of mutations the Datastore allows in one commit */
+  public static final int MAX_BATCH_SIZE = 500;
+
+  /** Maximum number of writes coalesced into one commit */
+  private int maxBatchSize;
+
+  /** Creates a new instance of <code>EntityGroupWriteOptions</code>. */
+  public EntityGroupWriteOptions() {
+    this.maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  }
+
+  /**
+   * Returns the maximum number of writes coalesced into one commit.
+   *
+   * @return the maximum number of writes coalesced into one commit.
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of writes coalesced into one commit. Values outside of the range [1,
+   * {@link #MAX_BATCH_SIZE}] reset the size to the default, {@link #DEFAULT_MAX_BATCH_SIZE}. A
+   * value of 1 serializes the writes to each group without coalescing them.
+   *
+   * @param maxBatchSize the maximum number of writes coalesced into one commit
+   */
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize =
+        maxBatchSize > 0 && maxBatchSize <= MAX_BATCH_SIZE ? maxBatchSize : DEFAULT_MAX_BATCH_SIZE;
+  }
+}
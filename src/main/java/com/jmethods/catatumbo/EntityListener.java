@@ -59,6 +59,12 @@ import java.lang.annotation.Target;
  *       {@link PreInsert}, {@link PreUpdate} and {@link PreUpsert} annotations.
  * </ul>
  *
+ * <p>A callback method may also be of the form <code>public void methodName(List&lt;E&gt;)</code>,
+ * where the parameter type is exactly <code>java.util.List</code>. Such batch callback methods are
+ * invoked once per list operation (e.g. {@link EntityManager#insert(java.util.List)}) or once per
+ * page of query results, with an unmodifiable list of all entities involved, instead of once per
+ * entity. Single entity operations invoke batch callbacks with a list of one entity.
+ *
  * @author Sai Pullabhotla
  */
 @Retention(RUNTIME)
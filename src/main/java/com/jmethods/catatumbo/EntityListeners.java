@@ -45,14 +45,19 @@ import java.lang.annotation.Target;
  *   <li><strong>Internal Listeners</strong> - Internal listeners are callback methods defined
  *       within the {@link Entity} or {@link MappedSuperClass}. The signature of these methods
  *       differs slightly from the signature of methods in the {@link EntityListener}. The signature
- *       should be of the form <code>public void methodName()</code>. Internal listeners defined in
- *       the super class are executed first and then the subclass listeners.
+ *       should be of the form <code>public void methodName()</code>, or <code>public static void
+ *       methodName(List&lt;E&gt;)</code> for a batch callback that receives all entities of a
+ *       list operation at once. Internal listeners defined in the super class are executed first
+ *       and then the subclass listeners.
  * </ul>
  *
  * <p>It is possible to exclude the execution of Default Listeners and listeners defined in the
  * super classes (both external and internal) using the annotations {@link ExcludeDefaultListeners}
  * and {@link ExcludeSuperclassListeners} annotations, respectively.
  *
+ * <p>For list operations, each callback is invoked for all entities in the list (or, for batch
+ * callbacks, once with the whole list) before the next callback is invoked.
+ *
  * <p>Callback methods may throw RuntimeExceptions. All RuntimeExceptions will be re-thrown as
  * {@link EntityManagerException} with the original exception set as the cause.
  *
@@ -71,6 +71,37 @@ public interface EntityManager extends DatastoreAccess {
    */
   DatastoreBatch newBatch();
 
+  /**
+   * Creates and returns a new {@link DatastoreBatch} that sends its mutations in sub-batches as
+   * they are added, so that it is not limited by the maximum number of mutations or the maximum
+   * size of a single commit. The remaining mutations are sent when the batch is submitted, and the
+   * response reports the keys generated by all sub-batches, in the order the entities were added.
+   * The batch is not applied atomically; see {@link BatchOptions}.
+   *
+   * @param options the batch options. <code>null</code> creates a regular batch, same as {@link
+   *     #newBatch()}.
+   * @return a new <code>DatastoreBatch</code>
+   */
+  DatastoreBatch newBatch(BatchOptions options);
+
+  /**
+   * Creates and returns a new {@link CounterService} for maintaining sharded counters.
+   *
+   * @param options the options of the counters. <code>null</code> uses the default options.
+   * @return a new CounterService
+   */
+  CounterService newCounterService(ShardedCounterOptions options);
+
+  /**
+   * Creates and returns a new {@link QueryBuilder} for building queries on the given entity class.
+   *
+   * @param entityClass the entity class
+   * @param <E> the entity type
+   * @return a new QueryBuilder
+   * @throws EntityManagerException if the given class is not a valid entity
+   */
+  <E> QueryBuilder<E> newQueryBuilder(Class<E> entityClass);
+
   /**
    * Runs the given {@link TransactionalTask} in a new transaction. The {@link
    * TransactionalTask#execute(DatastoreTransaction)} will receive reference to a newly created
@@ -98,6 +129,22 @@ public interface EntityManager extends DatastoreAccess {
    */
   <T> T executeInTransaction(TransactionalTask<T> task, TransactionMode transactionMode);
 
+  /**
+   * Returns a view of this EntityManager that is bound to the given namespace. All reads, writes,
+   * queries, transactions and batches created from the returned EntityManager use the given
+   * namespace, regardless of the namespace set on the current thread using {@link Tenant}. Unlike
+   * {@link Tenant}, the returned EntityManager can be shared freely across threads, which makes it
+   * suitable for asynchronous code and shared thread pools.
+   *
+   * <p>Views share the underlying connection and listener configuration with this EntityManager,
+   * and are cached, so calling this method repeatedly with the same namespace is inexpensive.
+   *
+   * @param namespace the namespace. An empty string refers to the default namespace.
+   * @return an EntityManager that is bound to the given namespace.
+   * @throws IllegalArgumentException if the namespace is <code>null</code>
+   */
+  EntityManager forNamespace(String namespace);
+
   /**
    * Registers the given entity lifecycle listeners with this entity manager.
    *
@@ -106,6 +153,74 @@ public interface EntityManager extends DatastoreAccess {
    */
   void setDefaultListeners(Class<?>... classes);
 
+  /**
+   * Configures the threads used for executing asynchronous post callbacks (e.g. <code>
+   * PostInsert(async = true)</code>). If this method is not called, a default configuration is used
+   * the first time an asynchronous callback is triggered. Calling this method again replaces the
+   * threads; callbacks that were already submitted still run, on the old threads.
+   *
+   * @param options the options for executing asynchronous callbacks
+   */
+  void setAsyncCallbackOptions(AsyncCallbackOptions options);
+
+  /**
+   * Enables hedged lookups with the given options. Lookups by key that are slower than the hedge
+   * delay are sent a second time and the first response is used. Hedging is disabled by default.
+   *
+   * @param options the hedging options. <code>null</code> disables hedging.
+   */
+  void setHedgingOptions(HedgingOptions options);
+
+  /**
+   * Returns a snapshot of the metrics of hedged lookups, such as the number of hedges sent and the
+   * number of hedges that responded first. The metrics are reset when the hedging options are set.
+   *
+   * @return a snapshot of the metrics of hedged lookups.
+   */
+  HedgingMetrics getHedgingMetrics();
+
+  /**
+   * Enables ramping up of the rate of writes to each Kind with the given options. Writes that are
+   * not part of a transaction, including the submission of batches, wait until the rate of their
+   * Kinds admits them. This prevents the hot-spotting and throttling caused by sudden bulk writes
+   * to new or idle Kinds. The rate is not governed by default.
+   *
+   * @param options the write rate options. <code>null</code> disables the rate governing. Setting
+   *     new options starts the ramp-up of all Kinds over.
+   */
+  void setWriteRateOptions(WriteRateOptions options);
+
+  /**
+   * Returns the current rate at which writes to the given Kind are admitted.
+   *
+   * @param kind the Kind
+   * @return the current rate of the given Kind, in operations per second, or zero, if the rate of
+   *     writes is not governed.
+   */
+  double getWriteRate(String kind);
+
+  /**
+   * Enables scheduling of writes by entity group with the given options. Single entity writes that
+   * are not part of a transaction or a batch, and that target an existing entity group, are queued
+   * by the root key of the group, and writes that queue up behind a commit to the group are
+   * coalesced into one commit. This keeps concurrent writes to the same group from contending with
+   * one another. Writes are not scheduled by default.
+   *
+   * @param options the entity group write options. <code>null</code> disables the scheduling.
+   */
+  void setEntityGroupWriteOptions(EntityGroupWriteOptions options);
+
+  /**
+   * Enables pre-allocation of numeric IDs with the given options. Entities that are inserted or
+   * upserted with an auto-generated numeric ID get their ID from a pool of IDs allocated ahead of
+   * time, so their keys are complete before they are written, and {@link #allocateId(Object)} no
+   * longer makes a request to the Datastore for every call. IDs are not pre-allocated by default.
+   *
+   * @param options the ID allocation options. <code>null</code> disables the pre-allocation. IDs
+   *     left in the pools of the previous options are discarded.
+   */
+  void setIdAllocationOptions(IdAllocationOptions options);
+
   /**
    * Returns the {@link DatastoreMetadata} object that can be used to retrieve metadata information.
    *
@@ -122,6 +237,88 @@ public interface EntityManager extends DatastoreAccess {
    */
   DatastoreStats getDatastoreStats();
 
+  /**
+   * Returns a {@link Paginator} for iterating over the pages of the results of the given entity
+   * query, using the default {@link PaginationOptions}. The query for the next page runs in the
+   * background while the caller processes the current page. See {@link #paginate(Class,
+   * EntityQueryRequest, PaginationOptions)} for more details.
+   *
+   * @param expectedResultType the expected type of results
+   * @param request the query request
+   * @param <E> the type of results
+   * @return a paginator, which has already started fetching the first page.
+   */
+  <E> Paginator<E> paginate(Class<E> expectedResultType, EntityQueryRequest request);
+
+  /**
+   * Returns a {@link Paginator} for iterating over the pages of the results of the given entity
+   * query. The query must not have <code>LIMIT</code> or <code>OFFSET</code> clauses; they are
+   * added for each page based on the given options. Pages are fetched in the namespace that is
+   * effective at the time this method is called.
+   *
+   * @param expectedResultType the expected type of results
+   * @param request the query request
+   * @param options the pagination options
+   * @param <E> the type of results
+   * @return a paginator, which has already started fetching the first page.
+   * @throws IllegalArgumentException if the query has a <code>LIMIT</code> or <code>OFFSET</code>
+   *     clause.
+   */
+  <E> Paginator<E> paginate(
+      Class<E> expectedResultType, EntityQueryRequest request, PaginationOptions options);
+
+  /**
+   * Returns a {@link Paginator} for iterating over the pages of the results of the given key
+   * query, using the default {@link PaginationOptions}.
+   *
+   * @param request the query request
+   * @return a paginator, which has already started fetching the first page.
+   */
+  Paginator<DatastoreKey> paginate(KeyQueryRequest request);
+
+  /**
+   * Returns a {@link Paginator} for iterating over the pages of the results of the given key
+   * query. The query must not have <code>LIMIT</code> or <code>OFFSET</code> clauses; they are
+   * added for each page based on the given options.
+   *
+   * @param request the query request
+   * @param options the pagination options
+   * @return a paginator, which has already started fetching the first page.
+   * @throws IllegalArgumentException if the query has a <code>LIMIT</code> or <code>OFFSET</code>
+   *     clause.
+   */
+  Paginator<DatastoreKey> paginate(KeyQueryRequest request, PaginationOptions options);
+
+  /**
+   * Aggregates the results of the given query on the client, without loading the entities. The
+   * results are streamed through a keys-only query, if only the number of entities is needed, or a
+   * projection query on the value and group-by fields, and folded into the result as they arrive.
+   * Sort orders of the query are only applied if the query has a limit, as they then determine
+   * which results are aggregated.
+   *
+   * <p>Because projection queries only return entities that have the projected properties in an
+   * index, entities without a value for the value or group-by field are not counted, and an entity
+   * with a multi-valued property is counted once per value. A projection on two properties, or on
+   * a property other than the ones in the filters, needs a composite index.
+   *
+   * <p>If the options specify more than one partition, the key space of the Kind is split using the
+   * Datastore's scatter property and the partitions are scanned in parallel. Queries that have a
+   * limit or an inequality filter are always scanned sequentially, because they cannot be combined
+   * with key ranges.
+   *
+   * @param query the query whose results are aggregated
+   * @param options the aggregation options
+   * @param parameterValues the values of the query parameters
+   * @param <E> the entity type
+   * @return the result of the aggregation
+   * @throws IllegalArgumentException if the value or group-by field does not exist or is not
+   *     indexed, or if the number of parameter values does not match the number of parameters.
+   * @throws EntityManagerException if any error occurs while running the query, or if a value of
+   *     the value field is not numeric.
+   */
+  <E> AggregationResult aggregate(
+      CompiledQuery<E> query, AggregationOptions options, Object... parameterValues);
+
   /**
    * Allocates IDs for the given entities and returns the allocated IDs. Each entity in the list
    * must have a its identifier of type numeric (long/Long).
@@ -145,4 +342,14 @@ public interface EntityManager extends DatastoreAccess {
    * @throws EntityManagerException if any error occurs during ID allocation
    */
   DatastoreKey allocateId(Object entity);
+
+  /**
+   * Releases the threads used by this EntityManager for asynchronous callbacks, hedged lookups,
+   * pre-allocation of IDs and the lookups of queries executed in {@link
+   * EntityQueryRequest.ExecutionMode#KEYS_THEN_LOOKUP} mode, and closes the pooled HTTP
+   * connections of an EntityManager created by {@link EntityManagerFactory}. Work in progress is
+   * completed, but the EntityManager cannot perform Datastore operations after it is closed.
+   * Closing a namespace bound view closes the EntityManager it was created from.
+   */
+  void close();
 }
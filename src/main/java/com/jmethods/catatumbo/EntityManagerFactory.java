@@ -23,11 +23,16 @@ import com.google.cloud.NoCredentials;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreOptions;
 import com.google.cloud.http.HttpTransportOptions;
+import com.jmethods.catatumbo.impl.DatastoreClientPool;
+import com.jmethods.catatumbo.impl.DeadlineHttpTransportOptions;
 import com.jmethods.catatumbo.impl.DefaultEntityManager;
+import com.jmethods.catatumbo.impl.PooledHttpTransportFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A factory for producing {@link EntityManager}s.
@@ -82,10 +87,11 @@ public class EntityManagerFactory {
     httpOptionsBuilder.setReadTimeout(parameters.getReadTimeout());
 
     HttpTransportFactory httpTransportFactory = parameters.getHttpTransportFactory();
-    if (httpTransportFactory != null) {
-      httpOptionsBuilder.setHttpTransportFactory(httpTransportFactory);
+    if (httpTransportFactory == null) {
+      httpTransportFactory = new PooledHttpTransportFactory(parameters);
     }
-    return httpOptionsBuilder.build();
+    httpOptionsBuilder.setHttpTransportFactory(httpTransportFactory);
+    return new DeadlineHttpTransportOptions(httpOptionsBuilder);
   }
 
   /**
@@ -213,8 +219,18 @@ public class EntityManagerFactory {
         datastoreOptionsBuilder.setNamespace(namespace);
       }
       datastoreOptionsBuilder.setCredentials(getCredentials(parameters));
-      Datastore datastore = datastoreOptionsBuilder.build().getService();
-      return new DefaultEntityManager(datastore);
+      DatastoreOptions datastoreOptions = datastoreOptionsBuilder.build();
+      int clientPoolSize = parameters.getClientPoolSize();
+      if (clientPoolSize == 1) {
+        return new DefaultEntityManager(datastoreOptions.getService());
+      }
+      // Each options instance creates its own service, with its own HTTP transport
+      List<Datastore> clients = new ArrayList<>(clientPoolSize);
+      for (int i = 0; i < clientPoolSize; i++) {
+        clients.add(datastoreOptions.toBuilder().build().getService());
+      }
+      return new DefaultEntityManager(
+          new DatastoreClientPool(clients, parameters.getClientSelectionPolicy()));
     } catch (Exception exp) {
       throw new EntityManagerFactoryException(exp);
     }
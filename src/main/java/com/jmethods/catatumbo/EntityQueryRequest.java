@@ -16,13 +16,54 @@
 
 package com.jmethods.catatumbo;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * QueryRequest implementation for running full entity queries.
  *
+ * <p>By default, the query returns the full entities. Entity queries of the form <code>
+ * SELECT * FROM ...</code> may also be executed in {@link ExecutionMode#KEYS_THEN_LOOKUP} mode,
+ * where the query only returns the keys, and the entities are then looked up in batches, several
+ * batches at a time. Keys-only queries are cheaper and faster than entity queries, so this mode is
+ * beneficial when the entities are large.
+ *
+ * <p>When only a few properties of each entity are needed, a {@link FetchGroup} or a list of
+ * fields may be set on the request. The query is then run as a projection query that retrieves
+ * just those properties, and the results are instances of the expected entity class with the
+ * remaining fields unset.
+ *
  * @author Sai Pullabhotla
  */
 public class EntityQueryRequest extends BaseQueryRequest {
 
+  /**
+   * Default number of keys per lookup in {@link ExecutionMode#KEYS_THEN_LOOKUP} mode.
+   */
+  public static final int DEFAULT_LOOKUP_BATCH_SIZE = 100;
+
+  /**
+   * Default number of concurrent lookups in {@link ExecutionMode#KEYS_THEN_LOOKUP} mode.
+   */
+  public static final int DEFAULT_LOOKUP_PARALLELISM = 4;
+
+  /** Execution mode */
+  private ExecutionMode executionMode;
+
+  /** Number of keys per lookup */
+  private int lookupBatchSize;
+
+  /** Number of concurrent lookups */
+  private int lookupParallelism;
+
+  /** Name of the fetch group */
+  private String fetchGroup;
+
+  /** Names of the fields to fetch */
+  private List<String> fetchFields;
+
   /**
    * Creates a new instance of <code>EntityQueryRequest</code>.
    *
@@ -30,5 +71,137 @@ public class EntityQueryRequest extends BaseQueryRequest {
    */
   public EntityQueryRequest(String query) {
     super(query);
+    this.executionMode = ExecutionMode.ENTITIES;
+    this.lookupBatchSize = DEFAULT_LOOKUP_BATCH_SIZE;
+    this.lookupParallelism = DEFAULT_LOOKUP_PARALLELISM;
+    this.fetchFields = Collections.emptyList();
+  }
+
+  /**
+   * Returns the execution mode.
+   *
+   * @return the execution mode.
+   */
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  /**
+   * Sets the execution mode. A <code>null</code> value resets the mode to {@link
+   * ExecutionMode#ENTITIES}.
+   *
+   * @param executionMode the execution mode
+   */
+  public void setExecutionMode(ExecutionMode executionMode) {
+    this.executionMode = executionMode == null ? ExecutionMode.ENTITIES : executionMode;
+  }
+
+  /**
+   * Returns the number of keys per lookup in {@link ExecutionMode#KEYS_THEN_LOOKUP} mode.
+   *
+   * @return the number of keys per lookup.
+   */
+  public int getLookupBatchSize() {
+    return lookupBatchSize;
+  }
+
+  /**
+   * Sets the number of keys per lookup in {@link ExecutionMode#KEYS_THEN_LOOKUP} mode. A value of
+   * zero or less resets the batch size to the default, {@link #DEFAULT_LOOKUP_BATCH_SIZE}.
+   *
+   * @param lookupBatchSize the number of keys per lookup
+   */
+  public void setLookupBatchSize(int lookupBatchSize) {
+    this.lookupBatchSize = lookupBatchSize <= 0 ? DEFAULT_LOOKUP_BATCH_SIZE : lookupBatchSize;
+  }
+
+  /**
+   * Returns the maximum number of concurrent lookups in {@link ExecutionMode#KEYS_THEN_LOOKUP}
+   * mode.
+   *
+   * @return the maximum number of concurrent lookups.
+   */
+  public int getLookupParallelism() {
+    return lookupParallelism;
+  }
+
+  /**
+   * Sets the maximum number of concurrent lookups in {@link ExecutionMode#KEYS_THEN_LOOKUP} mode.
+   * Lookups within a transaction are always executed one at a time. A value of zero or less resets
+   * the parallelism to the default, {@link #DEFAULT_LOOKUP_PARALLELISM}.
+   *
+   * @param lookupParallelism the maximum number of concurrent lookups
+   */
+  public void setLookupParallelism(int lookupParallelism) {
+    this.lookupParallelism =
+        lookupParallelism <= 0 ? DEFAULT_LOOKUP_PARALLELISM : lookupParallelism;
+  }
+
+  /**
+   * Returns the name of the fetch group.
+   *
+   * @return the name of the fetch group. May be <code>null</code>.
+   */
+  public String getFetchGroup() {
+    return fetchGroup;
+  }
+
+  /**
+   * Sets the fetch group, so that only the properties of the fields in the group, as declared
+   * using {@link FetchGroup} on the expected result type, are retrieved. The query must be of the
+   * form <code>SELECT * FROM ...</code>, and the execution mode must be {@link
+   * ExecutionMode#ENTITIES}. Setting a fetch group clears the fetch fields. When a fetch group is
+   * set, {@link PostLoad} callbacks are not invoked, as the entities are only partially loaded.
+   *
+   * @param fetchGroup the name of the fetch group, or <code>null</code> to fetch entire entities.
+   * @throws EntityManagerException if the expected result type has no such fetch group. This is
+   *     thrown when the query is executed.
+   * @throws IllegalArgumentException if the execution mode is not {@link ExecutionMode#ENTITIES}.
+   *     This is thrown when the query is executed.
+   */
+  public void setFetchGroup(String fetchGroup) {
+    this.fetchGroup = fetchGroup;
+    this.fetchFields = Collections.emptyList();
+  }
+
+  /**
+   * Returns the names of the fields to fetch.
+   *
+   * @return the names of the fields to fetch. Returns an empty list, if no fields were set.
+   */
+  public List<String> getFetchFields() {
+    return fetchFields;
+  }
+
+  /**
+   * Sets the fields to fetch. This is the runtime equivalent of a fetch group - only the
+   * properties of the given fields of the expected result type are retrieved. Setting the fetch
+   * fields clears the fetch group. See {@link #setFetchGroup(String)} for the restrictions that
+   * apply.
+   *
+   * @param fieldNames the names of the fields (not the property names in the Datastore). No
+   *     arguments restores fetching of entire entities.
+   */
+  public void setFetchFields(String... fieldNames) {
+    this.fetchFields = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(fieldNames)));
+    this.fetchGroup = null;
+  }
+
+  /**
+   * Ways of executing an entity query.
+   *
+   * @author Sai Pullabhotla
+   */
+  public enum ExecutionMode {
+
+    /** The query returns the full entities. This is the default. */
+    ENTITIES,
+
+    /**
+     * The query is executed as a keys-only query, and the entities are looked up by key. The order
+     * of the results and the cursors are the same as in {@link #ENTITIES} mode. Entities that are
+     * deleted between the query and the lookup are omitted from the results.
+     */
+    KEYS_THEN_LOOKUP
   }
 }
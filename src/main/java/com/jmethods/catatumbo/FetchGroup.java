@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Adds a persistable field of an entity to one or more named fetch groups. An entity query that is
+ * executed with a fetch group (see {@link EntityQueryRequest#setFetchGroup(String)}) is run as a
+ * projection query that only retrieves the properties in the group, and the results are returned as
+ * instances of the ordinary entity class, with all other fields left unset.
+ *
+ * <p>Fetch groups are limited to the simple (non-embedded) properties of an entity, and, like all
+ * projections, to indexed properties. Projecting an array property returns one result per element
+ * of the array.
+ *
+ * @author Sai Pullabhotla
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface FetchGroup {
+
+  /**
+   * The names of the fetch groups to which the field belongs.
+   *
+   * @return the names of the fetch groups to which the field belongs.
+   */
+  String[] value();
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * A snapshot of the metrics of hedged lookups. See {@link EntityManager#getHedgingMetrics()}.
+ *
+ * @author Sai Pullabhotla
+ */
+public class HedgingMetrics {
+
+  /** Number of lookups */
+  private final long lookups;
+
+  /** Number of hedges sent */
+  private final long hedgesFired;
+
+  /** Number of hedges that responded before the original request */
+  private final long hedgesWon;
+
+  /** Current hedge delay, in milliseconds */
+  private final long delay;
+
+  /**
+   * Creates a new instance of <code>HedgingMetrics</code>.
+   *
+   * @param lookups the number of lookups
+   * @param hedgesFired the number of hedges sent
+   * @param hedgesWon the number of hedges that responded before the original request
+   * @param delay the current hedge delay, in milliseconds, or -1, if not known yet
+   */
+  public HedgingMetrics(long lookups, long hedgesFired, long hedgesWon, long delay) {
+    this.lookups = lookups;
+    this.hedgesFired = hedgesFired;
+    this.hedgesWon = hedgesWon;
+    this.delay = delay;
+  }
+
+  /**
+   * Returns the number of lookups that were eligible for hedging.
+   *
+   * @return the number of lookups that were eligible for hedging.
+   */
+  public long getLookups() {
+    return lookups;
+  }
+
+  /**
+   * Returns the number of hedges sent.
+   *
+   * @return the number of hedges sent.
+   */
+  public long getHedgesFired() {
+    return hedgesFired;
+  }
+
+  /**
+   * Returns the number of hedges that responded before the original request.
+   *
+   * @return the number of hedges that responded before the original request.
+   */
+  public long getHedgesWon() {
+    return hedgesWon;
+  }
+
+  /**
+   * Returns the current hedge delay.
+   *
+   * @return the current hedge delay, in milliseconds. Returns -1, if the delay is adaptive and not
+   *     enough lookups were observed yet, or if hedging is disabled.
+   */
+  public long getDelay() {
+    return delay;
+  }
+
+  @Override
+  public String toString() {
+    return "HedgingMetrics [lookups="
+        + lookups
+        + ", hedgesFired="
+        + hedgesFired
+        + ", hedgesWon="
+        + hedgesWon
+        + ", delay="
+        + delay
+        + "]";
+  }
+}
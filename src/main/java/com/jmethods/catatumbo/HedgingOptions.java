@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Objects of this class contain the options for hedged lookups. When hedging is enabled using
+ * {@link EntityManager#setHedgingOptions(HedgingOptions)}, a lookup by key (e.g. <code>load
+ * </code>, <code>loadByKey</code>) that has not completed within the hedge delay is sent again,
+ * and the first response to arrive is used. Lookups are idempotent, so the duplicate request is
+ * safe. It trades a small amount of extra load for a shorter tail latency. Lookups in a
+ * transaction are never hedged.
+ *
+ * <p>The hedge delay is either fixed, or adaptive, in which case it is the given percentile of the
+ * recently observed lookup latencies. The number of hedges is capped at a fraction of the number
+ * of lookups.
+ *
+ * @author Sai Pullabhotla
+ */
+public class HedgingOptions {
+
+  /** Default hedge delay. Zero means the delay is adaptive. */
+  public static final long DEFAULT_DELAY = 0L;
+
+  /** Default percentile of the observed latencies that is used as the adaptive delay */
+  public static final double DEFAULT_PERCENTILE = 0.95;
+
+  /** Default minimum adaptive delay, in milliseconds */
+  public static final long DEFAULT_MIN_DELAY = 5L;
+
+  /** Default maximum number of hedges, as a fraction of the number of lookups */
+  public static final double DEFAULT_MAX_HEDGE_RATE = 0.05;
+
+  /** Hedge delay, in milliseconds */
+  private long delay;
+
+  /** Percentile used for the adaptive delay */
+  private double percentile;
+
+  /** Minimum adaptive delay, in milliseconds */
+  private long minDelay;
+
+  /** Maximum hedge rate */
+  private double maxHedgeRate;
+
+  /** Creates a new instance of <code>HedgingOptions</code>. */
+  public HedgingOptions() {
+    this.delay = DEFAULT_DELAY;
+    this.percentile = DEFAULT_PERCENTILE;
+    this.minDelay = DEFAULT_MIN_DELAY;
+    this.maxHedgeRate = DEFAULT_MAX_HEDGE_RATE;
+  }
+
+  /**
+   * Returns the hedge delay, in milliseconds.
+   *
+   * @return the hedge delay, in milliseconds. Zero means the delay is adaptive.
+   */
+  public long getDelay() {
+    return delay;
+  }
+
+  /**
+   * Sets the time, in milliseconds, to wait for a lookup before sending it again. A value of zero
+   * makes the delay adaptive. A negative value resets the delay to the default, {@link
+   * #DEFAULT_DELAY}.
+   *
+   * @param delay the hedge delay, in milliseconds
+   */
+  public void setDelay(long delay) {
+    this.delay = delay < 0 ? DEFAULT_DELAY : delay;
+  }
+
+  /**
+   * Returns the percentile of the observed latencies that is used as the adaptive delay.
+   *
+   * @return the percentile of the observed latencies that is used as the adaptive delay.
+   */
+  public double getPercentile() {
+    return percentile;
+  }
+
+  /**
+   * Sets the percentile of the recently observed lookup latencies that is used as the adaptive
+   * delay. For example, a value of 0.95 hedges lookups that take longer than 95% of the recent
+   * lookups. Values outside of the range (0, 1) reset the percentile to the default, {@link
+   * #DEFAULT_PERCENTILE}.
+   *
+   * @param percentile the percentile, as a fraction
+   */
+  public void setPercentile(double percentile) {
+    this.percentile = percentile > 0 && percentile < 1 ? percentile : DEFAULT_PERCENTILE;
+  }
+
+  /**
+   * Returns the minimum adaptive delay, in milliseconds.
+   *
+   * @return the minimum adaptive delay, in milliseconds.
+   */
+  public long getMinDelay() {
+    return minDelay;
+  }
+
+  /**
+   * Sets the minimum adaptive delay, in milliseconds. This prevents hedging of lookups that are
+   * slow only by a negligible margin. A negative value resets the minimum to the default, {@link
+   * #DEFAULT_MIN_DELAY}.
+   *
+   * @param minDelay the minimum adaptive delay, in milliseconds
+   */
+  public void setMinDelay(long minDelay) {
+    this.minDelay = minDelay < 0 ? DEFAULT_MIN_DELAY : minDelay;
+  }
+
+  /**
+   * Returns the maximum number of hedges, as a fraction of the number of lookups.
+   *
+   * @return the maximum number of hedges, as a fraction of the number of lookups.
+   */
+  public double getMaxHedgeRate() {
+    return maxHedgeRate;
+  }
+
+  /**
+   * Sets the maximum number of hedges, as a fraction of the number of lookups. This caps the extra
+   * load when the Datastore is slow across the board, in which case hedging does not help. Values
+   * outside of the range (0, 1] reset the rate to the default, {@link #DEFAULT_MAX_HEDGE_RATE}.
+   *
+   * @param maxHedgeRate the maximum hedge rate
+   */
+  public void setMaxHedgeRate(double maxHedgeRate) {
+    this.maxHedgeRate =
+        maxHedgeRate > 0 && maxHedgeRate <= 1 ? maxHedgeRate : DEFAULT_MAX_HEDGE_RATE;
+  }
+}
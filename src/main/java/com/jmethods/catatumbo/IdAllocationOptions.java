@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Objects of this class contain the options for pre-allocating numeric IDs. When enabled using
+ * {@link EntityManager#setIdAllocationOptions(IdAllocationOptions)}, IDs are allocated from the
+ * Datastore in blocks and kept in a pool for each combination of namespace and Kind. Entities that
+ * are inserted or upserted with an auto-generated numeric ID get an ID from the pool when they are
+ * marshalled, so their complete keys are known before they are written. The pool is refilled in
+ * the background when the number of IDs left in it drops to the low-water mark.
+ *
+ * <p>Entities with a parent are not affected. The IDs of one parent cannot be used for another, and
+ * a pool for each parent would rarely be used up, so these entities continue to get their IDs when
+ * they are written.
+ *
+ * <p>Entities written with deferred ID allocation are not affected, and continue to get their IDs
+ * when the batch or transaction is committed.
+ *
+ * @author Sai Pullabhotla
+ */
+public class IdAllocationOptions {
+
+  /** Default number of IDs allocated in one request */
+  public static final int DEFAULT_BLOCK_SIZE = 500;
+
+  /** Maximum number of IDs allocated in one request */
+  public static final int MAX_BLOCK_SIZE = 500;
+
+  /** Default number of IDs left in a pool at which the pool is refilled */
+  public static final int DEFAULT_LOW_WATER_MARK = 100;
+
+  /** Number of IDs allocated in one request */
+  private int blockSize;
+
+  /** Number of IDs left in a pool at which the pool is refilled */
+  private int lowWaterMark;
+
+  /** Creates a new instance of <code>IdAllocationOptions</code>. */
+  public IdAllocationOptions() {
+    this.blockSize = DEFAULT_BLOCK_SIZE;
+    this.lowWaterMark = DEFAULT_LOW_WATER_MARK;
+  }
+
+  /**
+   * Returns the number of IDs allocated in one request.
+   *
+   * @return the number of IDs allocated in one request.
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Sets the number of IDs allocated in one request. Values outside of the range [1, {@link
+   * #MAX_BLOCK_SIZE}] reset the size to the default, {@link #DEFAULT_BLOCK_SIZE}.
+   *
+   * @param blockSize the number of IDs allocated in one request
+   */
+  public void setBlockSize(int blockSize) {
+    this.blockSize =
+        blockSize > 0 && blockSize <= MAX_BLOCK_SIZE ? blockSize : DEFAULT_BLOCK_SIZE;
+  }
+
+  /**
+   * Returns the number of IDs left in a pool at which the pool is refilled.
+   *
+   * @return the number of IDs left in a pool at which the pool is refilled.
+   */
+  public int getLowWaterMark() {
+    return lowWaterMark;
+  }
+
+  /**
+   * Sets the number of IDs left in a pool at which the pool is refilled. A negative value resets
+   * the mark to the default, {@link #DEFAULT_LOW_WATER_MARK}. Zero refills a pool only after it
+   * runs out, in which case the next ID is allocated while the caller waits. A mark that is not
+   * less than the block size keeps more than one block in each pool.
+   *
+   * @param lowWaterMark the number of IDs left in a pool at which the pool is refilled
+   */
+  public void setLowWaterMark(int lowWaterMark) {
+    this.lowWaterMark = lowWaterMark >= 0 ? lowWaterMark : DEFAULT_LOW_WATER_MARK;
+  }
+}
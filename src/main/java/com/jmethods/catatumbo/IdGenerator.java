@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Contract for generating String identifiers of entities whose identifiers are auto generated. The
+ * generator of an entity is specified using {@link Identifier#generator()}. An implementation of
+ * IdGenerator must have a public default (a.k.a no-argument) constructor, and must be safe for use
+ * by multiple threads, as a single instance is shared by all entities that use it.
+ *
+ * @author Sai Pullabhotla
+ */
+public interface IdGenerator {
+
+  /**
+   * Generates a new identifier.
+   *
+   * @return the new identifier. Must not be <code>null</code> or blank, and must be unique within
+   *     the Kind and parent of the entity being inserted.
+   */
+  String generate();
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import com.jmethods.catatumbo.impl.Cache;
+import com.jmethods.catatumbo.impl.IntrospectionUtils;
+
+/**
+ * A factory for producing identifier generators. This factory ensures there is at most one
+ * instance of a given IdGenerator implementation.
+ *
+ * @author Sai Pullabhotla
+ */
+public class IdGeneratorFactory {
+
+  /** Singleton instance */
+  private static final IdGeneratorFactory INSTANCE = new IdGeneratorFactory();
+
+  /** Cache of previously produced generators */
+  private Cache<Class<? extends IdGenerator>, IdGenerator> cache = null;
+
+  /** Creates a new instance of <code>IdGeneratorFactory</code>. */
+  private IdGeneratorFactory() {
+    cache = new Cache<>();
+  }
+
+  /**
+   * Returns the singleton instance of this class.
+   *
+   * @return the singleton instance of this class.
+   */
+  public static IdGeneratorFactory getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the {@link IdGenerator} of the given implementation class.
+   *
+   * @param generatorClass the implementation class of the IdGenerator interface
+   * @return the IdGenerator
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends IdGenerator> T getIdGenerator(Class<T> generatorClass) {
+    IdGenerator generator = cache.get(generatorClass);
+    if (generator == null) {
+      generator = createIdGenerator(generatorClass);
+    }
+    return (T) generator;
+  }
+
+  /**
+   * Creates the IdGenerator of the given class.
+   *
+   * @param generatorClass the generator implementation class
+   * @return the IdGenerator.
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends IdGenerator> T createIdGenerator(Class<T> generatorClass) {
+    synchronized (generatorClass) {
+      IdGenerator generator = cache.get(generatorClass);
+      if (generator == null) {
+        generator = (IdGenerator) IntrospectionUtils.instantiateObject(generatorClass);
+        cache.put(generatorClass, generator);
+      }
+      return (T) generator;
+    }
+  }
+}
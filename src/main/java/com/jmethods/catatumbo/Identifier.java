@@ -16,6 +16,7 @@
 
 package com.jmethods.catatumbo;
 
+import com.jmethods.catatumbo.idgenerators.UuidGenerator;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -55,7 +56,8 @@ public @interface Identifier {
    * <ul>
    *   <li>If the data type is long or Long - the Identifier generation is delegated to the Cloud
    *       Datastore. In other words, the Cloud Datastore allocates the identifiers.
-   *   <li>If the data type is String - the framework generates the identifier using a random UUID.
+   *   <li>If the data type is String - the framework generates the identifier using the {@link
+   *       #generator()}, which, by default, generates a random UUID.
    * </ul>
    *
    * When <code>autoGenerated</code> is set to <code>false</code>, the application is responsible
@@ -64,4 +66,14 @@ public @interface Identifier {
    * @return whether or not to auto generate identifiers
    */
   boolean autoGenerated() default true;
+
+  /**
+   * Specifies the generator of auto generated String identifiers. The specified class must have a
+   * public default (or no-argument) constructor. The built-in generators are in the {@link
+   * com.jmethods.catatumbo.idgenerators} package. This is ignored for numeric identifiers, and for
+   * identifiers that are not auto generated.
+   *
+   * @return the generator class.
+   */
+  Class<? extends IdGenerator> generator() default UuidGenerator.class;
 }
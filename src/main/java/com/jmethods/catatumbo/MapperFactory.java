@@ -16,6 +16,7 @@
 
 package com.jmethods.catatumbo;
 
+import com.jmethods.catatumbo.impl.BinderRegistry;
 import com.jmethods.catatumbo.impl.Cache;
 import com.jmethods.catatumbo.impl.IntrospectionUtils;
 import com.jmethods.catatumbo.mappers.BigDecimalMapper;
@@ -138,7 +139,8 @@ public class MapperFactory {
   /**
    * Sets or registers the given mapper for the given type. This method must be called before
    * performing any persistence operations, preferably, during application startup. Entities that
-   * were introspected before calling this method will NOT use the new mapper.
+   * were introspected before calling this method will NOT use the new mapper. Query bindings use
+   * the new mapper.
    *
    * @param type the type
    * @param mapper the mapper to use for the given type
@@ -153,6 +155,7 @@ public class MapperFactory {
     } finally {
       lock.unlock();
     }
+    BinderRegistry.clearMapperBinders();
   }
 
   /**
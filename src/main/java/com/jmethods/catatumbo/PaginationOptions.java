@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Objects of this class contain the options for paginating through the results of a query using a
+ * {@link Paginator}.
+ *
+ * @author Sai Pullabhotla
+ */
+public class PaginationOptions {
+
+  /** Default number of results per page */
+  public static final int DEFAULT_PAGE_SIZE = 500;
+
+  /** Default number of pages to fetch ahead of the caller */
+  public static final int DEFAULT_PREFETCH_DEPTH = 2;
+
+  /** Number of results per page */
+  private int pageSize;
+
+  /** Number of pages to fetch ahead of the caller */
+  private int prefetchDepth;
+
+  /** Cursor from which the first page starts */
+  private DatastoreCursor startCursor;
+
+  /** Creates a new instance of <code>PaginationOptions</code>. */
+  public PaginationOptions() {
+    this.pageSize = DEFAULT_PAGE_SIZE;
+    this.prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+  }
+
+  /**
+   * Returns the number of results per page.
+   *
+   * @return the number of results per page.
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Sets the number of results per page. A value of zero or less resets the page size to the
+   * default, {@link #DEFAULT_PAGE_SIZE}.
+   *
+   * @param pageSize the number of results per page
+   */
+  public void setPageSize(int pageSize) {
+    this.pageSize = pageSize <= 0 ? DEFAULT_PAGE_SIZE : pageSize;
+  }
+
+  /**
+   * Returns the maximum number of pages that are fetched ahead of the caller.
+   *
+   * @return the maximum number of pages that are fetched ahead of the caller.
+   */
+  public int getPrefetchDepth() {
+    return prefetchDepth;
+  }
+
+  /**
+   * Sets the maximum number of pages that are fetched ahead of the caller. Besides the page the
+   * caller is processing, a paginator holds at most this many pages plus the one that is being
+   * fetched. A value of zero or less resets the prefetch depth to the default, {@link
+   * #DEFAULT_PREFETCH_DEPTH}.
+   *
+   * @param prefetchDepth the maximum number of pages to fetch ahead of the caller
+   */
+  public void setPrefetchDepth(int prefetchDepth) {
+    this.prefetchDepth = prefetchDepth <= 0 ? DEFAULT_PREFETCH_DEPTH : prefetchDepth;
+  }
+
+  /**
+   * Returns the cursor from which the first page starts.
+   *
+   * @return the cursor from which the first page starts. May be <code>null</code>.
+   */
+  public DatastoreCursor getStartCursor() {
+    return startCursor;
+  }
+
+  /**
+   * Sets the cursor from which the first page starts. Typically, this is the end cursor of the last
+   * page consumed by an earlier paginator. If not set, pagination starts with the first result of
+   * the query.
+   *
+   * @param startCursor the cursor from which the first page starts
+   */
+  public void setStartCursor(DatastoreCursor startCursor) {
+    this.startCursor = startCursor;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import java.util.Iterator;
+
+/**
+ * Iterates over the pages of results of a query. A paginator runs the query for the next page in
+ * the background, while the caller processes the current page, so the latency of the Datastore
+ * RPCs is hidden from the caller. Pages are fetched using cursors - each page starts at the end
+ * cursor of the previous page.
+ *
+ * <p>The number of pages that are fetched ahead of the caller is limited by {@link
+ * PaginationOptions#getPrefetchDepth()}. When that many pages are waiting to be consumed, the
+ * background fetch pauses until the caller consumes a page. Pages with no results are never
+ * returned.
+ *
+ * <p>Paginators are obtained from {@link EntityManager#paginate(Class, EntityQueryRequest,
+ * PaginationOptions)} or {@link EntityManager#paginate(KeyQueryRequest, PaginationOptions)}. A
+ * paginator is meant to be used by a single thread. Paginators that are not iterated to the end
+ * should be closed (or cancelled), to stop the background fetch.
+ *
+ * @author Sai Pullabhotla
+ * @param <E> the type of results
+ */
+public interface Paginator<E> extends Iterator<QueryResponse<E>>, AutoCloseable {
+
+  /**
+   * Returns whether or not there is another page. This method blocks until the next page is
+   * fetched, or it is known that there are no more pages.
+   *
+   * @return <code>true</code>, if there is another page; <code>false</code>, otherwise.
+   * @throws EntityManagerException if any error occurs while fetching the next page
+   */
+  @Override
+  boolean hasNext();
+
+  /**
+   * Returns the next page. This method blocks until the next page is fetched. The end cursor of the
+   * returned page may be used to resume the pagination later using {@link
+   * PaginationOptions#setStartCursor(DatastoreCursor)}.
+   *
+   * @return the next page.
+   * @throws java.util.NoSuchElementException if there are no more pages
+   * @throws EntityManagerException if any error occurs while fetching the next page
+   */
+  @Override
+  QueryResponse<E> next();
+
+  /**
+   * Cancels this paginator. Pages that were fetched, but not consumed, are discarded, and the
+   * background fetch stops. After this method is called, {@link #hasNext()} returns <code>false
+   * </code>.
+   */
+  void cancel();
+
+  /**
+   * Returns whether or not this paginator was cancelled.
+   *
+   * @return <code>true</code>, if this paginator was cancelled; <code>false</code>, otherwise.
+   */
+  boolean isCancelled();
+
+  /**
+   * Cancels this paginator, if it was not already cancelled. Same as {@link #cancel()}.
+   */
+  @Override
+  void close();
+}
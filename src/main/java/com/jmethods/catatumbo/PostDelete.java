@@ -34,5 +34,12 @@ import java.lang.annotation.Target;
 @Retention(RUNTIME)
 @Target(METHOD)
 public @interface PostDelete {
-  // Marker
+
+  /**
+   * Whether or not the callback should run asynchronously after the delete returns, on the
+   * background threads configured with {@link AsyncCallbackOptions}.
+   *
+   * @return whether or not the callback should run asynchronously.
+   */
+  boolean async() default false;
 }
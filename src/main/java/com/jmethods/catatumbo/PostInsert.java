@@ -34,5 +34,13 @@ import java.lang.annotation.Target;
 @Retention(RUNTIME)
 @Target(METHOD)
 public @interface PostInsert {
-  // Marker
+
+  /**
+   * Whether or not the callback should run asynchronously, on a background thread, after the
+   * insert returns. Useful for side effects such as notifications or search indexing that should
+   * not add to the latency of the insert. See {@link AsyncCallbackOptions} for details.
+   *
+   * @return whether or not the callback should run asynchronously.
+   */
+  boolean async() default false;
 }
@@ -36,5 +36,12 @@ import java.lang.annotation.Target;
 @Retention(RUNTIME)
 @Target(METHOD)
 public @interface PostLoad {
-  // Marker
+
+  /**
+   * Whether or not the callback should run asynchronously. Asynchronous PostLoad callbacks must not
+   * modify the entity, since the entity is handed to the caller before the callback runs.
+   *
+   * @return whether or not the callback should run asynchronously.
+   */
+  boolean async() default false;
 }
@@ -34,5 +34,13 @@ import java.lang.annotation.Target;
 @Retention(RUNTIME)
 @Target(METHOD)
 public @interface PostUpdate {
-  // Marker
+
+  /**
+   * Whether or not the callback should run asynchronously after the update returns. Changes made
+   * to the entity by an asynchronous callback may not be visible to the caller, and any exception
+   * thrown goes to the configured {@link AsyncCallbackErrorHandler}.
+   *
+   * @return whether or not the callback should run asynchronously.
+   */
+  boolean async() default false;
 }
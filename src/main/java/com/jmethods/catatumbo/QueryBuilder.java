@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Builds {@link CompiledQuery} objects for a given entity class, without writing GQL. Filters and
+ * sort orders refer to the names of the entity's fields, which are validated as they are added, so
+ * a misspelled field fails when the query is built, not when it is executed. Filter values are
+ * converted to Datastore values using the {@link Mapper} of the field.
+ *
+ * <p>A filter value may either be given when the filter is added, in which case it is converted
+ * once and becomes part of the compiled query, or left as a parameter, whose value is supplied each
+ * time the query is executed (see {@link DatastoreAccess#executeQuery(CompiledQuery, Object...)}).
+ * Parameters are numbered in the order they are added.
+ *
+ * <p>Example:
+ *
+ * <pre>
+ * CompiledQuery&lt;Task&gt; query = em.newQueryBuilder(Task.class)
+ *     .where("priority", Operator.EQUAL)
+ *     .where("complete", Operator.EQUAL, false)
+ *     .orderBy("completionDate", Direction.DESCENDING)
+ *     .limit(50)
+ *     .build();
+ * QueryResponse&lt;Task&gt; response = em.executeQuery(query, 3);
+ * </pre>
+ *
+ * <p>Only simple (non-embedded) indexed fields of an entity may be used in filters and sort orders.
+ * Builders are not thread safe, but the compiled queries they build are immutable and may be
+ * shared.
+ *
+ * @author Sai Pullabhotla
+ * @param <E> the entity type
+ */
+public interface QueryBuilder<E> {
+
+  /**
+   * Adds a filter on the given field, whose value is a parameter of the query.
+   *
+   * @param fieldName the name of the field
+   * @param operator the operator
+   * @return this builder
+   * @throws IllegalArgumentException if the entity has no such field, or if the field is not
+   *     indexed.
+   */
+  QueryBuilder<E> where(String fieldName, Operator operator);
+
+  /**
+   * Adds a filter on the given field, with the given value.
+   *
+   * @param fieldName the name of the field
+   * @param operator the operator
+   * @param value the value to compare the field with, may be <code>null</code>.
+   * @return this builder
+   * @throws IllegalArgumentException if the entity has no such field, or if the field is not
+   *     indexed.
+   * @throws MappingException if the value cannot be converted using the field's mapper
+   */
+  QueryBuilder<E> where(String fieldName, Operator operator, Object value);
+
+  /**
+   * Restricts the results to the descendants of an ancestor, whose key (a {@link DatastoreKey}) is
+   * a parameter of the query.
+   *
+   * @return this builder
+   */
+  QueryBuilder<E> whereAncestor();
+
+  /**
+   * Restricts the results to the descendants of the given ancestor.
+   *
+   * @param ancestorKey the key of the ancestor
+   * @return this builder
+   */
+  QueryBuilder<E> whereAncestor(DatastoreKey ancestorKey);
+
+  /**
+   * Adds a sort order on the given field. Sort orders are applied in the order they are added.
+   *
+   * @param fieldName the name of the field
+   * @param direction the direction
+   * @return this builder
+   * @throws IllegalArgumentException if the entity has no such field, or if the field is not
+   *     indexed.
+   */
+  QueryBuilder<E> orderBy(String fieldName, Direction direction);
+
+  /**
+   * Sets the maximum number of results to return.
+   *
+   * @param limit the maximum number of results. Zero or less means no limit.
+   * @return this builder
+   */
+  QueryBuilder<E> limit(int limit);
+
+  /**
+   * Builds the query. The builder may be used to build more queries afterwards; the queries built
+   * so far are not affected.
+   *
+   * @return the compiled query
+   */
+  CompiledQuery<E> build();
+
+  /**
+   * Operators for filters.
+   *
+   * @author Sai Pullabhotla
+   */
+  enum Operator {
+    /** Equal to */
+    EQUAL,
+    /** Less than */
+    LESS_THAN,
+    /** Less than or equal to */
+    LESS_THAN_OR_EQUAL,
+    /** Greater than */
+    GREATER_THAN,
+    /** Greater than or equal to */
+    GREATER_THAN_OR_EQUAL
+  }
+
+  /**
+   * Sort directions.
+   *
+   * @author Sai Pullabhotla
+   */
+  enum Direction {
+    /** Ascending order */
+    ASCENDING,
+    /** Descending order */
+    DESCENDING
+  }
+}
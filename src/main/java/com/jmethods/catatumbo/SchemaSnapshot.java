@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable, point-in-time view of the Datastore schema - the namespaces, the Kinds in each
+ * namespace and the indexed Properties of each Kind. Snapshots are obtained from {@link
+ * DatastoreMetadata#getSchemaSnapshot()}. Namespaces, Kinds and Properties are ordered by name in
+ * ascending order.
+ *
+ * @author Sai Pullabhotla
+ */
+public class SchemaSnapshot implements Serializable {
+
+  /** Serial version UID */
+  private static final long serialVersionUID = -3410316538237616014L;
+
+  /** Properties, by Kind, by namespace */
+  private final Map<String, Map<String, List<DatastoreProperty>>> schema;
+
+  /** Time this snapshot was created, in milliseconds since the epoch */
+  private final long creationTime;
+
+  /**
+   * Creates a new instance of <code>SchemaSnapshot</code>.
+   *
+   * @param schema the Properties, by Kind, by namespace. The default namespace is represented by an
+   *     empty string. The given map is copied, so changes to it are not reflected in this snapshot.
+   * @param creationTime the time the schema was read from the Datastore, in milliseconds since the
+   *     epoch.
+   */
+  public SchemaSnapshot(
+      Map<String, Map<String, List<DatastoreProperty>>> schema, long creationTime) {
+    TreeMap<String, Map<String, List<DatastoreProperty>>> namespaces = new TreeMap<>();
+    for (Map.Entry<String, Map<String, List<DatastoreProperty>>> namespaceEntry :
+        schema.entrySet()) {
+      TreeMap<String, List<DatastoreProperty>> kinds = new TreeMap<>();
+      for (Map.Entry<String, List<DatastoreProperty>> kindEntry :
+          namespaceEntry.getValue().entrySet()) {
+        kinds.put(
+            kindEntry.getKey(),
+            Collections.unmodifiableList(new ArrayList<>(kindEntry.getValue())));
+      }
+      namespaces.put(namespaceEntry.getKey(), Collections.unmodifiableMap(kinds));
+    }
+    this.schema = Collections.unmodifiableMap(namespaces);
+    this.creationTime = creationTime;
+  }
+
+  /**
+   * Returns the namespaces in this snapshot.
+   *
+   * @return the namespaces in this snapshot. The default namespace is represented by an empty
+   *     string.
+   */
+  public List<String> getNamespaces() {
+    return new ArrayList<>(schema.keySet());
+  }
+
+  /**
+   * Returns the Kinds in the given namespace.
+   *
+   * @param namespace the namespace
+   * @return the Kinds in the given namespace. Returns an empty list, if this snapshot does not
+   *     contain the namespace.
+   */
+  public List<String> getKinds(String namespace) {
+    Map<String, List<DatastoreProperty>> kinds = schema.get(namespace);
+    if (kinds == null) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<>(kinds.keySet());
+  }
+
+  /**
+   * Returns the Properties of the given Kind.
+   *
+   * @param namespace the namespace
+   * @param kind the Kind
+   * @return the indexed Properties of the given Kind. Returns <code>null</code>, if this snapshot
+   *     does not contain the Kind.
+   */
+  public List<DatastoreProperty> getProperties(String namespace, String kind) {
+    Map<String, List<DatastoreProperty>> kinds = schema.get(namespace);
+    return kinds == null ? null : kinds.get(kind);
+  }
+
+  /**
+   * Returns the schema of the given namespace.
+   *
+   * @param namespace the namespace
+   * @return the Properties, by Kind, in the given namespace. Returns <code>null</code>, if this
+   *     snapshot does not contain the namespace.
+   */
+  public Map<String, List<DatastoreProperty>> getSchema(String namespace) {
+    return schema.get(namespace);
+  }
+
+  /**
+   * Returns the complete schema.
+   *
+   * @return the Properties, by Kind, by namespace. The returned map is unmodifiable.
+   */
+  public Map<String, Map<String, List<DatastoreProperty>>> getSchema() {
+    return schema;
+  }
+
+  /**
+   * Returns the time this snapshot was created.
+   *
+   * @return the time this snapshot was created, in milliseconds since the epoch.
+   */
+  public long getCreationTime() {
+    return creationTime;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+/**
+ * Objects of this class contain the options for the sharded counters of a {@link CounterService}.
+ * A counter starts with the initial number of shards. When increments run into contention, the
+ * number of shards is doubled, up to the maximum.
+ *
+ * @author Sai Pullabhotla
+ */
+public class ShardedCounterOptions {
+
+  /** Default initial number of shards */
+  public static final int DEFAULT_INITIAL_SHARDS = 10;
+
+  /** Default maximum number of shards */
+  public static final int DEFAULT_MAX_SHARDS = 500;
+
+  /** Default maximum number of attempts for an increment */
+  public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+  /** Default time, in milliseconds, for which totals are cached. Zero disables the cache. */
+  public static final long DEFAULT_CACHE_EXPIRATION = 0L;
+
+  /** Initial number of shards */
+  private int initialShards;
+
+  /** Maximum number of shards */
+  private int maxShards;
+
+  /** Maximum number of attempts for an increment */
+  private int maxAttempts;
+
+  /** Time, in milliseconds, for which totals are cached */
+  private long cacheExpiration;
+
+  /** Creates a new instance of <code>ShardedCounterOptions</code>. */
+  public ShardedCounterOptions() {
+    this.initialShards = DEFAULT_INITIAL_SHARDS;
+    this.maxShards = DEFAULT_MAX_SHARDS;
+    this.maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    this.cacheExpiration = DEFAULT_CACHE_EXPIRATION;
+  }
+
+  /**
+   * Returns the initial number of shards.
+   *
+   * @return the initial number of shards.
+   */
+  public int getInitialShards() {
+    return initialShards;
+  }
+
+  /**
+   * Sets the number of shards a new counter starts with. A value that is not positive resets the
+   * number to the default, {@link #DEFAULT_INITIAL_SHARDS}. The number of shards of a counter is
+   * stored with the counter when it is first incremented, so this setting does not affect existing
+   * counters.
+   *
+   * @param initialShards the initial number of shards
+   */
+  public void setInitialShards(int initialShards) {
+    this.initialShards = initialShards > 0 ? initialShards : DEFAULT_INITIAL_SHARDS;
+  }
+
+  /**
+   * Returns the maximum number of shards.
+   *
+   * @return the maximum number of shards.
+   */
+  public int getMaxShards() {
+    return maxShards;
+  }
+
+  /**
+   * Sets the number of shards beyond which a counter does not grow. A value that is not positive
+   * resets the number to the default, {@link #DEFAULT_MAX_SHARDS}.
+   *
+   * @param maxShards the maximum number of shards
+   */
+  public void setMaxShards(int maxShards) {
+    this.maxShards = maxShards > 0 ? maxShards : DEFAULT_MAX_SHARDS;
+  }
+
+  /**
+   * Returns the maximum number of attempts for an increment.
+   *
+   * @return the maximum number of attempts for an increment.
+   */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Sets the number of times an increment is attempted, each time on a randomly chosen shard,
+   * before giving up due to contention. A value that is not positive resets the number to the
+   * default, {@link #DEFAULT_MAX_ATTEMPTS}.
+   *
+   * @param maxAttempts the maximum number of attempts
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts > 0 ? maxAttempts : DEFAULT_MAX_ATTEMPTS;
+  }
+
+  /**
+   * Returns the time, in milliseconds, for which totals are cached.
+   *
+   * @return the time, in milliseconds, for which totals are cached. Zero means totals are not
+   *     cached.
+   */
+  public long getCacheExpiration() {
+    return cacheExpiration;
+  }
+
+  /**
+   * Sets the time, in milliseconds, for which the total of a counter is cached after it is read.
+   * Increments made through the same service are added to the cached total; increments made
+   * elsewhere are seen once the cached total expires. A value of zero disables the cache. A
+   * negative value resets the time to the default, {@link #DEFAULT_CACHE_EXPIRATION}.
+   *
+   * @param cacheExpiration the time, in milliseconds, for which totals are cached
+   */
+  public void setCacheExpiration(long cacheExpiration) {
+    this.cacheExpiration = cacheExpiration >= 0 ? cacheExpiration : DEFAULT_CACHE_EXPIRATION;
+  }
+}
@@ -73,6 +73,11 @@ package com.jmethods.catatumbo;
  *
  * </pre>
  *
+ * <p>Because the namespace is bound to the current thread, it is not propagated to other threads
+ * (e.g. tasks submitted to an executor). For such cases, use {@link
+ * EntityManager#forNamespace(String)}, which returns an EntityManager bound to a fixed namespace.
+ * EntityManagers returned by <code>forNamespace</code> ignore the namespace set using this class.
+ *
  * @author Sai Pullabhotla
  */
 public class Tenant {
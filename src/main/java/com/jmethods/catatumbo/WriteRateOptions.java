@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Objects of this class contain the options for ramping up the rate of writes to each Kind. When
+ * enabled using {@link EntityManager#setWriteRateOptions(WriteRateOptions)}, writes that are not
+ * part of a transaction are admitted at no more than the current rate of their Kind. The rate
+ * starts at the initial rate and grows by the growth factor after every growth interval of
+ * sustained writes, which, with the defaults, follows the "500/50/5" guidance of the Cloud
+ * Datastore: start at 500 operations per second and increase by 50% every 5 minutes. When the
+ * Datastore reports contention on a Kind, its rate is cut by the backoff factor and the ramp-up
+ * resumes from there.
+ *
+ * <p>The initial rate may be overridden for individual Kinds, for example, to start Kinds that are
+ * known to be warm at a higher rate.
+ *
+ * @author Sai Pullabhotla
+ */
+public class WriteRateOptions {
+
+  /** Default initial rate, in operations per second */
+  public static final double DEFAULT_INITIAL_RATE = 500.0;
+
+  /** Default factor by which the rate grows after each growth interval */
+  public static final double DEFAULT_GROWTH_FACTOR = 1.5;
+
+  /** Default growth interval, in milliseconds */
+  public static final long DEFAULT_GROWTH_INTERVAL = 300000L;
+
+  /** Default maximum rate, in operations per second. Zero means there is no maximum. */
+  public static final double DEFAULT_MAX_RATE = 0.0;
+
+  /** Default factor by which the rate is cut when the Datastore reports contention */
+  public static final double DEFAULT_BACKOFF_FACTOR = 0.5;
+
+  /** Initial rate, in operations per second */
+  private double initialRate;
+
+  /** Growth factor */
+  private double growthFactor;
+
+  /** Growth interval, in milliseconds */
+  private long growthInterval;
+
+  /** Maximum rate, in operations per second */
+  private double maxRate;
+
+  /** Backoff factor */
+  private double backoffFactor;
+
+  /** Initial rates of individual Kinds, keyed by Kind */
+  private final Map<String, Double> kindInitialRates;
+
+  /** Creates a new instance of <code>WriteRateOptions</code>. */
+  public WriteRateOptions() {
+    this.initialRate = DEFAULT_INITIAL_RATE;
+    this.growthFactor = DEFAULT_GROWTH_FACTOR;
+    this.growthInterval = DEFAULT_GROWTH_INTERVAL;
+    this.maxRate = DEFAULT_MAX_RATE;
+    this.backoffFactor = DEFAULT_BACKOFF_FACTOR;
+    this.kindInitialRates = new HashMap<>();
+  }
+
+  /**
+   * Returns the initial rate, in operations per second.
+   *
+   * @return the initial rate, in operations per second.
+   */
+  public double getInitialRate() {
+    return initialRate;
+  }
+
+  /**
+   * Returns the initial rate of the given Kind, in operations per second.
+   *
+   * @param kind the Kind
+   * @return the initial rate of the given Kind, if it was overridden; the initial rate of all
+   *     Kinds, otherwise.
+   */
+  public double getInitialRate(String kind) {
+    Double rate = kindInitialRates.get(kind);
+    return rate == null ? initialRate : rate;
+  }
+
+  /**
+   * Sets the rate, in operations per second, at which writes to a Kind start. A value that is not
+   * positive resets the rate to the default, {@link #DEFAULT_INITIAL_RATE}.
+   *
+   * @param initialRate the initial rate, in operations per second
+   */
+  public void setInitialRate(double initialRate) {
+    this.initialRate = initialRate > 0 ? initialRate : DEFAULT_INITIAL_RATE;
+  }
+
+  /**
+   * Overrides the initial rate, in operations per second, of the given Kind. A value that is not
+   * positive removes the override.
+   *
+   * @param kind the Kind
+   * @param initialRate the initial rate of the Kind, in operations per second
+   * @throws IllegalArgumentException if the Kind is <code>null</code>.
+   */
+  public void setInitialRate(String kind, double initialRate) {
+    if (kind == null) {
+      throw new IllegalArgumentException("kind cannot be null");
+    }
+    if (initialRate > 0) {
+      kindInitialRates.put(kind, initialRate);
+    } else {
+      kindInitialRates.remove(kind);
+    }
+  }
+
+  /**
+   * Returns the initial rates of the Kinds whose initial rate was overridden.
+   *
+   * @return the initial rates of the Kinds whose initial rate was overridden, keyed by Kind.
+   */
+  public Map<String, Double> getKindInitialRates() {
+    return Collections.unmodifiableMap(kindInitialRates);
+  }
+
+  /**
+   * Returns the factor by which the rate grows after each growth interval.
+   *
+   * @return the factor by which the rate grows after each growth interval.
+   */
+  public double getGrowthFactor() {
+    return growthFactor;
+  }
+
+  /**
+   * Sets the factor by which the rate grows after each growth interval. A value of 1 keeps the rate
+   * at the initial rate. Values less than 1 reset the factor to the default, {@link
+   * #DEFAULT_GROWTH_FACTOR}.
+   *
+   * @param growthFactor the growth factor
+   */
+  public void setGrowthFactor(double growthFactor) {
+    this.growthFactor = growthFactor >= 1 ? growthFactor : DEFAULT_GROWTH_FACTOR;
+  }
+
+  /**
+   * Returns the growth interval, in milliseconds.
+   *
+   * @return the growth interval, in milliseconds.
+   */
+  public long getGrowthInterval() {
+    return growthInterval;
+  }
+
+  /**
+   * Sets the time, in milliseconds, for which a Kind must be written at its current rate before
+   * the rate grows. A value that is not positive resets the interval to the default, {@link
+   * #DEFAULT_GROWTH_INTERVAL}.
+   *
+   * @param growthInterval the growth interval, in milliseconds
+   */
+  public void setGrowthInterval(long growthInterval) {
+    this.growthInterval = growthInterval > 0 ? growthInterval : DEFAULT_GROWTH_INTERVAL;
+  }
+
+  /**
+   * Returns the maximum rate, in operations per second.
+   *
+   * @return the maximum rate, in operations per second. Zero means there is no maximum.
+   */
+  public double getMaxRate() {
+    return maxRate;
+  }
+
+  /**
+   * Sets the rate, in operations per second, beyond which the rate of a Kind does not grow. A value
+   * of zero means there is no maximum. A negative value resets the maximum to the default, {@link
+   * #DEFAULT_MAX_RATE}.
+   *
+   * @param maxRate the maximum rate, in operations per second
+   */
+  public void setMaxRate(double maxRate) {
+    this.maxRate = maxRate >= 0 ? maxRate : DEFAULT_MAX_RATE;
+  }
+
+  /**
+   * Returns the factor by which the rate is cut when the Datastore reports contention.
+   *
+   * @return the factor by which the rate is cut when the Datastore reports contention.
+   */
+  public double getBackoffFactor() {
+    return backoffFactor;
+  }
+
+  /**
+   * Sets the factor by which the rate of a Kind is cut when a write to it fails due to contention
+   * or throttling. A value of 1 disables the backoff. Values outside of the range (0, 1] reset the
+   * factor to the default, {@link #DEFAULT_BACKOFF_FACTOR}.
+   *
+   * @param backoffFactor the backoff factor
+   */
+  public void setBackoffFactor(double backoffFactor) {
+    this.backoffFactor =
+        backoffFactor > 0 && backoffFactor <= 1 ? backoffFactor : DEFAULT_BACKOFF_FACTOR;
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.idgenerators;
+
+/**
+ * Encodes numbers in URL safe characters for the identifier generators. Each character holds 6
+ * bits. The characters are those of the URL safe Base64 alphabet, but in ASCII order, so the
+ * encoded strings sort in the same order as the numbers they encode.
+ *
+ * @author Sai Pullabhotla
+ */
+class IdEncoding {
+
+  /** Number of characters needed for 64 bits */
+  static final int LONG_LENGTH = 11;
+
+  /** Number of characters needed for a timestamp in milliseconds, which fits in 48 bits */
+  static final int TIME_LENGTH = 8;
+
+  /** The characters, in ascending order */
+  private static final char[] ALPHABET =
+      "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+  /** Hide the implicit constructor */
+  private IdEncoding() {
+    // Do nothing.
+  }
+
+  /**
+   * Appends the low order bits of the given value to the given builder, most significant bits
+   * first.
+   *
+   * @param builder the builder
+   * @param value the value
+   * @param length the number of characters to append, each holding 6 bits of the value
+   */
+  static void append(StringBuilder builder, long value, int length) {
+    for (int shift = 6 * (length - 1); shift >= 0; shift -= 6) {
+      builder.append(ALPHABET[(int) (value >>> shift) & 0x3F]);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.idgenerators;
+
+import com.jmethods.catatumbo.IdGenerator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An implementation of {@link IdGenerator} that generates random identifiers, encoded in 22 URL
+ * safe characters, such as <code>6Vn0Jk2m_xQeRt5LaZc-8d</code>. The random bits come from the
+ * {@link ThreadLocalRandom} of the calling thread, so threads generating identifiers at the same
+ * time do not contend with one another. The identifiers are shorter than UUIDs, which keeps keys
+ * and indexes small, and are spread evenly over the key space.
+ *
+ * <p>Although each identifier is made of two 64-bit values, both are drawn back to back from the
+ * same generator, whose state is only 64 bits. An identifier therefore carries at most 64 bits of
+ * randomness, and collisions become likely after about 2<sup>32</sup> identifiers.
+ *
+ * <p>The generator is not cryptographically secure, and the identifiers should not be used where
+ * they must be hard to guess.
+ *
+ * @author Sai Pullabhotla
+ */
+public class RandomIdGenerator implements IdGenerator {
+
+  /** Length of the generated identifiers */
+  public static final int LENGTH = 2 * IdEncoding.LONG_LENGTH;
+
+  @Override
+  public String generate() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    StringBuilder id = new StringBuilder(LENGTH);
+    IdEncoding.append(id, random.nextLong(), IdEncoding.LONG_LENGTH);
+    IdEncoding.append(id, random.nextLong(), IdEncoding.LONG_LENGTH);
+    return id.toString();
+  }
+}
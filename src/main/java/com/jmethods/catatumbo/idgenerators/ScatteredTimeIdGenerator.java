@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.idgenerators;
+
+import com.jmethods.catatumbo.IdGenerator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An implementation of {@link IdGenerator} that generates identifiers which sort by creation time,
+ * without all new entities landing at the end of the key range. Sequential keys concentrate the
+ * writes on a single tablet of the Datastore and limit the write throughput of the Kind. Each
+ * identifier has 20 URL safe characters:
+ *
+ * <ul>
+ *   <li>a random scatter character, which spreads the writes over 64 ranges of keys,
+ *   <li>8 characters of the current time, in milliseconds since the epoch, and
+ *   <li>11 characters of random bits from the {@link ThreadLocalRandom} of the calling thread.
+ * </ul>
+ *
+ * <p>The encoding preserves the order, so identifiers with the same scatter character sort by their
+ * creation time. Reading entities in creation order requires one query per scatter character, or a
+ * merge of the results in the application.
+ *
+ * @author Sai Pullabhotla
+ */
+public class ScatteredTimeIdGenerator implements IdGenerator {
+
+  /** Number of ranges the identifiers are scattered over */
+  public static final int SCATTER = 64;
+
+  /** Length of the generated identifiers */
+  public static final int LENGTH = 1 + IdEncoding.TIME_LENGTH + IdEncoding.LONG_LENGTH;
+
+  @Override
+  public String generate() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    StringBuilder id = new StringBuilder(LENGTH);
+    IdEncoding.append(id, random.nextInt(SCATTER), 1);
+    IdEncoding.append(id, System.currentTimeMillis(), IdEncoding.TIME_LENGTH);
+    IdEncoding.append(id, random.nextLong(), IdEncoding.LONG_LENGTH);
+    return id.toString();
+  }
+}
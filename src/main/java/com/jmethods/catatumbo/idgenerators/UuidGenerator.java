@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.idgenerators;
+
+import com.jmethods.catatumbo.IdGenerator;
+import java.util.UUID;
+
+/**
+ * An implementation of {@link IdGenerator} that generates random UUIDs, such as
+ * <code>3b241101-e2bb-4255-8caf-4136c566a962</code>. This is the default generator. UUIDs are
+ * obtained from a shared <code>SecureRandom</code>, which may become a point of contention when
+ * many threads insert entities at the same time. Consider {@link RandomIdGenerator} for heavy
+ * parallel inserts.
+ *
+ * @author Sai Pullabhotla
+ */
+public class UuidGenerator implements IdGenerator {
+
+  @Override
+  public String generate() {
+    return UUID.randomUUID().toString();
+  }
+}
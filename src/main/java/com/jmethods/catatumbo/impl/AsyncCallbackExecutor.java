@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.jmethods.catatumbo.AsyncCallbackErrorHandler;
+import com.jmethods.catatumbo.AsyncCallbackOptions;
+import com.jmethods.catatumbo.EntityManagerException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes asynchronous callbacks on a fixed number of lanes. Each lane is a single thread with a
+ * bounded queue. Callbacks are routed to a lane using a routing key (typically the hash code of the
+ * entity key), so callbacks with the same routing key run in the order they were submitted. When
+ * the queue of a lane is full, the submitting thread blocks until there is room.
+ *
+ * @author Sai Pullabhotla
+ */
+public class AsyncCallbackExecutor {
+
+  /** Sequence for naming the threads */
+  private static final AtomicInteger THREAD_SEQUENCE = new AtomicInteger();
+
+  /** Lanes */
+  private final ThreadPoolExecutor[] lanes;
+
+  /** Error handler, may be null */
+  private final AsyncCallbackErrorHandler errorHandler;
+
+  /**
+   * Creates a new instance of <code>AsyncCallbackExecutor</code>.
+   *
+   * @param options the options
+   */
+  public AsyncCallbackExecutor(AsyncCallbackOptions options) {
+    this.errorHandler = options.getErrorHandler();
+    this.lanes = new ThreadPoolExecutor[options.getThreads()];
+    ThreadFactory threadFactory = new CallbackThreadFactory();
+    RejectedExecutionHandler blockingHandler = new BlockingPolicy();
+    for (int i = 0; i < lanes.length; i++) {
+      lanes[i] =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<Runnable>(options.getQueueCapacity()),
+              threadFactory,
+              blockingHandler);
+    }
+  }
+
+  /**
+   * Submits the given callback for execution.
+   *
+   * @param routingKey the routing key. Callbacks with the same routing key are executed in the
+   *     order they were submitted.
+   * @param callback the callback
+   * @param entity the entity (or list of entities, for batch callbacks)
+   * @return <code>true</code>, if the callback was accepted; <code>false</code>, if this executor
+   *     was shut down, or if the current thread was interrupted while waiting for room in the
+   *     queue.
+   */
+  public boolean execute(int routingKey, CallbackMetadata callback, Object entity) {
+    ThreadPoolExecutor lane = lanes[(routingKey & Integer.MAX_VALUE) % lanes.length];
+    try {
+      lane.execute(new CallbackTask(callback, entity));
+      return true;
+    } catch (RejectedExecutionException exp) {
+      return false;
+    }
+  }
+
+  /**
+   * Invokes the given callback on the current thread. Any exception thrown by the callback is sent
+   * to the error handler, the same way as for the callbacks executed by this executor.
+   *
+   * @param callback the callback
+   * @param entity the entity (or list of entities, for batch callbacks)
+   */
+  public void run(CallbackMetadata callback, Object entity) {
+    new CallbackTask(callback, entity).run();
+  }
+
+  /**
+   * Shuts down this executor. Callbacks that were already submitted are executed, but no new
+   * callbacks are accepted.
+   */
+  public void shutdown() {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+  }
+
+  /**
+   * Waits for all submitted callbacks to finish, after a shutdown request.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the unit of the timeout
+   * @return <code>true</code>, if all callbacks finished; <code>false</code>, if the timeout
+   *     elapsed first.
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (ThreadPoolExecutor lane : lanes) {
+      long remaining = deadline - System.nanoTime();
+      if (!lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A task that invokes a callback and sends any exception to the error handler.
+   *
+   * @author Sai Pullabhotla
+   */
+  private class CallbackTask implements Runnable {
+
+    /** The callback */
+    private final CallbackMetadata callback;
+
+    /** The entity, or list of entities */
+    private final Object entity;
+
+    /**
+     * Creates a new instance of <code>CallbackTask</code>.
+     *
+     * @param callback the callback
+     * @param entity the entity or list of entities
+     */
+    CallbackTask(CallbackMetadata callback, Object entity) {
+      this.callback = callback;
+      this.entity = entity;
+    }
+
+    @Override
+    public void run() {
+      try {
+        callback.invoke(entity);
+      } catch (EntityManagerException exp) {
+        if (errorHandler == null) {
+          Thread thread = Thread.currentThread();
+          thread.getUncaughtExceptionHandler().uncaughtException(thread, exp);
+        } else {
+          errorHandler.handleError(entity, exp);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates daemon threads for executing callbacks, so an executor that was never shut down does
+   * not prevent the JVM from exiting.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class CallbackThreadFactory implements ThreadFactory {
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread =
+          new Thread(runnable, "catatumbo-async-callback-" + THREAD_SEQUENCE.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  /**
+   * Blocks the submitting thread until there is room in the queue of the lane. The queue is polled
+   * with a timed offer, so that a submitter waiting for room notices when the lane is shut down,
+   * rather than waiting forever or leaving behind a callback that is never executed.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class BlockingPolicy implements RejectedExecutionHandler {
+
+    /** How long to wait for room in the queue before checking whether the lane was shut down */
+    private static final long OFFER_TIMEOUT_MILLIS = 100L;
+
+    @Override
+    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+      BlockingQueue<Runnable> queue = executor.getQueue();
+      try {
+        while (!executor.isShutdown()) {
+          if (queue.offer(runnable, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            // If the lane was shut down meanwhile, its thread may have already exited. Take the
+            // callback back unless the thread already picked it up.
+            if (executor.isShutdown() && queue.remove(runnable)) {
+              break;
+            }
+            return;
+          }
+        }
+      } catch (InterruptedException exp) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException(
+            "Interrupted while waiting for room in the queue", exp);
+      }
+      throw new RejectedExecutionException("Executor was shut down");
+    }
+  }
+}
@@ -0,0 +1,594 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.BaseEntity;
+import com.google.cloud.datastore.Batch;
+import com.google.cloud.datastore.BlobValue;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityValue;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyValue;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.PathElement;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.Value;
+import com.jmethods.catatumbo.BatchOptions;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityManagerException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Batch} that sends the mutations added to it in sub-batches, as configured by {@link
+ * BatchOptions}. The number of mutations and the estimated size of the data in the current
+ * sub-batch are tracked as mutations are added. When the next mutation would exceed either limit,
+ * the current sub-batch is sent, and a new one is started. Repeated writes to the same key within
+ * a sub-batch are collapsed by the native batch, and count only once. A single mutation that
+ * exceeds the size limit on its own is rejected.
+ *
+ * <p>Sub-batches are sent in the order they were filled. When they are sent in parallel, a
+ * sub-batch that touches a key of a sub-batch still in flight waits for it, so the writes to a key
+ * are applied in the order they were added. The keys generated for deferred ID allocation are
+ * reported in the same order, across all sub-batches.
+ *
+ * @author Sai Pullabhotla
+ */
+class AutoFlushingBatch implements Batch {
+
+  /** Estimated overhead of a property, in addition to its name and value, in bytes */
+  private static final int PROPERTY_OVERHEAD = 8;
+
+  /** Estimated size of values of fixed length types, in bytes */
+  private static final int FIXED_VALUE_SIZE = 16;
+
+  /** The entity manager, which provides the write rate governor and allocates IDs */
+  private final DefaultEntityManager entityManager;
+
+  /** The Datastore client */
+  private final Datastore datastore;
+
+  /** Maximum number of mutations in a sub-batch */
+  private final int maxMutations;
+
+  /** Maximum estimated size of a sub-batch */
+  private final long maxBytes;
+
+  /** Number of sub-batches sent in parallel */
+  private final int parallelism;
+
+  /** The sub-batch being filled */
+  private SubBatch current;
+
+  /** Sub-batches in flight, in the order they were sent */
+  private final List<SubBatch> inFlight = new ArrayList<>();
+
+  /** Keys generated by the sub-batches that completed, in order */
+  private final List<Key> generatedKeys = new ArrayList<>();
+
+  /** Executor for sending sub-batches in parallel, created when first needed */
+  private ExecutorService executor;
+
+  /** Whether or not this batch is active. Cleared by a failed sub-batch, too. */
+  private volatile boolean active = true;
+
+  /** Failure of the sub-batch that deactivated this batch, if any */
+  private volatile RuntimeException failure;
+
+  /**
+   * Creates a new instance of <code>AutoFlushingBatch</code>.
+   *
+   * @param entityManager the entity manager
+   * @param datastore the Datastore client
+   * @param options the batch options
+   */
+  AutoFlushingBatch(DefaultEntityManager entityManager, Datastore datastore, BatchOptions options) {
+    this.entityManager = entityManager;
+    this.datastore = datastore;
+    this.maxMutations = options.getMaxMutations();
+    this.maxBytes = options.getMaxBytes();
+    this.parallelism = options.getParallelism();
+    this.current = new SubBatch(datastore.newBatch());
+  }
+
+  @Override
+  public Entity add(FullEntity<?> entity) {
+    validateActive();
+    int size = estimateSize(entity);
+    reserve(entity.getKey(), size);
+    Entity addedEntity = current.nativeBatch.add(entity);
+    current.record(addedEntity.getKey(), size);
+    return addedEntity;
+  }
+
+  @Override
+  public List<Entity> add(FullEntity<?>... entities) {
+    validateActive();
+    List<Entity> addedEntities = new ArrayList<>(entities.length);
+    for (FullEntity<?> entity : allocateIds(entities)) {
+      addedEntities.add(add(entity));
+    }
+    return addedEntities;
+  }
+
+  @Override
+  public void addWithDeferredIdAllocation(FullEntity<?>... entities) {
+    validateActive();
+    for (FullEntity<?> entity : entities) {
+      int size = estimateSize(entity);
+      reserve(entity.getKey(), size);
+      current.nativeBatch.addWithDeferredIdAllocation(entity);
+      current.record(entity.getKey(), size);
+    }
+  }
+
+  @Override
+  public void update(Entity... entities) {
+    validateActive();
+    for (Entity entity : entities) {
+      int size = estimateSize(entity);
+      reserve(entity.getKey(), size);
+      current.nativeBatch.update(entity);
+      current.record(entity.getKey(), size);
+    }
+  }
+
+  @Override
+  public Entity put(FullEntity<?> entity) {
+    validateActive();
+    int size = estimateSize(entity);
+    reserve(entity.getKey(), size);
+    Entity putEntity = current.nativeBatch.put(entity);
+    current.record(putEntity.getKey(), size);
+    return putEntity;
+  }
+
+  @Override
+  public List<Entity> put(FullEntity<?>... entities) {
+    validateActive();
+    List<Entity> putEntities = new ArrayList<>(entities.length);
+    for (FullEntity<?> entity : allocateIds(entities)) {
+      putEntities.add(put(entity));
+    }
+    return putEntities;
+  }
+
+  @Override
+  public void putWithDeferredIdAllocation(FullEntity<?>... entities) {
+    validateActive();
+    for (FullEntity<?> entity : entities) {
+      int size = estimateSize(entity);
+      reserve(entity.getKey(), size);
+      current.nativeBatch.putWithDeferredIdAllocation(entity);
+      current.record(entity.getKey(), size);
+    }
+  }
+
+  @Override
+  public void delete(Key... keys) {
+    validateActive();
+    for (Key key : keys) {
+      int size = estimateSize(key);
+      reserve(key, size);
+      current.nativeBatch.delete(key);
+      current.record(key, size);
+    }
+  }
+
+  @Override
+  public boolean isActive() {
+    return active;
+  }
+
+  @Override
+  public Response submit() {
+    validateActive();
+    active = false;
+    try {
+      if (current.getMutationCount() > 0) {
+        send(current);
+      }
+      while (!inFlight.isEmpty()) {
+        awaitOldest();
+      }
+      return new AggregatedResponse(new ArrayList<>(generatedKeys));
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  @Override
+  public Datastore getDatastore() {
+    return datastore;
+  }
+
+  /**
+   * Makes room for a mutation of the given key and size in the current sub-batch, sending the
+   * current sub-batch and starting a new one, if the mutation would exceed the limits.
+   *
+   * @param key the key of the mutation
+   * @param size the estimated size of the mutation
+   * @throws IllegalArgumentException if the mutation alone exceeds the maximum size of a sub-batch.
+   */
+  private void reserve(IncompleteKey key, int size) {
+    if (size > maxBytes) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Estimated size of the mutation of %s, %d bytes, exceeds the maximum of %d bytes",
+              key, size, maxBytes));
+    }
+    int count = current.getMutationCount();
+    if (count == 0) {
+      return;
+    }
+    Integer previousSize = key instanceof Key ? current.sizes.get(key) : null;
+    int newCount = previousSize == null ? count + 1 : count;
+    long newBytes = current.bytes + size - (previousSize == null ? 0 : previousSize);
+    if (newCount > maxMutations || newBytes > maxBytes) {
+      SubBatch full = current;
+      current = new SubBatch(datastore.newBatch());
+      send(full);
+    }
+  }
+
+  /**
+   * Sends the given sub-batch. With a parallelism of 1, the sub-batch is committed in the calling
+   * thread. Otherwise, it is committed by the executor, after waiting for enough sub-batches in
+   * flight to complete.
+   *
+   * @param subBatch the sub-batch to send
+   */
+  private void send(SubBatch subBatch) {
+    if (parallelism <= 1) {
+      generatedKeys.addAll(subBatch.commit());
+      return;
+    }
+    awaitConflicts(subBatch);
+    while (inFlight.size() >= parallelism) {
+      awaitOldest();
+    }
+    if (executor == null) {
+      executor =
+          Executors.newFixedThreadPool(
+              parallelism, new ConcurrencyUtils.DaemonThreadFactory("catatumbo-batch-flush-"));
+    }
+    subBatch.future = executor.submit(OperationDeadline.current().wrap(subBatch));
+    inFlight.add(subBatch);
+  }
+
+  /**
+   * Waits for the sub-batches in flight that touch any key of the given sub-batch, and for the
+   * ones sent before them.
+   *
+   * @param subBatch the sub-batch about to be sent
+   */
+  private void awaitConflicts(SubBatch subBatch) {
+    int last = -1;
+    for (int i = 0; i < inFlight.size(); i++) {
+      if (!Collections.disjoint(inFlight.get(i).sizes.keySet(), subBatch.sizes.keySet())) {
+        last = i;
+      }
+    }
+    for (int i = 0; i <= last; i++) {
+      awaitOldest();
+    }
+  }
+
+  /** Waits for the oldest sub-batch in flight to complete. */
+  private void awaitOldest() {
+    SubBatch subBatch = inFlight.remove(0);
+    try {
+      OperationDeadline deadline = OperationDeadline.current();
+      if (deadline.isBounded()) {
+        generatedKeys.addAll(
+            subBatch.future.get(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS));
+      } else {
+        generatedKeys.addAll(subBatch.future.get());
+      }
+    } catch (TimeoutException exp) {
+      abort();
+      throw new DeadlineExceededException(OperationDeadline.EXCEEDED_MESSAGE, exp);
+    } catch (ExecutionException exp) {
+      abort();
+      if (exp.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) exp.getCause();
+      }
+      throw new EntityManagerException(exp.getCause());
+    } catch (InterruptedException exp) {
+      abort();
+      Thread.currentThread().interrupt();
+      throw new EntityManagerException(exp);
+    }
+  }
+
+  /**
+   * Deactivates this batch and cancels the sub-batches in flight, after a sub-batch fails. Commits
+   * that already reached the Datastore cannot be undone.
+   */
+  private void abort() {
+    active = false;
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Throws an exception if this batch is no longer active.
+   *
+   * @throws EntityManagerException if this batch was submitted, or a sub-batch failed, in which
+   *     case the failure of the sub-batch is the cause.
+   */
+  private void validateActive() {
+    if (active) {
+      return;
+    }
+    if (failure != null) {
+      abort();
+      throw new EntityManagerException("Batch is no longer active, a sub-batch failed", failure);
+    }
+    throw new EntityManagerException("Batch is no longer active");
+  }
+
+  /**
+   * Allocates IDs for the given entities that have incomplete keys, in the same way as the entity
+   * manager does, that is, from the pre-allocated IDs, if IDs are pre-allocated, or in one request.
+   *
+   * @param entities the entities
+   * @return the entities, with complete keys.
+   */
+  private FullEntity<?>[] allocateIds(FullEntity<?>[] entities) {
+    List<Integer> incomplete = new ArrayList<>();
+    for (int i = 0; i < entities.length; i++) {
+      if (!(entities[i].getKey() instanceof Key)) {
+        incomplete.add(i);
+      }
+    }
+    if (incomplete.isEmpty()) {
+      return entities;
+    }
+    IncompleteKey[] incompleteKeys = new IncompleteKey[incomplete.size()];
+    for (int i = 0; i < incompleteKeys.length; i++) {
+      incompleteKeys[i] = entities[incomplete.get(i)].getKey();
+    }
+    List<Key> keys = entityManager.allocateNativeIds(incompleteKeys);
+    FullEntity<?>[] completeEntities = entities.clone();
+    for (int i = 0; i < keys.size(); i++) {
+      int index = incomplete.get(i);
+      completeEntities[index] = Entity.newBuilder(keys.get(i), entities[index]).build();
+    }
+    return completeEntities;
+  }
+
+  /**
+   * Estimates the size of the given entity, as sent to the Datastore.
+   *
+   * @param entity the entity
+   * @return the estimated size, in bytes.
+   */
+  static int estimateSize(BaseEntity<?> entity) {
+    int size = entity.getKey() == null ? 0 : estimateSize(entity.getKey());
+    for (String name : entity.getNames()) {
+      size += PROPERTY_OVERHEAD + utf8Length(name) + estimateSize(entity.getValue(name));
+    }
+    return size;
+  }
+
+  /**
+   * Estimates the size of the given key.
+   *
+   * @param key the key
+   * @return the estimated size, in bytes.
+   */
+  static int estimateSize(IncompleteKey key) {
+    int size = utf8Length(key.getProjectId()) + utf8Length(key.getNamespace());
+    for (PathElement element : key.getAncestors()) {
+      size += utf8Length(element.getKind());
+      size += element.hasName() ? utf8Length(element.getName()) : FIXED_VALUE_SIZE;
+    }
+    size += utf8Length(key.getKind());
+    if (key instanceof Key) {
+      Key completeKey = (Key) key;
+      size += completeKey.hasName() ? utf8Length(completeKey.getName()) : FIXED_VALUE_SIZE;
+    }
+    return size;
+  }
+
+  /**
+   * Estimates the size of the given value.
+   *
+   * @param value the value
+   * @return the estimated size, in bytes.
+   */
+  private static int estimateSize(Value<?> value) {
+    switch (value.getType()) {
+      case STRING:
+        return utf8Length(((StringValue) value).get());
+      case BLOB:
+        return ((BlobValue) value).get().getLength();
+      case KEY:
+        return estimateSize(((KeyValue) value).get());
+      case ENTITY:
+        return estimateSize(((EntityValue) value).get());
+      case LIST:
+        int size = 0;
+        for (Value<?> item : ((ListValue) value).get()) {
+          size += PROPERTY_OVERHEAD + estimateSize(item);
+        }
+        return size;
+      default:
+        return FIXED_VALUE_SIZE;
+    }
+  }
+
+  /**
+   * Returns the length of the given string in UTF-8.
+   *
+   * @param str the string, may be <code>null</code>.
+   * @return the length of the given string in UTF-8.
+   */
+  private static int utf8Length(String str) {
+    if (str == null) {
+      return 0;
+    }
+    int length = 0;
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Mutations that are committed together.
+   *
+   * @author Sai Pullabhotla
+   */
+  private class SubBatch implements Callable<List<Key>> {
+
+    /** The native batch */
+    private final Batch nativeBatch;
+
+    /** Estimated sizes of the mutations of complete keys, keyed by key */
+    private final Map<Key, Integer> sizes = new HashMap<>();
+
+    /** Number of mutations whose keys are allocated by the commit */
+    private int deferredCount;
+
+    /** Estimated size of all mutations */
+    private long bytes;
+
+    /** Number of mutations, keyed by Kind, for governing the rate of writes */
+    private final Map<String, Integer> kinds = new HashMap<>();
+
+    /** Result of the commit, when sent in parallel */
+    private Future<List<Key>> future;
+
+    /**
+     * Creates a new instance of <code>SubBatch</code>.
+     *
+     * @param nativeBatch the native batch
+     */
+    SubBatch(Batch nativeBatch) {
+      this.nativeBatch = nativeBatch;
+    }
+
+    /**
+     * Returns the number of distinct mutations in this sub-batch.
+     *
+     * @return the number of distinct mutations in this sub-batch.
+     */
+    int getMutationCount() {
+      return sizes.size() + deferredCount;
+    }
+
+    /**
+     * Records a mutation that was added to the native batch.
+     *
+     * @param key the key of the mutation
+     * @param size the estimated size of the mutation
+     */
+    void record(IncompleteKey key, int size) {
+      if (key instanceof Key) {
+        Integer previousSize = sizes.put((Key) key, size);
+        bytes += size - (previousSize == null ? 0 : previousSize);
+      } else {
+        deferredCount++;
+        bytes += size;
+      }
+      GovernedDatastoreWriter.countKind(kinds, key);
+    }
+
+    /**
+     * Commits this sub-batch, after admitting its writes through the write rate governor.
+     *
+     * @return the keys generated by the commit.
+     */
+    List<Key> commit() {
+      WriteRateGovernor governor = entityManager.getWriteRateGovernor();
+      if (governor != null) {
+        governor.acquire(kinds);
+      }
+      try {
+        return nativeBatch.submit().getGeneratedKeys();
+      } catch (DatastoreException exp) {
+        if (failure == null) {
+          failure = exp;
+        }
+        active = false;
+        if (governor != null) {
+          governor.onFailure(exp, kinds.keySet());
+        }
+        throw exp;
+      }
+    }
+
+    @Override
+    public List<Key> call() {
+      return commit();
+    }
+  }
+
+  /**
+   * Response of an auto-flushing batch, with the keys generated by all sub-batches.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class AggregatedResponse implements Response {
+
+    /** The generated keys */
+    private final List<Key> generatedKeys;
+
+    /**
+     * Creates a new instance of <code>AggregatedResponse</code>.
+     *
+     * @param generatedKeys the generated keys
+     */
+    AggregatedResponse(List<Key> generatedKeys) {
+      this.generatedKeys = generatedKeys;
+    }
+
+    @Override
+    public List<Key> getGeneratedKeys() {
+      return generatedKeys;
+    }
+  }
+}
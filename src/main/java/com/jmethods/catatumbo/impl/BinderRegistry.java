@@ -0,0 +1,471 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.GqlQuery;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.Value;
+import com.google.cloud.datastore.ValueType;
+import com.jmethods.catatumbo.DatastoreCursor;
+import com.jmethods.catatumbo.Mapper;
+import com.jmethods.catatumbo.MapperFactory;
+import com.jmethods.catatumbo.NoSuitableMapperException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of {@link Binder}s, which convert the values of query bindings to their native
+ * equivalents. Binders are keyed by the class of the binding value, so finding the binder for a
+ * value is a single hash lookup. Binders for types that can be persisted are created from the
+ * {@link Mapper} that {@link MapperFactory} returns for the type, so any type that can be stored
+ * can also be used as a binding. Binders are resolved on first use and cached thereafter. The cache
+ * is cleared when a default mapper is registered with {@link MapperFactory#setDefaultMapper}, so
+ * that bindings use the new mapper.
+ *
+ * <p>A {@link Collection} binding is expanded to an array binding of its elements, which must all
+ * map to the same native type. This allows a single binding to supply all values of an
+ * <code>IN</code> condition.
+ *
+ * @author Sai Pullabhotla
+ */
+public class BinderRegistry {
+
+  /** Binders, by the class of the binding value */
+  private static final Map<Class<?>, Binder> BINDERS = new ConcurrentHashMap<>();
+
+  /** Binder for collections */
+  private static final Binder COLLECTION_BINDER = new CollectionBinder();
+
+  static {
+    BINDERS.put(DatastoreCursor.class, new CursorBinder());
+  }
+
+  /** Hide the default constructor. */
+  private BinderRegistry() {
+    // Do nothing
+  }
+
+  /**
+   * Returns the binder for the given class.
+   *
+   * @param type the class of the binding value
+   * @return the binder for the given class.
+   * @throws IllegalArgumentException if values of the given class cannot be used as bindings.
+   */
+  static Binder getBinder(Class<?> type) {
+    Binder binder = BINDERS.get(type);
+    if (binder == null) {
+      binder = resolveBinder(type);
+      Binder existing = BINDERS.putIfAbsent(type, binder);
+      if (existing != null) {
+        binder = existing;
+      }
+    }
+    return binder;
+  }
+
+  /**
+   * Removes the binders that were created from mappers, so that they are resolved again with the
+   * mappers that {@link MapperFactory} currently returns.
+   */
+  public static void clearMapperBinders() {
+    Iterator<Binder> iterator = BINDERS.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next() instanceof MapperBinder) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Binds the given value to the given query builder.
+   *
+   * @param queryBuilder the query builder
+   * @param name the name of the binding, or <code>null</code> for a positional binding.
+   * @param value the value of the binding
+   * @throws IllegalArgumentException if the value is <code>null</code>, or if its type cannot be
+   *     used as a binding.
+   */
+  static void bind(GqlQuery.Builder<?> queryBuilder, String name, Object value) {
+    if (value == null) {
+      throw new IllegalArgumentException("binding cannot be null. Use IS NULL in your query");
+    }
+    getBinder(value.getClass()).bind(queryBuilder, name, value);
+  }
+
+  /**
+   * Creates the binder for the given class. The binder is created from the mapper of the class, if
+   * one exists. Otherwise, the binder of the nearest super class or interface is used, so that, for
+   * example, implementations of <code>DatastoreKey</code> or subclasses of <code>Calendar</code>
+   * are bound the same way as the declared type.
+   *
+   * @param type the class of the binding value
+   * @return the binder for the given class.
+   * @throws IllegalArgumentException if values of the given class cannot be used as bindings.
+   */
+  private static Binder resolveBinder(Class<?> type) {
+    if (Collection.class.isAssignableFrom(type)) {
+      return COLLECTION_BINDER;
+    }
+    Class<?> mappedType = type;
+    if (!type.isEnum() && type.getSuperclass() != null && type.getSuperclass().isEnum()) {
+      // Constants with a body are instances of an anonymous subclass of the enum
+      mappedType = type.getSuperclass();
+    }
+    try {
+      return new MapperBinder(MapperFactory.getInstance().getMapper(mappedType));
+    } catch (NoSuitableMapperException exp) {
+      Binder binder = findSuperTypeBinder(type);
+      if (binder == null) {
+        throw new IllegalArgumentException(
+            String.format("Values of type %s cannot be used as query bindings", type.getName()),
+            exp);
+      }
+      return binder;
+    }
+  }
+
+  /**
+   * Returns the binder of the nearest super class or interface of the given class, if any.
+   *
+   * @param type the class of the binding value
+   * @return the binder of the nearest super type, or <code>null</code>, if there is none.
+   */
+  private static Binder findSuperTypeBinder(Class<?> type) {
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      if (current != type && current != Object.class) {
+        Binder binder = findBinder(current);
+        if (binder != null) {
+          return binder;
+        }
+      }
+      for (Class<?> superInterface : current.getInterfaces()) {
+        Binder binder = findBinder(superInterface);
+        if (binder != null) {
+          return binder;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the binder for the given super type, if values of the super type can be used as
+   * bindings.
+   *
+   * @param superType the super type
+   * @return the binder for the given super type, or <code>null</code>.
+   */
+  private static Binder findBinder(Class<?> superType) {
+    try {
+      return getBinder(superType);
+    } catch (IllegalArgumentException exp) {
+      return null;
+    }
+  }
+
+  /**
+   * Binds the given native value to the given query builder as a scalar binding.
+   *
+   * @param queryBuilder the query builder
+   * @param name the name of the binding, or <code>null</code> for a positional binding.
+   * @param value the native value
+   * @throws IllegalArgumentException if the value is of a type that cannot be used as a query
+   *     binding, such as embedded entities.
+   */
+  private static void bindValue(GqlQuery.Builder<?> queryBuilder, String name, Value<?> value) {
+    switch (value.getType()) {
+      case LONG:
+        long longValue = (Long) value.get();
+        if (name == null) {
+          queryBuilder.addBinding(longValue);
+        } else {
+          queryBuilder.setBinding(name, longValue);
+        }
+        break;
+      case DOUBLE:
+        double doubleValue = (Double) value.get();
+        if (name == null) {
+          queryBuilder.addBinding(doubleValue);
+        } else {
+          queryBuilder.setBinding(name, doubleValue);
+        }
+        break;
+      case BOOLEAN:
+        boolean booleanValue = (Boolean) value.get();
+        if (name == null) {
+          queryBuilder.addBinding(booleanValue);
+        } else {
+          queryBuilder.setBinding(name, booleanValue);
+        }
+        break;
+      case STRING:
+        String stringValue = (String) value.get();
+        if (name == null) {
+          queryBuilder.addBinding(stringValue);
+        } else {
+          queryBuilder.setBinding(name, stringValue);
+        }
+        break;
+      case TIMESTAMP:
+        Timestamp timestampValue = (Timestamp) value.get();
+        if (name == null) {
+          queryBuilder.addBinding(timestampValue);
+        } else {
+          queryBuilder.setBinding(name, timestampValue);
+        }
+        break;
+      case KEY:
+        Key keyValue = (Key) value.get();
+        if (name == null) {
+          queryBuilder.addBinding(keyValue);
+        } else {
+          queryBuilder.setBinding(name, keyValue);
+        }
+        break;
+      case BLOB:
+        Blob blobValue = (Blob) value.get();
+        if (name == null) {
+          queryBuilder.addBinding(blobValue);
+        } else {
+          queryBuilder.setBinding(name, blobValue);
+        }
+        break;
+      case NULL:
+        throw new IllegalArgumentException("binding cannot be null. Use IS NULL in your query");
+      default:
+        throw new IllegalArgumentException(
+            String.format("Values of type %s cannot be used as query bindings", value.getType()));
+    }
+  }
+
+  /**
+   * Binds the given native values to the given query builder as an array binding.
+   *
+   * @param queryBuilder the query builder
+   * @param name the name of the binding, or <code>null</code> for a positional binding.
+   * @param values the native values, all of which must be of the same type.
+   * @throws IllegalArgumentException if the values are not all of the same type, or if they are of
+   *     a type that cannot be used as a query binding, such as embedded entities.
+   */
+  private static void bindValues(
+      GqlQuery.Builder<?> queryBuilder, String name, List<Value<?>> values) {
+    ValueType type = values.get(0).getType();
+    for (Value<?> value : values) {
+      if (value.getType() != type) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Elements of a collection binding must be of the same type; found %s and %s",
+                type, value.getType()));
+      }
+    }
+    int size = values.size();
+    switch (type) {
+      case LONG:
+        long[] longs = new long[size];
+        for (int i = 0; i < size; i++) {
+          longs[i] = (Long) values.get(i).get();
+        }
+        if (name == null) {
+          queryBuilder.addBinding(longs);
+        } else {
+          queryBuilder.setBinding(name, longs);
+        }
+        break;
+      case DOUBLE:
+        double[] doubles = new double[size];
+        for (int i = 0; i < size; i++) {
+          doubles[i] = (Double) values.get(i).get();
+        }
+        if (name == null) {
+          queryBuilder.addBinding(doubles);
+        } else {
+          queryBuilder.setBinding(name, doubles);
+        }
+        break;
+      case BOOLEAN:
+        boolean[] booleans = new boolean[size];
+        for (int i = 0; i < size; i++) {
+          booleans[i] = (Boolean) values.get(i).get();
+        }
+        if (name == null) {
+          queryBuilder.addBinding(booleans);
+        } else {
+          queryBuilder.setBinding(name, booleans);
+        }
+        break;
+      case STRING:
+        String[] strings = new String[size];
+        for (int i = 0; i < size; i++) {
+          strings[i] = (String) values.get(i).get();
+        }
+        if (name == null) {
+          queryBuilder.addBinding(strings);
+        } else {
+          queryBuilder.setBinding(name, strings);
+        }
+        break;
+      case TIMESTAMP:
+        Timestamp[] timestamps = new Timestamp[size];
+        for (int i = 0; i < size; i++) {
+          timestamps[i] = (Timestamp) values.get(i).get();
+        }
+        if (name == null) {
+          queryBuilder.addBinding(timestamps);
+        } else {
+          queryBuilder.setBinding(name, timestamps);
+        }
+        break;
+      case KEY:
+        Key[] keys = new Key[size];
+        for (int i = 0; i < size; i++) {
+          keys[i] = (Key) values.get(i).get();
+        }
+        if (name == null) {
+          queryBuilder.addBinding(keys);
+        } else {
+          queryBuilder.setBinding(name, keys);
+        }
+        break;
+      case BLOB:
+        Blob[] blobs = new Blob[size];
+        for (int i = 0; i < size; i++) {
+          blobs[i] = (Blob) values.get(i).get();
+        }
+        if (name == null) {
+          queryBuilder.addBinding(blobs);
+        } else {
+          queryBuilder.setBinding(name, blobs);
+        }
+        break;
+      case NULL:
+        throw new IllegalArgumentException("binding cannot be null. Use IS NULL in your query");
+      default:
+        throw new IllegalArgumentException(
+            String.format("Values of type %s cannot be used as query bindings", type));
+    }
+  }
+
+  /**
+   * Interface for converting the value of a query binding to its native equivalent and applying it
+   * to a query builder.
+   *
+   * @author Sai Pullabhotla
+   */
+  interface Binder {
+
+    /**
+     * Binds the given value to the given query builder.
+     *
+     * @param queryBuilder the query builder
+     * @param name the name of the binding, or <code>null</code> for a positional binding.
+     * @param value the value of the binding, never <code>null</code>.
+     */
+    void bind(GqlQuery.Builder<?> queryBuilder, String name, Object value);
+  }
+
+  /**
+   * Binder for types that have a {@link Mapper}.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class MapperBinder implements Binder {
+
+    /** The mapper */
+    private final Mapper mapper;
+
+    /**
+     * Creates a new instance of <code>MapperBinder</code>.
+     *
+     * @param mapper the mapper
+     */
+    private MapperBinder(Mapper mapper) {
+      this.mapper = mapper;
+    }
+
+    /**
+     * Converts the given value to a native value.
+     *
+     * @param value the value
+     * @return the native value
+     */
+    private Value<?> toValue(Object value) {
+      return mapper.toDatastore(value).build();
+    }
+
+    @Override
+    public void bind(GqlQuery.Builder<?> queryBuilder, String name, Object value) {
+      bindValue(queryBuilder, name, toValue(value));
+    }
+  }
+
+  /**
+   * Binder for {@link DatastoreCursor}s, which are used as the value of <code>OFFSET</code>.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class CursorBinder implements Binder {
+
+    @Override
+    public void bind(GqlQuery.Builder<?> queryBuilder, String name, Object value) {
+      Cursor cursor = Cursor.fromUrlSafe(((DatastoreCursor) value).getEncoded());
+      if (name == null) {
+        queryBuilder.addBinding(cursor);
+      } else {
+        queryBuilder.setBinding(name, cursor);
+      }
+    }
+  }
+
+  /**
+   * Binder for {@link Collection}s, which are expanded to an array binding of their elements.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class CollectionBinder implements Binder {
+
+    @Override
+    public void bind(GqlQuery.Builder<?> queryBuilder, String name, Object value) {
+      Collection<?> collection = (Collection<?>) value;
+      if (collection.isEmpty()) {
+        throw new IllegalArgumentException("Collection bindings cannot be empty");
+      }
+      List<Value<?>> values = new ArrayList<>(collection.size());
+      for (Object element : collection) {
+        if (element == null) {
+          throw new IllegalArgumentException("Collection bindings cannot contain nulls");
+        }
+        Binder binder = getBinder(element.getClass());
+        if (!(binder instanceof MapperBinder)) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Values of type %s cannot be used in collection bindings",
+                  element.getClass().getName()));
+        }
+        values.add(((MapperBinder) binder).toValue(element));
+      }
+      bindValues(queryBuilder, name, values);
+    }
+  }
+}
@@ -16,7 +16,18 @@
 
 package com.jmethods.catatumbo.impl;
 
+import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.PostDelete;
+import com.jmethods.catatumbo.PostInsert;
+import com.jmethods.catatumbo.PostLoad;
+import com.jmethods.catatumbo.PostUpdate;
+import com.jmethods.catatumbo.PostUpsert;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -38,6 +49,26 @@ public class CallbackMetadata {
   /** Listener class */
   private final Class<?> listenerClass;
 
+  /** Whether or not the callback method receives a list of entities */
+  private final boolean batch;
+
+  /** Whether or not the callback should be executed asynchronously */
+  private final boolean async;
+
+  /**
+   * Method handle for the callback method, adapted to <code>(Object, Object)void</code> for
+   * external/default listeners and <code>(Object)void</code> for internal listeners. Internal batch
+   * callbacks are static, so the single argument is the list of entities rather than the target.
+   */
+  private final MethodHandle callbackHandle;
+
+  /**
+   * Invoker with the signature <code>(Object)void</code> that takes the entity. For external and
+   * default listeners, the listener instance is bound to the handle the first time the callback is
+   * invoked. Lazily initialized.
+   */
+  private volatile MethodHandle invoker;
+
   /**
    * Creates a new instance of <code>CallbackMetadata</code>.
    *
@@ -51,6 +82,74 @@ public class CallbackMetadata {
     this.callbackType = callbackType;
     this.callbackMethod = callbackMethod;
     this.listenerClass = callbackMethod.getDeclaringClass();
+    this.batch = isBatchCallback(callbackMethod);
+    this.async = isAsyncCallback(callbackMethod, callbackType);
+    this.callbackHandle = createCallbackHandle();
+  }
+
+  /**
+   * Tells whether or not the given method is a batch callback method. A batch callback method has
+   * exactly one parameter of type {@link List}, and receives all entities of a list operation (or
+   * all entities in a page of query results) in a single invocation.
+   *
+   * @param method the method
+   * @return <code>true</code>, if the given method is a batch callback method; <code>false</code>,
+   *     otherwise.
+   */
+  static boolean isBatchCallback(Method method) {
+    Class<?>[] parameters = method.getParameterTypes();
+    return parameters.length == 1 && parameters[0] == List.class;
+  }
+
+  /**
+   * Tells whether or not the given method is marked as an asynchronous callback for the given
+   * callback type. Only post callbacks can be asynchronous.
+   *
+   * @param method the method
+   * @param callbackType the callback type
+   * @return <code>true</code>, if the method should be executed asynchronously for the given
+   *     callback type; <code>false</code>, otherwise.
+   */
+  private static boolean isAsyncCallback(Method method, CallbackType callbackType) {
+    Annotation annotation = method.getAnnotation(callbackType.getAnnotationClass());
+    if (annotation instanceof PostInsert) {
+      return ((PostInsert) annotation).async();
+    }
+    if (annotation instanceof PostUpdate) {
+      return ((PostUpdate) annotation).async();
+    }
+    if (annotation instanceof PostUpsert) {
+      return ((PostUpsert) annotation).async();
+    }
+    if (annotation instanceof PostDelete) {
+      return ((PostDelete) annotation).async();
+    }
+    if (annotation instanceof PostLoad) {
+      return ((PostLoad) annotation).async();
+    }
+    return false;
+  }
+
+  /**
+   * Creates the method handle for the callback method.
+   *
+   * @return the method handle for the callback method.
+   */
+  private MethodHandle createCallbackHandle() {
+    try {
+      callbackMethod.setAccessible(true);
+      MethodHandle mh = MethodHandles.lookup().unreflect(callbackMethod);
+      if (listenerType == EntityListenerType.INTERNAL) {
+        return mh.asType(MethodType.methodType(void.class, Object.class));
+      }
+      return mh.asType(MethodType.methodType(void.class, Object.class, Object.class));
+    } catch (Exception exp) {
+      String message =
+          String.format(
+              "Failed to create method handle for callback method %s of class %s",
+              callbackMethod.getName(), listenerClass.getName());
+      throw new EntityManagerException(message, exp);
+    }
   }
 
   /**
@@ -89,6 +188,65 @@ public class CallbackMetadata {
     return listenerClass;
   }
 
+  /**
+   * Tells whether or not this callback receives a list of entities rather than a single entity.
+   *
+   * @return <code>true</code>, if this is a batch callback; <code>false</code>, otherwise.
+   */
+  public boolean isBatch() {
+    return batch;
+  }
+
+  /**
+   * Tells whether or not this callback should be executed asynchronously.
+   *
+   * @return <code>true</code>, if this callback should be executed asynchronously;
+   *     <code>false</code>, otherwise.
+   */
+  public boolean isAsync() {
+    return async;
+  }
+
+  /**
+   * Invokes this callback for the given entity. For batch callbacks, the argument is the list of
+   * entities.
+   *
+   * @param entity the entity (or list of entities) for which the callback is being invoked
+   * @throws EntityManagerException if the callback method throws an exception
+   */
+  public void invoke(Object entity) {
+    MethodHandle mh = invoker;
+    if (mh == null) {
+      mh = createInvoker();
+    }
+    try {
+      mh.invokeExact(entity);
+    } catch (Throwable t) {
+      String message =
+          String.format(
+              "Failed to execute callback method %s of class %s",
+              callbackMethod.getName(), listenerClass.getName());
+      throw new EntityManagerException(message, t);
+    }
+  }
+
+  /**
+   * Creates the invoker for this callback, binding the listener instance if the callback belongs
+   * to an external or default listener.
+   *
+   * @return the invoker
+   */
+  private MethodHandle createInvoker() {
+    MethodHandle mh;
+    if (listenerType == EntityListenerType.INTERNAL) {
+      mh = callbackHandle;
+    } else {
+      mh = callbackHandle.bindTo(ListenerFactory.getInstance().getListener(listenerClass));
+    }
+    invoker = mh;
+    return mh;
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (this == obj) {
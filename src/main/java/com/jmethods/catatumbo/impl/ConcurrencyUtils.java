@@ -0,0 +1,325 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityManagerException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Utility methods for running independent Datastore operations concurrently.
+ *
+ * @author Sai Pullabhotla
+ */
+class ConcurrencyUtils {
+
+  /** Number of seconds after which idle threads of a shared executor are discarded */
+  private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60L;
+
+  /** Hide the implicit constructor */
+  private ConcurrencyUtils() {
+    // Do nothing.
+  }
+
+  /**
+   * Executes the given tasks using up to <code>parallelism</code> threads and returns their
+   * results, in the same order as the tasks. The threads are created for this invocation and are
+   * discarded when it returns. If there is only one task, or if the parallelism is one or less, the
+   * tasks are executed in the calling thread.
+   *
+   * @param <T> the type of results
+   * @param tasks the tasks to execute
+   * @param parallelism the maximum number of tasks to execute concurrently
+   * @param threadNamePrefix the prefix for the names of the threads
+   * @return the results of the tasks
+   * @throws EntityManagerException if any of the tasks fails. If the task failed with an
+   *     EntityManagerException, it is rethrown as is. Remaining tasks are cancelled.
+   * @throws DeadlineExceededException if the deadline of the calling thread passes before all tasks
+   *     complete. The deadline is also bound to the threads executing the tasks. Remaining tasks
+   *     are cancelled.
+   */
+  static <T> List<T> invokeAll(
+      List<? extends Callable<T>> tasks, int parallelism, String threadNamePrefix) {
+    int threads = Math.min(parallelism, tasks.size());
+    if (threads <= 1) {
+      return invokeAll(tasks, OperationDeadline.current());
+    }
+    ExecutorService executor =
+        Executors.newFixedThreadPool(threads, new DaemonThreadFactory(threadNamePrefix));
+    try {
+      return invokeAll(executor, tasks, threads);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Executes the given tasks on the given executor and returns their results, in the same order as
+   * the tasks. At most <code>parallelism</code> tasks of this invocation are executed concurrently,
+   * regardless of the size of the executor, so that the executor can be shared by concurrent
+   * invocations. If there is only one task, or if the parallelism is one or less, the tasks are
+   * executed in the calling thread.
+   *
+   * @param <T> the type of results
+   * @param executor the executor
+   * @param tasks the tasks to execute
+   * @param parallelism the maximum number of tasks to execute concurrently
+   * @return the results of the tasks
+   * @throws EntityManagerException if any of the tasks fails, or if the executor was shut down. If
+   *     the task failed with an EntityManagerException, it is rethrown as is. Remaining tasks are
+   *     cancelled.
+   * @throws DeadlineExceededException if the deadline of the calling thread passes before all tasks
+   *     complete. The deadline is also bound to the threads executing the tasks. Remaining tasks
+   *     are cancelled.
+   */
+  static <T> List<T> invokeAll(
+      ExecutorService executor, List<? extends Callable<T>> tasks, int parallelism) {
+    int workers = Math.min(parallelism, tasks.size());
+    OperationDeadline deadline = OperationDeadline.current();
+    if (workers <= 1) {
+      return invokeAll(tasks, deadline);
+    }
+    TaskList<T> taskList = new TaskList<>(tasks);
+    List<Future<Void>> futures = new ArrayList<>(workers);
+    try {
+      for (int i = 0; i < workers; i++) {
+        futures.add(executor.submit(deadline.wrap(new Worker<>(taskList))));
+      }
+      for (Future<Void> future : futures) {
+        if (deadline.isBounded()) {
+          future.get(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS);
+        } else {
+          future.get();
+        }
+      }
+      return taskList.getResults();
+    } catch (RejectedExecutionException exp) {
+      throw new EntityManagerException("Executor was shut down", exp);
+    } catch (TimeoutException exp) {
+      throw new DeadlineExceededException(OperationDeadline.EXCEEDED_MESSAGE, exp);
+    } catch (ExecutionException exp) {
+      if (exp.getCause() instanceof EntityManagerException) {
+        throw (EntityManagerException) exp.getCause();
+      }
+      throw new EntityManagerException(exp.getCause());
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+      throw new EntityManagerException(exp);
+    } finally {
+      taskList.cancel();
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Executes the given tasks in the calling thread and returns their results.
+   *
+   * @param <T> the type of results
+   * @param tasks the tasks to execute
+   * @param deadline the deadline of the calling thread
+   * @return the results of the tasks
+   */
+  private static <T> List<T> invokeAll(
+      List<? extends Callable<T>> tasks, OperationDeadline deadline) {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      for (Callable<T> task : tasks) {
+        deadline.check();
+        results.add(task.call());
+      }
+      return results;
+    } catch (EntityManagerException exp) {
+      throw exp;
+    } catch (Exception exp) {
+      throw new EntityManagerException(exp);
+    }
+  }
+
+  /**
+   * Creates an executor with a bounded number of daemon threads, for sharing by invocations of
+   * {@link #invokeAll(ExecutorService, List, int)}. Idle threads are discarded.
+   *
+   * @param threads the maximum number of threads
+   * @param threadNamePrefix the prefix for the names of the threads
+   * @return the executor
+   */
+  static ExecutorService newSharedExecutor(int threads, String threadNamePrefix) {
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            IDLE_THREAD_TIMEOUT_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new DaemonThreadFactory(threadNamePrefix));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Tasks of an invocation, handed out one at a time to the workers of the invocation.
+   *
+   * @author Sai Pullabhotla
+   * @param <T> the type of results
+   */
+  private static class TaskList<T> {
+
+    /** The tasks */
+    private final List<? extends Callable<T>> tasks;
+
+    /** Results of the tasks, by index */
+    private final Object[] results;
+
+    /** Index of the next task to hand out */
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    /** Whether or not the invocation was cancelled */
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new instance of <code>TaskList</code>.
+     *
+     * @param tasks the tasks
+     */
+    TaskList(List<? extends Callable<T>> tasks) {
+      this.tasks = tasks;
+      this.results = new Object[tasks.size()];
+    }
+
+    /**
+     * Returns the index of the next task to execute.
+     *
+     * @return the index of the next task, or -1, if there are no more tasks, or if the invocation
+     *     was cancelled.
+     */
+    int next() {
+      if (cancelled) {
+        return -1;
+      }
+      int index = nextIndex.getAndIncrement();
+      return index < tasks.size() ? index : -1;
+    }
+
+    /**
+     * Executes the task at the given index and saves its result.
+     *
+     * @param index the index of the task
+     * @throws Exception propagated from the task
+     */
+    void execute(int index) throws Exception {
+      results[index] = tasks.get(index).call();
+    }
+
+    /** Stops handing out tasks. */
+    void cancel() {
+      cancelled = true;
+    }
+
+    /**
+     * Returns the results of the tasks. Must only be called after all workers have completed.
+     *
+     * @return the results of the tasks
+     */
+    @SuppressWarnings("unchecked")
+    List<T> getResults() {
+      List<T> list = new ArrayList<>(results.length);
+      for (Object result : results) {
+        list.add((T) result);
+      }
+      return list;
+    }
+  }
+
+  /**
+   * Executes tasks from a task list until there are no more tasks, or until a task fails.
+   *
+   * @author Sai Pullabhotla
+   * @param <T> the type of results
+   */
+  private static class Worker<T> implements Callable<Void> {
+
+    /** The task list */
+    private final TaskList<T> taskList;
+
+    /**
+     * Creates a new instance of <code>Worker</code>.
+     *
+     * @param taskList the task list
+     */
+    Worker(TaskList<T> taskList) {
+      this.taskList = taskList;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      try {
+        for (int index = taskList.next(); index >= 0; index = taskList.next()) {
+          taskList.execute(index);
+        }
+        return null;
+      } catch (Exception exp) {
+        taskList.cancel();
+        throw exp;
+      }
+    }
+  }
+
+  /**
+   * Creates daemon threads with a given name prefix.
+   *
+   * @author Sai Pullabhotla
+   */
+  static class DaemonThreadFactory implements ThreadFactory {
+
+    /** Prefix for the thread names */
+    private final String namePrefix;
+
+    /** Number of threads created so far */
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    /**
+     * Creates a new instance of <code>DaemonThreadFactory</code>.
+     *
+     * @param namePrefix the prefix for the thread names
+     */
+    DaemonThreadFactory(String namePrefix) {
+      this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
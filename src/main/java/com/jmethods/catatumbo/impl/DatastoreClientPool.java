@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.Datastore;
+import com.jmethods.catatumbo.ClientSelectionPolicy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A fixed set of Datastore clients that back an EntityManager. Operations acquire a client, run on
+ * it and release it. The client is selected using a {@link ClientSelectionPolicy}. For the
+ * {@link ClientSelectionPolicy#LEAST_IN_FLIGHT} policy, the pool counts the operations in progress
+ * on each client.
+ *
+ * @author Sai Pullabhotla
+ */
+public class DatastoreClientPool {
+
+  /** The clients */
+  private final Datastore[] clients;
+
+  /** Policy for selecting a client */
+  private final ClientSelectionPolicy selectionPolicy;
+
+  /** Counter used for the round-robin selection */
+  private final AtomicInteger counter;
+
+  /** Number of operations in progress, by client index */
+  private final AtomicIntegerArray inFlight;
+
+  /**
+   * Creates a new instance of <code>DatastoreClientPool</code>.
+   *
+   * @param clients the clients. Must have at least one client.
+   * @param selectionPolicy the policy for selecting a client
+   */
+  public DatastoreClientPool(List<Datastore> clients, ClientSelectionPolicy selectionPolicy) {
+    if (clients == null || clients.isEmpty()) {
+      throw new IllegalArgumentException("clients cannot be null or empty");
+    }
+    if (selectionPolicy == null) {
+      throw new IllegalArgumentException("selectionPolicy cannot be null");
+    }
+    this.clients = clients.toArray(new Datastore[0]);
+    this.selectionPolicy = selectionPolicy;
+    this.counter = new AtomicInteger();
+    this.inFlight = new AtomicIntegerArray(this.clients.length);
+  }
+
+  /**
+   * Returns the number of clients in this pool.
+   *
+   * @return the number of clients in this pool.
+   */
+  public int size() {
+    return clients.length;
+  }
+
+  /**
+   * Returns the client at the given index.
+   *
+   * @param index the index
+   * @return the client at the given index.
+   */
+  public Datastore getClient(int index) {
+    return clients[index];
+  }
+
+  /**
+   * Returns the number of operations in progress on the client at the given index.
+   *
+   * @param index the index
+   * @return the number of operations in progress on the client at the given index.
+   */
+  public int getInFlight(int index) {
+    return inFlight.get(index);
+  }
+
+  /**
+   * Selects a client for an operation, and counts the operation as in progress. Every call to this
+   * method must be followed by a call to {@link #release(int)} once the operation completes.
+   *
+   * @return the index of the selected client.
+   */
+  public int acquire() {
+    if (clients.length == 1) {
+      return 0;
+    }
+    int index = select();
+    inFlight.incrementAndGet(index);
+    return index;
+  }
+
+  /**
+   * Marks an operation on the given client as complete.
+   *
+   * @param index the index of the client, as returned by {@link #acquire()}.
+   */
+  public void release(int index) {
+    if (clients.length > 1) {
+      inFlight.decrementAndGet(index);
+    }
+  }
+
+  /**
+   * Selects a client, without counting an operation as in progress. Used for pinning transactions
+   * and batches to a client.
+   *
+   * @return the index of the selected client.
+   */
+  public int select() {
+    if (clients.length == 1) {
+      return 0;
+    }
+    int start = (counter.getAndIncrement() & Integer.MAX_VALUE) % clients.length;
+    if (selectionPolicy == ClientSelectionPolicy.ROUND_ROBIN) {
+      return start;
+    }
+    int selected = start;
+    int minInFlight = inFlight.get(start);
+    for (int i = 1; i < clients.length && minInFlight > 0; i++) {
+      int index = (start + i) % clients.length;
+      int count = inFlight.get(index);
+      if (count < minInFlight) {
+        selected = index;
+        minInFlight = count;
+      }
+    }
+    return selected;
+  }
+}
@@ -22,6 +22,8 @@ import com.google.cloud.datastore.FullEntity;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.Transaction;
 import com.jmethods.catatumbo.DatastoreKey;
+import com.jmethods.catatumbo.Deadline;
+import com.jmethods.catatumbo.DeadlineExceededException;
 import com.jmethods.catatumbo.DefaultDatastoreKey;
 import com.jmethods.catatumbo.EntityAlreadyExistsException;
 import com.jmethods.catatumbo.EntityManagerException;
@@ -50,6 +52,12 @@ class DatastoreUtils {
    */
   private static final int ERROR_CODE_ENTITY_ALREADY_EXISTS = 6;
 
+  /** Error code from the Datastore when requests are throttled */
+  private static final int ERROR_CODE_RESOURCE_EXHAUSTED = 8;
+
+  /** Error code from the Datastore when a commit fails due to contention */
+  private static final int ERROR_CODE_ABORTED = 10;
+
   /** Hide the implicit constructor */
   private DatastoreUtils() {
     // Do nothing.
@@ -90,6 +98,37 @@ class DatastoreUtils {
     return toEntities(entityClass, Arrays.asList(nativeEntities));
   }
 
+  /**
+   * Converts the given list of native entities to a list of model objects. Each native entity is
+   * converted to the class of the model object at the same position in <code>entities</code>, so
+   * the list may hold entities of different types.
+   *
+   * @param entities the model objects from which the native entities were marshalled
+   * @param nativeEntities native entities to convert
+   * @return the list of model objects
+   */
+  @SuppressWarnings("unchecked")
+  static <E> List<E> toEntities(List<E> entities, List<Entity> nativeEntities) {
+    List<E> convertedEntities = new ArrayList<>(nativeEntities.size());
+    for (int i = 0; i < nativeEntities.size(); i++) {
+      E entity = (E) Unmarshaller.unmarshal(nativeEntities.get(i), entities.get(i).getClass());
+      convertedEntities.add(entity);
+    }
+    return convertedEntities;
+  }
+
+  /**
+   * Converts the given array of native entities to a list of model objects. Each native entity is
+   * converted to the class of the model object at the same position in <code>entities</code>.
+   *
+   * @param entities the model objects from which the native entities were marshalled
+   * @param nativeEntities native entities to convert
+   * @return the list of model objects
+   */
+  static <E> List<E> toEntities(List<E> entities, Entity[] nativeEntities) {
+    return toEntities(entities, Arrays.asList(nativeEntities));
+  }
+
   /**
    * Converts the given list of model objects to an array of FullEntity objects.
    *
@@ -100,10 +139,28 @@ class DatastoreUtils {
    */
   static FullEntity<?>[] toNativeFullEntities(
       List<?> entities, DefaultEntityManager entityManager, Marshaller.Intent intent) {
+    return toNativeFullEntities(entities, entityManager, intent, false);
+  }
+
+  /**
+   * Converts the given list of model objects to an array of FullEntity objects.
+   *
+   * @param entities the model objects to convert.
+   * @param entityManager the entity manager
+   * @param intent the intent of marshalling
+   * @param deferIdAllocation whether or not allocation of auto-generated numeric IDs is deferred
+   * @return the equivalent FullEntity array
+   */
+  static FullEntity<?>[] toNativeFullEntities(
+      List<?> entities,
+      DefaultEntityManager entityManager,
+      Marshaller.Intent intent,
+      boolean deferIdAllocation) {
     FullEntity<?>[] nativeEntities = new FullEntity[entities.size()];
     for (int i = 0; i < entities.size(); i++) {
       nativeEntities[i] =
-          (FullEntity<?>) Marshaller.marshal(entityManager, entities.get(i), intent);
+          (FullEntity<?>)
+              Marshaller.marshal(entityManager, entities.get(i), intent, deferIdAllocation);
     }
     return nativeEntities;
   }
@@ -200,14 +257,41 @@ class DatastoreUtils {
     }
   }
 
+  /**
+   * Validates if each of the given entities is valid for deferred ID allocation.
+   *
+   * @param entities the entities to validate
+   * @throws EntityManagerException if any of the given entities does not use a numeric ID
+   */
+  static void validateDeferredIdAllocation(List<?> entities) {
+    for (Object entity : entities) {
+      validateDeferredIdAllocation(entity);
+    }
+  }
+
+  /**
+   * Tells whether or not the given exception indicates contention or throttling.
+   *
+   * @param exp the exception
+   * @return <code>true</code>, if the exception indicates contention or throttling; <code>false
+   *     </code>, otherwise.
+   */
+  static boolean isContention(DatastoreException exp) {
+    return exp.getCode() == ERROR_CODE_ABORTED || exp.getCode() == ERROR_CODE_RESOURCE_EXHAUSTED;
+  }
+
   /**
    * Wraps the given DatastoreException into an {@link EntityManagerException} or a subclass of
-   * {@link EntityManagerException}.
+   * {@link EntityManagerException}. If the deadline of the current thread has passed, the failure
+   * is attributed to the deadline and a {@link DeadlineExceededException} is returned.
    *
    * @param exp the DatastoreException
    * @return An {@link EntityManagerException} or a subclass of {@link EntityManagerException}.
    */
   static EntityManagerException wrap(DatastoreException exp) {
+    if (Deadline.isExpired()) {
+      return new DeadlineExceededException(OperationDeadline.EXCEEDED_MESSAGE, exp);
+    }
     switch (exp.getCode()) {
       case ERROR_CODE_ENTITY_NOT_FOUND:
         return new EntityNotFoundException(exp);
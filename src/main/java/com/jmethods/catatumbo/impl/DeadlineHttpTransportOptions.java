@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.cloud.ServiceOptions;
+import com.google.cloud.http.HttpTransportOptions;
+import com.jmethods.catatumbo.Deadline;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HttpTransportOptions} that honor the {@link Deadline} of the thread making an RPC. Every
+ * HTTP request, including each retry of a failed request, has its connect and read timeouts
+ * lowered to the time remaining until the deadline. A request that would start after the deadline
+ * has passed is not sent at all, which also stops any further retries.
+ *
+ * @author Sai Pullabhotla
+ */
+public class DeadlineHttpTransportOptions extends HttpTransportOptions {
+
+  private static final long serialVersionUID = -2938413718735528120L;
+
+  /**
+   * Creates a new instance of <code>DeadlineHttpTransportOptions</code>.
+   *
+   * @param builder the builder with the transport options
+   */
+  public DeadlineHttpTransportOptions(HttpTransportOptions.Builder builder) {
+    super(builder);
+  }
+
+  @Override
+  public HttpRequestInitializer getHttpRequestInitializer(ServiceOptions<?, ?> serviceOptions) {
+    return new DeadlineRequestInitializer(super.getHttpRequestInitializer(serviceOptions));
+  }
+
+  /**
+   * Request initializer that applies the deadline of the current thread after running the default
+   * initializer.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class DeadlineRequestInitializer implements HttpRequestInitializer {
+
+    /** The default initializer, which sets the credentials, headers and timeouts */
+    private final HttpRequestInitializer delegate;
+
+    /**
+     * Creates a new instance of <code>DeadlineRequestInitializer</code>.
+     *
+     * @param delegate the default initializer
+     */
+    DeadlineRequestInitializer(HttpRequestInitializer delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void initialize(HttpRequest request) throws IOException {
+      delegate.initialize(request);
+      if (!Deadline.isSet()) {
+        return;
+      }
+      long remaining = Deadline.getRemainingTime(TimeUnit.MILLISECONDS);
+      if (remaining <= 0) {
+        throw new DeadlineExceededException(OperationDeadline.EXCEEDED_MESSAGE);
+      }
+      int timeout = (int) Math.min(remaining, Integer.MAX_VALUE);
+      if (request.getConnectTimeout() <= 0 || request.getConnectTimeout() > timeout) {
+        request.setConnectTimeout(timeout);
+      }
+      if (request.getReadTimeout() <= 0 || request.getReadTimeout() > timeout) {
+        request.setReadTimeout(timeout);
+      }
+    }
+  }
+}
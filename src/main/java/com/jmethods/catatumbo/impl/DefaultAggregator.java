@@ -0,0 +1,587 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyQuery;
+import com.google.cloud.datastore.PathElement;
+import com.google.cloud.datastore.ProjectionEntity;
+import com.google.cloud.datastore.ProjectionEntityQuery;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StructuredQuery;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.Filter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Value;
+import com.google.datastore.v1.QueryResultBatch.MoreResultsType;
+import com.jmethods.catatumbo.AggregationOptions;
+import com.jmethods.catatumbo.AggregationResult;
+import com.jmethods.catatumbo.CompiledQuery;
+import com.jmethods.catatumbo.EntityManagerException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Aggregates the results of a {@link CompiledQuery} on the client. Results are streamed through a
+ * keys-only query, or through a projection query on the value and group-by properties, and folded
+ * into running totals as they arrive, so neither entity objects nor lists of results are created.
+ * If more than one partition is requested, the key space of the Kind is split at keys sampled from
+ * the scatter property, and each key range is scanned on its own thread.
+ *
+ * @author Sai Pullabhotla
+ */
+public class DefaultAggregator {
+
+  /** Name of the property used for sampling the key space */
+  private static final String SCATTER_PROPERTY = "__scatter__";
+
+  /** Name of the key property */
+  private static final String KEY_PROPERTY = "__key__";
+
+  /** Number of keys sampled per partition, to even out the size of the partitions */
+  private static final int KEYS_PER_PARTITION = 32;
+
+  /** Orders keys the same way the Datastore does */
+  static final Comparator<Key> KEY_COMPARATOR = new KeyComparator();
+
+  /** The entity manager, which supplies a client from its pool for each query */
+  private final DefaultEntityManager entityManager;
+
+  /** The query whose results are aggregated */
+  private final DefaultCompiledQuery<?> query;
+
+  /** Namespace in which the query runs */
+  private final String namespace;
+
+  /** Filter of the query, may be <code>null</code> */
+  private final Filter filter;
+
+  /** Mapped name of the value property, may be <code>null</code> */
+  private final String valueProperty;
+
+  /** Mapped name of the group-by property, may be <code>null</code> */
+  private final String groupByProperty;
+
+  /** Number of results fetched per request */
+  private final int pageSize;
+
+  /** Number of partitions */
+  private final int partitions;
+
+  /**
+   * Creates a new instance of <code>DefaultAggregator</code>.
+   *
+   * @param entityManager the entity manager
+   * @param query the query whose results are aggregated
+   * @param options the aggregation options, may be <code>null</code>.
+   * @param parameterValues the values of the query parameters
+   * @throws IllegalArgumentException if the query was not created by a <code>QueryBuilder</code>,
+   *     if the value or group-by field does not exist or is not indexed, or if the number of
+   *     parameter values does not match the number of parameters.
+   */
+  public DefaultAggregator(
+      DefaultEntityManager entityManager,
+      CompiledQuery<?> query,
+      AggregationOptions options,
+      Object[] parameterValues) {
+    if (!(query instanceof DefaultCompiledQuery)) {
+      throw new IllegalArgumentException(
+          "Query was not created by a QueryBuilder of this EntityManager");
+    }
+    this.entityManager = entityManager;
+    this.query = (DefaultCompiledQuery<?>) query;
+    this.namespace = entityManager.getEffectiveNamespace();
+    this.filter = this.query.getFilter(parameterValues);
+    EntityMetadata entityMetadata = EntityIntrospector.introspect(query.getEntityClass());
+    AggregationOptions effectiveOptions = options == null ? new AggregationOptions() : options;
+    this.valueProperty = getMappedName(entityMetadata, effectiveOptions.getValueField());
+    this.groupByProperty = getMappedName(entityMetadata, effectiveOptions.getGroupByField());
+    this.pageSize = effectiveOptions.getPageSize();
+    this.partitions = effectiveOptions.getPartitions();
+  }
+
+  /**
+   * Runs the aggregation.
+   *
+   * @return the result of the aggregation
+   * @throws EntityManagerException if any error occurs while running the queries, or if a value of
+   *     the value property is not numeric.
+   */
+  public AggregationResult aggregate() {
+    List<Key> splitKeys = getSplitKeys();
+    List<PartitionTask> tasks = new ArrayList<>(splitKeys.size() + 1);
+    Key lowerBound = null;
+    for (Key splitKey : splitKeys) {
+      tasks.add(new PartitionTask(lowerBound, splitKey));
+      lowerBound = splitKey;
+    }
+    tasks.add(new PartitionTask(lowerBound, null));
+    List<Accumulator> results =
+        ConcurrencyUtils.invokeAll(tasks, tasks.size(), "catatumbo-aggregator-");
+    Accumulator total = new Accumulator();
+    for (Accumulator result : results) {
+      total.merge(result);
+    }
+    return total.toResult();
+  }
+
+  /**
+   * Returns the keys at which the key space is split into partitions. The keys are picked at even
+   * intervals from a sorted sample of scatter keys.
+   *
+   * @return the split keys, in ascending order. Empty, if the results are scanned sequentially.
+   */
+  private List<Key> getSplitKeys() {
+    if (partitions <= 1 || query.getLimit() != null || query.hasInequalityFilter()) {
+      return Collections.emptyList();
+    }
+    KeyQuery scatterQuery =
+        Query.newKeyQueryBuilder()
+            .setNamespace(namespace)
+            .setKind(query.getKind())
+            .setOrderBy(OrderBy.asc(SCATTER_PROPERTY))
+            .setLimit((partitions - 1) * KEYS_PER_PARTITION)
+            .build();
+    List<Key> sample = new ArrayList<>();
+    try {
+      QueryResults<Key> results = entityManager.selectClient().run(scatterQuery);
+      while (results.hasNext()) {
+        sample.add(results.next());
+      }
+    } catch (DatastoreException exp) {
+      throw DatastoreUtils.wrap(exp);
+    }
+    return pickSplitKeys(sample, partitions);
+  }
+
+  /**
+   * Sorts the given sample of keys and picks the keys that split it into the given number of
+   * partitions of roughly equal size.
+   *
+   * @param sample the sample of keys
+   * @param partitions the number of partitions
+   * @return the split keys, in ascending order, without duplicates. There may be fewer than
+   *     <code>partitions - 1</code> keys, if the sample is small.
+   */
+  static List<Key> pickSplitKeys(List<Key> sample, int partitions) {
+    if (sample.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<Key> sortedSample = new ArrayList<>(sample);
+    Collections.sort(sortedSample, KEY_COMPARATOR);
+    List<Key> splitKeys = new ArrayList<>(partitions - 1);
+    for (int i = 1; i < partitions; i++) {
+      Key key = sortedSample.get(i * sortedSample.size() / partitions);
+      if (splitKeys.isEmpty()
+          || KEY_COMPARATOR.compare(splitKeys.get(splitKeys.size() - 1), key) < 0) {
+        splitKeys.add(key);
+      }
+    }
+    return splitKeys;
+  }
+
+  /**
+   * Creates the query for fetching one page of results.
+   *
+   * @param partitionFilter the filter of the partition, may be <code>null</code>.
+   * @param startCursor the cursor to start from, may be <code>null</code>.
+   * @param limit the maximum number of results
+   * @return a keys-only query, if there are no value or group-by properties; a projection query,
+   *     otherwise. If the query has a limit, its sort orders are applied, as they determine which
+   *     results are aggregated. Without a limit, the order does not change the result and is not
+   *     applied, so that the key space can be partitioned.
+   */
+  Query<?> createQuery(Filter partitionFilter, Cursor startCursor, int limit) {
+    StructuredQuery.Builder<?> builder;
+    if (valueProperty == null && groupByProperty == null) {
+      builder = Query.newKeyQueryBuilder();
+    } else {
+      ProjectionEntityQuery.Builder projectionBuilder = Query.newProjectionEntityQueryBuilder();
+      if (valueProperty == null || valueProperty.equals(groupByProperty)) {
+        projectionBuilder.setProjection(groupByProperty);
+      } else if (groupByProperty == null) {
+        projectionBuilder.setProjection(valueProperty);
+      } else {
+        projectionBuilder.setProjection(valueProperty, groupByProperty);
+      }
+      builder = projectionBuilder;
+    }
+    builder.setNamespace(namespace).setKind(query.getKind()).setLimit(limit);
+    List<OrderBy> orders = query.getOrderBy();
+    if (query.getLimit() != null && !orders.isEmpty()) {
+      builder.setOrderBy(orders.get(0), orders.subList(1, orders.size()).toArray(new OrderBy[0]));
+    }
+    if (partitionFilter != null) {
+      builder.setFilter(partitionFilter);
+    }
+    if (startCursor != null) {
+      builder.setStartCursor(startCursor);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Creates the filter for the partition with the given bounds.
+   *
+   * @param lowerBound the inclusive lower bound, <code>null</code> for no lower bound.
+   * @param upperBound the exclusive upper bound, <code>null</code> for no upper bound.
+   * @return the filter of the query combined with the key range, or <code>null</code>, if there is
+   *     neither a filter nor a bound.
+   */
+  Filter createPartitionFilter(Key lowerBound, Key upperBound) {
+    List<Filter> filters = new ArrayList<>(3);
+    if (filter != null) {
+      filters.add(filter);
+    }
+    if (lowerBound != null) {
+      filters.add(PropertyFilter.ge(KEY_PROPERTY, lowerBound));
+    }
+    if (upperBound != null) {
+      filters.add(PropertyFilter.lt(KEY_PROPERTY, upperBound));
+    }
+    if (filters.isEmpty()) {
+      return null;
+    }
+    if (filters.size() == 1) {
+      return filters.get(0);
+    }
+    return CompositeFilter.and(
+        filters.get(0), filters.subList(1, filters.size()).toArray(new Filter[0]));
+  }
+
+  /**
+   * Folds the given projection entity into the given accumulator.
+   *
+   * @param accumulator the accumulator
+   * @param entity the projection entity
+   */
+  private void fold(Accumulator accumulator, ProjectionEntity entity) {
+    Accumulator group = null;
+    if (groupByProperty != null) {
+      group = accumulator.getGroup(entity.getValue(groupByProperty).get());
+    }
+    if (valueProperty == null) {
+      accumulator.increment();
+      group.increment();
+      return;
+    }
+    Value<?> value = entity.getValue(valueProperty);
+    double number;
+    switch (value.getType()) {
+      case LONG:
+        number = ((Long) value.get()).doubleValue();
+        break;
+      case DOUBLE:
+        number = (Double) value.get();
+        break;
+      case NULL:
+        return;
+      default:
+        throw new EntityManagerException(
+            String.format(
+                "Property %s has a non-numeric value of type %s", valueProperty, value.getType()));
+    }
+    accumulator.add(number);
+    if (group != null) {
+      group.add(number);
+    }
+  }
+
+  /**
+   * Returns the mapped name of the given field, which must be an indexed, simple property.
+   *
+   * @param entityMetadata the entity metadata
+   * @param fieldName the name of the field, may be <code>null</code>.
+   * @return the mapped name of the field, or <code>null</code>, if the field name is
+   *     <code>null</code>.
+   * @throws IllegalArgumentException if the entity has no such field, or if the field is not
+   *     indexed.
+   */
+  private static String getMappedName(EntityMetadata entityMetadata, String fieldName) {
+    if (fieldName == null) {
+      return null;
+    }
+    PropertyMetadata propertyMetadata = entityMetadata.getPropertyMetadataByFieldName(fieldName);
+    if (propertyMetadata == null) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Class %s has no property named %s",
+              entityMetadata.getEntityClass().getName(), fieldName));
+    }
+    if (!propertyMetadata.isIndexed()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Property %s of class %s is not indexed and cannot be aggregated",
+              fieldName, entityMetadata.getEntityClass().getName()));
+    }
+    return propertyMetadata.getMappedName();
+  }
+
+  /**
+   * Scans one partition of the key space and aggregates its results.
+   *
+   * @author Sai Pullabhotla
+   */
+  private class PartitionTask implements Callable<Accumulator> {
+
+    /** Inclusive lower bound, may be <code>null</code> */
+    private final Key lowerBound;
+
+    /** Exclusive upper bound, may be <code>null</code> */
+    private final Key upperBound;
+
+    /**
+     * Creates a new instance of <code>PartitionTask</code>.
+     *
+     * @param lowerBound the inclusive lower bound, <code>null</code> for no lower bound.
+     * @param upperBound the exclusive upper bound, <code>null</code> for no upper bound.
+     */
+    PartitionTask(Key lowerBound, Key upperBound) {
+      this.lowerBound = lowerBound;
+      this.upperBound = upperBound;
+    }
+
+    @Override
+    public Accumulator call() {
+      Accumulator accumulator = new Accumulator();
+      Filter partitionFilter = createPartitionFilter(lowerBound, upperBound);
+      Integer limit = query.getLimit();
+      int remaining = limit == null ? -1 : limit;
+      Cursor cursor = null;
+      try {
+        Datastore client = entityManager.selectClient();
+        while (remaining != 0) {
+          int batchSize = remaining < 0 ? pageSize : Math.min(pageSize, remaining);
+          QueryResults<?> results = client.run(createQuery(partitionFilter, cursor, batchSize));
+          int count = 0;
+          while (results.hasNext()) {
+            Object result = results.next();
+            if (result instanceof ProjectionEntity) {
+              fold(accumulator, (ProjectionEntity) result);
+            } else {
+              accumulator.increment();
+            }
+            count++;
+          }
+          if (remaining > 0) {
+            remaining -= count;
+          }
+          if (count < batchSize || results.getMoreResults() == MoreResultsType.NO_MORE_RESULTS) {
+            break;
+          }
+          cursor = results.getCursorAfter();
+        }
+      } catch (DatastoreException exp) {
+        throw DatastoreUtils.wrap(exp);
+      }
+      return accumulator;
+    }
+  }
+
+  /**
+   * Running totals of an aggregation.
+   *
+   * @author Sai Pullabhotla
+   */
+  static class Accumulator {
+
+    /** Number of entities or values */
+    private long count;
+
+    /** Number of values */
+    private long valueCount;
+
+    /** Sum of the values */
+    private double sum;
+
+    /** Smallest value */
+    private double min = Double.POSITIVE_INFINITY;
+
+    /** Largest value */
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /** Totals by group, created on demand */
+    private Map<Object, Accumulator> groups;
+
+    /** Counts an entity that has no value. */
+    void increment() {
+      count++;
+    }
+
+    /**
+     * Adds the given value.
+     *
+     * @param value the value
+     */
+    void add(double value) {
+      count++;
+      valueCount++;
+      sum += value;
+      if (value < min) {
+        min = value;
+      }
+      if (value > max) {
+        max = value;
+      }
+    }
+
+    /**
+     * Returns the totals of the given group, creating them if needed.
+     *
+     * @param groupKey the value of the group-by property
+     * @return the totals of the given group.
+     */
+    Accumulator getGroup(Object groupKey) {
+      if (groups == null) {
+        groups = new HashMap<>();
+      }
+      Accumulator group = groups.get(groupKey);
+      if (group == null) {
+        group = new Accumulator();
+        groups.put(groupKey, group);
+      }
+      return group;
+    }
+
+    /**
+     * Merges the given totals into these totals.
+     *
+     * @param other the totals to merge
+     */
+    void merge(Accumulator other) {
+      count += other.count;
+      valueCount += other.valueCount;
+      sum += other.sum;
+      min = Math.min(min, other.min);
+      max = Math.max(max, other.max);
+      if (other.groups != null) {
+        for (Map.Entry<Object, Accumulator> entry : other.groups.entrySet()) {
+          getGroup(entry.getKey()).merge(entry.getValue());
+        }
+      }
+    }
+
+    /**
+     * Creates the result from these totals.
+     *
+     * @return the result
+     */
+    AggregationResult toResult() {
+      Map<Object, AggregationResult> groupResults = new HashMap<>();
+      if (groups != null) {
+        for (Map.Entry<Object, Accumulator> entry : groups.entrySet()) {
+          groupResults.put(entry.getKey(), entry.getValue().toResult());
+        }
+      }
+      boolean hasValues = valueCount > 0;
+      return new AggregationResult(
+          count, sum, hasValues ? min : Double.NaN, hasValues ? max : Double.NaN, groupResults);
+    }
+  }
+
+  /**
+   * Compares keys in the order used by the Datastore: element by element along the path, where
+   * elements are ordered by Kind, then numeric IDs before names, and an ancestor comes before its
+   * descendants. Strings are compared by their UTF-8 bytes.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class KeyComparator implements Comparator<Key> {
+
+    @Override
+    public int compare(Key key1, Key key2) {
+      List<PathElement> path1 = getPath(key1);
+      List<PathElement> path2 = getPath(key2);
+      int length = Math.min(path1.size(), path2.size());
+      for (int i = 0; i < length; i++) {
+        int result = compare(path1.get(i), path2.get(i));
+        if (result != 0) {
+          return result;
+        }
+      }
+      return Integer.compare(path1.size(), path2.size());
+    }
+
+    /**
+     * Compares the given path elements.
+     *
+     * @param element1 the first element
+     * @param element2 the second element
+     * @return a negative number, zero or a positive number, if the first element is less than,
+     *     equal to or greater than the second element.
+     */
+    private static int compare(PathElement element1, PathElement element2) {
+      int result = compareUtf8(element1.getKind(), element2.getKind());
+      if (result != 0) {
+        return result;
+      }
+      if (element1.hasId()) {
+        return element2.hasId() ? Long.compare(element1.getId(), element2.getId()) : -1;
+      }
+      return element2.hasId() ? 1 : compareUtf8(element1.getName(), element2.getName());
+    }
+
+    /**
+     * Returns the complete path of the given key, including the key itself.
+     *
+     * @param key the key
+     * @return the complete path of the given key.
+     */
+    private static List<PathElement> getPath(Key key) {
+      List<PathElement> ancestors = key.getAncestors();
+      List<PathElement> path = new ArrayList<>(ancestors.size() + 1);
+      path.addAll(ancestors);
+      path.add(
+          key.hasId()
+              ? PathElement.of(key.getKind(), key.getId())
+              : PathElement.of(key.getKind(), key.getName()));
+      return path;
+    }
+
+    /**
+     * Compares the given strings by their UTF-8 bytes.
+     *
+     * @param str1 the first string
+     * @param str2 the second string
+     * @return a negative number, zero or a positive number, if the first string is less than, equal
+     *     to or greater than the second string.
+     */
+    private static int compareUtf8(String str1, String str2) {
+      byte[] bytes1 = str1.getBytes(StandardCharsets.UTF_8);
+      byte[] bytes2 = str2.getBytes(StandardCharsets.UTF_8);
+      int length = Math.min(bytes1.length, bytes2.length);
+      for (int i = 0; i < length; i++) {
+        int result = Integer.compare(bytes1[i] & 0xFF, bytes2[i] & 0xFF);
+        if (result != 0) {
+          return result;
+        }
+      }
+      return Integer.compare(bytes1.length, bytes2.length);
+    }
+  }
+}
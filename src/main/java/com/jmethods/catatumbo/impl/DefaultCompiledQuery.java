@@ -0,0 +1,379 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.NullValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.Filter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.google.cloud.datastore.Value;
+import com.jmethods.catatumbo.CompiledQuery;
+import com.jmethods.catatumbo.DatastoreCursor;
+import com.jmethods.catatumbo.DatastoreKey;
+import com.jmethods.catatumbo.Mapper;
+import com.jmethods.catatumbo.QueryBuilder.Operator;
+import java.util.List;
+
+/**
+ * Default implementation of {@link CompiledQuery}. The parts of the native query that do not
+ * depend on parameters (Kind, sort orders, limit and filters with constant values) are built once,
+ * when the query is compiled. If the query has no parameters, the complete filter is built once
+ * as well.
+ *
+ * @author Sai Pullabhotla
+ * @param <E> the entity type
+ */
+public class DefaultCompiledQuery<E> implements CompiledQuery<E> {
+
+  /** The entity class */
+  private final Class<E> entityClass;
+
+  /** Native query with the Kind, sort orders and limit, but without namespace or filter */
+  private final EntityQuery prototype;
+
+  /** The filters */
+  private final FilterTemplate[] filters;
+
+  /** The complete filter, if the query has no parameters */
+  private final Filter constantFilter;
+
+  /** Number of parameters */
+  private final int parameterCount;
+
+  /**
+   * Creates a new instance of <code>DefaultCompiledQuery</code>.
+   *
+   * @param entityClass the entity class
+   * @param kind the Kind
+   * @param filters the filters
+   * @param orders the sort orders
+   * @param limit the maximum number of results, zero or less for no limit.
+   */
+  DefaultCompiledQuery(
+      Class<E> entityClass,
+      String kind,
+      List<FilterTemplate> filters,
+      List<OrderBy> orders,
+      int limit) {
+    this.entityClass = entityClass;
+    this.filters = filters.toArray(new FilterTemplate[0]);
+    int count = 0;
+    for (FilterTemplate filter : this.filters) {
+      if (filter.isParameter()) {
+        count++;
+      }
+    }
+    this.parameterCount = count;
+    EntityQuery.Builder builder = Query.newEntityQueryBuilder().setKind(kind);
+    if (!orders.isEmpty()) {
+      builder.setOrderBy(
+          orders.get(0), orders.subList(1, orders.size()).toArray(new OrderBy[0]));
+    }
+    if (limit > 0) {
+      builder.setLimit(limit);
+    }
+    this.prototype = builder.build();
+    this.constantFilter = parameterCount == 0 ? createFilter(new Object[0]) : null;
+  }
+
+  @Override
+  public Class<E> getEntityClass() {
+    return entityClass;
+  }
+
+  @Override
+  public int getParameterCount() {
+    return parameterCount;
+  }
+
+  /**
+   * Creates the native query for the given namespace, start cursor and parameter values.
+   *
+   * @param namespace the namespace
+   * @param startCursor the start cursor, may be <code>null</code>.
+   * @param parameterValues the values of the parameters
+   * @return the native query
+   * @throws IllegalArgumentException if the number of values does not match the number of
+   *     parameters.
+   */
+  EntityQuery toNativeQuery(
+      String namespace, DatastoreCursor startCursor, Object[] parameterValues) {
+    EntityQuery.Builder builder = prototype.toBuilder().setNamespace(namespace);
+    Filter filter = getFilter(parameterValues);
+    if (filter != null) {
+      builder.setFilter(filter);
+    }
+    if (startCursor != null) {
+      builder.setStartCursor(Cursor.fromUrlSafe(startCursor.getEncoded()));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the Kind this query runs against.
+   *
+   * @return the Kind this query runs against.
+   */
+  String getKind() {
+    return prototype.getKind();
+  }
+
+  /**
+   * Returns the maximum number of results.
+   *
+   * @return the maximum number of results, or <code>null</code>, if there is no limit.
+   */
+  Integer getLimit() {
+    return prototype.getLimit();
+  }
+
+  /**
+   * Returns the sort orders.
+   *
+   * @return the sort orders. Empty, if the query has no sort orders.
+   */
+  List<OrderBy> getOrderBy() {
+    return prototype.getOrderBy();
+  }
+
+  /**
+   * Tells whether or not this query has any inequality filters.
+   *
+   * @return <code>true</code>, if this query has at least one inequality filter;
+   *     <code>false</code>, otherwise.
+   */
+  boolean hasInequalityFilter() {
+    for (FilterTemplate filter : filters) {
+      if (filter.operator != null && filter.operator != Operator.EQUAL) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the complete filter for the given parameter values.
+   *
+   * @param parameterValues the values of the parameters
+   * @return the filter, or <code>null</code>, if the query has no filters.
+   * @throws IllegalArgumentException if the number of values does not match the number of
+   *     parameters.
+   */
+  Filter getFilter(Object[] parameterValues) {
+    int valueCount = parameterValues == null ? 0 : parameterValues.length;
+    if (valueCount != parameterCount) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Query on %s expects %d parameter values, but got %d",
+              entityClass.getName(), parameterCount, valueCount));
+    }
+    return parameterCount == 0 ? constantFilter : createFilter(parameterValues);
+  }
+
+  /**
+   * Creates the complete filter using the given parameter values.
+   *
+   * @param parameterValues the values of the parameters
+   * @return the filter, or <code>null</code>, if the query has no filters.
+   */
+  private Filter createFilter(Object[] parameterValues) {
+    if (filters.length == 0) {
+      return null;
+    }
+    Filter first = filters[0].toFilter(parameterValues);
+    if (filters.length == 1) {
+      return first;
+    }
+    Filter[] others = new Filter[filters.length - 1];
+    for (int i = 1; i < filters.length; i++) {
+      others[i - 1] = filters[i].toFilter(parameterValues);
+    }
+    return CompositeFilter.and(first, others);
+  }
+
+  /**
+   * Template of a single filter, which either has a constant value or refers to a parameter.
+   *
+   * @author Sai Pullabhotla
+   */
+  static class FilterTemplate {
+
+    /** Mapped name of the property, or <code>null</code> for an ancestor filter */
+    private final String mappedName;
+
+    /** The operator */
+    private final Operator operator;
+
+    /** Mapper for converting parameter values, <code>null</code> for an ancestor filter */
+    private final Mapper mapper;
+
+    /** Index of the parameter, or -1, if the filter has a constant value */
+    private final int parameterIndex;
+
+    /** The filter, if the value is a constant */
+    private final Filter filter;
+
+    /**
+     * Creates a new instance of <code>FilterTemplate</code>.
+     *
+     * @param mappedName the mapped name of the property, <code>null</code> for an ancestor filter
+     * @param operator the operator
+     * @param mapper the mapper of the property
+     * @param parameterIndex the index of the parameter, or -1 for a constant value
+     * @param filter the filter, if the value is a constant
+     */
+    private FilterTemplate(
+        String mappedName, Operator operator, Mapper mapper, int parameterIndex, Filter filter) {
+      this.mappedName = mappedName;
+      this.operator = operator;
+      this.mapper = mapper;
+      this.parameterIndex = parameterIndex;
+      this.filter = filter;
+    }
+
+    /**
+     * Creates a property filter with a constant value.
+     *
+     * @param propertyMetadata the metadata of the property
+     * @param operator the operator
+     * @param value the value
+     * @return the filter template
+     */
+    static FilterTemplate forValue(
+        PropertyMetadata propertyMetadata, Operator operator, Object value) {
+      String mappedName = propertyMetadata.getMappedName();
+      Filter filter =
+          createPropertyFilter(
+              mappedName, operator, toNativeValue(propertyMetadata.getMapper(), value));
+      return new FilterTemplate(mappedName, operator, propertyMetadata.getMapper(), -1, filter);
+    }
+
+    /**
+     * Creates a property filter whose value is a parameter.
+     *
+     * @param propertyMetadata the metadata of the property
+     * @param operator the operator
+     * @param parameterIndex the index of the parameter
+     * @return the filter template
+     */
+    static FilterTemplate forParameter(
+        PropertyMetadata propertyMetadata, Operator operator, int parameterIndex) {
+      return new FilterTemplate(
+          propertyMetadata.getMappedName(),
+          operator,
+          propertyMetadata.getMapper(),
+          parameterIndex,
+          null);
+    }
+
+    /**
+     * Creates an ancestor filter with a constant key.
+     *
+     * @param ancestorKey the key of the ancestor
+     * @return the filter template
+     */
+    static FilterTemplate forAncestor(DatastoreKey ancestorKey) {
+      return new FilterTemplate(
+          null, null, null, -1, PropertyFilter.hasAncestor(ancestorKey.nativeKey()));
+    }
+
+    /**
+     * Creates an ancestor filter whose key is a parameter.
+     *
+     * @param parameterIndex the index of the parameter
+     * @return the filter template
+     */
+    static FilterTemplate forAncestorParameter(int parameterIndex) {
+      return new FilterTemplate(null, null, null, parameterIndex, null);
+    }
+
+    /**
+     * Tells whether or not this filter refers to a parameter.
+     *
+     * @return <code>true</code>, if this filter refers to a parameter; <code>false</code>,
+     *     otherwise.
+     */
+    boolean isParameter() {
+      return parameterIndex >= 0;
+    }
+
+    /**
+     * Returns the native filter, using the given parameter values.
+     *
+     * @param parameterValues the values of the parameters
+     * @return the native filter
+     */
+    Filter toFilter(Object[] parameterValues) {
+      if (filter != null) {
+        return filter;
+      }
+      Object value = parameterValues[parameterIndex];
+      if (mappedName == null) {
+        if (!(value instanceof DatastoreKey)) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Parameter %d must be a %s", parameterIndex + 1, DatastoreKey.class.getName()));
+        }
+        return PropertyFilter.hasAncestor(((DatastoreKey) value).nativeKey());
+      }
+      return createPropertyFilter(mappedName, operator, toNativeValue(mapper, value));
+    }
+
+    /**
+     * Converts the given value to a native value using the given mapper.
+     *
+     * @param mapper the mapper
+     * @param value the value, may be <code>null</code>.
+     * @return the native value
+     */
+    private static Value<?> toNativeValue(Mapper mapper, Object value) {
+      if (value == null) {
+        return NullValue.of();
+      }
+      return mapper.toDatastore(value).build();
+    }
+
+    /**
+     * Creates a native property filter.
+     *
+     * @param mappedName the mapped name of the property
+     * @param operator the operator
+     * @param value the value
+     * @return the native property filter
+     */
+    private static PropertyFilter createPropertyFilter(
+        String mappedName, Operator operator, Value<?> value) {
+      switch (operator) {
+        case LESS_THAN:
+          return PropertyFilter.lt(mappedName, value);
+        case LESS_THAN_OR_EQUAL:
+          return PropertyFilter.le(mappedName, value);
+        case GREATER_THAN:
+          return PropertyFilter.gt(mappedName, value);
+        case GREATER_THAN_OR_EQUAL:
+          return PropertyFilter.ge(mappedName, value);
+        case EQUAL:
+        default:
+          return PropertyFilter.eq(mappedName, value);
+      }
+    }
+  }
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static com.jmethods.catatumbo.impl.DatastoreUtils.rollbackIfActive;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.Transaction;
+import com.jmethods.catatumbo.CounterService;
+import com.jmethods.catatumbo.ShardedCounterOptions;
+import com.jmethods.catatumbo.Utility;
+
+/**
+ * Default implementation of {@link CounterService}. Each counter has an entity of Kind {@value
+ * #COUNTER_KIND}, which records the number of shards, and up to that many shard entities of Kind
+ * {@value #SHARD_KIND}. All of them are root entities, so increments to different shards never
+ * contend with each other.
+ *
+ * @author Sai Pullabhotla
+ */
+public class DefaultCounterService implements CounterService {
+
+  /** Kind of the entities that record the number of shards of each counter */
+  static final String COUNTER_KIND = "CatatumboCounter";
+
+  /** Kind of the shard entities */
+  static final String SHARD_KIND = "CatatumboCounterShard";
+
+  /** Property of the counter entity that holds the number of shards */
+  static final String SHARD_COUNT_PROPERTY = "shardCount";
+
+  /** Property of the shard entity that holds the count of the shard */
+  static final String COUNT_PROPERTY = "count";
+
+  /** Maximum number of keys in a single lookup */
+  private static final int MAX_LOOKUP_SIZE = 1000;
+
+  /** Maximum number of mutations in a single commit */
+  private static final int MAX_MUTATIONS = 500;
+
+  /** The entity manager */
+  private final DefaultEntityManager entityManager;
+
+  /** Initial number of shards */
+  private final int initialShards;
+
+  /** Maximum number of shards */
+  private final int maxShards;
+
+  /** Maximum number of attempts for an increment */
+  private final int maxAttempts;
+
+  /** Time, in nanoseconds, for which totals are cached */
+  private final long cacheExpiration;
+
+  /** Known number of shards, keyed by the key of the counter entity */
+  private final ConcurrentMap<Key, Integer> shardCounts = new ConcurrentHashMap<>();
+
+  /** Cached totals, keyed by the key of the counter entity */
+  private final ConcurrentMap<Key, CachedTotal> totals = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new instance of <code>DefaultCounterService</code>.
+   *
+   * @param entityManager the entity manager
+   * @param options the options
+   */
+  public DefaultCounterService(DefaultEntityManager entityManager, ShardedCounterOptions options) {
+    this.entityManager = entityManager;
+    this.initialShards = options.getInitialShards();
+    this.maxShards = Math.max(options.getMaxShards(), initialShards);
+    this.maxAttempts = options.getMaxAttempts();
+    this.cacheExpiration = TimeUnit.MILLISECONDS.toNanos(options.getCacheExpiration());
+  }
+
+  @Override
+  public void increment(String name) {
+    increment(name, 1);
+  }
+
+  @Override
+  public void increment(String name, long delta) {
+    Key counterKey = counterKey(name);
+    int shards = getKnownShardCount(counterKey);
+    boolean contended = false;
+    DatastoreException failure = null;
+    for (int attempt = 0; attempt < maxAttempts; attempt++) {
+      try {
+        incrementShard(shardKey(name, ThreadLocalRandom.current().nextInt(shards)), delta);
+        failure = null;
+        break;
+      } catch (DatastoreException exp) {
+        failure = exp;
+        if (!DatastoreUtils.isContention(exp)) {
+          break;
+        }
+        contended = true;
+      }
+    }
+    if (contended) {
+      grow(counterKey, shards);
+    }
+    if (failure != null) {
+      throw DatastoreUtils.wrap(failure);
+    }
+    CachedTotal total = totals.get(counterKey);
+    if (total != null) {
+      total.add(delta);
+    }
+  }
+
+  @Override
+  public long getCount(String name) {
+    Key counterKey = counterKey(name);
+    CachedTotal cachedTotal = totals.get(counterKey);
+    if (cachedTotal != null && !cachedTotal.isExpired()) {
+      return cachedTotal.get();
+    }
+    try {
+      Datastore client = entityManager.selectClient();
+      Integer knownShards = shardCounts.get(counterKey);
+      int shards = knownShards == null ? initialShards : knownShards;
+      List<Key> keys = new ArrayList<>(shards + 1);
+      keys.add(counterKey);
+      addShardKeys(keys, name, 0, shards);
+      long[] result = lookup(client, keys);
+      int storedShards = (int) result[1];
+      long total = result[0];
+      if (storedShards > shards) {
+        // The counter grew since the shard count was last seen
+        keys.clear();
+        addShardKeys(keys, name, shards, storedShards);
+        total += lookup(client, keys)[0];
+      }
+      if (storedShards > 0) {
+        shardCounts.put(counterKey, storedShards);
+      }
+      if (cacheExpiration > 0) {
+        totals.put(counterKey, new CachedTotal(total, System.nanoTime() + cacheExpiration));
+      }
+      return total;
+    } catch (DatastoreException exp) {
+      throw DatastoreUtils.wrap(exp);
+    }
+  }
+
+  @Override
+  public int getShardCount(String name) {
+    Key counterKey = counterKey(name);
+    try {
+      Entity counter = entityManager.selectClient().get(counterKey);
+      if (counter == null) {
+        return initialShards;
+      }
+      int shards = (int) counter.getLong(SHARD_COUNT_PROPERTY);
+      shardCounts.put(counterKey, shards);
+      return shards;
+    } catch (DatastoreException exp) {
+      throw DatastoreUtils.wrap(exp);
+    }
+  }
+
+  @Override
+  public void delete(String name) {
+    Key counterKey = counterKey(name);
+    int shards = getShardCount(name);
+    try {
+      Datastore client = entityManager.selectClient();
+      List<Key> keys = new ArrayList<>(shards + 1);
+      addShardKeys(keys, name, 0, shards);
+      keys.add(counterKey);
+      for (int i = 0; i < keys.size(); i += MAX_MUTATIONS) {
+        List<Key> chunk = keys.subList(i, Math.min(i + MAX_MUTATIONS, keys.size()));
+        client.delete(chunk.toArray(new Key[0]));
+      }
+    } catch (DatastoreException exp) {
+      throw DatastoreUtils.wrap(exp);
+    } finally {
+      shardCounts.remove(counterKey);
+      totals.remove(counterKey);
+    }
+  }
+
+  /**
+   * Returns the key of the counter entity of the given counter, in the effective namespace.
+   *
+   * @param name the name of the counter
+   * @return the key of the counter entity.
+   * @throws IllegalArgumentException if the name is <code>null</code> or empty.
+   */
+  private Key counterKey(String name) {
+    if (Utility.isNullOrEmpty(name)) {
+      throw new IllegalArgumentException("Counter name cannot be null or empty");
+    }
+    return entityManager.newNativeKey(COUNTER_KIND, name);
+  }
+
+  /**
+   * Returns the key of the given shard of the given counter, in the effective namespace.
+   *
+   * @param name the name of the counter
+   * @param shard the index of the shard
+   * @return the key of the shard.
+   */
+  private Key shardKey(String name, int shard) {
+    return entityManager.newNativeKey(SHARD_KIND, shardName(name, shard));
+  }
+
+  /**
+   * Returns the name of the given shard of the given counter.
+   *
+   * @param name the name of the counter
+   * @param shard the index of the shard
+   * @return the name of the shard.
+   */
+  static String shardName(String name, int shard) {
+    return name + ":" + shard;
+  }
+
+  /**
+   * Adds the keys of the given range of shards to the given list.
+   *
+   * @param keys the list of keys
+   * @param name the name of the counter
+   * @param from the index of the first shard, inclusive
+   * @param to the index of the last shard, exclusive
+   */
+  private void addShardKeys(List<Key> keys, String name, int from, int to) {
+    for (int i = from; i < to; i++) {
+      keys.add(shardKey(name, i));
+    }
+  }
+
+  /**
+   * Looks up the given counter and shard entities.
+   *
+   * @param client the Datastore client
+   * @param keys the keys of the entities
+   * @return an array whose first element is the sum of the shards that were found, and whose second
+   *     element is the number of shards recorded by the counter entity, or zero, if it was not
+   *     found.
+   */
+  private static long[] lookup(Datastore client, List<Key> keys) {
+    long[] result = new long[2];
+    for (int i = 0; i < keys.size(); i += MAX_LOOKUP_SIZE) {
+      List<Key> chunk = keys.subList(i, Math.min(i + MAX_LOOKUP_SIZE, keys.size()));
+      Iterator<Entity> entities = client.get(chunk.toArray(new Key[0]));
+      while (entities.hasNext()) {
+        Entity entity = entities.next();
+        if (COUNTER_KIND.equals(entity.getKey().getKind())) {
+          result[1] = entity.getLong(SHARD_COUNT_PROPERTY);
+        } else {
+          result[0] += entity.getLong(COUNT_PROPERTY);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds the given amount to the given shard in a transaction.
+   *
+   * @param shardKey the key of the shard
+   * @param delta the amount to add
+   * @throws DatastoreException if the transaction fails
+   */
+  private void incrementShard(Key shardKey, long delta) {
+    Transaction transaction = entityManager.selectClient().newTransaction();
+    try {
+      Entity shard = transaction.get(shardKey);
+      long count = shard == null ? 0 : shard.getLong(COUNT_PROPERTY);
+      transaction.put(newEntity(shardKey, COUNT_PROPERTY, count + delta));
+      transaction.commit();
+    } finally {
+      rollbackIfActive(transaction);
+    }
+  }
+
+  /**
+   * Returns the number of shards of the given counter, as last seen by this service. The first
+   * time a counter is used, its counter entity is read, and created, if it does not exist. If
+   * another service creates the same counter at the same time, the counter is read again.
+   *
+   * @param counterKey the key of the counter entity
+   * @return the number of shards.
+   */
+  private int getKnownShardCount(Key counterKey) {
+    Integer shards = shardCounts.get(counterKey);
+    if (shards != null) {
+      return shards;
+    }
+    DatastoreException failure = null;
+    for (int attempt = 0; attempt < maxAttempts; attempt++) {
+      try {
+        int storedShards = readOrCreateCounter(counterKey);
+        shardCounts.put(counterKey, storedShards);
+        return storedShards;
+      } catch (DatastoreException exp) {
+        failure = exp;
+        if (!DatastoreUtils.isContention(exp)) {
+          break;
+        }
+      }
+    }
+    throw DatastoreUtils.wrap(failure);
+  }
+
+  /**
+   * Reads the number of shards from the given counter entity, creating the entity, if it does not
+   * exist.
+   *
+   * @param counterKey the key of the counter entity
+   * @return the number of shards.
+   * @throws DatastoreException if the transaction fails
+   */
+  private int readOrCreateCounter(Key counterKey) {
+    Transaction transaction = entityManager.selectClient().newTransaction();
+    try {
+      Entity counter = transaction.get(counterKey);
+      if (counter != null) {
+        return (int) counter.getLong(SHARD_COUNT_PROPERTY);
+      }
+      transaction.put(newEntity(counterKey, SHARD_COUNT_PROPERTY, initialShards));
+      transaction.commit();
+      return initialShards;
+    } finally {
+      rollbackIfActive(transaction);
+    }
+  }
+
+  /**
+   * Doubles the number of shards of the given counter, up to the maximum, unless another increment
+   * already grew it beyond the given number. If another increment grows the counter at the same
+   * time, the known number of shards is discarded, so that it is read again. Other failures are
+   * propagated.
+   *
+   * @param counterKey the key of the counter entity
+   * @param observedShards the number of shards the contended increment was spread over
+   */
+  private void grow(Key counterKey, int observedShards) {
+    if (observedShards >= maxShards) {
+      return;
+    }
+    Transaction transaction = entityManager.selectClient().newTransaction();
+    try {
+      Entity counter = transaction.get(counterKey);
+      int storedShards =
+          counter == null ? initialShards : (int) counter.getLong(SHARD_COUNT_PROPERTY);
+      if (storedShards <= observedShards) {
+        storedShards = Math.min(maxShards, observedShards * 2);
+        transaction.put(newEntity(counterKey, SHARD_COUNT_PROPERTY, storedShards));
+        transaction.commit();
+      }
+      shardCounts.put(counterKey, storedShards);
+    } catch (DatastoreException exp) {
+      if (!DatastoreUtils.isContention(exp)) {
+        throw DatastoreUtils.wrap(exp);
+      }
+      // Another increment grew the counter at the same time
+      shardCounts.remove(counterKey);
+    } finally {
+      rollbackIfActive(transaction);
+    }
+  }
+
+  /**
+   * Creates an entity with a single, unindexed, long property.
+   *
+   * @param key the key of the entity
+   * @param property the name of the property
+   * @param value the value of the property
+   * @return the entity
+   */
+  private static Entity newEntity(Key key, String property, long value) {
+    return Entity.newBuilder(key)
+        .set(property, LongValue.newBuilder(value).setExcludeFromIndexes(true).build())
+        .build();
+  }
+
+  /**
+   * Total of a counter, cached for a limited time.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class CachedTotal {
+
+    /** The total */
+    private final AtomicLong total;
+
+    /** Time at which the total expires, as per System.nanoTime() */
+    private final long expiration;
+
+    /**
+     * Creates a new instance of <code>CachedTotal</code>.
+     *
+     * @param total the total
+     * @param expiration time at which the total expires, as per System.nanoTime()
+     */
+    CachedTotal(long total, long expiration) {
+      this.total = new AtomicLong(total);
+      this.expiration = expiration;
+    }
+
+    /**
+     * Returns the total.
+     *
+     * @return the total.
+     */
+    long get() {
+      return total.get();
+    }
+
+    /**
+     * Adds the given amount to the total.
+     *
+     * @param delta the amount to add
+     */
+    void add(long delta) {
+      total.addAndGet(delta);
+    }
+
+    /**
+     * Tells whether or not the total has expired.
+     *
+     * @return <code>true</code>, if the total has expired; <code>false</code>, otherwise.
+     */
+    boolean isExpired() {
+      return System.nanoTime() - expiration >= 0;
+    }
+  }
+}
@@ -20,10 +20,13 @@ import com.google.cloud.datastore.Batch;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
 import com.google.cloud.datastore.FullEntity;
+import com.jmethods.catatumbo.BatchOptions;
 import com.jmethods.catatumbo.DatastoreBatch;
 import com.jmethods.catatumbo.DatastoreKey;
 import com.jmethods.catatumbo.impl.Marshaller.Intent;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Default implementation of {@link DatastoreBatch} to execute batch updates.
@@ -44,15 +47,46 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
   /** A reference to the Datastore */
   private Datastore datastore = null;
 
+  /** Number of writes in this batch, keyed by Kind, for governing the rate of writes */
+  private final Map<String, Integer> stagedWrites = new HashMap<>();
+
   /**
    * Creates a new instance of <code>DefaultDatastoreBatch</code>.
    *
    * @param entityManager a reference to the entity manager
    */
   public DefaultDatastoreBatch(DefaultEntityManager entityManager) {
+    this(entityManager, entityManager.getDatastore());
+  }
+
+  /**
+   * Creates a new instance of <code>DefaultDatastoreBatch</code> that runs on the given Datastore
+   * client.
+   *
+   * @param entityManager a reference to the entity manager
+   * @param datastore the Datastore client
+   */
+  public DefaultDatastoreBatch(DefaultEntityManager entityManager, Datastore datastore) {
+    this(entityManager, datastore, null);
+  }
+
+  /**
+   * Creates a new instance of <code>DefaultDatastoreBatch</code> that runs on the given Datastore
+   * client and, if options are given, sends its mutations in sub-batches as they are added.
+   *
+   * @param entityManager a reference to the entity manager
+   * @param datastore the Datastore client
+   * @param options the options for flushing sub-batches, or <code>null</code> to send all
+   *     mutations in one request when the batch is submitted.
+   */
+  public DefaultDatastoreBatch(
+      DefaultEntityManager entityManager, Datastore datastore, BatchOptions options) {
     this.entityManager = entityManager;
-    this.datastore = entityManager.getDatastore();
-    this.nativeBatch = datastore.newBatch();
+    this.datastore = datastore;
+    this.nativeBatch =
+        options == null
+            ? datastore.newBatch()
+            : new AutoFlushingBatch(entityManager, datastore, options);
     this.writer = new DefaultDatastoreWriter(this);
   }
 
@@ -65,6 +99,15 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
     return entityManager;
   }
 
+  /**
+   * Returns the Datastore client this batch runs on.
+   *
+   * @return the Datastore client this batch runs on.
+   */
+  public Datastore getDatastore() {
+    return datastore;
+  }
+
   /**
    * Returns the native batch.
    *
@@ -76,12 +119,16 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
 
   @Override
   public <E> E insert(E entity) {
-    return writer.insert(entity);
+    E insertedEntity = writer.insert(entity);
+    stage(entity);
+    return insertedEntity;
   }
 
   @Override
   public <E> List<E> insert(List<E> entities) {
-    return writer.insert(entities);
+    List<E> insertedEntities = writer.insert(entities);
+    stage(entities);
+    return insertedEntities;
   }
 
   @Override
@@ -89,8 +136,9 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
     try {
       DatastoreUtils.validateDeferredIdAllocation(entity);
       FullEntity<?> nativeEntity =
-          (FullEntity<?>) Marshaller.marshal(entityManager, entity, Intent.INSERT);
+          (FullEntity<?>) Marshaller.marshal(entityManager, entity, Intent.INSERT, true);
       nativeBatch.addWithDeferredIdAllocation(nativeEntity);
+      stage(nativeEntity.getKey().getKind(), 1);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
     }
@@ -102,10 +150,11 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
       return;
     }
     try {
-      DatastoreUtils.validateDeferredIdAllocation(entities.get(0));
+      DatastoreUtils.validateDeferredIdAllocation(entities);
       FullEntity<?>[] nativeEntities =
-          DatastoreUtils.toNativeFullEntities(entities, entityManager, Intent.INSERT);
+          DatastoreUtils.toNativeFullEntities(entities, entityManager, Intent.INSERT, true);
       nativeBatch.addWithDeferredIdAllocation(nativeEntities);
+      stage(entities);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
     }
@@ -113,22 +162,30 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
 
   @Override
   public <E> E update(E entity) {
-    return writer.update(entity);
+    E updatedEntity = writer.update(entity);
+    stage(entity);
+    return updatedEntity;
   }
 
   @Override
   public <E> List<E> update(List<E> entities) {
-    return writer.update(entities);
+    List<E> updatedEntities = writer.update(entities);
+    stage(entities);
+    return updatedEntities;
   }
 
   @Override
   public <E> E upsert(E entity) {
-    return writer.upsert(entity);
+    E upsertedEntity = writer.upsert(entity);
+    stage(entity);
+    return upsertedEntity;
   }
 
   @Override
   public <E> List<E> upsert(List<E> entities) {
-    return writer.upsert(entities);
+    List<E> upsertedEntities = writer.upsert(entities);
+    stage(entities);
+    return upsertedEntities;
   }
 
   @Override
@@ -136,8 +193,9 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
     try {
       DatastoreUtils.validateDeferredIdAllocation(entity);
       FullEntity<?> nativeEntity =
-          (FullEntity<?>) Marshaller.marshal(entityManager, entity, Intent.UPSERT);
+          (FullEntity<?>) Marshaller.marshal(entityManager, entity, Intent.UPSERT, true);
       nativeBatch.putWithDeferredIdAllocation(nativeEntity);
+      stage(nativeEntity.getKey().getKind(), 1);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
     }
@@ -149,10 +207,11 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
       return;
     }
     try {
-      DatastoreUtils.validateDeferredIdAllocation(entities.get(0));
+      DatastoreUtils.validateDeferredIdAllocation(entities);
       FullEntity<?>[] nativeEntities =
-          DatastoreUtils.toNativeFullEntities(entities, entityManager, Intent.UPSERT);
+          DatastoreUtils.toNativeFullEntities(entities, entityManager, Intent.UPSERT, true);
       nativeBatch.putWithDeferredIdAllocation(nativeEntities);
+      stage(entities);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
     }
@@ -161,41 +220,51 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
   @Override
   public void delete(Object entity) {
     writer.delete(entity);
+    stage(entity);
   }
 
   @Override
   public void delete(List<?> entities) {
     writer.delete(entities);
+    stage(entities);
   }
 
   @Override
   public <E> void delete(Class<E> entityClass, long id) {
     writer.delete(entityClass, id);
+    stage(EntityIntrospector.introspect(entityClass).getKind(), 1);
   }
 
   @Override
   public <E> void delete(Class<E> entityClass, String id) {
     writer.delete(entityClass, id);
+    stage(EntityIntrospector.introspect(entityClass).getKind(), 1);
   }
 
   @Override
   public <E> void delete(Class<E> entityClass, DatastoreKey parentKey, long id) {
     writer.delete(entityClass, parentKey, id);
+    stage(EntityIntrospector.introspect(entityClass).getKind(), 1);
   }
 
   @Override
   public <E> void delete(Class<E> entityClass, DatastoreKey parentKey, String id) {
     writer.delete(entityClass, parentKey, id);
+    stage(EntityIntrospector.introspect(entityClass).getKind(), 1);
   }
 
   @Override
   public void deleteByKey(DatastoreKey key) {
     writer.deleteByKey(key);
+    stage(key.kind(), 1);
   }
 
   @Override
   public void deleteByKey(List<DatastoreKey> keys) {
     writer.deleteByKey(keys);
+    for (DatastoreKey key : keys) {
+      stage(key.kind(), 1);
+    }
   }
 
   @Override
@@ -205,14 +274,57 @@ public class DefaultDatastoreBatch implements DatastoreBatch {
 
   @Override
   public Response submit() {
+    // An auto-flushing batch admits each sub-batch through the governor on its own
+    WriteRateGovernor governor =
+        nativeBatch instanceof AutoFlushingBatch ? null : entityManager.getWriteRateGovernor();
+    if (governor != null) {
+      governor.acquire(stagedWrites);
+    }
     try {
       Batch.Response nativeResponse = nativeBatch.submit();
       return new DefaultResponse(nativeResponse);
     } catch (DatastoreException exp) {
+      if (governor != null) {
+        governor.onFailure(exp, stagedWrites.keySet());
+      }
       throw DatastoreUtils.wrap(exp);
     }
   }
 
+  /**
+   * Counts the given entity towards the writes of its Kind.
+   *
+   * @param entity the entity
+   */
+  private void stage(Object entity) {
+    stage(EntityIntrospector.introspect(entity.getClass()).getKind(), 1);
+  }
+
+  /**
+   * Counts the given entities towards the writes of their Kinds.
+   *
+   * @param entities the entities, may be <code>null</code>.
+   */
+  private void stage(List<?> entities) {
+    if (entities == null) {
+      return;
+    }
+    for (Object entity : entities) {
+      stage(entity);
+    }
+  }
+
+  /**
+   * Counts the given number of writes towards the writes of the given Kind.
+   *
+   * @param kind the Kind
+   * @param count the number of writes
+   */
+  private void stage(String kind, int count) {
+    Integer staged = stagedWrites.get(kind);
+    stagedWrites.put(kind, staged == null ? count : staged + count);
+  }
+
   /**
    * Implementation of {@link com.jmethods.catatumbo.DatastoreBatch.Response}.
    *
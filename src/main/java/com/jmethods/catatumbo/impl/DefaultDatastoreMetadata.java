@@ -21,9 +21,11 @@ import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
 import com.google.cloud.datastore.GqlQuery;
 import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyQuery;
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.Query.ResultType;
 import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
 import com.jmethods.catatumbo.DatastoreCursor;
 import com.jmethods.catatumbo.DatastoreMetadata;
 import com.jmethods.catatumbo.DatastoreProperty;
@@ -33,8 +35,16 @@ import com.jmethods.catatumbo.DefaultQueryResponse;
 import com.jmethods.catatumbo.EntityManagerException;
 import com.jmethods.catatumbo.EntityQueryRequest;
 import com.jmethods.catatumbo.QueryResponse;
+import com.jmethods.catatumbo.SchemaSnapshot;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Default implementation of {@link DatastoreMetadata}.
@@ -55,13 +65,32 @@ public class DefaultDatastoreMetadata implements DatastoreMetadata {
   /** Reference to the entity manager that created this object */
   private DefaultEntityManager entityManager;
 
+  /** Maximum age of the cached schema snapshot, in milliseconds. Zero disables the cache. */
+  private final long maxAgeMillis;
+
   /**
    * Creates a new instance of <code>DefaultDatastoreMetadata</code>.
    *
    * @param entityManager the entity manager that created this metadata object.
    */
   public DefaultDatastoreMetadata(DefaultEntityManager entityManager) {
+    this(entityManager, 0L);
+  }
+
+  /**
+   * Creates a new instance of <code>DefaultDatastoreMetadata</code>.
+   *
+   * @param entityManager the entity manager that created this metadata object.
+   * @param maxAgeMillis the maximum age of the cached schema snapshot, in milliseconds
+   */
+  private DefaultDatastoreMetadata(DefaultEntityManager entityManager, long maxAgeMillis) {
     this.entityManager = entityManager;
+    this.maxAgeMillis = Math.max(maxAgeMillis, 0L);
+  }
+
+  @Override
+  public DatastoreMetadata withCache(long duration, TimeUnit unit) {
+    return new DefaultDatastoreMetadata(entityManager, unit.toMillis(duration));
   }
 
   @Override
@@ -77,29 +106,32 @@ public class DefaultDatastoreMetadata implements DatastoreMetadata {
   @Override
   public QueryResponse<String> getNamespaces(DatastoreCursor fromCursor, int limit) {
     try {
-      String query = "SELECT __key__ FROM " + ENTITY_NAMESPACES + " ORDER BY __key__";
+      KeyQuery.Builder queryBuilder =
+          Query.newKeyQueryBuilder().setKind(ENTITY_NAMESPACES).setOrderBy(OrderBy.asc("__key__"));
       if (limit > 0) {
-        query += " LIMIT @Limit";
+        queryBuilder.setLimit(limit);
       }
-      query += " OFFSET @Offset";
-      GqlQuery.Builder<Key> gqlQueryBuilder = Query.newGqlQueryBuilder(ResultType.KEY, query);
-      if (limit > 0) {
-        gqlQueryBuilder.setBinding("Limit", limit);
+      String encodedCursor = fromCursor == null ? null : fromCursor.getEncoded();
+      if (encodedCursor != null && !encodedCursor.isEmpty()) {
+        queryBuilder.setStartCursor(Cursor.fromUrlSafe(encodedCursor));
       }
-      gqlQueryBuilder.setBinding("Offset", Cursor.fromUrlSafe(fromCursor.getEncoded()));
-      GqlQuery<Key> gqlQuery = gqlQueryBuilder.build();
-      Datastore datastore = entityManager.getDatastore();
-      QueryResults<Key> results = datastore.run(gqlQuery);
       DefaultQueryResponse<String> response = new DefaultQueryResponse<>();
       List<String> namespaces = new ArrayList<>(Math.max(limit, 50));
-      response.setStartCursor(new DefaultDatastoreCursor(results.getCursorAfter().toUrlSafe()));
-      while (results.hasNext()) {
-        Key key = results.next();
-        String name = key.getName();
-        namespaces.add(name == null ? "" : name);
+      int client = entityManager.acquireClient();
+      try {
+        Datastore datastore = entityManager.getClientPool().getClient(client);
+        QueryResults<Key> results = datastore.run(queryBuilder.build());
+        response.setStartCursor(new DefaultDatastoreCursor(results.getCursorAfter().toUrlSafe()));
+        while (results.hasNext()) {
+          Key key = results.next();
+          String name = key.getName();
+          namespaces.add(name == null ? "" : name);
+        }
+        response.setEndCursor(new DefaultDatastoreCursor(results.getCursorAfter().toUrlSafe()));
+      } finally {
+        entityManager.getClientPool().release(client);
       }
       response.setResults(namespaces);
-      response.setEndCursor(new DefaultDatastoreCursor(results.getCursorAfter().toUrlSafe()));
       return response;
     } catch (DatastoreException exp) {
       throw new EntityManagerException(exp);
@@ -118,15 +150,20 @@ public class DefaultDatastoreMetadata implements DatastoreMetadata {
       GqlQuery.Builder<Key> gqlQueryBuilder = Query.newGqlQueryBuilder(ResultType.KEY, query);
       gqlQueryBuilder.setNamespace(entityManager.getEffectiveNamespace());
       GqlQuery<Key> gqlQuery = gqlQueryBuilder.build();
-      QueryResults<Key> results = entityManager.getDatastore().run(gqlQuery);
       List<String> kinds = new ArrayList<>(50);
-      while (results.hasNext()) {
-        Key key = results.next();
-        String kind = key.getName();
-        if (excludeSystemKinds && kind.startsWith("__")) {
-          continue;
+      int client = entityManager.acquireClient();
+      try {
+        QueryResults<Key> results = entityManager.getClientPool().getClient(client).run(gqlQuery);
+        while (results.hasNext()) {
+          Key key = results.next();
+          String kind = key.getName();
+          if (excludeSystemKinds && kind.startsWith("__")) {
+            continue;
+          }
+          kinds.add(key.getName());
         }
-        kinds.add(key.getName());
+      } finally {
+        entityManager.getClientPool().release(client);
       }
       return kinds;
     } catch (DatastoreException exp) {
@@ -137,7 +174,7 @@ public class DefaultDatastoreMetadata implements DatastoreMetadata {
   @Override
   public List<DatastoreProperty> getProperties(String kind) {
     try {
-      Key nativeKey = entityManager.newNativeKeyFactory().setKind(ENTITY_KINDS).newKey(kind);
+      Key nativeKey = entityManager.newNativeKey(ENTITY_KINDS, kind);
       DefaultDatastoreKey key = new DefaultDatastoreKey(nativeKey);
       String query =
           "SELECT * FROM " + ENTITY_PROPERTIES + " WHERE __key__ HAS ANCESTOR @1 ORDER BY __key__";
@@ -150,4 +187,149 @@ public class DefaultDatastoreMetadata implements DatastoreMetadata {
       throw new EntityManagerException(exp);
     }
   }
+
+  @Override
+  public SchemaSnapshot getSchemaSnapshot() {
+    SchemaSnapshot snapshot = entityManager.getSchemaSnapshot();
+    if (snapshot != null
+        && maxAgeMillis > 0
+        && System.currentTimeMillis() - snapshot.getCreationTime() <= maxAgeMillis) {
+      return snapshot;
+    }
+    snapshot = getSchemaSnapshot(getNamespaces(), DEFAULT_PARALLELISM);
+    entityManager.setSchemaSnapshot(snapshot);
+    return snapshot;
+  }
+
+  @Override
+  public SchemaSnapshot getSchemaSnapshot(Collection<String> namespaces, int parallelism) {
+    long creationTime = System.currentTimeMillis();
+    List<String> uniqueNamespaces = new ArrayList<>(new LinkedHashSet<>(namespaces));
+    List<NamespaceSchemaTask> tasks = new ArrayList<>(uniqueNamespaces.size());
+    for (String namespace : uniqueNamespaces) {
+      tasks.add(new NamespaceSchemaTask(entityManager.forNamespace(namespace)));
+    }
+    List<Map<String, List<DatastoreProperty>>> results =
+        ConcurrencyUtils.invokeAll(tasks, parallelism, "catatumbo-schema-");
+    Map<String, Map<String, List<DatastoreProperty>>> schema = new HashMap<>();
+    for (int i = 0; i < uniqueNamespaces.size(); i++) {
+      schema.put(uniqueNamespaces.get(i), results.get(i));
+    }
+    return new SchemaSnapshot(schema, creationTime);
+  }
+
+  @Override
+  public SchemaSnapshot refreshSchemaSnapshot(String namespace, Collection<String> kinds) {
+    SchemaSnapshot snapshot = entityManager.getSchemaSnapshot();
+    if (snapshot == null) {
+      snapshot = getSchemaSnapshot(getNamespaces(), DEFAULT_PARALLELISM);
+      entityManager.setSchemaSnapshot(snapshot);
+      return snapshot;
+    }
+    DefaultEntityManager namespaceManager = entityManager.forNamespace(namespace);
+    List<String> existingKinds = new DefaultDatastoreMetadata(namespaceManager).getKinds();
+    List<PropertiesTask> tasks = new ArrayList<>(kinds.size());
+    List<String> refreshedKinds = new ArrayList<>(kinds.size());
+    for (String kind : new LinkedHashSet<>(kinds)) {
+      if (existingKinds.contains(kind)) {
+        tasks.add(new PropertiesTask(namespaceManager, kind));
+        refreshedKinds.add(kind);
+      }
+    }
+    List<List<DatastoreProperty>> results =
+        ConcurrencyUtils.invokeAll(tasks, DEFAULT_PARALLELISM, "catatumbo-schema-");
+
+    Map<String, Map<String, List<DatastoreProperty>>> schema = new HashMap<>(snapshot.getSchema());
+    Map<String, List<DatastoreProperty>> namespaceSchema = new HashMap<>();
+    if (schema.containsKey(namespace)) {
+      namespaceSchema.putAll(schema.get(namespace));
+    }
+    for (String kind : kinds) {
+      namespaceSchema.remove(kind);
+    }
+    for (int i = 0; i < refreshedKinds.size(); i++) {
+      namespaceSchema.put(refreshedKinds.get(i), results.get(i));
+    }
+    schema.put(namespace, namespaceSchema);
+    snapshot = new SchemaSnapshot(schema, snapshot.getCreationTime());
+    entityManager.setSchemaSnapshot(snapshot);
+    return snapshot;
+  }
+
+  /**
+   * Task for discovering the schema of a namespace. The schema is read using just two queries, one
+   * for the Kinds and one for the Properties of all Kinds, regardless of the number of Kinds in
+   * the namespace.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class NamespaceSchemaTask
+      implements Callable<Map<String, List<DatastoreProperty>>> {
+
+    /** Entity manager bound to the namespace */
+    private final DefaultEntityManager entityManager;
+
+    /**
+     * Creates a new instance of <code>NamespaceSchemaTask</code>.
+     *
+     * @param entityManager the entity manager bound to the namespace
+     */
+    NamespaceSchemaTask(DefaultEntityManager entityManager) {
+      this.entityManager = entityManager;
+    }
+
+    @Override
+    public Map<String, List<DatastoreProperty>> call() {
+      List<String> kinds = new DefaultDatastoreMetadata(entityManager).getKinds();
+      Map<String, List<DatastoreProperty>> schema = new LinkedHashMap<>();
+      for (String kind : kinds) {
+        schema.put(kind, new ArrayList<DatastoreProperty>());
+      }
+      try {
+        String query = "SELECT * FROM " + ENTITY_PROPERTIES + " ORDER BY __key__";
+        EntityQueryRequest request = entityManager.createEntityQueryRequest(query);
+        QueryResponse<DatastoreProperty> response =
+            entityManager.executeEntityQueryRequest(DatastoreProperty.class, request);
+        for (DatastoreProperty property : response.getResults()) {
+          List<DatastoreProperty> properties = schema.get(property.getEntityName());
+          if (properties != null) {
+            properties.add(property);
+          }
+        }
+      } catch (DatastoreException exp) {
+        throw new EntityManagerException(exp);
+      }
+      return schema;
+    }
+  }
+
+  /**
+   * Task for reading the Properties of a single Kind.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class PropertiesTask implements Callable<List<DatastoreProperty>> {
+
+    /** Entity manager bound to the namespace of the Kind */
+    private final DefaultEntityManager entityManager;
+
+    /** The Kind */
+    private final String kind;
+
+    /**
+     * Creates a new instance of <code>PropertiesTask</code>.
+     *
+     * @param entityManager the entity manager bound to the namespace of the Kind
+     * @param kind the Kind
+     */
+    PropertiesTask(DefaultEntityManager entityManager, String kind) {
+      this.entityManager = entityManager;
+      this.kind = kind;
+    }
+
+    @Override
+    public List<DatastoreProperty> call() {
+      return new DefaultDatastoreMetadata(entityManager).getProperties(kind);
+    }
+  }
 }
@@ -20,6 +20,7 @@ import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
 import com.google.cloud.datastore.DatastoreReader;
 import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
 import com.google.cloud.datastore.GqlQuery;
 import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
@@ -28,6 +29,8 @@ import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.Query.ResultType;
 import com.google.cloud.datastore.QueryResults;
 import com.google.cloud.datastore.Transaction;
+import com.jmethods.catatumbo.CompiledQuery;
+import com.jmethods.catatumbo.DatastoreCursor;
 import com.jmethods.catatumbo.DatastoreKey;
 import com.jmethods.catatumbo.DefaultDatastoreCursor;
 import com.jmethods.catatumbo.DefaultDatastoreKey;
@@ -35,12 +38,19 @@ import com.jmethods.catatumbo.DefaultQueryResponse;
 import com.jmethods.catatumbo.DefaultQueryResponseMetadata;
 import com.jmethods.catatumbo.EntityManagerException;
 import com.jmethods.catatumbo.EntityQueryRequest;
+import com.jmethods.catatumbo.EntityQueryRequest.ExecutionMode;
 import com.jmethods.catatumbo.KeyQueryRequest;
 import com.jmethods.catatumbo.ProjectionQueryRequest;
 import com.jmethods.catatumbo.QueryResponse;
 import com.jmethods.catatumbo.QueryResponseMetadata;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Worker class for performing read operations on the Cloud Datastore.
@@ -64,8 +74,19 @@ public class DefaultDatastoreReader {
    * @param entityManager the entity manager that created this reader.
    */
   public DefaultDatastoreReader(DefaultEntityManager entityManager) {
+    this(entityManager, entityManager.getDatastore());
+  }
+
+  /**
+   * Creates a new instance of <code>DefaultDatastoreReader</code> that reads using the given
+   * Datastore client.
+   *
+   * @param entityManager the entity manager that created this reader.
+   * @param datastore the Datastore client
+   */
+  public DefaultDatastoreReader(DefaultEntityManager entityManager, Datastore datastore) {
     this.entityManager = entityManager;
-    this.datastore = entityManager.getDatastore();
+    this.datastore = datastore;
     this.nativeReader = datastore;
   }
 
@@ -76,7 +97,7 @@ public class DefaultDatastoreReader {
    */
   public DefaultDatastoreReader(DefaultDatastoreTransaction transaction) {
     this.entityManager = transaction.getEntityManager();
-    this.datastore = entityManager.getDatastore();
+    this.datastore = transaction.getDatastore();
     this.nativeReader = transaction.getNativeTransaction();
   }
 
@@ -109,7 +130,7 @@ public class DefaultDatastoreReader {
     EntityMetadata entityMetadata = EntityIntrospector.introspect(entityClass);
     Key nativeKey;
     if (parentKey == null) {
-      nativeKey = entityManager.newNativeKeyFactory().setKind(entityMetadata.getKind()).newKey(id);
+      nativeKey = entityManager.newNativeKey(entityMetadata.getKind(), id);
     } else {
       nativeKey = Key.newBuilder(parentKey.nativeKey(), entityMetadata.getKind(), id).build();
     }
@@ -145,7 +166,7 @@ public class DefaultDatastoreReader {
     EntityMetadata entityMetadata = EntityIntrospector.introspect(entityClass);
     Key nativeKey;
     if (parentKey == null) {
-      nativeKey = entityManager.newNativeKeyFactory().setKind(entityMetadata.getKind()).newKey(id);
+      nativeKey = entityManager.newNativeKey(entityMetadata.getKind(), id);
     } else {
       nativeKey = Key.newBuilder(parentKey.nativeKey(), entityMetadata.getKind(), id).build();
     }
@@ -211,6 +232,50 @@ public class DefaultDatastoreReader {
     return fetch(entityClass, nativeKeys);
   }
 
+  /**
+   * Retrieves and returns the entities for the given keys, which may be of different Kinds, in a
+   * single lookup. Each entity is unmarshalled into the class, from the given classes, whose Kind
+   * matches the Kind of its key.
+   *
+   * @param keys the entity keys
+   * @param entityClasses the entity classes of the Kinds of the given keys
+   * @return the entities that exist, keyed by their keys, in the same order as the given keys.
+   *     Keys that do not exist in the Cloud Datastore are not included.
+   * @throws IllegalArgumentException if two of the given classes map to the same Kind, or if no
+   *     class is given for the Kind of one of the keys.
+   * @throws EntityManagerException if any error occurs while accessing the Datastore.
+   */
+  public Map<DatastoreKey, Object> loadByKey(List<DatastoreKey> keys, Class<?>... entityClasses) {
+    if (keys == null || keys.isEmpty()) {
+      return new LinkedHashMap<>();
+    }
+    EntityKindRegistry registry = new EntityKindRegistry(entityClasses);
+    Set<Key> uniqueKeys = new LinkedHashSet<>(keys.size() * 2);
+    for (DatastoreKey key : keys) {
+      registry.getEntityClass(key.kind());
+      uniqueKeys.add(key.nativeKey());
+    }
+    try {
+      List<Entity> nativeEntities = lookup(uniqueKeys.toArray(new Key[uniqueKeys.size()]));
+      Map<DatastoreKey, Object> entities = new LinkedHashMap<>(nativeEntities.size() * 2);
+      List<Object> loadedEntities = new ArrayList<>(nativeEntities.size());
+      for (Entity nativeEntity : nativeEntities) {
+        if (nativeEntity == null) {
+          continue;
+        }
+        Key nativeKey = nativeEntity.getKey();
+        Object entity =
+            Unmarshaller.unmarshal(nativeEntity, registry.getEntityClass(nativeKey.getKind()));
+        entities.put(new DefaultDatastoreKey(nativeKey), entity);
+        loadedEntities.add(entity);
+      }
+      entityManager.executeEntityListeners(CallbackType.POST_LOAD, loadedEntities);
+      return entities;
+    } catch (DatastoreException exp) {
+      throw DatastoreUtils.wrap(exp);
+    }
+  }
+
   /**
    * Fetches the entity given the native key.
    *
@@ -221,12 +286,24 @@ public class DefaultDatastoreReader {
    */
   private <E> E fetch(Class<E> entityClass, Key nativeKey) {
     try {
-      Entity nativeEntity = nativeReader.get(nativeKey);
+      HedgedLookupExecutor hedgedLookupExecutor = getHedgedLookupExecutor();
+      Entity nativeEntity;
+      if (hedgedLookupExecutor == null) {
+        nativeEntity = nativeReader.get(nativeKey);
+      } else {
+        Key[] nativeKeys = {nativeKey};
+        nativeEntity =
+            hedgedLookupExecutor
+                .execute(
+                    new LookupTask(nativeReader, nativeKeys),
+                    new LookupTask(entityManager.selectClient(), nativeKeys))
+                .get(0);
+      }
       E entity = Unmarshaller.unmarshal(nativeEntity, entityClass);
       entityManager.executeEntityListeners(CallbackType.POST_LOAD, entity);
       return entity;
     } catch (DatastoreException exp) {
-      throw new EntityManagerException(exp);
+      throw DatastoreUtils.wrap(exp);
     }
   }
 
@@ -240,13 +317,44 @@ public class DefaultDatastoreReader {
    */
   private <E> List<E> fetch(Class<E> entityClass, Key[] nativeKeys) {
     try {
-      List<Entity> nativeEntities = nativeReader.fetch(nativeKeys);
+      List<Entity> nativeEntities = lookup(nativeKeys);
       List<E> entities = DatastoreUtils.toEntities(entityClass, nativeEntities);
       entityManager.executeEntityListeners(CallbackType.POST_LOAD, entities);
       return entities;
     } catch (DatastoreException exp) {
-      throw new EntityManagerException(exp);
+      throw DatastoreUtils.wrap(exp);
+    }
+  }
+
+  /**
+   * Looks up the native entities for the given native keys, hedging the lookup if hedging is
+   * enabled.
+   *
+   * @param nativeKeys the native keys of the entities
+   * @return the native entities, in the same order as the keys. If one or more keys do not exist,
+   *     the corresponding item in the returned list will be <code>null</code>.
+   */
+  private List<Entity> lookup(Key[] nativeKeys) {
+    HedgedLookupExecutor hedgedLookupExecutor = getHedgedLookupExecutor();
+    if (hedgedLookupExecutor == null) {
+      return nativeReader.fetch(nativeKeys);
     }
+    return hedgedLookupExecutor.execute(
+        new LookupTask(nativeReader, nativeKeys),
+        new LookupTask(entityManager.selectClient(), nativeKeys));
+  }
+
+  /**
+   * Returns the executor for hedged lookups, if hedging is enabled and this reader is not part of a
+   * transaction.
+   *
+   * @return the executor for hedged lookups, or <code>null</code>, if lookups are not hedged.
+   */
+  private HedgedLookupExecutor getHedgedLookupExecutor() {
+    if (nativeReader instanceof Transaction) {
+      return null;
+    }
+    return entityManager.getHedgedLookupExecutor();
   }
 
   /**
@@ -297,6 +405,34 @@ public class DefaultDatastoreReader {
    */
   public <E> QueryResponse<E> executeEntityQueryRequest(
       Class<E> expectedResultType, EntityQueryRequest request) {
+    OperationDeadline previous = OperationDeadline.current(request.getTimeout()).bind();
+    try {
+      return runEntityQueryRequest(expectedResultType, request);
+    } finally {
+      previous.bind();
+    }
+  }
+
+  /**
+   * Worker method for executing the given {@link EntityQueryRequest}.
+   *
+   * @param expectedResultType the expected type of results.
+   * @param request the entity query request
+   * @return the query response
+   */
+  private <E> QueryResponse<E> runEntityQueryRequest(
+      Class<E> expectedResultType, EntityQueryRequest request) {
+    if (request.getFetchGroup() != null || !request.getFetchFields().isEmpty()) {
+      if (request.getExecutionMode() != ExecutionMode.ENTITIES) {
+        throw new IllegalArgumentException(
+            "A fetch group or fetch fields cannot be combined with execution mode "
+                + request.getExecutionMode());
+      }
+      return executeFetchGroupQuery(expectedResultType, request);
+    }
+    if (request.getExecutionMode() == ExecutionMode.KEYS_THEN_LOOKUP) {
+      return executeKeysThenLookup(expectedResultType, request);
+    }
     try {
       GqlQuery.Builder<Entity> queryBuilder =
           Query.newGqlQueryBuilder(ResultType.ENTITY, request.getQuery());
@@ -305,25 +441,166 @@ public class DefaultDatastoreReader {
       QueryUtils.applyNamedBindings(queryBuilder, request.getNamedBindings());
       QueryUtils.applyPositionalBindings(queryBuilder, request.getPositionalBindings());
       GqlQuery<Entity> gqlQuery = queryBuilder.build();
-      QueryResults<Entity> results = nativeReader.run(gqlQuery);
-      List<E> entities = new ArrayList<>();
-      DefaultQueryResponse<E> response = new DefaultQueryResponse<>();
-      response.setStartCursor(new DefaultDatastoreCursor(results.getCursorAfter().toUrlSafe()));
-      while (results.hasNext()) {
-        Entity result = results.next();
-        E entity = Unmarshaller.unmarshal(result, expectedResultType);
-        entities.add(entity);
-      }
-      response.setResults(entities);
-      response.setEndCursor(new DefaultDatastoreCursor(results.getCursorAfter().toUrlSafe()));
-      response.setQueryResponseMetadata(
-          new DefaultQueryResponseMetadata(
-              QueryResponseMetadata.QueryState.forMoreResultsType(results.getMoreResults())));
-      entityManager.executeEntityListeners(CallbackType.POST_LOAD, entities);
-      return response;
+      return toQueryResponse(expectedResultType, nativeReader.run(gqlQuery));
+    } catch (DatastoreException exp) {
+      throw DatastoreUtils.wrap(exp);
+    }
+  }
+
+  /**
+   * Executes the given {@link CompiledQuery} and returns the response.
+   *
+   * @param query the compiled query
+   * @param startCursor the cursor to start from, may be <code>null</code>.
+   * @param parameterValues the values of the query parameters
+   * @return the query response
+   */
+  public <E> QueryResponse<E> executeQuery(
+      CompiledQuery<E> query, DatastoreCursor startCursor, Object... parameterValues) {
+    if (!(query instanceof DefaultCompiledQuery)) {
+      throw new IllegalArgumentException(
+          "Query was not created by a QueryBuilder of this EntityManager");
+    }
+    EntityQuery nativeQuery =
+        ((DefaultCompiledQuery<E>) query)
+            .toNativeQuery(entityManager.getEffectiveNamespace(), startCursor, parameterValues);
+    try {
+      return toQueryResponse(query.getEntityClass(), nativeReader.run(nativeQuery));
     } catch (DatastoreException exp) {
-      throw new EntityManagerException(exp);
+      throw DatastoreUtils.wrap(exp);
+    }
+  }
+
+  /**
+   * Unmarshals the given native query results into a query response and invokes the PostLoad
+   * callbacks on the unmarshalled entities.
+   *
+   * @param expectedResultType the expected type of results.
+   * @param results the native query results
+   * @return the query response
+   */
+  private <E> QueryResponse<E> toQueryResponse(
+      Class<E> expectedResultType, QueryResults<Entity> results) {
+    List<E> entities = new ArrayList<>();
+    DefaultQueryResponse<E> response = new DefaultQueryResponse<>();
+    response.setStartCursor(new DefaultDatastoreCursor(results.getCursorAfter().toUrlSafe()));
+    while (results.hasNext()) {
+      Entity result = results.next();
+      E entity = Unmarshaller.unmarshal(result, expectedResultType);
+      entities.add(entity);
+    }
+    response.setResults(entities);
+    response.setEndCursor(new DefaultDatastoreCursor(results.getCursorAfter().toUrlSafe()));
+    response.setQueryResponseMetadata(
+        new DefaultQueryResponseMetadata(
+            QueryResponseMetadata.QueryState.forMoreResultsType(results.getMoreResults())));
+    entityManager.executeEntityListeners(CallbackType.POST_LOAD, entities);
+    return response;
+  }
+
+  /**
+   * Executes the given {@link EntityQueryRequest} as a projection query that only retrieves the
+   * properties in the fetch group (or the fetch fields) of the request.
+   *
+   * @param expectedResultType the expected type of results.
+   * @param request the entity query request
+   * @return the query response
+   */
+  private <E> QueryResponse<E> executeFetchGroupQuery(
+      Class<E> expectedResultType, EntityQueryRequest request) {
+    List<String> properties = getFetchProperties(expectedResultType, request);
+    ProjectionQueryRequest projectionRequest =
+        new ProjectionQueryRequest(QueryUtils.toProjectionQuery(request.getQuery(), properties));
+    projectionRequest.setNamedBindings(new HashMap<>(request.getNamedBindings()));
+    projectionRequest.setPositionalBindings(new ArrayList<>(request.getPositionalBindings()));
+    projectionRequest.setAllowLiterals(request.isAllowLiterals());
+    return executeProjectionQueryRequest(expectedResultType, projectionRequest);
+  }
+
+  /**
+   * Returns the names of the properties to retrieve for the fetch group (or fetch fields) of the
+   * given request.
+   *
+   * @param entityClass the entity class
+   * @param request the entity query request
+   * @return the names of the properties in the Cloud Datastore.
+   * @throws EntityManagerException if the fetch group does not exist, or if any of the fetch fields
+   *     is not an indexed property of the entity class.
+   */
+  private static List<String> getFetchProperties(Class<?> entityClass, EntityQueryRequest request) {
+    EntityMetadata entityMetadata = EntityIntrospector.introspect(entityClass);
+    if (request.getFetchGroup() != null) {
+      List<String> properties = entityMetadata.getFetchGroup(request.getFetchGroup());
+      if (properties == null) {
+        throw new EntityManagerException(
+            String.format(
+                "Class %s has no fetch group named %s",
+                entityClass.getName(), request.getFetchGroup()));
+      }
+      return properties;
+    }
+    List<String> properties = new ArrayList<>(request.getFetchFields().size());
+    for (String fieldName : request.getFetchFields()) {
+      PropertyMetadata fieldMetadata = entityMetadata.getPropertyMetadataByFieldName(fieldName);
+      if (fieldMetadata == null || !fieldMetadata.isIndexed()) {
+        throw new EntityManagerException(
+            String.format(
+                "Field %s of class %s does not exist or is not an indexed property",
+                fieldName, entityClass.getName()));
+      }
+      properties.add(fieldMetadata.getMappedName());
+    }
+    return properties;
+  }
+
+  /**
+   * Executes the given {@link EntityQueryRequest} as a keys-only query, and then looks up the
+   * entities with the returned keys.
+   *
+   * @param expectedResultType the expected type of results.
+   * @param request the entity query request
+   * @return the query response
+   */
+  private <E> QueryResponse<E> executeKeysThenLookup(
+      Class<E> expectedResultType, EntityQueryRequest request) {
+    KeyQueryRequest keyRequest =
+        new KeyQueryRequest(QueryUtils.toKeysOnlyQuery(request.getQuery()));
+    keyRequest.setNamedBindings(new HashMap<>(request.getNamedBindings()));
+    keyRequest.setPositionalBindings(new ArrayList<>(request.getPositionalBindings()));
+    keyRequest.setAllowLiterals(request.isAllowLiterals());
+    QueryResponse<DatastoreKey> keyResponse = executeKeyQueryRequest(keyRequest);
+    List<DatastoreKey> keys = keyResponse.getResults();
+
+    int batchSize = request.getLookupBatchSize();
+    List<LookupTask> tasks = new ArrayList<>((keys.size() + batchSize - 1) / batchSize);
+    for (int start = 0; start < keys.size(); start += batchSize) {
+      int end = Math.min(start + batchSize, keys.size());
+      Key[] nativeKeys = new Key[end - start];
+      for (int i = start; i < end; i++) {
+        nativeKeys[i - start] = keys.get(i).nativeKey();
+      }
+      tasks.add(new LookupTask(nativeReader, nativeKeys));
+    }
+    // A transaction must not be used by more than one thread at a time
+    int parallelism = nativeReader instanceof Transaction ? 1 : request.getLookupParallelism();
+    List<List<Entity>> batches =
+        ConcurrencyUtils.invokeAll(entityManager.getLookupExecutor(), tasks, parallelism);
+
+    List<E> entities = new ArrayList<>(keys.size());
+    for (List<Entity> batch : batches) {
+      for (Entity nativeEntity : batch) {
+        if (nativeEntity != null) {
+          entities.add(Unmarshaller.unmarshal(nativeEntity, expectedResultType));
+        }
+      }
     }
+    DefaultQueryResponse<E> response = new KeysThenLookupQueryResponse<>(keys.size());
+    response.setStartCursor(keyResponse.getStartCursor());
+    response.setResults(entities);
+    response.setEndCursor(keyResponse.getEndCursor());
+    response.setQueryResponseMetadata(keyResponse.getQueryResponseMetadata());
+    entityManager.executeEntityListeners(CallbackType.POST_LOAD, entities);
+    return response;
   }
 
   /**
@@ -335,6 +612,23 @@ public class DefaultDatastoreReader {
    */
   public <E> QueryResponse<E> executeProjectionQueryRequest(
       Class<E> expectedResultType, ProjectionQueryRequest request) {
+    OperationDeadline previous = OperationDeadline.current(request.getTimeout()).bind();
+    try {
+      return runProjectionQueryRequest(expectedResultType, request);
+    } finally {
+      previous.bind();
+    }
+  }
+
+  /**
+   * Worker method for executing the given {@link ProjectionQueryRequest}.
+   *
+   * @param expectedResultType the expected type of results.
+   * @param request the projection query request
+   * @return the query response
+   */
+  private <E> QueryResponse<E> runProjectionQueryRequest(
+      Class<E> expectedResultType, ProjectionQueryRequest request) {
     try {
       GqlQuery.Builder<ProjectionEntity> queryBuilder =
           Query.newGqlQueryBuilder(ResultType.PROJECTION_ENTITY, request.getQuery());
@@ -360,7 +654,7 @@ public class DefaultDatastoreReader {
       // TODO should we invoke PostLoad callback for projected entities?
       return response;
     } catch (DatastoreException exp) {
-      throw new EntityManagerException(exp);
+      throw DatastoreUtils.wrap(exp);
     }
   }
 
@@ -371,6 +665,21 @@ public class DefaultDatastoreReader {
    * @return the query response
    */
   public QueryResponse<DatastoreKey> executeKeyQueryRequest(KeyQueryRequest request) {
+    OperationDeadline previous = OperationDeadline.current(request.getTimeout()).bind();
+    try {
+      return runKeyQueryRequest(request);
+    } finally {
+      previous.bind();
+    }
+  }
+
+  /**
+   * Worker method for executing the given {@link KeyQueryRequest}.
+   *
+   * @param request the key query request
+   * @return the query response
+   */
+  private QueryResponse<DatastoreKey> runKeyQueryRequest(KeyQueryRequest request) {
     try {
       GqlQuery.Builder<Key> queryBuilder =
           Query.newGqlQueryBuilder(ResultType.KEY, request.getQuery());
@@ -395,7 +704,7 @@ public class DefaultDatastoreReader {
               QueryResponseMetadata.QueryState.forMoreResultsType(results.getMoreResults())));
       return response;
     } catch (DatastoreException exp) {
-      throw new EntityManagerException(exp);
+      throw DatastoreUtils.wrap(exp);
     }
   }
 
@@ -442,4 +751,38 @@ public class DefaultDatastoreReader {
     }
     return nativeKeys;
   }
+
+  /**
+   * Looks up a batch of entities.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class LookupTask implements Callable<List<Entity>> {
+
+    /** Native reader */
+    private final DatastoreReader nativeReader;
+
+    /** Keys of the entities to look up */
+    private final Key[] nativeKeys;
+
+    /**
+     * Creates a new instance of <code>LookupTask</code>.
+     *
+     * @param nativeReader the native reader
+     * @param nativeKeys the keys of the entities to look up
+     */
+    LookupTask(DatastoreReader nativeReader, Key[] nativeKeys) {
+      this.nativeReader = nativeReader;
+      this.nativeKeys = nativeKeys;
+    }
+
+    @Override
+    public List<Entity> call() {
+      try {
+        return nativeReader.fetch(nativeKeys);
+      } catch (DatastoreException exp) {
+        throw DatastoreUtils.wrap(exp);
+      }
+    }
+  }
 }
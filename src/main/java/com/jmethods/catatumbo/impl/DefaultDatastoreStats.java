@@ -1,5 +1,5 @@
 /*
- * Copyright 2017 Sai Pullabhotla.
+ * Copyright 2016 Sai Pullabhotla.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,7 +20,7 @@ import com.jmethods.catatumbo.DatastoreStats;
 import com.jmethods.catatumbo.EntityManagerException;
 import com.jmethods.catatumbo.EntityQueryRequest;
 import com.jmethods.catatumbo.QueryResponse;
-import com.jmethods.catatumbo.Tenant;
+import com.jmethods.catatumbo.stats.NamespaceSummarySnapshot;
 import com.jmethods.catatumbo.stats.StatCompositeIndex;
 import com.jmethods.catatumbo.stats.StatCompositeIndexNs;
 import com.jmethods.catatumbo.stats.StatConstants;
@@ -28,7 +28,14 @@ import com.jmethods.catatumbo.stats.StatKind;
 import com.jmethods.catatumbo.stats.StatKindNs;
 import com.jmethods.catatumbo.stats.StatTotal;
 import com.jmethods.catatumbo.stats.StatTotalNs;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Default implementation of {@link DatastoreStats}.
@@ -40,93 +47,216 @@ public class DefaultDatastoreStats implements DatastoreStats {
   /** Entity manager */
   private DefaultEntityManager entityManager;
 
+  /** Cache of statistics, shared by all instances created from the same entity manager */
+  private final StatsCache cache;
+
+  /** Maximum age of cached statistics, in milliseconds. Zero disables the use of cache. */
+  private final long maxAgeMillis;
+
   /**
    * Creates a new instance of <code>DefaultDatastoreStats</code>.
    *
    * @param entityManager the entity manager
    */
   DefaultDatastoreStats(DefaultEntityManager entityManager) {
+    this(entityManager, 0L);
+  }
+
+  /**
+   * Creates a new instance of <code>DefaultDatastoreStats</code>.
+   *
+   * @param entityManager the entity manager
+   * @param maxAgeMillis the maximum age of cached statistics, in milliseconds
+   */
+  private DefaultDatastoreStats(DefaultEntityManager entityManager, long maxAgeMillis) {
     this.entityManager = entityManager;
+    this.cache = entityManager.getStatsCache();
+    this.maxAgeMillis = Math.max(maxAgeMillis, 0L);
+  }
+
+  @Override
+  public DatastoreStats withCache(long duration, TimeUnit unit) {
+    return new DefaultDatastoreStats(entityManager, unit.toMillis(duration));
+  }
+
+  /**
+   * Returns a view of the entity manager that is bound to the given namespace. A <code>null
+   * </code> namespace refers to the namespace the entity manager was created with.
+   *
+   * @param namespace the namespace
+   * @return a view of the entity manager that is bound to the given namespace.
+   */
+  private DefaultEntityManager forNamespace(String namespace) {
+    if (namespace == null) {
+      return entityManager.forNamespace(entityManager.getDatastore().getOptions().getNamespace());
+    }
+    return entityManager.forNamespace(namespace);
+  }
+
+  /**
+   * Adds the given statistics to the cache, unless this instance does not use the cache.
+   *
+   * @param cacheKey the cache key
+   * @param value the statistics, may be <code>null</code>
+   */
+  private void cache(String cacheKey, Object value) {
+    if (maxAgeMillis > 0) {
+      cache.put(cacheKey, value);
+    }
   }
 
   @Override
   public StatTotal getSummary() {
-    String currentNamespace = Tenant.getNamespace();
-    try {
-      Tenant.setNamespace("");
-      return entityManager.load(StatTotal.class, StatConstants.ID_TOTAL_ENTITY_USAGE);
-    } finally {
-      Tenant.setNamespace(currentNamespace);
+    String cacheKey = StatsCache.createKey(StatConstants.STAT_TOTAL, null, null);
+    StatsCache.Entry entry = cache.get(cacheKey, maxAgeMillis);
+    if (entry != null) {
+      return (StatTotal) entry.getValue();
     }
+    StatTotal summary =
+        entityManager
+            .forNamespace("")
+            .load(StatTotal.class, StatConstants.ID_TOTAL_ENTITY_USAGE);
+    cache(cacheKey, summary);
+    return summary;
   }
 
   @Override
   public StatTotalNs getSummaryNs() {
-    return entityManager.load(StatTotalNs.class, StatConstants.ID_TOTAL_ENTITY_USAGE);
+    return getSummaryNs(entityManager);
   }
 
   @Override
   public StatTotalNs getSummaryNs(String namespace) throws EntityManagerException {
-    String currentNamespace = Tenant.getNamespace();
-    try {
-      Tenant.setNamespace(namespace);
-      return entityManager.load(StatTotalNs.class, StatConstants.ID_TOTAL_ENTITY_USAGE);
-    } finally {
-      Tenant.setNamespace(currentNamespace);
+    return getSummaryNs(forNamespace(namespace));
+  }
+
+  /**
+   * Returns the summary statistics using the given entity manager.
+   *
+   * @param entityManager the entity manager, which determines the namespace
+   * @return the summary statistics
+   */
+  private StatTotalNs getSummaryNs(DefaultEntityManager entityManager) {
+    String cacheKey =
+        StatsCache.createKey(
+            StatConstants.STAT_TOTAL_NS, entityManager.getEffectiveNamespace(), null);
+    StatsCache.Entry entry = cache.get(cacheKey, maxAgeMillis);
+    if (entry != null) {
+      return (StatTotalNs) entry.getValue();
     }
+    StatTotalNs summary =
+        entityManager.load(StatTotalNs.class, StatConstants.ID_TOTAL_ENTITY_USAGE);
+    cache(cacheKey, summary);
+    return summary;
   }
 
   @Override
+  public NamespaceSummarySnapshot getSummariesNs(Collection<String> namespaces) {
+    return getSummariesNs(namespaces, DEFAULT_PARALLELISM);
+  }
+
+  @Override
+  public NamespaceSummarySnapshot getSummariesNs(Collection<String> namespaces, int parallelism) {
+    List<String> uniqueNamespaces = new ArrayList<>(new LinkedHashSet<>(namespaces));
+    List<SummaryTask> tasks = new ArrayList<>(uniqueNamespaces.size());
+    for (String namespace : uniqueNamespaces) {
+      tasks.add(new SummaryTask(namespace));
+    }
+    List<StatTotalNs> results =
+        ConcurrencyUtils.invokeAll(tasks, parallelism, "catatumbo-stats-");
+    Map<String, StatTotalNs> summaries = new HashMap<>();
+    for (int i = 0; i < uniqueNamespaces.size(); i++) {
+      summaries.put(uniqueNamespaces.get(i), results.get(i));
+    }
+    return new NamespaceSummarySnapshot(summaries);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
   public List<StatKind> getKinds() {
-    String currentNamespace = Tenant.getNamespace();
-    try {
-      Tenant.setNamespace("");
-      final String query = "SELECT * FROM " + StatConstants.STAT_KIND;
-      EntityQueryRequest queryRequest = entityManager.createEntityQueryRequest(query);
-      QueryResponse<StatKind> queryResponse =
-          entityManager.executeEntityQueryRequest(StatKind.class, queryRequest);
-      return queryResponse.getResults();
-    } finally {
-      Tenant.setNamespace(currentNamespace);
+    String cacheKey = StatsCache.createKey(StatConstants.STAT_KIND, null, null);
+    StatsCache.Entry entry = cache.get(cacheKey, maxAgeMillis);
+    if (entry != null) {
+      return (List<StatKind>) entry.getValue();
     }
+    DefaultEntityManager defaultNamespaceManager = entityManager.forNamespace("");
+    final String query = "SELECT * FROM " + StatConstants.STAT_KIND;
+    EntityQueryRequest queryRequest = defaultNamespaceManager.createEntityQueryRequest(query);
+    QueryResponse<StatKind> queryResponse =
+        defaultNamespaceManager.executeEntityQueryRequest(StatKind.class, queryRequest);
+    List<StatKind> kinds = queryResponse.getResults();
+    cache(cacheKey, kinds);
+    return kinds;
   }
 
   @Override
   public StatKind getKind(String kind) {
-    String currentNamespace = Tenant.getNamespace();
-    try {
-      Tenant.setNamespace("");
-      final String query =
-          "SELECT * FROM "
-              + StatConstants.STAT_KIND
-              + " WHERE "
-              + StatConstants.PROP_KIND_NAME
-              + "=@1";
-      EntityQueryRequest queryRequest = entityManager.createEntityQueryRequest(query);
-      queryRequest.addPositionalBinding(kind);
-      QueryResponse<StatKind> queryResponse =
-          entityManager.executeEntityQueryRequest(StatKind.class, queryRequest);
-      List<StatKind> entities = queryResponse.getResults();
-      if (!entities.isEmpty()) {
-        return entities.get(0);
-      }
-      return null;
-    } finally {
-      Tenant.setNamespace(currentNamespace);
+    String cacheKey = StatsCache.createKey(StatConstants.STAT_KIND, null, kind);
+    StatsCache.Entry entry = cache.get(cacheKey, maxAgeMillis);
+    if (entry != null) {
+      return (StatKind) entry.getValue();
     }
+    DefaultEntityManager defaultNamespaceManager = entityManager.forNamespace("");
+    final String query =
+        "SELECT * FROM "
+            + StatConstants.STAT_KIND
+            + " WHERE "
+            + StatConstants.PROP_KIND_NAME
+            + "=@1";
+    EntityQueryRequest queryRequest = defaultNamespaceManager.createEntityQueryRequest(query);
+    queryRequest.addPositionalBinding(kind);
+    QueryResponse<StatKind> queryResponse =
+        defaultNamespaceManager.executeEntityQueryRequest(StatKind.class, queryRequest);
+    List<StatKind> entities = queryResponse.getResults();
+    StatKind statKind = entities.isEmpty() ? null : entities.get(0);
+    cache(cacheKey, statKind);
+    return statKind;
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public List<StatKindNs> getKindsNs() {
+    String cacheKey =
+        StatsCache.createKey(
+            StatConstants.STAT_KIND_NS, entityManager.getEffectiveNamespace(), null);
+    StatsCache.Entry entry = cache.get(cacheKey, maxAgeMillis);
+    if (entry != null) {
+      return (List<StatKindNs>) entry.getValue();
+    }
     final String query = "SELECT * FROM " + StatConstants.STAT_KIND_NS;
     EntityQueryRequest queryRequest = entityManager.createEntityQueryRequest(query);
     QueryResponse<StatKindNs> queryResponse =
         entityManager.executeEntityQueryRequest(StatKindNs.class, queryRequest);
-    return queryResponse.getResults();
+    List<StatKindNs> kinds = queryResponse.getResults();
+    cache(cacheKey, kinds);
+    return kinds;
   }
 
   @Override
   public StatKindNs getKindNs(String kind) {
+    return getKindNs(entityManager, kind);
+  }
+
+  @Override
+  public StatKindNs getKindNs(String namespace, String kind) {
+    return getKindNs(forNamespace(namespace), kind);
+  }
+
+  /**
+   * Returns the statistics for the given kind using the given entity manager.
+   *
+   * @param entityManager the entity manager, which determines the namespace
+   * @param kind the kind
+   * @return the statistics for the given kind
+   */
+  private StatKindNs getKindNs(DefaultEntityManager entityManager, String kind) {
+    String cacheKey =
+        StatsCache.createKey(
+            StatConstants.STAT_KIND_NS, entityManager.getEffectiveNamespace(), kind);
+    StatsCache.Entry entry = cache.get(cacheKey, maxAgeMillis);
+    if (entry != null) {
+      return (StatKindNs) entry.getValue();
+    }
     final String query =
         "SELECT * FROM "
             + StatConstants.STAT_KIND_NS
@@ -138,57 +268,85 @@ public class DefaultDatastoreStats implements DatastoreStats {
     QueryResponse<StatKindNs> queryResponse =
         entityManager.executeEntityQueryRequest(StatKindNs.class, queryRequest);
     List<StatKindNs> entities = queryResponse.getResults();
-    if (!entities.isEmpty()) {
-      return entities.get(0);
-    }
-    return null;
+    StatKindNs statKind = entities.isEmpty() ? null : entities.get(0);
+    cache(cacheKey, statKind);
+    return statKind;
   }
 
   @Override
-  public StatKindNs getKindNs(String namespace, String kind) {
-    String currentNamespace = Tenant.getNamespace();
-    try {
-      Tenant.setNamespace(namespace);
-      return getKindNs(kind);
-    } finally {
-      Tenant.setNamespace(currentNamespace);
+  @SuppressWarnings("unchecked")
+  public List<StatCompositeIndex> getCompositeIndexes() {
+    String cacheKey = StatsCache.createKey(StatConstants.STAT_COMPOSITE_INDEX, null, null);
+    StatsCache.Entry entry = cache.get(cacheKey, maxAgeMillis);
+    if (entry != null) {
+      return (List<StatCompositeIndex>) entry.getValue();
     }
+    DefaultEntityManager defaultNamespaceManager = entityManager.forNamespace("");
+    final String query = "SELECT * FROM " + StatConstants.STAT_COMPOSITE_INDEX;
+    EntityQueryRequest request = defaultNamespaceManager.createEntityQueryRequest(query);
+    QueryResponse<StatCompositeIndex> response =
+        defaultNamespaceManager.executeEntityQueryRequest(StatCompositeIndex.class, request);
+    List<StatCompositeIndex> indexes = response.getResults();
+    cache(cacheKey, indexes);
+    return indexes;
   }
 
   @Override
-  public List<StatCompositeIndex> getCompositeIndexes() {
-    final String currentNamespace = Tenant.getNamespace();
-    try {
-      Tenant.setNamespace("");
-      final String query = "SELECT * FROM " + StatConstants.STAT_COMPOSITE_INDEX;
-      EntityQueryRequest request = entityManager.createEntityQueryRequest(query);
-      QueryResponse<StatCompositeIndex> response =
-          entityManager.executeEntityQueryRequest(StatCompositeIndex.class, request);
-      return response.getResults();
-
-    } finally {
-      Tenant.setNamespace(currentNamespace);
-    }
+  public List<StatCompositeIndexNs> getCompositeIndexesNs() {
+    return getCompositeIndexesNs(entityManager);
   }
 
   @Override
-  public List<StatCompositeIndexNs> getCompositeIndexesNs() {
+  public List<StatCompositeIndexNs> getCompositeIndexesNs(String namespace) {
+    return getCompositeIndexesNs(forNamespace(namespace));
+  }
+
+  /**
+   * Returns the composite index statistics using the given entity manager.
+   *
+   * @param entityManager the entity manager, which determines the namespace
+   * @return the composite index statistics
+   */
+  @SuppressWarnings("unchecked")
+  private List<StatCompositeIndexNs> getCompositeIndexesNs(DefaultEntityManager entityManager) {
+    String cacheKey =
+        StatsCache.createKey(
+            StatConstants.STAT_COMPOSITE_INDEX_NS, entityManager.getEffectiveNamespace(), null);
+    StatsCache.Entry entry = cache.get(cacheKey, maxAgeMillis);
+    if (entry != null) {
+      return (List<StatCompositeIndexNs>) entry.getValue();
+    }
     final String query = "SELECT * FROM " + StatConstants.STAT_COMPOSITE_INDEX_NS;
     EntityQueryRequest request = entityManager.createEntityQueryRequest(query);
     QueryResponse<StatCompositeIndexNs> response =
         entityManager.executeEntityQueryRequest(StatCompositeIndexNs.class, request);
-    return response.getResults();
+    List<StatCompositeIndexNs> indexes = response.getResults();
+    cache(cacheKey, indexes);
+    return indexes;
   }
 
-  @Override
-  public List<StatCompositeIndexNs> getCompositeIndexesNs(String namespace) {
-    final String currentNamespace = Tenant.getNamespace();
-    try {
-      Tenant.setNamespace(namespace);
-      return getCompositeIndexesNs();
+  /**
+   * Task for retrieving the summary statistics of a namespace.
+   *
+   * @author Sai Pullabhotla
+   */
+  private class SummaryTask implements Callable<StatTotalNs> {
+
+    /** The namespace */
+    private final String namespace;
+
+    /**
+     * Creates a new instance of <code>SummaryTask</code>.
+     *
+     * @param namespace the namespace
+     */
+    SummaryTask(String namespace) {
+      this.namespace = namespace;
+    }
 
-    } finally {
-      Tenant.setNamespace(currentNamespace);
+    @Override
+    public StatTotalNs call() {
+      return getSummaryNs(namespace);
     }
   }
 }
@@ -22,6 +22,8 @@ import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
 import com.google.cloud.datastore.FullEntity;
 import com.google.cloud.datastore.Transaction;
+import com.jmethods.catatumbo.CompiledQuery;
+import com.jmethods.catatumbo.DatastoreCursor;
 import com.jmethods.catatumbo.DatastoreKey;
 import com.jmethods.catatumbo.DatastoreTransaction;
 import com.jmethods.catatumbo.EntityManagerException;
@@ -32,6 +34,7 @@ import com.jmethods.catatumbo.QueryResponse;
 import com.jmethods.catatumbo.TransactionMode;
 import com.jmethods.catatumbo.impl.Marshaller.Intent;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Default implementation of the {@link DatastoreTransaction} interface.
@@ -63,8 +66,21 @@ public class DefaultDatastoreTransaction implements DatastoreTransaction {
    */
   public DefaultDatastoreTransaction(
       DefaultEntityManager entityManager, TransactionMode transactionMode) {
+    this(entityManager, entityManager.getDatastore(), transactionMode);
+  }
+
+  /**
+   * Creates a new instance of <code>DatastoreTransaction</code> that runs on the given Datastore
+   * client.
+   *
+   * @param entityManager the entity manager that created this transaction.
+   * @param datastore the Datastore client
+   * @param transactionMode the transaction mode
+   */
+  public DefaultDatastoreTransaction(
+      DefaultEntityManager entityManager, Datastore datastore, TransactionMode transactionMode) {
     this.entityManager = entityManager;
-    this.datastore = entityManager.getDatastore();
+    this.datastore = datastore;
     this.nativeTransaction =
         datastore.newTransaction(transactionMode.getNativeTransactionOptions());
     this.reader = new DefaultDatastoreReader(this);
@@ -80,6 +96,15 @@ public class DefaultDatastoreTransaction implements DatastoreTransaction {
     return entityManager;
   }
 
+  /**
+   * Returns the Datastore client this transaction runs on.
+   *
+   * @return the Datastore client this transaction runs on.
+   */
+  public Datastore getDatastore() {
+    return datastore;
+  }
+
   /**
    * Returns the native transaction.
    *
@@ -94,7 +119,7 @@ public class DefaultDatastoreTransaction implements DatastoreTransaction {
     try {
       DatastoreUtils.validateDeferredIdAllocation(entity);
       FullEntity<?> nativeEntity =
-          (FullEntity<?>) Marshaller.marshal(entityManager, entity, Intent.INSERT);
+          (FullEntity<?>) Marshaller.marshal(entityManager, entity, Intent.INSERT, true);
       nativeTransaction.addWithDeferredIdAllocation(nativeEntity);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
@@ -107,8 +132,9 @@ public class DefaultDatastoreTransaction implements DatastoreTransaction {
       return;
     }
     try {
-      DatastoreUtils.validateDeferredIdAllocation(entities.get(0));
-      FullEntity<?>[] nativeEntities = toNativeFullEntities(entities, entityManager, Intent.INSERT);
+      DatastoreUtils.validateDeferredIdAllocation(entities);
+      FullEntity<?>[] nativeEntities =
+          toNativeFullEntities(entities, entityManager, Intent.INSERT, true);
       nativeTransaction.addWithDeferredIdAllocation(nativeEntities);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
@@ -120,7 +146,7 @@ public class DefaultDatastoreTransaction implements DatastoreTransaction {
     try {
       DatastoreUtils.validateDeferredIdAllocation(entity);
       FullEntity<?> nativeEntity =
-          (FullEntity<?>) Marshaller.marshal(entityManager, entity, Intent.UPSERT);
+          (FullEntity<?>) Marshaller.marshal(entityManager, entity, Intent.UPSERT, true);
       nativeTransaction.putWithDeferredIdAllocation(nativeEntity);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
@@ -133,8 +159,9 @@ public class DefaultDatastoreTransaction implements DatastoreTransaction {
       return;
     }
     try {
-      DatastoreUtils.validateDeferredIdAllocation(entities.get(0));
-      FullEntity<?>[] nativeEntities = toNativeFullEntities(entities, entityManager, Intent.UPSERT);
+      DatastoreUtils.validateDeferredIdAllocation(entities);
+      FullEntity<?>[] nativeEntities =
+          toNativeFullEntities(entities, entityManager, Intent.UPSERT, true);
       nativeTransaction.putWithDeferredIdAllocation(nativeEntities);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
@@ -285,6 +312,11 @@ public class DefaultDatastoreTransaction implements DatastoreTransaction {
     return reader.loadByKey(entityClass, keys);
   }
 
+  @Override
+  public Map<DatastoreKey, Object> loadByKey(List<DatastoreKey> keys, Class<?>... entityClasses) {
+    return reader.loadByKey(keys, entityClasses);
+  }
+
   @Override
   public EntityQueryRequest createEntityQueryRequest(String query) {
     return reader.createEntityQueryRequest(query);
@@ -317,6 +349,17 @@ public class DefaultDatastoreTransaction implements DatastoreTransaction {
     return reader.executeKeyQueryRequest(request);
   }
 
+  @Override
+  public <E> QueryResponse<E> executeQuery(CompiledQuery<E> query, Object... parameterValues) {
+    return reader.executeQuery(query, null, parameterValues);
+  }
+
+  @Override
+  public <E> QueryResponse<E> executeQuery(
+      CompiledQuery<E> query, DatastoreCursor startCursor, Object... parameterValues) {
+    return reader.executeQuery(query, startCursor, parameterValues);
+  }
+
   /**
    * Transaction Response containing the results of a transaction commit.
    *
@@ -24,6 +24,7 @@ import static com.jmethods.catatumbo.impl.DatastoreUtils.toNativeFullEntities;
 import com.google.cloud.datastore.Batch;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.DatastoreReader;
 import com.google.cloud.datastore.DatastoreWriter;
 import com.google.cloud.datastore.Entity;
 import com.google.cloud.datastore.FullEntity;
@@ -61,9 +62,20 @@ public class DefaultDatastoreWriter {
    * @param entityManager a reference to the entity manager.
    */
   public DefaultDatastoreWriter(DefaultEntityManager entityManager) {
+    this(entityManager, entityManager.getDatastore());
+  }
+
+  /**
+   * Creates a new instance of <code>DefaultDatastoreWriter</code> that writes using the given
+   * Datastore client.
+   *
+   * @param entityManager a reference to the entity manager.
+   * @param datastore the Datastore client
+   */
+  public DefaultDatastoreWriter(DefaultEntityManager entityManager, Datastore datastore) {
     this.entityManager = entityManager;
-    this.datastore = entityManager.getDatastore();
-    this.nativeWriter = datastore;
+    this.datastore = datastore;
+    this.nativeWriter = new GovernedDatastoreWriter(datastore, entityManager);
   }
 
   /**
@@ -73,7 +85,7 @@ public class DefaultDatastoreWriter {
    */
   public DefaultDatastoreWriter(DefaultDatastoreBatch batch) {
     this.entityManager = batch.getEntityManager();
-    this.datastore = entityManager.getDatastore();
+    this.datastore = batch.getDatastore();
     this.nativeWriter = batch.getNativeBatch();
   }
 
@@ -84,7 +96,7 @@ public class DefaultDatastoreWriter {
    */
   public DefaultDatastoreWriter(DefaultDatastoreTransaction transaction) {
     this.entityManager = transaction.getEntityManager();
-    this.datastore = entityManager.getDatastore();
+    this.datastore = transaction.getDatastore();
     this.nativeWriter = transaction.getNativeTransaction();
   }
 
@@ -120,7 +132,6 @@ public class DefaultDatastoreWriter {
    *     etc.
    * @throws EntityManagerException if any error occurs while inserting.
    */
-  @SuppressWarnings("unchecked")
   public <E> List<E> insert(List<E> entities) {
     if (entities == null || entities.isEmpty()) {
       return new ArrayList<>();
@@ -128,9 +139,8 @@ public class DefaultDatastoreWriter {
     try {
       entityManager.executeEntityListeners(CallbackType.PRE_INSERT, entities);
       FullEntity<?>[] nativeEntities = toNativeFullEntities(entities, entityManager, Intent.INSERT);
-      Class<?> entityClass = entities.get(0).getClass();
       List<Entity> insertedNativeEntities = nativeWriter.add(nativeEntities);
-      List<E> insertedEntities = (List<E>) toEntities(entityClass, insertedNativeEntities);
+      List<E> insertedEntities = toEntities(entities, insertedNativeEntities);
       entityManager.executeEntityListeners(CallbackType.POST_INSERT, insertedEntities);
       return insertedEntities;
     } catch (DatastoreException exp) {
@@ -169,18 +179,16 @@ public class DefaultDatastoreWriter {
    * @return the updated entities
    * @throws EntityManagerException if any error occurs while inserting.
    */
-  @SuppressWarnings("unchecked")
   public <E> List<E> update(List<E> entities) {
     if (entities == null || entities.isEmpty()) {
       return new ArrayList<>();
     }
     try {
-      Class<E> entityClass = (Class<E>) entities.get(0).getClass();
       entityManager.executeEntityListeners(CallbackType.PRE_UPDATE, entities);
       Intent intent = (nativeWriter instanceof Batch) ? Intent.BATCH_UPDATE : Intent.UPDATE;
       Entity[] nativeEntities = toNativeEntities(entities, entityManager, intent);
       nativeWriter.update(nativeEntities);
-      List<E> updatedEntities = toEntities(entityClass, nativeEntities);
+      List<E> updatedEntities = toEntities(entities, nativeEntities);
       entityManager.executeEntityListeners(CallbackType.POST_UPDATE, updatedEntities);
       return updatedEntities;
     } catch (DatastoreException exp) {
@@ -205,8 +213,10 @@ public class DefaultDatastoreWriter {
   }
 
   /**
-   * Updates the given list of entities using optimistic locking feature, if the entities are set up
-   * to support optimistic locking. Otherwise, a normal update is performed.
+   * Updates the given list of entities using optimistic locking feature, if any of the entities are
+   * set up to support optimistic locking. Otherwise, a normal update is performed. The list may
+   * hold entities of different types, in which case only the versions of the entities that support
+   * optimistic locking are checked.
    *
    * @param entities the entities to update
    * @return the updated entities
@@ -215,13 +225,12 @@ public class DefaultDatastoreWriter {
     if (entities == null || entities.isEmpty()) {
       return new ArrayList<>();
     }
-    Class<?> entityClass = entities.get(0).getClass();
-    PropertyMetadata versionMetadata = EntityIntrospector.getVersionMetadata(entityClass);
-    if (versionMetadata == null) {
-      return update(entities);
-    } else {
-      return updateWithOptimisticLockInternal(entities, versionMetadata);
+    for (E entity : entities) {
+      if (EntityIntrospector.getVersionMetadata(entity) != null) {
+        return updateWithOptimisticLockInternal(entities);
+      }
     }
+    return update(entities);
   }
 
   /**
@@ -266,42 +275,18 @@ public class DefaultDatastoreWriter {
    * Internal worker method for updating the entities using optimistic locking.
    *
    * @param entities the entities to update
-   * @param versionMetadata the metadata of the version property
    * @return the updated entities
    */
-  @SuppressWarnings("unchecked")
-  protected <E> List<E> updateWithOptimisticLockInternal(
-      List<E> entities, PropertyMetadata versionMetadata) {
+  protected <E> List<E> updateWithOptimisticLockInternal(List<E> entities) {
     Transaction transaction = null;
     try {
       entityManager.executeEntityListeners(CallbackType.PRE_UPDATE, entities);
       Entity[] nativeEntities = toNativeEntities(entities, entityManager, Intent.UPDATE);
-      // The above native entities already have the version incremented by
-      // the marshalling process
-      Key[] nativeKeys = new Key[nativeEntities.length];
-      for (int i = 0; i < nativeEntities.length; i++) {
-        nativeKeys[i] = nativeEntities[i].getKey();
-      }
       transaction = datastore.newTransaction();
-      List<Entity> storedNativeEntities = transaction.fetch(nativeKeys);
-      String versionPropertyName = versionMetadata.getMappedName();
-
-      for (int i = 0; i < nativeEntities.length; i++) {
-        long version = nativeEntities[i].getLong(versionPropertyName) - 1;
-        Entity storedNativeEntity = storedNativeEntities.get(i);
-        if (storedNativeEntity == null) {
-          throw new OptimisticLockException(
-              String.format("Entity does not exist: %s", nativeKeys[i]));
-        }
-        long storedVersion = storedNativeEntities.get(i).getLong(versionPropertyName);
-        if (version != storedVersion) {
-          throw new OptimisticLockException(
-              String.format("Expecting version %d, but found %d", version, storedVersion));
-        }
-      }
+      checkVersions(transaction, entities, nativeEntities);
       transaction.update(nativeEntities);
       transaction.commit();
-      List<E> updatedEntities = (List<E>) toEntities(entities.get(0).getClass(), nativeEntities);
+      List<E> updatedEntities = toEntities(entities, nativeEntities);
       entityManager.executeEntityListeners(CallbackType.POST_UPDATE, updatedEntities);
       return updatedEntities;
 
@@ -312,6 +297,49 @@ public class DefaultDatastoreWriter {
     }
   }
 
+  /**
+   * Verifies that the stored version of each of the given entities that supports optimistic
+   * locking is one less than the version of its native entity. The versions of entities that do
+   * not support optimistic locking are not checked.
+   *
+   * @param reader the reader to use for retrieving the stored entities
+   * @param entities the entities being updated
+   * @param nativeEntities the native entities, with their versions already incremented by the
+   *     marshalling process, in the same order as the entities
+   * @throws OptimisticLockException if any of the entities does not exist, or if its stored version
+   *     is not the expected version.
+   */
+  static void checkVersions(DatastoreReader reader, List<?> entities, Entity[] nativeEntities) {
+    List<PropertyMetadata> versionMetadatas = new ArrayList<>(nativeEntities.length);
+    List<Entity> versionedNativeEntities = new ArrayList<>(nativeEntities.length);
+    for (int i = 0; i < nativeEntities.length; i++) {
+      PropertyMetadata versionMetadata = EntityIntrospector.getVersionMetadata(entities.get(i));
+      if (versionMetadata != null) {
+        versionMetadatas.add(versionMetadata);
+        versionedNativeEntities.add(nativeEntities[i]);
+      }
+    }
+    Key[] nativeKeys = new Key[versionedNativeEntities.size()];
+    for (int i = 0; i < nativeKeys.length; i++) {
+      nativeKeys[i] = versionedNativeEntities.get(i).getKey();
+    }
+    List<Entity> storedNativeEntities = reader.fetch(nativeKeys);
+    for (int i = 0; i < nativeKeys.length; i++) {
+      Entity storedNativeEntity = storedNativeEntities.get(i);
+      if (storedNativeEntity == null) {
+        throw new OptimisticLockException(
+            String.format("Entity does not exist: %s", nativeKeys[i]));
+      }
+      String versionPropertyName = versionMetadatas.get(i).getMappedName();
+      long version = versionedNativeEntities.get(i).getLong(versionPropertyName) - 1;
+      long storedVersion = storedNativeEntity.getLong(versionPropertyName);
+      if (version != storedVersion) {
+        throw new OptimisticLockException(
+            String.format("Expecting version %d, but found %d", version, storedVersion));
+      }
+    }
+  }
+
   /**
    * Updates or inserts the given entity in the Cloud Datastore. If the entity does not have an ID,
    * it may be generated.
@@ -343,7 +371,6 @@ public class DefaultDatastoreWriter {
    * @return the updated or inserted entities
    * @throws EntityManagerException if any error occurs while saving.
    */
-  @SuppressWarnings("unchecked")
   public <E> List<E> upsert(List<E> entities) {
     if (entities == null || entities.isEmpty()) {
       return new ArrayList<>();
@@ -351,9 +378,8 @@ public class DefaultDatastoreWriter {
     try {
       entityManager.executeEntityListeners(CallbackType.PRE_UPSERT, entities);
       FullEntity<?>[] nativeEntities = toNativeFullEntities(entities, entityManager, Intent.UPSERT);
-      Class<?> entityClass = entities.get(0).getClass();
       List<Entity> upsertedNativeEntities = nativeWriter.put(nativeEntities);
-      List<E> upsertedEntities = (List<E>) toEntities(entityClass, upsertedNativeEntities);
+      List<E> upsertedEntities = toEntities(entities, upsertedNativeEntities);
       entityManager.executeEntityListeners(CallbackType.POST_UPSERT, upsertedEntities);
       return upsertedEntities;
     } catch (DatastoreException exp) {
@@ -410,8 +436,7 @@ public class DefaultDatastoreWriter {
   public <E> void delete(Class<E> entityClass, long id) {
     try {
       EntityMetadata entityMetadata = EntityIntrospector.introspect(entityClass);
-      Key nativeKey =
-          entityManager.newNativeKeyFactory().setKind(entityMetadata.getKind()).newKey(id);
+      Key nativeKey = entityManager.newNativeKey(entityMetadata.getKind(), id);
       nativeWriter.delete(nativeKey);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
@@ -429,8 +454,7 @@ public class DefaultDatastoreWriter {
   public <E> void delete(Class<E> entityClass, String id) {
     try {
       EntityMetadata entityMetadata = EntityIntrospector.introspect(entityClass);
-      Key nativeKey =
-          entityManager.newNativeKeyFactory().setKind(entityMetadata.getKind()).newKey(id);
+      Key nativeKey = entityManager.newNativeKey(entityMetadata.getKind(), id);
       nativeWriter.delete(nativeKey);
     } catch (DatastoreException exp) {
       throw DatastoreUtils.wrap(exp);
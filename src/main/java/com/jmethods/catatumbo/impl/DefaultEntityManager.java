@@ -16,6 +16,8 @@
 
 package com.jmethods.catatumbo.impl;
 
+import com.google.auth.http.HttpTransportFactory;
+import com.google.cloud.TransportOptions;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
 import com.google.cloud.datastore.GqlQuery;
@@ -24,28 +26,50 @@ import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.KeyFactory;
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.http.HttpTransportOptions;
+import com.jmethods.catatumbo.AggregationOptions;
+import com.jmethods.catatumbo.AggregationResult;
+import com.jmethods.catatumbo.AsyncCallbackOptions;
+import com.jmethods.catatumbo.BatchOptions;
+import com.jmethods.catatumbo.ClientSelectionPolicy;
+import com.jmethods.catatumbo.CompiledQuery;
+import com.jmethods.catatumbo.CounterService;
 import com.jmethods.catatumbo.DatastoreBatch;
+import com.jmethods.catatumbo.DatastoreCursor;
 import com.jmethods.catatumbo.DatastoreKey;
 import com.jmethods.catatumbo.DatastoreMetadata;
 import com.jmethods.catatumbo.DatastoreStats;
 import com.jmethods.catatumbo.DatastoreTransaction;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityGroupWriteOptions;
 import com.jmethods.catatumbo.EntityManager;
 import com.jmethods.catatumbo.EntityManagerException;
 import com.jmethods.catatumbo.EntityQueryRequest;
+import com.jmethods.catatumbo.HedgingMetrics;
+import com.jmethods.catatumbo.HedgingOptions;
+import com.jmethods.catatumbo.IdAllocationOptions;
 import com.jmethods.catatumbo.KeyQueryRequest;
+import com.jmethods.catatumbo.PaginationOptions;
+import com.jmethods.catatumbo.Paginator;
 import com.jmethods.catatumbo.ProjectionQueryRequest;
+import com.jmethods.catatumbo.QueryBuilder;
 import com.jmethods.catatumbo.QueryResponse;
+import com.jmethods.catatumbo.SchemaSnapshot;
+import com.jmethods.catatumbo.ShardedCounterOptions;
 import com.jmethods.catatumbo.Tenant;
 import com.jmethods.catatumbo.TransactionMode;
 import com.jmethods.catatumbo.TransactionalTask;
 import com.jmethods.catatumbo.Utility;
+import com.jmethods.catatumbo.WriteRateOptions;
 import com.jmethods.catatumbo.impl.IdentifierMetadata.DataType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Default implementation of {@link EntityManager} interface. Manages entities in the Cloud
@@ -60,17 +84,65 @@ public class DefaultEntityManager implements EntityManager {
   /** Batch size for sending delete requests when using the deleteAll method */
   private static final int DEFAULT_DELETE_ALL_BATCH_SIZE = 100;
 
-  /** Reference to the native Datastore object */
+  /** Maximum number of threads for the lookups of queries executed in KEYS_THEN_LOOKUP mode */
+  private static final int LOOKUP_THREADS = 16;
+
+  /** Reference to the native Datastore object. This is the first client in the pool. */
   private Datastore datastore;
 
-  /** Datastore writer */
-  private DefaultDatastoreWriter writer;
+  /** Pool of Datastore clients. Shared by the namespace bound views. */
+  private final DatastoreClientPool clientPool;
+
+  /** Datastore writers, one for each client in the pool */
+  private DefaultDatastoreWriter[] writers;
 
-  /** Datastore reader */
-  private DefaultDatastoreReader reader;
+  /** Datastore readers, one for each client in the pool */
+  private DefaultDatastoreReader[] readers;
 
   /** Metadata of global callbacks */
-  private Map<CallbackType, List<CallbackMetadata>> globalCallbacks;
+  private volatile Map<CallbackType, List<CallbackMetadata>> globalCallbacks;
+
+  /** Executor for asynchronous callbacks. Created lazily, if not configured. */
+  private volatile AsyncCallbackExecutor asyncCallbackExecutor;
+
+  /** Executor for hedged lookups. <code>null</code>, if hedging is disabled. */
+  private volatile HedgedLookupExecutor hedgedLookupExecutor;
+
+  /** Governor of the rate of writes. <code>null</code>, if the rate is not governed. */
+  private volatile WriteRateGovernor writeRateGovernor;
+
+  /** Scheduler of writes by entity group. <code>null</code>, if writes are not scheduled. */
+  private volatile EntityGroupWriteScheduler entityGroupWriteScheduler;
+
+  /** Allocator of pre-allocated IDs. <code>null</code>, if IDs are not pre-allocated. */
+  private volatile IdAllocator idAllocator;
+
+  /** Executor for the lookups of queries executed in KEYS_THEN_LOOKUP mode. Created lazily. */
+  private volatile ExecutorService lookupExecutor;
+
+  /**
+   * The EntityManager that owns the listener configuration. This is the EntityManager itself,
+   * unless this is a namespace bound view created using {@link #forNamespace(String)}.
+   */
+  private final DefaultEntityManager root;
+
+  /**
+   * The namespace this EntityManager is bound to. <code>null</code>, if this EntityManager is not
+   * bound to a namespace, in which case the namespace is determined by {@link Tenant}.
+   */
+  private final String boundNamespace;
+
+  /** Namespace bound views of this EntityManager, by namespace */
+  private final Cache<String, DefaultEntityManager> namespaceViews;
+
+  /** Incomplete keys, by kind, used as prototypes for creating keys in the bound namespace */
+  private final Cache<String, IncompleteKey> keyPrototypes;
+
+  /** Cache of Datastore statistics. Only the root EntityManager has one. */
+  private final StatsCache statsCache;
+
+  /** Cached schema snapshot. Only used on the root EntityManager. */
+  private volatile SchemaSnapshot schemaSnapshot;
 
   /**
    * Creates a new instance of <code>DefaultEntityManager</code>.
@@ -78,45 +150,55 @@ public class DefaultEntityManager implements EntityManager {
    * @param datastore the Datastore object
    */
   public DefaultEntityManager(Datastore datastore) {
-    this.datastore = datastore;
-    writer = new DefaultDatastoreWriter(this);
-    reader = new DefaultDatastoreReader(this);
+    this(
+        new DatastoreClientPool(
+            Collections.singletonList(datastore), ClientSelectionPolicy.ROUND_ROBIN));
   }
 
   /**
-   * Invokes the given callback method on the given target object.
+   * Creates a new instance of <code>DefaultEntityManager</code> that is backed by the given pool of
+   * Datastore clients.
    *
-   * @param callbackMethod the callback method
-   * @param listener the listener object on which to invoke the method
-   * @param entity the entity for which the callback is being invoked.
+   * @param clientPool the pool of Datastore clients
    */
-  private static void invokeCallbackMethod(Method callbackMethod, Object listener, Object entity) {
-    try {
-      callbackMethod.invoke(listener, entity);
-    } catch (Exception exp) {
-      String message =
-          String.format(
-              "Failed to execute callback method %s of class %s",
-              callbackMethod.getName(), callbackMethod.getDeclaringClass().getName());
-      throw new EntityManagerException(message, exp);
-    }
+  public DefaultEntityManager(DatastoreClientPool clientPool) {
+    this.clientPool = clientPool;
+    this.datastore = clientPool.getClient(0);
+    this.root = this;
+    this.boundNamespace = null;
+    this.namespaceViews = new Cache<>();
+    this.keyPrototypes = null;
+    this.statsCache = new StatsCache();
+    initReadersAndWriters();
   }
 
   /**
-   * Invokes the given callback method on the given target object.
+   * Creates a new instance of <code>DefaultEntityManager</code> that is bound to the given
+   * namespace.
    *
-   * @param callbackMethod the callback method
-   * @param entity the entity for which the callback is being invoked
+   * @param root the EntityManager from which the view is created
+   * @param namespace the namespace
    */
-  private static void invokeCallbackMethod(Method callbackMethod, Object entity) {
-    try {
-      callbackMethod.invoke(entity);
-    } catch (Exception exp) {
-      String message =
-          String.format(
-              "Failed to execute callback method %s of class %s",
-              callbackMethod.getName(), callbackMethod.getDeclaringClass().getName());
-      throw new EntityManagerException(message, exp);
+  private DefaultEntityManager(DefaultEntityManager root, String namespace) {
+    this.datastore = root.datastore;
+    this.clientPool = root.clientPool;
+    this.root = root;
+    this.boundNamespace = namespace;
+    this.namespaceViews = null;
+    this.keyPrototypes = new Cache<>();
+    this.statsCache = null;
+    initReadersAndWriters();
+  }
+
+  /** Creates a reader and a writer for each client in the pool. */
+  private void initReadersAndWriters() {
+    int size = clientPool.size();
+    writers = new DefaultDatastoreWriter[size];
+    readers = new DefaultDatastoreReader[size];
+    for (int i = 0; i < size; i++) {
+      Datastore client = clientPool.getClient(i);
+      writers[i] = new DefaultDatastoreWriter(this, client);
+      readers[i] = new DefaultDatastoreReader(this, client);
     }
   }
 
@@ -129,6 +211,68 @@ public class DefaultEntityManager implements EntityManager {
     return datastore;
   }
 
+  /**
+   * Returns the pool of Datastore clients that back this EntityManager.
+   *
+   * @return the pool of Datastore clients that back this EntityManager.
+   */
+  public DatastoreClientPool getClientPool() {
+    return clientPool;
+  }
+
+  /**
+   * Selects a client from the pool for a transaction, a batch or a hedged lookup.
+   *
+   * @return the selected client.
+   */
+  Datastore selectClient() {
+    OperationDeadline.checkCurrent();
+    return clientPool.getClient(clientPool.select());
+  }
+
+  /**
+   * Acquires a client from the pool for a single operation. The client must be released once the
+   * operation completes.
+   *
+   * @return the index of the acquired client.
+   * @throws DeadlineExceededException if the deadline of the current thread has passed.
+   */
+  int acquireClient() {
+    OperationDeadline.checkCurrent();
+    return clientPool.acquire();
+  }
+
+  @Override
+  public DefaultEntityManager forNamespace(String namespace) {
+    if (namespace == null) {
+      throw new IllegalArgumentException("namespace cannot be null");
+    }
+    if (root != this) {
+      return root.forNamespace(namespace);
+    }
+    DefaultEntityManager view = namespaceViews.get(namespace);
+    if (view == null) {
+      synchronized (namespaceViews) {
+        view = namespaceViews.get(namespace);
+        if (view == null) {
+          view = new DefaultEntityManager(this, namespace);
+          namespaceViews.put(namespace, view);
+        }
+      }
+    }
+    return view;
+  }
+
+  /**
+   * Returns the namespace this EntityManager is bound to.
+   *
+   * @return the namespace this EntityManager is bound to. Returns <code>null</code>, if this
+   *     EntityManager is not bound to a namespace.
+   */
+  public String getBoundNamespace() {
+    return boundNamespace;
+  }
+
   @Override
   public <E> long deleteAll(Class<E> entityClass) {
     EntityMetadata entityMetadata = EntityIntrospector.introspect(entityClass);
@@ -146,25 +290,26 @@ public class DefaultEntityManager implements EntityManager {
           Query.newGqlQueryBuilder(Query.ResultType.KEY, query)
               .setNamespace(getEffectiveNamespace())
               .build();
-      QueryResults<Key> keys = datastore.run(gqlQuery);
+      Datastore client = selectClient();
+      QueryResults<Key> keys = client.run(gqlQuery);
       Key[] nativeKeys = new Key[DEFAULT_DELETE_ALL_BATCH_SIZE];
       long deleteCount = 0;
       int i = 0;
       while (keys.hasNext()) {
         nativeKeys[i++] = keys.next();
         if (i % DEFAULT_DELETE_ALL_BATCH_SIZE == 0) {
-          datastore.delete(nativeKeys);
+          client.delete(nativeKeys);
           deleteCount += DEFAULT_DELETE_ALL_BATCH_SIZE;
           i = 0;
         }
       }
       if (i > 0) {
-        datastore.delete(Arrays.copyOfRange(nativeKeys, 0, i));
+        client.delete(Arrays.copyOfRange(nativeKeys, 0, i));
         deleteCount += i;
       }
       return deleteCount;
     } catch (DatastoreException exp) {
-      throw new EntityManagerException(exp);
+      throw DatastoreUtils.wrap(exp);
     }
   }
 
@@ -178,12 +323,28 @@ public class DefaultEntityManager implements EntityManager {
     if (transactionMode == null) {
       throw new IllegalArgumentException("transactionMode cannot be null");
     }
-    return new DefaultDatastoreTransaction(this, transactionMode);
+    return new DefaultDatastoreTransaction(this, selectClient(), transactionMode);
   }
 
   @Override
   public DatastoreBatch newBatch() {
-    return new DefaultDatastoreBatch(this);
+    return new DefaultDatastoreBatch(this, selectClient());
+  }
+
+  @Override
+  public DatastoreBatch newBatch(BatchOptions options) {
+    return new DefaultDatastoreBatch(this, selectClient(), options);
+  }
+
+  @Override
+  public CounterService newCounterService(ShardedCounterOptions options) {
+    return new DefaultCounterService(
+        this, options == null ? new ShardedCounterOptions() : options);
+  }
+
+  @Override
+  public <E> QueryBuilder<E> newQueryBuilder(Class<E> entityClass) {
+    return new DefaultQueryBuilder<>(entityClass);
   }
 
   @Override
@@ -198,10 +359,21 @@ public class DefaultEntityManager implements EntityManager {
     }
     DatastoreTransaction transaction = null;
     try {
-      transaction = new DefaultDatastoreTransaction(this, transactionMode);
+      transaction = new DefaultDatastoreTransaction(this, selectClient(), transactionMode);
       T returnValue = task.execute(transaction);
       transaction.commit();
       return returnValue;
+    } catch (DeadlineExceededException exp) {
+      if (transaction != null) {
+        // Roll back without the deadline, so the locks held by the transaction are released now
+        OperationDeadline previous = OperationDeadline.suspend();
+        try {
+          transaction.rollback();
+        } finally {
+          previous.bind();
+        }
+      }
+      throw exp;
     } catch (Exception exp) {
       if (transaction != null) {
         transaction.rollback();
@@ -216,144 +388,300 @@ public class DefaultEntityManager implements EntityManager {
 
   @Override
   public <E> E insert(E entity) {
-    return writer.insert(entity);
+    int client = acquireClient();
+    try {
+      return writers[client].insert(entity);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> List<E> insert(List<E> entities) {
-    return writer.insert(entities);
+    int client = acquireClient();
+    try {
+      return writers[client].insert(entities);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> E update(E entity) {
-    return writer.updateWithOptimisticLock(entity);
+    int client = acquireClient();
+    try {
+      return writers[client].updateWithOptimisticLock(entity);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> List<E> update(List<E> entities) {
-    return writer.updateWithOptimisticLock(entities);
+    int client = acquireClient();
+    try {
+      return writers[client].updateWithOptimisticLock(entities);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> E upsert(E entity) {
-    return writer.upsert(entity);
+    int client = acquireClient();
+    try {
+      return writers[client].upsert(entity);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> List<E> upsert(List<E> entities) {
-    return writer.upsert(entities);
+    int client = acquireClient();
+    try {
+      return writers[client].upsert(entities);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public void delete(Object entity) {
-    writer.delete(entity);
+    int client = acquireClient();
+    try {
+      writers[client].delete(entity);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public void delete(List<?> entities) {
-    writer.delete(entities);
+    int client = acquireClient();
+    try {
+      writers[client].delete(entities);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> void delete(Class<E> entityClass, long id) {
-    writer.delete(entityClass, id);
+    int client = acquireClient();
+    try {
+      writers[client].delete(entityClass, id);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> void delete(Class<E> entityClass, String id) {
-    writer.delete(entityClass, id);
+    int client = acquireClient();
+    try {
+      writers[client].delete(entityClass, id);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> void delete(Class<E> entityClass, DatastoreKey parentKey, long id) {
-    writer.delete(entityClass, parentKey, id);
+    int client = acquireClient();
+    try {
+      writers[client].delete(entityClass, parentKey, id);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> void delete(Class<E> entityClass, DatastoreKey parentKey, String id) {
-    writer.delete(entityClass, parentKey, id);
+    int client = acquireClient();
+    try {
+      writers[client].delete(entityClass, parentKey, id);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public void deleteByKey(DatastoreKey key) {
-    writer.deleteByKey(key);
+    int client = acquireClient();
+    try {
+      writers[client].deleteByKey(key);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public void deleteByKey(List<DatastoreKey> keys) {
-    writer.deleteByKey(keys);
+    int client = acquireClient();
+    try {
+      writers[client].deleteByKey(keys);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> E load(Class<E> entityClass, long id) {
-    return reader.load(entityClass, id);
+    int client = acquireClient();
+    try {
+      return readers[client].load(entityClass, id);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> E load(Class<E> entityClass, String id) {
-    return reader.load(entityClass, id);
+    int client = acquireClient();
+    try {
+      return readers[client].load(entityClass, id);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> E load(Class<E> entityClass, DatastoreKey parentKey, long id) {
-    return reader.load(entityClass, parentKey, id);
+    int client = acquireClient();
+    try {
+      return readers[client].load(entityClass, parentKey, id);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> E load(Class<E> entityClass, DatastoreKey parentKey, String id) {
-    return reader.load(entityClass, parentKey, id);
+    int client = acquireClient();
+    try {
+      return readers[client].load(entityClass, parentKey, id);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> E load(Class<E> entityClass, DatastoreKey key) {
-    return reader.load(entityClass, key);
+    int client = acquireClient();
+    try {
+      return readers[client].load(entityClass, key);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> List<E> loadById(Class<E> entityClass, List<Long> identifiers) {
-    return reader.loadById(entityClass, identifiers);
+    int client = acquireClient();
+    try {
+      return readers[client].loadById(entityClass, identifiers);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> List<E> loadByName(Class<E> entityClass, List<String> identifiers) {
-    return reader.loadByName(entityClass, identifiers);
+    int client = acquireClient();
+    try {
+      return readers[client].loadByName(entityClass, identifiers);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> List<E> loadByKey(Class<E> entityClass, List<DatastoreKey> keys) {
-    return reader.loadByKey(entityClass, keys);
+    int client = acquireClient();
+    try {
+      return readers[client].loadByKey(entityClass, keys);
+    } finally {
+      clientPool.release(client);
+    }
+  }
+
+  @Override
+  public Map<DatastoreKey, Object> loadByKey(List<DatastoreKey> keys, Class<?>... entityClasses) {
+    int client = acquireClient();
+    try {
+      return readers[client].loadByKey(keys, entityClasses);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public EntityQueryRequest createEntityQueryRequest(String query) {
-    return reader.createEntityQueryRequest(query);
+    return readers[0].createEntityQueryRequest(query);
   }
 
   @Override
   public ProjectionQueryRequest createProjectionQueryRequest(String query) {
-    return reader.createProjectionQueryRequest(query);
+    return readers[0].createProjectionQueryRequest(query);
   }
 
   @Override
   public KeyQueryRequest createKeyQueryRequest(String query) {
-    return reader.createKeyQueryRequest(query);
+    return readers[0].createKeyQueryRequest(query);
   }
 
   @Override
   public <E> QueryResponse<E> executeEntityQueryRequest(
       Class<E> expectedResultType, EntityQueryRequest request) {
-    return reader.executeEntityQueryRequest(expectedResultType, request);
+    int client = acquireClient();
+    try {
+      return readers[client].executeEntityQueryRequest(expectedResultType, request);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public <E> QueryResponse<E> executeProjectionQueryRequest(
       Class<E> expectedResultType, ProjectionQueryRequest request) {
-    return reader.executeProjectionQueryRequest(expectedResultType, request);
+    int client = acquireClient();
+    try {
+      return readers[client].executeProjectionQueryRequest(expectedResultType, request);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
   public QueryResponse<DatastoreKey> executeKeyQueryRequest(KeyQueryRequest request) {
-    return reader.executeKeyQueryRequest(request);
+    int client = acquireClient();
+    try {
+      return readers[client].executeKeyQueryRequest(request);
+    } finally {
+      clientPool.release(client);
+    }
+  }
+
+  @Override
+  public <E> QueryResponse<E> executeQuery(CompiledQuery<E> query, Object... parameterValues) {
+    int client = acquireClient();
+    try {
+      return readers[client].executeQuery(query, null, parameterValues);
+    } finally {
+      clientPool.release(client);
+    }
+  }
+
+  @Override
+  public <E> QueryResponse<E> executeQuery(
+      CompiledQuery<E> query, DatastoreCursor startCursor, Object... parameterValues) {
+    int client = acquireClient();
+    try {
+      return readers[client].executeQuery(query, startCursor, parameterValues);
+    } finally {
+      clientPool.release(client);
+    }
   }
 
   @Override
@@ -366,6 +694,33 @@ public class DefaultEntityManager implements EntityManager {
     return new DefaultDatastoreStats(this);
   }
 
+  @Override
+  public <E> Paginator<E> paginate(Class<E> expectedResultType, EntityQueryRequest request) {
+    return paginate(expectedResultType, request, new PaginationOptions());
+  }
+
+  @Override
+  public <E> Paginator<E> paginate(
+      Class<E> expectedResultType, EntityQueryRequest request, PaginationOptions options) {
+    return DefaultPaginator.forEntityQuery(this, expectedResultType, request, options);
+  }
+
+  @Override
+  public Paginator<DatastoreKey> paginate(KeyQueryRequest request) {
+    return paginate(request, new PaginationOptions());
+  }
+
+  @Override
+  public Paginator<DatastoreKey> paginate(KeyQueryRequest request, PaginationOptions options) {
+    return DefaultPaginator.forKeyQuery(this, request, options);
+  }
+
+  @Override
+  public <E> AggregationResult aggregate(
+      CompiledQuery<E> query, AggregationOptions options, Object... parameterValues) {
+    return new DefaultAggregator(this, query, options, parameterValues).aggregate();
+  }
+
   @Override
   public DatastoreKey allocateId(Object entity) {
     List<DatastoreKey> keys = allocateId(Arrays.asList(entity));
@@ -391,8 +746,43 @@ public class DefaultEntityManager implements EntityManager {
     for (Object entity : entities) {
       incompleteKeys[i++] = getIncompleteKey(entity);
     }
-    List<Key> nativeKeys = datastore.allocateId(incompleteKeys);
-    return DatastoreUtils.toDatastoreKeys(nativeKeys);
+    return DatastoreUtils.toDatastoreKeys(allocateNativeIds(incompleteKeys));
+  }
+
+  /**
+   * Allocates IDs for the given incomplete keys. If IDs are pre-allocated, keys without a parent
+   * are completed with pre-allocated IDs. The IDs of the other keys are allocated in one request.
+   *
+   * @param incompleteKeys the incomplete keys
+   * @return the complete keys, in the same order as the incomplete keys.
+   * @throws DeadlineExceededException if the deadline of the current thread has passed.
+   * @throws DatastoreException if the allocation fails
+   */
+  List<Key> allocateNativeIds(IncompleteKey... incompleteKeys) {
+    IdAllocator allocator = getIdAllocator();
+    if (allocator == null) {
+      return selectClient().allocateId(incompleteKeys);
+    }
+    Key[] nativeKeys = new Key[incompleteKeys.length];
+    List<Integer> parented = new ArrayList<>();
+    for (int i = 0; i < incompleteKeys.length; i++) {
+      if (incompleteKeys[i].getParent() == null) {
+        nativeKeys[i] = allocator.allocate(incompleteKeys[i]);
+      } else {
+        parented.add(i);
+      }
+    }
+    if (!parented.isEmpty()) {
+      IncompleteKey[] parentedKeys = new IncompleteKey[parented.size()];
+      for (int i = 0; i < parentedKeys.length; i++) {
+        parentedKeys[i] = incompleteKeys[parented.get(i)];
+      }
+      List<Key> allocatedKeys = selectClient().allocateId(parentedKeys);
+      for (int i = 0; i < parentedKeys.length; i++) {
+        nativeKeys[parented.get(i)] = allocatedKeys.get(i);
+      }
+    }
+    return Arrays.asList(nativeKeys);
   }
 
   /**
@@ -423,7 +813,11 @@ public class DefaultEntityManager implements EntityManager {
 
   @Override
   public void setDefaultListeners(Class<?>... entityListeners) {
-    globalCallbacks = new EnumMap<>(CallbackType.class);
+    if (root != this) {
+      root.setDefaultListeners(entityListeners);
+      return;
+    }
+    Map<CallbackType, List<CallbackMetadata>> callbacksByType = new EnumMap<>(CallbackType.class);
     for (Class<?> listenerClass : entityListeners) {
       ExternalListenerMetadata listenerMetadata =
           ExternalListenerIntrospector.introspect(listenerClass);
@@ -434,23 +828,28 @@ public class DefaultEntityManager implements EntityManager {
           Method callbackMethod = entry.getValue();
           CallbackMetadata callbackMetadata =
               new CallbackMetadata(EntityListenerType.DEFAULT, callbackType, callbackMethod);
-          putDefaultCallback(callbackType, callbackMetadata);
+          putDefaultCallback(callbacksByType, callbackType, callbackMetadata);
         }
       }
     }
+    globalCallbacks = callbacksByType;
   }
 
   /**
    * Puts/adds the given callback type and its metadata to the list of default listeners.
    *
+   * @param callbacksByType the default callbacks, by callback type
    * @param callbackType the event type
    * @param metadata the callback metadata
    */
-  private void putDefaultCallback(CallbackType callbackType, CallbackMetadata metadata) {
-    List<CallbackMetadata> metadataList = globalCallbacks.get(callbackType);
+  private static void putDefaultCallback(
+      Map<CallbackType, List<CallbackMetadata>> callbacksByType,
+      CallbackType callbackType,
+      CallbackMetadata metadata) {
+    List<CallbackMetadata> metadataList = callbacksByType.get(callbackType);
     if (metadataList == null) {
       metadataList = new ArrayList<>();
-      globalCallbacks.put(callbackType, metadataList);
+      callbacksByType.put(callbackType, metadataList);
     }
     metadataList.add(metadata);
   }
@@ -469,41 +868,75 @@ public class DefaultEntityManager implements EntityManager {
     }
     EntityListenersMetadata entityListenersMetadata =
         EntityIntrospector.getEntityListenersMetadata(entity);
-    List<CallbackMetadata> callbacks = entityListenersMetadata.getCallbacks(callbackType);
     if (!entityListenersMetadata.isExcludeDefaultListeners()) {
       executeGlobalListeners(callbackType, entity);
     }
-    if (callbacks == null) {
+    if (!entityListenersMetadata.hasCallbacks(callbackType)) {
       return;
     }
-    for (CallbackMetadata callback : callbacks) {
-      switch (callback.getListenerType()) {
-        case EXTERNAL:
-          Object listener = ListenerFactory.getInstance().getListener(callback.getListenerClass());
-          invokeCallbackMethod(callback.getCallbackMethod(), listener, entity);
-          break;
-        case INTERNAL:
-          invokeCallbackMethod(callback.getCallbackMethod(), entity);
-          break;
-        default:
-          String message =
-              String.format(
-                  "Unknown or unimplemented callback listener type: %s",
-                  callback.getListenerType());
-          throw new EntityManagerException(message);
-      }
+    for (CallbackMetadata callback : entityListenersMetadata.getCallbacks(callbackType)) {
+      invokeCallback(callback, entity);
     }
   }
 
   /**
-   * Executes the entity listeners associated with the given list of entities.
+   * Executes the entity listeners associated with the given list of entities. The list is processed
+   * in runs of consecutive, non-null entities of the same class. For each run, every callback is
+   * invoked in order; batch callbacks are invoked once with all entities in the run and per-entity
+   * callbacks are invoked once for each entity in the run.
    *
    * @param callbackType the callback type
    * @param entities the entities
    */
   public void executeEntityListeners(CallbackType callbackType, List<?> entities) {
-    for (Object entity : entities) {
-      executeEntityListeners(callbackType, entity);
+    int size = entities.size();
+    int start = 0;
+    while (start < size) {
+      Object entity = entities.get(start);
+      if (entity == null) {
+        start++;
+        continue;
+      }
+      Class<?> entityClass = entity.getClass();
+      int end = start + 1;
+      while (end < size) {
+        Object next = entities.get(end);
+        if (next == null || next.getClass() != entityClass) {
+          break;
+        }
+        end++;
+      }
+      EntityListenersMetadata entityListenersMetadata =
+          EntityIntrospector.getEntityListenersMetadata(entityClass);
+      executeEntityListeners(
+          callbackType,
+          start == 0 && end == size ? entities : entities.subList(start, end),
+          entityListenersMetadata);
+      start = end;
+    }
+  }
+
+  /**
+   * Executes the global listeners and the entity listeners for the given event type for the given
+   * entities, all of which belong to the same class. Returns immediately if there are no callbacks
+   * of the given type.
+   *
+   * @param callbackType the event type
+   * @param entities the entities
+   * @param entityListenersMetadata the listener metadata of the entities
+   */
+  private void executeEntityListeners(
+      CallbackType callbackType,
+      List<?> entities,
+      EntityListenersMetadata entityListenersMetadata) {
+    if (!entityListenersMetadata.isExcludeDefaultListeners()) {
+      executeGlobalListeners(callbackType, entities);
+    }
+    if (!entityListenersMetadata.hasCallbacks(callbackType)) {
+      return;
+    }
+    for (CallbackMetadata callback : entityListenersMetadata.getCallbacks(callbackType)) {
+      invokeCallback(callback, entities);
     }
   }
 
@@ -514,28 +947,378 @@ public class DefaultEntityManager implements EntityManager {
    * @param entity the entity
    */
   private void executeGlobalListeners(CallbackType callbackType, Object entity) {
-    if (globalCallbacks == null) {
+    List<CallbackMetadata> callbacks = getGlobalCallbacks(callbackType);
+    if (callbacks == null) {
       return;
     }
-    List<CallbackMetadata> callbacks = globalCallbacks.get(callbackType);
+    for (CallbackMetadata callback : callbacks) {
+      invokeCallback(callback, entity);
+    }
+  }
+
+  /**
+   * Executes the global listeners for the given event type for the given entities.
+   *
+   * @param callbackType the event type
+   * @param entities the entities
+   */
+  private void executeGlobalListeners(CallbackType callbackType, List<?> entities) {
+    List<CallbackMetadata> callbacks = getGlobalCallbacks(callbackType);
     if (callbacks == null) {
       return;
     }
     for (CallbackMetadata callback : callbacks) {
-      Object listener = ListenerFactory.getInstance().getListener(callback.getListenerClass());
-      invokeCallbackMethod(callback.getCallbackMethod(), listener, entity);
+      invokeCallback(callback, entities);
+    }
+  }
+
+  /**
+   * Returns the global callbacks of the given type.
+   *
+   * @param callbackType the callback type
+   * @return the global callbacks of the given type. Returns <code>null</code>, if there are none.
+   */
+  private List<CallbackMetadata> getGlobalCallbacks(CallbackType callbackType) {
+    Map<CallbackType, List<CallbackMetadata>> callbacksByType = root.globalCallbacks;
+    return callbacksByType == null ? null : callbacksByType.get(callbackType);
+  }
+
+  /**
+   * Invokes the given callback for the given entity. Batch callbacks receive a single element list.
+   *
+   * @param callback the callback
+   * @param entity the entity
+   */
+  private void invokeCallback(CallbackMetadata callback, Object entity) {
+    if (callback.isBatch()) {
+      invokeBatchCallback(callback, Collections.singletonList(entity));
+    } else if (callback.isAsync()) {
+      int routingKey = Marshaller.marshalKey(this, entity).hashCode();
+      executeAsync(routingKey, callback, entity);
+    } else {
+      callback.invoke(entity);
+    }
+  }
+
+  /**
+   * Invokes the given callback for the given entities. Batch callbacks are invoked once, others are
+   * invoked once per entity.
+   *
+   * @param callback the callback
+   * @param entities the entities
+   */
+  private void invokeCallback(CallbackMetadata callback, List<?> entities) {
+    if (callback.isBatch()) {
+      invokeBatchCallback(callback, entities);
+    } else {
+      for (Object entity : entities) {
+        invokeCallback(callback, entity);
+      }
+    }
+  }
+
+  /**
+   * Invokes the given batch callback with an unmodifiable view of the given entities. Asynchronous
+   * batch callbacks receive a copy of the list and are routed by the callback, so that successive
+   * invocations of the same callback run in order.
+   *
+   * @param callback the batch callback
+   * @param entities the entities
+   */
+  private void invokeBatchCallback(CallbackMetadata callback, List<?> entities) {
+    if (callback.isAsync()) {
+      executeAsync(
+          callback.hashCode(), callback, Collections.unmodifiableList(new ArrayList<>(entities)));
+    } else {
+      callback.invoke(Collections.unmodifiableList(entities));
+    }
+  }
+
+  /**
+   * Submits the given asynchronous callback. Callbacks run after the operation they follow has
+   * completed, so a callback that cannot be submitted must not fail the caller. If the executor was
+   * replaced after it was looked up, the callback is submitted to the new executor. Otherwise, for
+   * instance if the EntityManager was closed, the callback is invoked on the current thread.
+   *
+   * @param routingKey the routing key
+   * @param callback the callback
+   * @param entity the entity (or list of entities, for batch callbacks)
+   */
+  private void executeAsync(int routingKey, CallbackMetadata callback, Object entity) {
+    AsyncCallbackExecutor executor = getAsyncCallbackExecutor();
+    if (executor.execute(routingKey, callback, entity)) {
+      return;
+    }
+    AsyncCallbackExecutor currentExecutor = root.asyncCallbackExecutor;
+    if (currentExecutor != null
+        && currentExecutor != executor
+        && currentExecutor.execute(routingKey, callback, entity)) {
+      return;
+    }
+    executor.run(callback, entity);
+  }
+
+  @Override
+  public void setAsyncCallbackOptions(AsyncCallbackOptions options) {
+    if (root != this) {
+      root.setAsyncCallbackOptions(options);
+      return;
+    }
+    AsyncCallbackExecutor oldExecutor;
+    synchronized (this) {
+      oldExecutor = asyncCallbackExecutor;
+      asyncCallbackExecutor = new AsyncCallbackExecutor(options);
+    }
+    if (oldExecutor != null) {
+      oldExecutor.shutdown();
+    }
+  }
+
+  @Override
+  public void setHedgingOptions(HedgingOptions options) {
+    if (root != this) {
+      root.setHedgingOptions(options);
+      return;
+    }
+    HedgedLookupExecutor oldExecutor;
+    synchronized (this) {
+      oldExecutor = hedgedLookupExecutor;
+      hedgedLookupExecutor = options == null ? null : new HedgedLookupExecutor(options);
+    }
+    if (oldExecutor != null) {
+      oldExecutor.shutdown();
+    }
+  }
+
+  @Override
+  public HedgingMetrics getHedgingMetrics() {
+    HedgedLookupExecutor executor = getHedgedLookupExecutor();
+    return executor == null ? new HedgingMetrics(0, 0, 0, -1) : executor.getMetrics();
+  }
+
+  /**
+   * Returns the executor for hedged lookups.
+   *
+   * @return the executor for hedged lookups, or <code>null</code>, if hedging is disabled.
+   */
+  HedgedLookupExecutor getHedgedLookupExecutor() {
+    return root.hedgedLookupExecutor;
+  }
+
+  @Override
+  public void setWriteRateOptions(WriteRateOptions options) {
+    if (root != this) {
+      root.setWriteRateOptions(options);
+      return;
+    }
+    synchronized (this) {
+      writeRateGovernor = options == null ? null : new WriteRateGovernor(options);
+    }
+  }
+
+  @Override
+  public double getWriteRate(String kind) {
+    WriteRateGovernor governor = getWriteRateGovernor();
+    return governor == null ? 0 : governor.getRate(kind);
+  }
+
+  /**
+   * Returns the governor of the rate of writes.
+   *
+   * @return the governor of the rate of writes, or <code>null</code>, if the rate is not governed.
+   */
+  WriteRateGovernor getWriteRateGovernor() {
+    return root.writeRateGovernor;
+  }
+
+  @Override
+  public void setEntityGroupWriteOptions(EntityGroupWriteOptions options) {
+    if (root != this) {
+      root.setEntityGroupWriteOptions(options);
+      return;
+    }
+    // The scheduler has no threads of its own. Writes queued with the previous scheduler are
+    // committed by their writers, so there is nothing to shut down.
+    synchronized (this) {
+      entityGroupWriteScheduler =
+          options == null ? null : new EntityGroupWriteScheduler(this, options);
     }
   }
 
   /**
-   * Creates and returns a new native KeyFactory. If a namespace was specified using {@link Tenant},
-   * the returned KeyFactory will have the specified namespace.
+   * Returns the scheduler of writes by entity group.
+   *
+   * @return the scheduler of writes by entity group, or <code>null</code>, if writes are not
+   *     scheduled.
+   */
+  EntityGroupWriteScheduler getEntityGroupWriteScheduler() {
+    return root.entityGroupWriteScheduler;
+  }
+
+  @Override
+  public void setIdAllocationOptions(IdAllocationOptions options) {
+    if (root != this) {
+      root.setIdAllocationOptions(options);
+      return;
+    }
+    IdAllocator oldAllocator;
+    synchronized (this) {
+      oldAllocator = idAllocator;
+      idAllocator = options == null ? null : new IdAllocator(this, options);
+    }
+    if (oldAllocator != null) {
+      oldAllocator.shutdown();
+    }
+  }
+
+  /**
+   * Returns the allocator of pre-allocated IDs.
+   *
+   * @return the allocator of pre-allocated IDs, or <code>null</code>, if IDs are not pre-allocated.
+   */
+  IdAllocator getIdAllocator() {
+    return root.idAllocator;
+  }
+
+  /**
+   * Returns the executor for the lookups of queries executed in KEYS_THEN_LOOKUP mode, creating
+   * one, if this is the first such query.
+   *
+   * @return the executor for the lookups of queries executed in KEYS_THEN_LOOKUP mode.
+   */
+  ExecutorService getLookupExecutor() {
+    if (root != this) {
+      return root.getLookupExecutor();
+    }
+    ExecutorService executor = lookupExecutor;
+    if (executor == null) {
+      synchronized (this) {
+        executor = lookupExecutor;
+        if (executor == null) {
+          executor = ConcurrencyUtils.newSharedExecutor(LOOKUP_THREADS, "catatumbo-lookup-");
+          lookupExecutor = executor;
+        }
+      }
+    }
+    return executor;
+  }
+
+  @Override
+  public void close() {
+    if (root != this) {
+      root.close();
+      return;
+    }
+    AsyncCallbackExecutor oldCallbackExecutor;
+    HedgedLookupExecutor oldHedgedLookupExecutor;
+    IdAllocator oldAllocator;
+    ExecutorService oldLookupExecutor;
+    synchronized (this) {
+      oldCallbackExecutor = asyncCallbackExecutor;
+      oldHedgedLookupExecutor = hedgedLookupExecutor;
+      oldAllocator = idAllocator;
+      oldLookupExecutor = lookupExecutor;
+      asyncCallbackExecutor = null;
+      hedgedLookupExecutor = null;
+      idAllocator = null;
+      lookupExecutor = null;
+    }
+    if (oldCallbackExecutor != null) {
+      oldCallbackExecutor.shutdown();
+    }
+    if (oldHedgedLookupExecutor != null) {
+      oldHedgedLookupExecutor.shutdown();
+    }
+    if (oldAllocator != null) {
+      oldAllocator.shutdown();
+    }
+    if (oldLookupExecutor != null) {
+      oldLookupExecutor.shutdown();
+    }
+    closeHttpTransports();
+  }
+
+  /**
+   * Closes the HTTP connections of the Datastore clients of this EntityManager, if their
+   * transports were created by a {@link PooledHttpTransportFactory}. Transports created by any
+   * other factory are left to the application that provided the factory.
+   */
+  private void closeHttpTransports() {
+    for (int i = 0; i < clientPool.size(); i++) {
+      TransportOptions transportOptions =
+          clientPool.getClient(i).getOptions().getTransportOptions();
+      if (transportOptions instanceof HttpTransportOptions) {
+        HttpTransportFactory transportFactory =
+            ((HttpTransportOptions) transportOptions).getHttpTransportFactory();
+        if (transportFactory instanceof PooledHttpTransportFactory) {
+          ((PooledHttpTransportFactory) transportFactory).close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the executor for asynchronous callbacks, creating one with the default options, if one
+   * was not configured.
+   *
+   * @return the executor for asynchronous callbacks.
+   */
+  private AsyncCallbackExecutor getAsyncCallbackExecutor() {
+    if (root != this) {
+      return root.getAsyncCallbackExecutor();
+    }
+    AsyncCallbackExecutor executor = asyncCallbackExecutor;
+    if (executor == null) {
+      synchronized (this) {
+        executor = asyncCallbackExecutor;
+        if (executor == null) {
+          executor = new AsyncCallbackExecutor(new AsyncCallbackOptions());
+          asyncCallbackExecutor = executor;
+        }
+      }
+    }
+    return executor;
+  }
+
+  /**
+   * Returns the cache of Datastore statistics. Namespace bound views share the cache of the
+   * EntityManager they were created from.
+   *
+   * @return the cache of Datastore statistics.
+   */
+  StatsCache getStatsCache() {
+    return root.statsCache;
+  }
+
+  /**
+   * Returns the cached schema snapshot. Namespace bound views share the snapshot of the
+   * EntityManager they were created from.
+   *
+   * @return the cached schema snapshot, or <code>null</code>, if there is none.
+   */
+  SchemaSnapshot getSchemaSnapshot() {
+    return root.schemaSnapshot;
+  }
+
+  /**
+   * Replaces the cached schema snapshot.
+   *
+   * @param schemaSnapshot the schema snapshot
+   */
+  void setSchemaSnapshot(SchemaSnapshot schemaSnapshot) {
+    root.schemaSnapshot = schemaSnapshot;
+  }
+
+  /**
+   * Creates and returns a new native KeyFactory. If this EntityManager is bound to a namespace, the
+   * returned KeyFactory will have that namespace. Otherwise, if a namespace was specified using
+   * {@link Tenant}, the returned KeyFactory will have the specified namespace.
    *
    * @return a {@link KeyFactory}
    */
   KeyFactory newNativeKeyFactory() {
     KeyFactory keyFactory = datastore.newKeyFactory();
-    String namespace = Tenant.getNamespace();
+    String namespace = boundNamespace == null ? Tenant.getNamespace() : boundNamespace;
     if (namespace != null) {
       keyFactory.setNamespace(namespace);
     }
@@ -543,12 +1326,61 @@ public class DefaultEntityManager implements EntityManager {
   }
 
   /**
-   * Returns the effective namespace. If a namespace was specified using {@link Tenant}, it will be
-   * returned. Otherwise, the namespace of this EntityManager is returned.
+   * Creates and returns a new native key with the given kind and numeric ID, in the effective
+   * namespace.
+   *
+   * @param kind the kind
+   * @param id the ID
+   * @return the native key
+   */
+  Key newNativeKey(String kind, long id) {
+    if (keyPrototypes == null) {
+      return newNativeKeyFactory().setKind(kind).newKey(id);
+    }
+    return Key.newBuilder(getKeyPrototype(kind), id).build();
+  }
+
+  /**
+   * Creates and returns a new native key with the given kind and name, in the effective namespace.
+   *
+   * @param kind the kind
+   * @param name the name
+   * @return the native key
+   */
+  Key newNativeKey(String kind, String name) {
+    if (keyPrototypes == null) {
+      return newNativeKeyFactory().setKind(kind).newKey(name);
+    }
+    return Key.newBuilder(getKeyPrototype(kind), name).build();
+  }
+
+  /**
+   * Returns an incomplete key of the given kind in the bound namespace, creating and caching it if
+   * needed. Must only be called on namespace bound views.
+   *
+   * @param kind the kind
+   * @return an incomplete key of the given kind in the bound namespace
+   */
+  private IncompleteKey getKeyPrototype(String kind) {
+    IncompleteKey prototype = keyPrototypes.get(kind);
+    if (prototype == null) {
+      prototype = newNativeKeyFactory().setKind(kind).newKey();
+      keyPrototypes.put(kind, prototype);
+    }
+    return prototype;
+  }
+
+  /**
+   * Returns the effective namespace. If this EntityManager is bound to a namespace, it will be
+   * returned. Otherwise, if a namespace was specified using {@link Tenant}, it will be returned.
+   * Otherwise, the namespace of this EntityManager is returned.
    *
    * @return the effective namespace.
    */
   String getEffectiveNamespace() {
+    if (boundNamespace != null) {
+      return boundNamespace;
+    }
     String namespace = Tenant.getNamespace();
     if (namespace == null) {
       namespace = datastore.getOptions().getNamespace();
@@ -0,0 +1,506 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.jmethods.catatumbo.BaseQueryRequest;
+import com.jmethods.catatumbo.DatastoreCursor;
+import com.jmethods.catatumbo.DatastoreKey;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.EntityQueryRequest;
+import com.jmethods.catatumbo.KeyQueryRequest;
+import com.jmethods.catatumbo.PaginationOptions;
+import com.jmethods.catatumbo.Paginator;
+import com.jmethods.catatumbo.QueryResponse;
+import com.jmethods.catatumbo.QueryResponseMetadata.QueryState;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Default implementation of {@link Paginator}. Pages are fetched by a dedicated daemon thread,
+ * which hands them over to the caller through a bounded queue. If the thread creating the
+ * paginator has a {@link com.jmethods.catatumbo.Deadline}, the whole pagination is bound by it;
+ * once it passes, the paginator is cancelled and a {@link DeadlineExceededException} is thrown.
+ *
+ * @author Sai Pullabhotla
+ * @param <E> the type of results
+ */
+public class DefaultPaginator<E> implements Paginator<E> {
+
+  /** Name of the binding used for the page size, when the query uses named bindings */
+  static final String LIMIT_BINDING = "CatatumboPageLimit";
+
+  /** Name of the binding used for the page cursor, when the query uses named bindings */
+  static final String CURSOR_BINDING = "CatatumboPageCursor";
+
+  /** Marks the end of the pages in the queue */
+  private static final Object END = new Object();
+
+  /** Number of paginator threads created so far, used for naming the threads */
+  private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  /** Fetches the pages */
+  private final PageFetcher<E> fetcher;
+
+  /** Number of results per page */
+  private final int pageSize;
+
+  /** Cursor from which the first page starts */
+  private final DatastoreCursor startCursor;
+
+  /** Pages fetched, but not yet consumed */
+  private final BlockingQueue<Object> pages;
+
+  /** The thread that fetches the pages */
+  private final Thread fetcherThread;
+
+  /** Deadline of the pagination */
+  private final OperationDeadline deadline;
+
+  /** Whether or not this paginator was cancelled */
+  private volatile boolean cancelled;
+
+  /** Whether or not the caller has seen the last page */
+  private boolean done;
+
+  /** The next element taken from the queue, but not yet returned to the caller */
+  private Object nextElement;
+
+  /**
+   * Creates a new instance of <code>DefaultPaginator</code>. The background fetch does not begin
+   * until {@link #start()} is called.
+   *
+   * @param fetcher fetches the pages
+   * @param options the pagination options
+   */
+  DefaultPaginator(PageFetcher<E> fetcher, PaginationOptions options) {
+    this.fetcher = fetcher;
+    this.pageSize = options.getPageSize();
+    this.startCursor = options.getStartCursor();
+    this.pages = new ArrayBlockingQueue<>(options.getPrefetchDepth());
+    this.deadline = OperationDeadline.current();
+    this.fetcherThread =
+        new Thread(new FetchTask(), "catatumbo-paginator-" + THREAD_COUNT.incrementAndGet());
+    this.fetcherThread.setDaemon(true);
+  }
+
+  /**
+   * Creates a paginator for the given entity query.
+   *
+   * @param <E> the type of results
+   * @param entityManager the entity manager
+   * @param expectedResultType the expected type of results
+   * @param request the query request
+   * @param options the pagination options
+   * @return the paginator, which has already started fetching the first page.
+   * @throws IllegalArgumentException if the query has a <code>LIMIT</code> or <code>OFFSET</code>
+   *     clause.
+   */
+  static <E> DefaultPaginator<E> forEntityQuery(
+      DefaultEntityManager entityManager,
+      Class<E> expectedResultType,
+      EntityQueryRequest request,
+      PaginationOptions options) {
+    validateQuery(request.getQuery());
+    DefaultPaginator<E> paginator =
+        new DefaultPaginator<>(
+            new EntityPageFetcher<>(bindNamespace(entityManager), expectedResultType, request),
+            options);
+    paginator.start();
+    return paginator;
+  }
+
+  /**
+   * Creates a paginator for the given key query.
+   *
+   * @param entityManager the entity manager
+   * @param request the query request
+   * @param options the pagination options
+   * @return the paginator, which has already started fetching the first page.
+   * @throws IllegalArgumentException if the query has a <code>LIMIT</code> or <code>OFFSET</code>
+   *     clause.
+   */
+  static DefaultPaginator<DatastoreKey> forKeyQuery(
+      DefaultEntityManager entityManager, KeyQueryRequest request, PaginationOptions options) {
+    validateQuery(request.getQuery());
+    DefaultPaginator<DatastoreKey> paginator =
+        new DefaultPaginator<>(new KeyPageFetcher(bindNamespace(entityManager), request), options);
+    paginator.start();
+    return paginator;
+  }
+
+  /**
+   * Returns a view of the given entity manager that is bound to its current effective namespace.
+   * Pages are fetched on a different thread, which does not see the namespace set using {@link
+   * com.jmethods.catatumbo.Tenant}.
+   *
+   * @param entityManager the entity manager
+   * @return a view of the given entity manager that is bound to its effective namespace.
+   */
+  private static DefaultEntityManager bindNamespace(DefaultEntityManager entityManager) {
+    String namespace = entityManager.getEffectiveNamespace();
+    return namespace == null ? entityManager : entityManager.forNamespace(namespace);
+  }
+
+  /** Starts fetching the pages in the background. */
+  void start() {
+    fetcherThread.start();
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (done) {
+      return false;
+    }
+    if (nextElement == null) {
+      try {
+        nextElement = takePage();
+      } catch (InterruptedException exp) {
+        Thread.currentThread().interrupt();
+        throw new EntityManagerException(exp);
+      }
+    }
+    if (nextElement == END) {
+      done = true;
+      nextElement = null;
+      return false;
+    }
+    if (nextElement instanceof RuntimeException) {
+      done = true;
+      RuntimeException exp = (RuntimeException) nextElement;
+      nextElement = null;
+      throw exp instanceof EntityManagerException ? exp : new EntityManagerException(exp);
+    }
+    return true;
+  }
+
+  /**
+   * Waits for the next element in the queue, but no longer than the deadline of the pagination.
+   *
+   * @return the next element in the queue
+   * @throws InterruptedException if interrupted while waiting
+   * @throws DeadlineExceededException if the deadline passes before the next element is available.
+   */
+  private Object takePage() throws InterruptedException {
+    if (!deadline.isBounded()) {
+      return pages.take();
+    }
+    Object element = pages.poll(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS);
+    if (element == null) {
+      cancel();
+      throw new DeadlineExceededException(OperationDeadline.EXCEEDED_MESSAGE);
+    }
+    return element;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public QueryResponse<E> next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    QueryResponse<E> page = (QueryResponse<E>) nextElement;
+    nextElement = null;
+    return page;
+  }
+
+  @Override
+  public void cancel() {
+    cancelled = true;
+    done = true;
+    nextElement = null;
+    fetcherThread.interrupt();
+    pages.clear();
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public void close() {
+    if (!cancelled) {
+      cancel();
+    }
+  }
+
+  /**
+   * Validates that the given GQL query can be paginated. Each page is fetched by appending <code>
+   * LIMIT</code> and <code>OFFSET</code> clauses to the query, so the query must not have either of
+   * them already. Keywords inside string literals and quoted names are ignored.
+   *
+   * @param query the GQL query
+   * @throws IllegalArgumentException if the query has a <code>LIMIT</code> or <code>OFFSET</code>
+   *     clause.
+   */
+  static void validateQuery(String query) {
+    int length = query.length();
+    int index = 0;
+    while (index < length) {
+      char ch = query.charAt(index);
+      if (ch == '\'' || ch == '"' || ch == '`') {
+        index = skipQuoted(query, index);
+      } else if (Character.isJavaIdentifierStart(ch)) {
+        int start = index;
+        while (index < length && Character.isJavaIdentifierPart(query.charAt(index))) {
+          index++;
+        }
+        String word = query.substring(start, index);
+        if ("LIMIT".equalsIgnoreCase(word) || "OFFSET".equalsIgnoreCase(word)) {
+          throw new IllegalArgumentException(
+              String.format(
+                  "Query to paginate must not have a %s clause: %s", word.toUpperCase(), query));
+        }
+      } else {
+        index++;
+      }
+    }
+  }
+
+  /**
+   * Skips the quoted string literal or name that starts at the given index. A quote character is
+   * escaped either with a backslash or by doubling it.
+   *
+   * @param query the GQL query
+   * @param start the index of the opening quote
+   * @return the index following the closing quote, or the length of the query, if the quoted text
+   *     is not closed.
+   */
+  private static int skipQuoted(String query, int start) {
+    char quote = query.charAt(start);
+    int index = start + 1;
+    while (index < query.length()) {
+      char ch = query.charAt(index);
+      if (ch == '\\') {
+        index += 2;
+      } else if (ch == quote) {
+        if (index + 1 < query.length() && query.charAt(index + 1) == quote) {
+          index += 2;
+        } else {
+          return index + 1;
+        }
+      } else {
+        index++;
+      }
+    }
+    return query.length();
+  }
+
+  /**
+   * Returns a copy of the given query request that fetches one page, starting at the given cursor.
+   * The query is extended with a <code>LIMIT</code> clause and, if a cursor is given, an <code>
+   * OFFSET</code> clause. Positional bindings are used for these clauses if the query uses
+   * positional bindings, named bindings otherwise, since GQL does not allow mixing the two.
+   *
+   * @param request the query request
+   * @param pageRequest the request to initialize
+   * @param cursor the cursor from which the page starts, may be <code>null</code>.
+   * @param limit the page size
+   */
+  static void preparePageRequest(
+      BaseQueryRequest request, BaseQueryRequest pageRequest, DatastoreCursor cursor, int limit) {
+    StringBuilder query = new StringBuilder(request.getQuery().trim());
+    List<Object> positionalBindings = new ArrayList<>(request.getPositionalBindings());
+    pageRequest.setNamedBindings(new HashMap<>(request.getNamedBindings()));
+    pageRequest.setPositionalBindings(positionalBindings);
+    pageRequest.setAllowLiterals(request.isAllowLiterals());
+    pageRequest.setTimeout(request.getTimeout());
+    if (positionalBindings.isEmpty()) {
+      query.append(" LIMIT @").append(LIMIT_BINDING);
+      pageRequest.setNamedBinding(LIMIT_BINDING, limit);
+      if (cursor != null) {
+        query.append(" OFFSET @").append(CURSOR_BINDING);
+        pageRequest.setNamedBinding(CURSOR_BINDING, cursor);
+      }
+    } else {
+      positionalBindings.add(limit);
+      query.append(" LIMIT @").append(positionalBindings.size());
+      if (cursor != null) {
+        positionalBindings.add(cursor);
+        query.append(" OFFSET @").append(positionalBindings.size());
+      }
+    }
+    pageRequest.setQuery(query.toString());
+  }
+
+  /**
+   * Fetches one page of results.
+   *
+   * @author Sai Pullabhotla
+   * @param <E> the type of results
+   */
+  interface PageFetcher<E> {
+
+    /**
+     * Fetches a page of results.
+     *
+     * @param cursor the cursor from which the page starts, <code>null</code> for the first page.
+     * @param limit the maximum number of results in the page
+     * @return the page
+     */
+    QueryResponse<E> fetch(DatastoreCursor cursor, int limit);
+  }
+
+  /**
+   * Fetches pages of an entity query.
+   *
+   * @author Sai Pullabhotla
+   * @param <E> the type of results
+   */
+  private static class EntityPageFetcher<E> implements PageFetcher<E> {
+
+    /** Entity manager */
+    private final DefaultEntityManager entityManager;
+
+    /** Expected type of results */
+    private final Class<E> expectedResultType;
+
+    /** The query request */
+    private final EntityQueryRequest request;
+
+    /**
+     * Creates a new instance of <code>EntityPageFetcher</code>.
+     *
+     * @param entityManager the entity manager
+     * @param expectedResultType the expected type of results
+     * @param request the query request
+     */
+    EntityPageFetcher(
+        DefaultEntityManager entityManager,
+        Class<E> expectedResultType,
+        EntityQueryRequest request) {
+      this.entityManager = entityManager;
+      this.expectedResultType = expectedResultType;
+      this.request = request;
+    }
+
+    @Override
+    public QueryResponse<E> fetch(DatastoreCursor cursor, int limit) {
+      EntityQueryRequest pageRequest = new EntityQueryRequest(request.getQuery());
+      preparePageRequest(request, pageRequest, cursor, limit);
+      pageRequest.setExecutionMode(request.getExecutionMode());
+      pageRequest.setLookupBatchSize(request.getLookupBatchSize());
+      pageRequest.setLookupParallelism(request.getLookupParallelism());
+      if (request.getFetchGroup() != null) {
+        pageRequest.setFetchGroup(request.getFetchGroup());
+      } else {
+        pageRequest.setFetchFields(request.getFetchFields().toArray(new String[0]));
+      }
+      return entityManager.executeEntityQueryRequest(expectedResultType, pageRequest);
+    }
+  }
+
+  /**
+   * Fetches pages of a key query.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class KeyPageFetcher implements PageFetcher<DatastoreKey> {
+
+    /** Entity manager */
+    private final DefaultEntityManager entityManager;
+
+    /** The query request */
+    private final KeyQueryRequest request;
+
+    /**
+     * Creates a new instance of <code>KeyPageFetcher</code>.
+     *
+     * @param entityManager the entity manager
+     * @param request the query request
+     */
+    KeyPageFetcher(DefaultEntityManager entityManager, KeyQueryRequest request) {
+      this.entityManager = entityManager;
+      this.request = request;
+    }
+
+    @Override
+    public QueryResponse<DatastoreKey> fetch(DatastoreCursor cursor, int limit) {
+      KeyQueryRequest pageRequest = new KeyQueryRequest(request.getQuery());
+      preparePageRequest(request, pageRequest, cursor, limit);
+      return entityManager.executeKeyQueryRequest(pageRequest);
+    }
+  }
+
+  /**
+   * Fetches pages until there are no more results, or until the paginator is cancelled.
+   *
+   * @author Sai Pullabhotla
+   */
+  private class FetchTask implements Runnable {
+
+    @Override
+    public void run() {
+      deadline.bind();
+      DatastoreCursor cursor = startCursor;
+      try {
+        while (!cancelled) {
+          QueryResponse<E> page = fetcher.fetch(cursor, pageSize);
+          if (!page.getResults().isEmpty()) {
+            pages.put(page);
+          }
+          if (getQueriedCount(page) < pageSize || isLastPage(page)) {
+            break;
+          }
+          cursor = page.getEndCursor();
+        }
+        pages.put(END);
+      } catch (InterruptedException exp) {
+        // Cancelled, nobody is waiting for more pages.
+      } catch (RuntimeException exp) {
+        try {
+          pages.put(exp);
+        } catch (InterruptedException exp2) {
+          // Cancelled, nobody is waiting for the error.
+        }
+      }
+    }
+
+    /**
+     * Returns the number of results the query of the given page returned. This is the number of
+     * results in the page, except for queries executed in KEYS_THEN_LOOKUP mode, whose pages do not
+     * include the entities that were deleted after their keys were queried.
+     *
+     * @param page the page
+     * @return the number of results the query of the given page returned.
+     */
+    private int getQueriedCount(QueryResponse<E> page) {
+      if (page instanceof KeysThenLookupQueryResponse) {
+        return ((KeysThenLookupQueryResponse<E>) page).getKeyCount();
+      }
+      return page.getResults().size();
+    }
+
+    /**
+     * Tells whether or not the Datastore reported that there are no results after the given page.
+     *
+     * @param page the page
+     * @return <code>true</code>, if there are no more results; <code>false</code>, otherwise.
+     */
+    private boolean isLastPage(QueryResponse<E> page) {
+      return page.getQueryResponseMetadata() != null
+          && page.getQueryResponseMetadata().getQueryState() == QueryState.NO_MORE_RESULTS;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.jmethods.catatumbo.CompiledQuery;
+import com.jmethods.catatumbo.DatastoreKey;
+import com.jmethods.catatumbo.QueryBuilder;
+import com.jmethods.catatumbo.impl.DefaultCompiledQuery.FilterTemplate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Default implementation of {@link QueryBuilder}.
+ *
+ * @author Sai Pullabhotla
+ * @param <E> the entity type
+ */
+public class DefaultQueryBuilder<E> implements QueryBuilder<E> {
+
+  /** The entity class */
+  private final Class<E> entityClass;
+
+  /** Metadata of the entity class */
+  private final EntityMetadata entityMetadata;
+
+  /** Filters added so far */
+  private final List<FilterTemplate> filters;
+
+  /** Sort orders added so far */
+  private final List<OrderBy> orders;
+
+  /** Number of parameters added so far */
+  private int parameterCount;
+
+  /** Maximum number of results */
+  private int limit;
+
+  /**
+   * Creates a new instance of <code>DefaultQueryBuilder</code>.
+   *
+   * @param entityClass the entity class
+   */
+  public DefaultQueryBuilder(Class<E> entityClass) {
+    this.entityClass = entityClass;
+    this.entityMetadata = EntityIntrospector.introspect(entityClass);
+    this.filters = new ArrayList<>();
+    this.orders = new ArrayList<>();
+  }
+
+  @Override
+  public QueryBuilder<E> where(String fieldName, Operator operator) {
+    PropertyMetadata propertyMetadata = getIndexedProperty(fieldName);
+    filters.add(FilterTemplate.forParameter(propertyMetadata, operator, parameterCount++));
+    return this;
+  }
+
+  @Override
+  public QueryBuilder<E> where(String fieldName, Operator operator, Object value) {
+    PropertyMetadata propertyMetadata = getIndexedProperty(fieldName);
+    filters.add(FilterTemplate.forValue(propertyMetadata, operator, value));
+    return this;
+  }
+
+  @Override
+  public QueryBuilder<E> whereAncestor() {
+    filters.add(FilterTemplate.forAncestorParameter(parameterCount++));
+    return this;
+  }
+
+  @Override
+  public QueryBuilder<E> whereAncestor(DatastoreKey ancestorKey) {
+    if (ancestorKey == null) {
+      throw new IllegalArgumentException("ancestorKey cannot be null");
+    }
+    filters.add(FilterTemplate.forAncestor(ancestorKey));
+    return this;
+  }
+
+  @Override
+  public QueryBuilder<E> orderBy(String fieldName, Direction direction) {
+    String mappedName = getIndexedProperty(fieldName).getMappedName();
+    orders.add(
+        direction == Direction.DESCENDING ? OrderBy.desc(mappedName) : OrderBy.asc(mappedName));
+    return this;
+  }
+
+  @Override
+  public QueryBuilder<E> limit(int limit) {
+    this.limit = limit;
+    return this;
+  }
+
+  @Override
+  public CompiledQuery<E> build() {
+    return new DefaultCompiledQuery<>(
+        entityClass,
+        entityMetadata.getKind(),
+        new ArrayList<>(filters),
+        new ArrayList<>(orders),
+        limit);
+  }
+
+  /**
+   * Returns the metadata of the given field, which must be an indexed, simple property.
+   *
+   * @param fieldName the name of the field
+   * @return the metadata of the field
+   * @throws IllegalArgumentException if the entity has no such field, or if the field is not
+   *     indexed.
+   */
+  private PropertyMetadata getIndexedProperty(String fieldName) {
+    PropertyMetadata propertyMetadata = entityMetadata.getPropertyMetadataByFieldName(fieldName);
+    if (propertyMetadata == null) {
+      throw new IllegalArgumentException(
+          String.format("Class %s has no property named %s", entityClass.getName(), fieldName));
+    }
+    if (!propertyMetadata.isIndexed()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Property %s of class %s is not indexed", fieldName, entityClass.getName()));
+    }
+    return propertyMetadata;
+  }
+}
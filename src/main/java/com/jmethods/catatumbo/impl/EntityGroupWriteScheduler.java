@@ -0,0 +1,493 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.BaseKey;
+import com.google.cloud.datastore.Batch;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.PathElement;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityGroupWriteOptions;
+import com.jmethods.catatumbo.EntityManagerException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules single entity writes by entity group, as configured by {@link EntityGroupWriteOptions}.
+ * Each group, identified by its root key, has a queue and a lock. A writer queues its write and
+ * takes the lock of the group; if its write has not been committed by the previous holder of the
+ * lock, it commits all writes at the head of the queue, its own included, in one batch. There are
+ * no background threads, and a write to an idle group is committed right away by its own writer.
+ *
+ * <p>A batch never contains two writes to the same entity; the second write, and the ones queued
+ * after it, go into the next commit, so writes to an entity are applied in order. If a batch of
+ * several writes fails, each write is retried on its own, so that one bad write does not fail the
+ * others.
+ *
+ * <p>A batch is committed under the latest of the deadlines of its writers, not the deadline of the
+ * holder of the lock. If the holder fails for reasons of its own, such as its thread being
+ * interrupted, only the write of the holder fails; the other writes are put back at the head of
+ * the queue, to be committed by the next holder.
+ *
+ * @author Sai Pullabhotla
+ */
+public class EntityGroupWriteScheduler {
+
+  /** The entity manager */
+  private final DefaultEntityManager entityManager;
+
+  /** Maximum number of writes in one commit */
+  private final int maxBatchSize;
+
+  /** Groups with pending writes, keyed by root key */
+  private final ConcurrentMap<Key, Group> groups = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new instance of <code>EntityGroupWriteScheduler</code>.
+   *
+   * @param entityManager the entity manager
+   * @param options the options
+   */
+  public EntityGroupWriteScheduler(
+      DefaultEntityManager entityManager, EntityGroupWriteOptions options) {
+    this.entityManager = entityManager;
+    this.maxBatchSize = options.getMaxBatchSize();
+  }
+
+  /**
+   * Tells whether or not writes with the given key can be scheduled. Writes of root entities with
+   * an incomplete key create a new entity group, so they never contend with other writes.
+   *
+   * @param key the key
+   * @return <code>true</code>, if the key is complete or has a parent; <code>false</code>,
+   *     otherwise.
+   */
+  static boolean isSchedulable(BaseKey key) {
+    return key instanceof Key || !key.getAncestors().isEmpty();
+  }
+
+  /**
+   * Inserts the given entity.
+   *
+   * @param entity the entity
+   * @return the inserted entity, with its key completed.
+   * @throws DatastoreException if the commit fails
+   */
+  public Entity add(FullEntity<?> entity) {
+    return execute(new PendingWrite(Operation.ADD, entity, entity.getKey()));
+  }
+
+  /**
+   * Inserts or updates the given entity.
+   *
+   * @param entity the entity
+   * @return the written entity, with its key completed.
+   * @throws DatastoreException if the commit fails
+   */
+  public Entity put(FullEntity<?> entity) {
+    return execute(new PendingWrite(Operation.PUT, entity, entity.getKey()));
+  }
+
+  /**
+   * Updates the given entity.
+   *
+   * @param entity the entity
+   * @throws DatastoreException if the commit fails
+   */
+  public void update(Entity entity) {
+    execute(new PendingWrite(Operation.UPDATE, entity, entity.getKey()));
+  }
+
+  /**
+   * Deletes the entity with the given key.
+   *
+   * @param key the key
+   * @throws DatastoreException if the commit fails
+   */
+  public void delete(Key key) {
+    execute(new PendingWrite(Operation.DELETE, null, key));
+  }
+
+  /**
+   * Queues the given write and waits until it is committed, committing it, and the writes queued
+   * with it, if needed.
+   *
+   * @param write the write
+   * @return the written entity, or <code>null</code>, for updates and deletes.
+   */
+  private Entity execute(PendingWrite write) {
+    Key rootKey = getRootKey(write.key);
+    Group group = getGroup(rootKey);
+    group.queue.add(write);
+    lock(group, write);
+    try {
+      while (!write.done) {
+        commitNext(group, write);
+      }
+    } finally {
+      group.lock.unlock();
+      if (group.queue.isEmpty()) {
+        groups.remove(rootKey, group);
+      }
+    }
+    return write.getResult();
+  }
+
+  /**
+   * Takes the lock of the given group, waiting no longer than the deadline of the current thread.
+   * If the lock cannot be taken, the given write is withdrawn from the queue, unless another thread
+   * is already committing it.
+   *
+   * @param group the group
+   * @param write the write of the current thread
+   * @throws DeadlineExceededException if the deadline passes before the lock is taken.
+   * @throws EntityManagerException if interrupted while waiting for the lock.
+   */
+  private static void lock(Group group, PendingWrite write) {
+    OperationDeadline deadline = OperationDeadline.current();
+    try {
+      if (!deadline.isBounded()) {
+        group.lock.lockInterruptibly();
+      } else if (!group.lock.tryLock(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS)) {
+        if (withdraw(group, write)) {
+          throw new DeadlineExceededException(OperationDeadline.EXCEEDED_MESSAGE);
+        }
+      }
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+      if (withdraw(group, write)) {
+        throw new EntityManagerException(exp);
+      }
+    }
+  }
+
+  /**
+   * Withdraws the given write from the queue of the given group. If the write has already been
+   * taken by the holder of the lock, its outcome cannot be undone, so the lock is taken to wait for
+   * it.
+   *
+   * @param group the group
+   * @param write the write of the current thread
+   * @return <code>true</code>, if the write was withdrawn; <code>false</code>, if the lock was
+   *     taken instead.
+   */
+  private static boolean withdraw(Group group, PendingWrite write) {
+    if (group.queue.remove(write)) {
+      return true;
+    }
+    group.lock.lock();
+    return false;
+  }
+
+  /**
+   * Commits the writes at the head of the queue of the given group. Must be called while holding
+   * the lock of the group. If the commit fails because of the current thread, the write of the
+   * current thread fails, unless it was already committed, and the other writes that were not
+   * committed are queued again.
+   *
+   * @param group the group
+   * @param ownWrite the write of the current thread
+   */
+  private void commitNext(Group group, PendingWrite ownWrite) {
+    List<PendingWrite> writes = new ArrayList<>();
+    Set<BaseKey> keys = new HashSet<>();
+    while (writes.size() < maxBatchSize) {
+      PendingWrite write = group.queue.poll();
+      if (write == null) {
+        break;
+      }
+      if (write.key instanceof Key && !keys.add(write.key)) {
+        group.queue.addFirst(write);
+        break;
+      }
+      writes.add(write);
+    }
+    OperationDeadline deadline = ownWrite.deadline;
+    for (PendingWrite write : writes) {
+      deadline = deadline.later(write.deadline);
+    }
+    OperationDeadline previous = deadline.bind();
+    try {
+      commit(writes);
+    } catch (RuntimeException exp) {
+      for (int i = writes.size() - 1; i >= 0; i--) {
+        PendingWrite write = writes.get(i);
+        if (!write.done && write != ownWrite) {
+          group.queue.addFirst(write);
+        }
+      }
+      if (!ownWrite.done) {
+        group.queue.remove(ownWrite);
+        fail(Collections.singletonList(ownWrite), exp);
+      }
+    } finally {
+      previous.bind();
+    }
+  }
+
+  /**
+   * Commits the given writes in one batch. If a batch of several writes fails, each of them is
+   * committed on its own.
+   *
+   * @param writes the writes
+   * @throws RuntimeException if the commit fails because of the current thread, rather than the
+   *     writes, that is, if the deadline passes or the thread is interrupted.
+   */
+  private void commit(List<PendingWrite> writes) {
+    WriteRateGovernor governor = entityManager.getWriteRateGovernor();
+    Map<String, Integer> permits = new HashMap<>();
+    try {
+      Batch batch = entityManager.selectClient().newBatch();
+      for (PendingWrite write : writes) {
+        write.stage(batch);
+        GovernedDatastoreWriter.countKind(permits, write.key);
+      }
+      if (governor != null) {
+        governor.acquire(permits);
+      }
+      Iterator<Key> generatedKeys = batch.submit().getGeneratedKeys().iterator();
+      for (PendingWrite write : writes) {
+        write.complete(generatedKeys);
+      }
+    } catch (DatastoreException exp) {
+      if (governor != null) {
+        governor.onFailure(exp, permits.keySet());
+      }
+      retryOrFail(writes, exp);
+    } catch (RuntimeException exp) {
+      if (exp instanceof DeadlineExceededException || Thread.currentThread().isInterrupted()) {
+        throw exp;
+      }
+      retryOrFail(writes, exp);
+    }
+  }
+
+  /**
+   * Commits each of the given writes on its own, if there are several; fails the write with the
+   * given exception, otherwise.
+   *
+   * @param writes the writes whose commit failed
+   * @param exp the exception
+   */
+  private void retryOrFail(List<PendingWrite> writes, RuntimeException exp) {
+    if (writes.size() > 1) {
+      for (PendingWrite write : writes) {
+        commit(Collections.singletonList(write));
+      }
+    } else {
+      fail(writes, exp);
+    }
+  }
+
+  /**
+   * Fails the given writes with the given exception.
+   *
+   * @param writes the writes
+   * @param exp the exception
+   */
+  private static void fail(List<PendingWrite> writes, RuntimeException exp) {
+    for (PendingWrite write : writes) {
+      write.failure = exp;
+      write.done = true;
+    }
+  }
+
+  /**
+   * Returns the group with the given root key, creating it, if needed.
+   *
+   * @param rootKey the root key
+   * @return the group with the given root key.
+   */
+  private Group getGroup(Key rootKey) {
+    Group group = groups.get(rootKey);
+    if (group == null) {
+      Group newGroup = new Group();
+      group = groups.putIfAbsent(rootKey, newGroup);
+      if (group == null) {
+        group = newGroup;
+      }
+    }
+    return group;
+  }
+
+  /**
+   * Returns the key of the root entity of the entity group of the given key.
+   *
+   * @param key the key, which must be schedulable
+   * @return the key of the root entity.
+   */
+  static Key getRootKey(BaseKey key) {
+    List<PathElement> ancestors = key.getAncestors();
+    if (ancestors.isEmpty()) {
+      return (Key) key;
+    }
+    PathElement root = ancestors.get(0);
+    Key.Builder builder =
+        root.hasId()
+            ? Key.newBuilder(key.getProjectId(), root.getKind(), root.getId())
+            : Key.newBuilder(key.getProjectId(), root.getKind(), root.getName());
+    return builder.setNamespace(key.getNamespace()).build();
+  }
+
+  /**
+   * Types of writes.
+   *
+   * @author Sai Pullabhotla
+   */
+  private enum Operation {
+    /** Insert */
+    ADD,
+    /** Insert or update */
+    PUT,
+    /** Update */
+    UPDATE,
+    /** Delete */
+    DELETE
+  }
+
+  /**
+   * Writes pending for an entity group.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class Group {
+
+    /** Guards the commits to the group */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Writes waiting to be committed */
+    private final Deque<PendingWrite> queue = new ConcurrentLinkedDeque<>();
+  }
+
+  /**
+   * A write waiting to be committed. The outcome is set by the holder of the lock of the group,
+   * and read by the writer after taking the same lock.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class PendingWrite {
+
+    /** Type of write */
+    private final Operation operation;
+
+    /** The entity, <code>null</code> for deletes */
+    private final FullEntity<?> entity;
+
+    /** The key */
+    private final BaseKey key;
+
+    /** Deadline of the writer */
+    private final OperationDeadline deadline;
+
+    /** Whether or not the key is allocated by the commit */
+    private boolean deferred;
+
+    /** The written entity */
+    private Entity result;
+
+    /** The failure, if the write failed */
+    private RuntimeException failure;
+
+    /** Whether or not the write was committed or failed */
+    private boolean done;
+
+    /**
+     * Creates a new instance of <code>PendingWrite</code>.
+     *
+     * @param operation the type of write
+     * @param entity the entity, <code>null</code> for deletes
+     * @param key the key
+     */
+    PendingWrite(Operation operation, FullEntity<?> entity, BaseKey key) {
+      this.operation = operation;
+      this.entity = entity;
+      this.key = key;
+      this.deadline = OperationDeadline.current();
+    }
+
+    /**
+     * Adds this write to the given batch.
+     *
+     * @param batch the batch
+     */
+    void stage(Batch batch) {
+      deferred = !(key instanceof Key);
+      switch (operation) {
+        case ADD:
+          if (deferred) {
+            batch.addWithDeferredIdAllocation(entity);
+          } else {
+            result = batch.add(entity);
+          }
+          break;
+        case PUT:
+          if (deferred) {
+            batch.putWithDeferredIdAllocation(entity);
+          } else {
+            result = batch.put(entity);
+          }
+          break;
+        case UPDATE:
+          batch.update((Entity) entity);
+          break;
+        case DELETE:
+        default:
+          batch.delete((Key) key);
+          break;
+      }
+    }
+
+    /**
+     * Marks this write as committed.
+     *
+     * @param generatedKeys the keys allocated by the commit, in the order the writes were staged
+     */
+    void complete(Iterator<Key> generatedKeys) {
+      if (deferred) {
+        result = Entity.newBuilder(generatedKeys.next(), entity).build();
+      }
+      done = true;
+    }
+
+    /**
+     * Returns the written entity, or throws the failure of this write.
+     *
+     * @return the written entity, or <code>null</code>, for updates and deletes.
+     */
+    Entity getResult() {
+      if (failure != null) {
+        throw failure;
+      }
+      return result;
+    }
+  }
+}
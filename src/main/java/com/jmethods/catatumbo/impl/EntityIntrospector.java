@@ -21,6 +21,8 @@ import com.jmethods.catatumbo.DatastoreKey;
 import com.jmethods.catatumbo.Embedded;
 import com.jmethods.catatumbo.Entity;
 import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.FetchGroup;
+import com.jmethods.catatumbo.IdGeneratorFactory;
 import com.jmethods.catatumbo.Identifier;
 import com.jmethods.catatumbo.Key;
 import com.jmethods.catatumbo.MappedSuperClass;
@@ -309,6 +311,8 @@ public class EntityIntrospector {
     Identifier identifier = field.getAnnotation(Identifier.class);
     boolean autoGenerated = identifier.autoGenerated();
     IdentifierMetadata identifierMetadata = new IdentifierMetadata(field, autoGenerated);
+    identifierMetadata.setIdGenerator(
+        IdGeneratorFactory.getInstance().getIdGenerator(identifier.generator()));
     entityMetadata.setIdentifierMetadata(identifierMetadata);
   }
 
@@ -363,6 +367,10 @@ public class EntityIntrospector {
         applyPropertyOverride(propertyMetadata);
       }
       entityMetadata.putPropertyMetadata(propertyMetadata);
+      FetchGroup fetchGroup = field.getAnnotation(FetchGroup.class);
+      if (fetchGroup != null) {
+        processFetchGroup(fetchGroup, propertyMetadata);
+      }
       if (field.isAnnotationPresent(Version.class)) {
         processVersionField(propertyMetadata);
       } else if (field.isAnnotationPresent(CreatedTimestamp.class)) {
@@ -373,6 +381,25 @@ public class EntityIntrospector {
     }
   }
 
+  /**
+   * Adds the field with the given metadata to the fetch groups named in the given annotation.
+   *
+   * @param fetchGroup the {@link FetchGroup} annotation
+   * @param propertyMetadata the metadata of the field that has the annotation
+   */
+  private void processFetchGroup(FetchGroup fetchGroup, PropertyMetadata propertyMetadata) {
+    if (!propertyMetadata.isIndexed()) {
+      String message =
+          String.format(
+              "Field %s of class %s cannot be in a fetch group because it is not indexed",
+              propertyMetadata.getName(), entityClass.getName());
+      throw new EntityManagerException(message);
+    }
+    for (String name : fetchGroup.value()) {
+      entityMetadata.addToFetchGroup(name, propertyMetadata.getMappedName());
+    }
+  }
+
   /**
    * Processes the Version annotation of the field with the given metadata.
    *
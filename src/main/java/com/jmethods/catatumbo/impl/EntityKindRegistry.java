@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps Datastore Kinds to the entity classes that represent them. The registry is built from the
+ * metadata that {@link EntityIntrospector} produces for each of the given classes, and is used to
+ * unmarshal the results of a lookup whose keys are of more than one Kind.
+ *
+ * @author Sai Pullabhotla
+ */
+class EntityKindRegistry {
+
+  /** Entity classes, by Kind */
+  private final Map<String, Class<?>> entityClasses;
+
+  /**
+   * Creates a new instance of <code>EntityKindRegistry</code>.
+   *
+   * @param entityClasses the entity classes to register
+   * @throws IllegalArgumentException if two of the given classes map to the same Kind.
+   */
+  EntityKindRegistry(Class<?>... entityClasses) {
+    this.entityClasses = new HashMap<>(entityClasses.length * 2);
+    for (Class<?> entityClass : entityClasses) {
+      String kind = EntityIntrospector.introspect(entityClass).getKind();
+      Class<?> existing = this.entityClasses.put(kind, entityClass);
+      if (existing != null && existing != entityClass) {
+        throw new IllegalArgumentException(
+            String.format(
+                "Classes %s and %s both map to Kind %s",
+                existing.getName(), entityClass.getName(), kind));
+      }
+    }
+  }
+
+  /**
+   * Returns the entity class registered for the given Kind.
+   *
+   * @param kind the Kind
+   * @return the entity class registered for the given Kind.
+   * @throws IllegalArgumentException if no class is registered for the given Kind.
+   */
+  Class<?> getEntityClass(String kind) {
+    Class<?> entityClass = entityClasses.get(kind);
+    if (entityClass == null) {
+      throw new IllegalArgumentException(
+          String.format("No entity class is registered for Kind %s", kind));
+    }
+    return entityClass;
+  }
+}
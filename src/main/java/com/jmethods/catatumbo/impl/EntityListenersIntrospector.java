@@ -22,6 +22,9 @@ import com.jmethods.catatumbo.ExcludeDefaultListeners;
 import com.jmethods.catatumbo.ExcludeSuperclassListeners;
 import com.jmethods.catatumbo.MappedSuperClass;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -148,8 +151,7 @@ public class EntityListenersIntrospector {
    * @param callbackType the callback type
    */
   private void validateExternalCallback(Method method, CallbackType callbackType) {
-    Class<?>[] parameters = method.getParameterTypes();
-    if (!parameters[0].isAssignableFrom(entityClass)) {
+    if (!getCallbackEntityType(method).isAssignableFrom(entityClass)) {
       String message =
           String.format(
               "Method %s in class %s is not valid for entity %s",
@@ -161,6 +163,33 @@ public class EntityListenersIntrospector {
     metadata.put(callbackType, callbackMetadata);
   }
 
+  /**
+   * Returns the type of entity the given external callback method accepts. For batch callbacks,
+   * this is the element type of the list, if it can be determined from the method signature.
+   *
+   * @param method the callback method
+   * @return the type of entity the given callback method accepts
+   */
+  private static Class<?> getCallbackEntityType(Method method) {
+    if (!CallbackMetadata.isBatchCallback(method)) {
+      return method.getParameterTypes()[0];
+    }
+    Type parameterType = method.getGenericParameterTypes()[0];
+    if (parameterType instanceof ParameterizedType) {
+      Type elementType = ((ParameterizedType) parameterType).getActualTypeArguments()[0];
+      if (elementType instanceof Class) {
+        return (Class<?>) elementType;
+      }
+      if (elementType instanceof WildcardType) {
+        Type[] upperBounds = ((WildcardType) elementType).getUpperBounds();
+        if (upperBounds.length > 0 && upperBounds[0] instanceof Class) {
+          return (Class<?>) upperBounds[0];
+        }
+      }
+    }
+    return Object.class;
+  }
+
   /**
    * Introspects the entity class hierarchy for any internal callback methods and updates the
    * metadata.
@@ -18,8 +18,10 @@ package com.jmethods.catatumbo.impl;
 
 import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Objects of this class hold the metadata data of various entity listeners.
@@ -34,6 +36,9 @@ public class EntityListenersMetadata {
   /** A map containing all {@link CallbackMetadata} by the callback type, Lazily loaded. */
   private Map<CallbackType, List<CallbackMetadata>> callbacks;
 
+  /** Callback types for which at least one callback exists. */
+  private final Set<CallbackType> callbackTypes;
+
   /** Whether or not to exclude global listeners. */
   private boolean excludeDefaultListeners;
 
@@ -50,6 +55,7 @@ public class EntityListenersMetadata {
    */
   public EntityListenersMetadata(Class<?> entityClass) {
     this.entityClass = entityClass;
+    callbackTypes = EnumSet.noneOf(CallbackType.class);
     excludeDefaultListeners = false;
     excludeSuperClassListeners = false;
   }
@@ -117,6 +123,19 @@ public class EntityListenersMetadata {
       callbacks.put(callbackType, callbackMetadataList);
     }
     callbackMetadataList.add(callbackMetadata);
+    callbackTypes.add(callbackType);
+  }
+
+  /**
+   * Tells whether or not the entity has any callbacks of the given type, not counting the default
+   * (aka global) listeners.
+   *
+   * @param callbackType the callback type
+   * @return <code>true</code>, if the entity has one or more callbacks of the given type;
+   *     <code>false</code>, otherwise.
+   */
+  public boolean hasCallbacks(CallbackType callbackType) {
+    return callbackTypes.contains(callbackType);
   }
 
   /**
@@ -27,7 +27,9 @@ import com.jmethods.catatumbo.PropertyOverride;
 import com.jmethods.catatumbo.UpdatedTimestamp;
 import com.jmethods.catatumbo.Version;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -81,6 +83,9 @@ public class EntityMetadata extends MetadataBase {
   /** Metadata of various entity listeners */
   private EntityListenersMetadata entityListenersMetadata;
 
+  /** Mapped names of the properties in each fetch group, by the name of the group */
+  private Map<String, List<String>> fetchGroups;
+
   /**
    * Creates a new instance of <code>EntityMetadata</code>.
    *
@@ -105,6 +110,7 @@ public class EntityMetadata extends MetadataBase {
     this.projectedEntity = projectedEntity;
     propertyOverrideMap = new HashMap<>();
     masterPropertyMetadataMap = new HashMap<>();
+    fetchGroups = new HashMap<>();
   }
 
   /**
@@ -383,6 +389,48 @@ public class EntityMetadata extends MetadataBase {
     this.entityListenersMetadata = entityListenersMetadata;
   }
 
+  /**
+   * Returns the metadata of the simple property with the given field name.
+   *
+   * @param fieldName the name of the field
+   * @return the metadata of the property, or <code>null</code>, if the entity has no such simple
+   *     property.
+   */
+  public PropertyMetadata getPropertyMetadataByFieldName(String fieldName) {
+    for (PropertyMetadata propertyMetadata : getPropertyMetadataCollection()) {
+      if (propertyMetadata.getName().equals(fieldName)) {
+        return propertyMetadata;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds the property with the given mapped name to the given fetch group.
+   *
+   * @param fetchGroup the name of the fetch group
+   * @param mappedName the name of the property in the Cloud Datastore
+   */
+  public void addToFetchGroup(String fetchGroup, String mappedName) {
+    List<String> properties = fetchGroups.get(fetchGroup);
+    if (properties == null) {
+      properties = new ArrayList<>();
+      fetchGroups.put(fetchGroup, properties);
+    }
+    properties.add(mappedName);
+  }
+
+  /**
+   * Returns the mapped names of the properties in the given fetch group.
+   *
+   * @param fetchGroup the name of the fetch group
+   * @return the mapped names of the properties in the given fetch group, or <code>null</code>, if
+   *     the entity has no such fetch group.
+   */
+  public List<String> getFetchGroup(String fetchGroup) {
+    return fetchGroups.get(fetchGroup);
+  }
+
   /** Cleans up this metadata by clearing unnecessary data. */
   public void cleanup() {
     propertyOverrideMap.clear();
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.BaseKey;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.DatastoreWriter;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.Key;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DatastoreWriter} that admits writes through the {@link WriteRateGovernor} of an entity
+ * manager before passing them on to the Datastore, and reports contention back to the governor.
+ * If the entity manager has no governor, writes are passed on as is. Writes of a single entity
+ * that belongs to an existing entity group are handed to the {@link EntityGroupWriteScheduler} of
+ * the entity manager, if it has one, which coalesces them with other writes to the same group.
+ *
+ * @author Sai Pullabhotla
+ */
+class GovernedDatastoreWriter implements DatastoreWriter {
+
+  /** The writer that performs the writes */
+  private final DatastoreWriter delegate;
+
+  /** The entity manager, which provides the governor */
+  private final DefaultEntityManager entityManager;
+
+  /**
+   * Creates a new instance of <code>GovernedDatastoreWriter</code>.
+   *
+   * @param delegate the writer that performs the writes
+   * @param entityManager the entity manager, which provides the governor
+   */
+  GovernedDatastoreWriter(DatastoreWriter delegate, DefaultEntityManager entityManager) {
+    this.delegate = delegate;
+    this.entityManager = entityManager;
+  }
+
+  @Override
+  public Entity add(FullEntity<?> entity) {
+    EntityGroupWriteScheduler scheduler = entityManager.getEntityGroupWriteScheduler();
+    if (scheduler != null && EntityGroupWriteScheduler.isSchedulable(entity.getKey())) {
+      return scheduler.add(entity);
+    }
+    WriteRateGovernor governor = entityManager.getWriteRateGovernor();
+    if (governor == null) {
+      return delegate.add(entity);
+    }
+    String kind = entity.getKey().getKind();
+    governor.acquire(kind, 1);
+    try {
+      return delegate.add(entity);
+    } catch (DatastoreException exp) {
+      governor.onFailure(exp, Collections.singleton(kind));
+      throw exp;
+    }
+  }
+
+  @Override
+  public List<Entity> add(FullEntity<?>... entities) {
+    WriteRateGovernor governor = entityManager.getWriteRateGovernor();
+    if (governor == null) {
+      return delegate.add(entities);
+    }
+    Map<String, Integer> permits = countKinds(entities);
+    governor.acquire(permits);
+    try {
+      return delegate.add(entities);
+    } catch (DatastoreException exp) {
+      governor.onFailure(exp, permits.keySet());
+      throw exp;
+    }
+  }
+
+  @Override
+  public void update(Entity... entities) {
+    EntityGroupWriteScheduler scheduler = entityManager.getEntityGroupWriteScheduler();
+    if (scheduler != null && entities.length == 1) {
+      scheduler.update(entities[0]);
+      return;
+    }
+    WriteRateGovernor governor = entityManager.getWriteRateGovernor();
+    if (governor == null) {
+      delegate.update(entities);
+      return;
+    }
+    Map<String, Integer> permits = countKinds(entities);
+    governor.acquire(permits);
+    try {
+      delegate.update(entities);
+    } catch (DatastoreException exp) {
+      governor.onFailure(exp, permits.keySet());
+      throw exp;
+    }
+  }
+
+  @Override
+  public Entity put(FullEntity<?> entity) {
+    EntityGroupWriteScheduler scheduler = entityManager.getEntityGroupWriteScheduler();
+    if (scheduler != null && EntityGroupWriteScheduler.isSchedulable(entity.getKey())) {
+      return scheduler.put(entity);
+    }
+    WriteRateGovernor governor = entityManager.getWriteRateGovernor();
+    if (governor == null) {
+      return delegate.put(entity);
+    }
+    String kind = entity.getKey().getKind();
+    governor.acquire(kind, 1);
+    try {
+      return delegate.put(entity);
+    } catch (DatastoreException exp) {
+      governor.onFailure(exp, Collections.singleton(kind));
+      throw exp;
+    }
+  }
+
+  @Override
+  public List<Entity> put(FullEntity<?>... entities) {
+    WriteRateGovernor governor = entityManager.getWriteRateGovernor();
+    if (governor == null) {
+      return delegate.put(entities);
+    }
+    Map<String, Integer> permits = countKinds(entities);
+    governor.acquire(permits);
+    try {
+      return delegate.put(entities);
+    } catch (DatastoreException exp) {
+      governor.onFailure(exp, permits.keySet());
+      throw exp;
+    }
+  }
+
+  @Override
+  public void delete(Key... keys) {
+    EntityGroupWriteScheduler scheduler = entityManager.getEntityGroupWriteScheduler();
+    if (scheduler != null && keys.length == 1) {
+      scheduler.delete(keys[0]);
+      return;
+    }
+    WriteRateGovernor governor = entityManager.getWriteRateGovernor();
+    if (governor == null) {
+      delegate.delete(keys);
+      return;
+    }
+    Map<String, Integer> permits = new HashMap<>();
+    for (Key key : keys) {
+      countKind(permits, key);
+    }
+    governor.acquire(permits);
+    try {
+      delegate.delete(keys);
+    } catch (DatastoreException exp) {
+      governor.onFailure(exp, permits.keySet());
+      throw exp;
+    }
+  }
+
+  /**
+   * Counts the given entities by Kind.
+   *
+   * @param entities the entities
+   * @return the number of entities, keyed by Kind.
+   */
+  private static Map<String, Integer> countKinds(FullEntity<?>[] entities) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (FullEntity<?> entity : entities) {
+      countKind(counts, entity.getKey());
+    }
+    return counts;
+  }
+
+  /**
+   * Increments the count of the Kind of the given key.
+   *
+   * @param counts the counts, keyed by Kind
+   * @param key the key
+   */
+  static void countKind(Map<String, Integer> counts, BaseKey key) {
+    Integer count = counts.get(key.getKind());
+    counts.put(key.getKind(), count == null ? 1 : count + 1);
+  }
+}
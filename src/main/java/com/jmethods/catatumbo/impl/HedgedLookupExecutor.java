@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.DatastoreException;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.HedgingMetrics;
+import com.jmethods.catatumbo.HedgingOptions;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes lookups with hedging. A lookup that has not completed within the hedge delay is sent
+ * again, and the first response wins. The delay is either fixed, or a percentile of the latencies
+ * of recent lookups. Hedges are paid for with a budget that grows by the maximum hedge rate on
+ * every lookup, which caps the number of hedges at that fraction of the lookups.
+ *
+ * @author Sai Pullabhotla
+ */
+public class HedgedLookupExecutor {
+
+  /** Number of recent latencies used for computing the adaptive delay */
+  private static final int WINDOW_SIZE = 1000;
+
+  /** Minimum number of latencies needed before the adaptive delay is used */
+  private static final int MIN_SAMPLES = 20;
+
+  /** Number of lookups after which the adaptive delay is recomputed */
+  private static final int RECOMPUTE_INTERVAL = 100;
+
+  /** Cost of one hedge, in budget units */
+  private static final long HEDGE_COST = 1000000L;
+
+  /** Maximum budget, so that a long quiet period does not allow a burst of hedges */
+  private static final long MAX_BUDGET = 10 * HEDGE_COST;
+
+  /** Fixed hedge delay, in nanoseconds, or zero, if the delay is adaptive */
+  private final long fixedDelay;
+
+  /** Percentile of the latencies used as the adaptive delay */
+  private final double percentile;
+
+  /** Minimum adaptive delay, in nanoseconds */
+  private final long minDelay;
+
+  /** Budget units earned by each lookup */
+  private final long budgetPerLookup;
+
+  /** Executor for running the lookups */
+  private final ExecutorService executor;
+
+  /** Recent latencies, in nanoseconds. Guarded by this object's monitor. */
+  private final long[] latencies;
+
+  /** Number of latencies recorded so far. Guarded by this object's monitor. */
+  private long sampleCount;
+
+  /** Available budget for hedges. Guarded by this object's monitor. */
+  private long budget;
+
+  /** Adaptive delay, in nanoseconds, or -1, if not computed yet */
+  private volatile long adaptiveDelay;
+
+  /** Number of lookups */
+  private final AtomicLong lookups;
+
+  /** Number of hedges sent */
+  private final AtomicLong hedgesFired;
+
+  /** Number of hedges that won */
+  private final AtomicLong hedgesWon;
+
+  /**
+   * Creates a new instance of <code>HedgedLookupExecutor</code>.
+   *
+   * @param options the hedging options
+   */
+  public HedgedLookupExecutor(HedgingOptions options) {
+    this.fixedDelay = TimeUnit.MILLISECONDS.toNanos(options.getDelay());
+    this.percentile = options.getPercentile();
+    this.minDelay = TimeUnit.MILLISECONDS.toNanos(options.getMinDelay());
+    this.budgetPerLookup = Math.round(options.getMaxHedgeRate() * HEDGE_COST);
+    this.executor =
+        Executors.newCachedThreadPool(
+            new ConcurrencyUtils.DaemonThreadFactory("catatumbo-hedged-lookup-"));
+    this.latencies = new long[WINDOW_SIZE];
+    this.adaptiveDelay = -1;
+    this.lookups = new AtomicLong();
+    this.hedgesFired = new AtomicLong();
+    this.hedgesWon = new AtomicLong();
+  }
+
+  /**
+   * Executes the given lookup, and the given hedge, if the lookup does not complete within the
+   * hedge delay and the budget allows a hedge.
+   *
+   * @param <T> the type of result
+   * @param lookup the lookup
+   * @param hedge the duplicate of the lookup to send as the hedge
+   * @return the result of the lookup or the hedge, whichever completed first.
+   * @throws EntityManagerException if the lookup fails. If the hedge was sent, the lookup fails
+   *     only if both the lookup and the hedge fail.
+   */
+  public <T> T execute(Callable<T> lookup, Callable<T> hedge) {
+    lookups.incrementAndGet();
+    earnBudget();
+    long delay = getDelayNanos();
+    long start = System.nanoTime();
+    if (delay < 0) {
+      T result = call(lookup);
+      recordLatency(System.nanoTime() - start);
+      return result;
+    }
+    OperationDeadline deadline = OperationDeadline.current();
+    CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+    Future<T> lookupFuture = completionService.submit(deadline.wrap(lookup));
+    Future<T> hedgeFuture = null;
+    try {
+      Future<T> first =
+          completionService.poll(
+              Math.min(delay, deadline.getRemainingNanos()), TimeUnit.NANOSECONDS);
+      if (first == null) {
+        deadline.check();
+        if (spendBudget()) {
+          hedgesFired.incrementAndGet();
+          hedgeFuture = completionService.submit(deadline.wrap(hedge));
+        }
+        first = take(completionService, deadline);
+      }
+      T result;
+      try {
+        result = first.get();
+      } catch (ExecutionException exp) {
+        if (hedgeFuture == null) {
+          throw exp;
+        }
+        // The first one to complete failed, try the other one
+        first = take(completionService, deadline);
+        result = first.get();
+      }
+      if (first == hedgeFuture) {
+        hedgesWon.incrementAndGet();
+      }
+      recordLatency(System.nanoTime() - start);
+      return result;
+    } catch (ExecutionException exp) {
+      if (exp.getCause() instanceof EntityManagerException) {
+        throw (EntityManagerException) exp.getCause();
+      }
+      if (exp.getCause() instanceof DatastoreException) {
+        throw DatastoreUtils.wrap((DatastoreException) exp.getCause());
+      }
+      throw new EntityManagerException(exp.getCause());
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+      throw new EntityManagerException(exp);
+    } finally {
+      lookupFuture.cancel(true);
+      if (hedgeFuture != null) {
+        hedgeFuture.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Waits for the next lookup to complete, until the given deadline.
+   *
+   * @param <T> the type of result
+   * @param completionService the completion service running the lookups
+   * @param deadline the deadline
+   * @return the completed lookup
+   * @throws InterruptedException if interrupted while waiting
+   * @throws DeadlineExceededException if the deadline passes first
+   */
+  private static <T> Future<T> take(
+      CompletionService<T> completionService, OperationDeadline deadline)
+      throws InterruptedException {
+    if (!deadline.isBounded()) {
+      return completionService.take();
+    }
+    Future<T> future =
+        completionService.poll(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS);
+    if (future == null) {
+      throw new DeadlineExceededException(OperationDeadline.EXCEEDED_MESSAGE);
+    }
+    return future;
+  }
+
+  /**
+   * Returns a snapshot of the metrics of this executor.
+   *
+   * @return a snapshot of the metrics of this executor.
+   */
+  public HedgingMetrics getMetrics() {
+    long delay = getDelayNanos();
+    return new HedgingMetrics(
+        lookups.get(),
+        hedgesFired.get(),
+        hedgesWon.get(),
+        delay < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(delay));
+  }
+
+  /**
+   * Shuts down this executor. Lookups in progress are completed, but no new lookups are accepted.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Returns the current hedge delay.
+   *
+   * @return the current hedge delay, in nanoseconds, or -1, if the delay is adaptive and is not
+   *     known yet.
+   */
+  private long getDelayNanos() {
+    return fixedDelay > 0 ? fixedDelay : adaptiveDelay;
+  }
+
+  /** Adds the budget earned by a lookup. */
+  private synchronized void earnBudget() {
+    budget = Math.min(MAX_BUDGET, budget + budgetPerLookup);
+  }
+
+  /**
+   * Spends the budget for a hedge, if there is enough budget.
+   *
+   * @return <code>true</code>, if the budget was spent; <code>false</code>, otherwise.
+   */
+  private synchronized boolean spendBudget() {
+    if (budget < HEDGE_COST) {
+      return false;
+    }
+    budget -= HEDGE_COST;
+    return true;
+  }
+
+  /**
+   * Records the latency of a lookup, and recomputes the adaptive delay, if it is due.
+   *
+   * @param latency the latency, in nanoseconds
+   */
+  private void recordLatency(long latency) {
+    if (fixedDelay > 0) {
+      return;
+    }
+    long[] window = null;
+    synchronized (this) {
+      latencies[(int) (sampleCount % WINDOW_SIZE)] = latency;
+      sampleCount++;
+      if (sampleCount == MIN_SAMPLES || sampleCount % RECOMPUTE_INTERVAL == 0) {
+        window = Arrays.copyOf(latencies, (int) Math.min(sampleCount, WINDOW_SIZE));
+      }
+    }
+    if (window != null) {
+      Arrays.sort(window);
+      int index = (int) Math.ceil(percentile * window.length) - 1;
+      adaptiveDelay = Math.max(minDelay, window[Math.max(index, 0)]);
+    }
+  }
+
+  /**
+   * Executes the given lookup in the calling thread.
+   *
+   * @param lookup the lookup
+   * @return the result of the lookup
+   */
+  private static <T> T call(Callable<T> lookup) {
+    try {
+      return lookup.call();
+    } catch (EntityManagerException exp) {
+      throw exp;
+    } catch (Exception exp) {
+      throw new EntityManagerException(exp);
+    }
+  }
+}
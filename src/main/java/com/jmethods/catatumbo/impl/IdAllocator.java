@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.Key;
+import com.jmethods.catatumbo.IdAllocationOptions;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out pre-allocated numeric IDs, as configured by {@link IdAllocationOptions}. IDs are
+ * allocated in blocks and kept in a pool for each incomplete key without a parent, that is, for
+ * each combination of namespace and Kind. Taking an ID from a pool does not block or lock; when the
+ * number of IDs left drops to the low-water mark, one refill of the pool is started in the
+ * background. If a pool runs out anyway, one caller allocates a block, and the others wait for that
+ * block (or the background refill) and take their IDs from it. At most one block is being
+ * allocated for a pool at any time, so a pool never holds more than the low-water mark plus one
+ * block of IDs.
+ *
+ * <p>Keys with a parent are not pooled, because the number of parents is unbounded, and the IDs of
+ * a block would mostly be wasted. They are left incomplete and get their IDs when they are written.
+ *
+ * @author Sai Pullabhotla
+ */
+public class IdAllocator {
+
+  /** The entity manager */
+  private final DefaultEntityManager entityManager;
+
+  /** Number of IDs allocated in one request */
+  private final int blockSize;
+
+  /** Number of IDs left in a pool at which the pool is refilled */
+  private final int lowWaterMark;
+
+  /** The pools, keyed by the incomplete key, without a parent, they complete */
+  private final ConcurrentMap<IncompleteKey, Pool> pools = new ConcurrentHashMap<>();
+
+  /** Executor for refilling the pools */
+  private final ExecutorService executor;
+
+  /**
+   * Creates a new instance of <code>IdAllocator</code>.
+   *
+   * @param entityManager the entity manager
+   * @param options the options
+   */
+  public IdAllocator(DefaultEntityManager entityManager, IdAllocationOptions options) {
+    this.entityManager = entityManager;
+    this.blockSize = options.getBlockSize();
+    this.lowWaterMark = options.getLowWaterMark();
+    this.executor =
+        Executors.newCachedThreadPool(
+            new ConcurrencyUtils.DaemonThreadFactory("catatumbo-id-allocator-"));
+  }
+
+  /**
+   * Returns a complete key with a pre-allocated ID for the given incomplete key.
+   *
+   * @param incompleteKey the incomplete key, which must not have a parent
+   * @return a complete key with the same namespace and Kind as the given key.
+   * @throws IllegalArgumentException if the key has a parent
+   * @throws DatastoreException if the pool had run out, and the allocation fails
+   */
+  public Key allocate(IncompleteKey incompleteKey) {
+    if (incompleteKey.getParent() != null) {
+      throw new IllegalArgumentException("IDs are not pre-allocated for keys with a parent");
+    }
+    Pool pool = getPool(incompleteKey);
+    Key key = pool.keys.poll();
+    int available;
+    if (key == null) {
+      key = takeOrAllocate(pool);
+      available = pool.available.get();
+    } else {
+      available = pool.available.decrementAndGet();
+    }
+    if (available <= lowWaterMark && pool.refilling.compareAndSet(false, true)) {
+      try {
+        executor.execute(new RefillTask(pool));
+      } catch (RejectedExecutionException exp) {
+        pool.refilling.set(false);
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Returns the number of IDs left in the pool of the given incomplete key.
+   *
+   * @param incompleteKey the incomplete key
+   * @return the number of IDs left in the pool.
+   */
+  int getAvailable(IncompleteKey incompleteKey) {
+    Pool pool = pools.get(incompleteKey);
+    return pool == null ? 0 : pool.available.get();
+  }
+
+  /**
+   * Shuts down this allocator. Refills in progress are completed, but no new refills are started.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Takes a key from the given pool, which was found empty. Allocations for a pool are serialized,
+   * so if a block is being allocated for the pool, this method waits for it, and takes a key from
+   * it. Otherwise, this method allocates a block, keeps the first key, and adds the rest to the
+   * pool.
+   *
+   * @param pool the pool
+   * @return a complete key with a pre-allocated ID
+   * @throws DatastoreException if the allocation fails
+   */
+  private Key takeOrAllocate(Pool pool) {
+    synchronized (pool) {
+      Key key = pool.keys.poll();
+      if (key != null) {
+        pool.available.decrementAndGet();
+        return key;
+      }
+      List<Key> block = allocateBlock(pool.incompleteKey);
+      pool.fill(block.subList(1, block.size()));
+      return block.get(0);
+    }
+  }
+
+  /**
+   * Allocates a block of IDs for the given incomplete key.
+   *
+   * @param incompleteKey the incomplete key
+   * @return the allocated keys
+   */
+  private List<Key> allocateBlock(IncompleteKey incompleteKey) {
+    IncompleteKey[] incompleteKeys = new IncompleteKey[blockSize];
+    Arrays.fill(incompleteKeys, incompleteKey);
+    return entityManager.selectClient().allocateId(incompleteKeys);
+  }
+
+  /**
+   * Returns the pool of the given incomplete key, creating it, if needed.
+   *
+   * @param incompleteKey the incomplete key
+   * @return the pool of the given incomplete key.
+   */
+  private Pool getPool(IncompleteKey incompleteKey) {
+    Pool pool = pools.get(incompleteKey);
+    if (pool == null) {
+      Pool newPool = new Pool(incompleteKey);
+      pool = pools.putIfAbsent(incompleteKey, newPool);
+      if (pool == null) {
+        pool = newPool;
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Pre-allocated IDs of one incomplete key. Blocks of IDs are allocated for the pool while holding
+   * its monitor, so that there is at most one allocation for the pool at a time.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class Pool {
+
+    /** The incomplete key */
+    private final IncompleteKey incompleteKey;
+
+    /** Complete keys with the pre-allocated IDs */
+    private final Queue<Key> keys = new ConcurrentLinkedQueue<>();
+
+    /** Number of keys in the queue */
+    private final AtomicInteger available = new AtomicInteger();
+
+    /** Whether or not a refill is in progress */
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /**
+     * Creates a new instance of <code>Pool</code>.
+     *
+     * @param incompleteKey the incomplete key
+     */
+    Pool(IncompleteKey incompleteKey) {
+      this.incompleteKey = incompleteKey;
+    }
+
+    /**
+     * Adds the given keys to this pool.
+     *
+     * @param block the keys
+     * @return the number of keys in this pool after adding the given keys.
+     */
+    int fill(List<Key> block) {
+      keys.addAll(block);
+      return available.addAndGet(block.size());
+    }
+  }
+
+  /**
+   * Refills a pool with one block of IDs, unless the pool was refilled since the refill was
+   * requested.
+   *
+   * @author Sai Pullabhotla
+   */
+  private class RefillTask implements Runnable {
+
+    /** The pool to refill */
+    private final Pool pool;
+
+    /**
+     * Creates a new instance of <code>RefillTask</code>.
+     *
+     * @param pool the pool to refill
+     */
+    RefillTask(Pool pool) {
+      this.pool = pool;
+    }
+
+    @Override
+    public void run() {
+      try {
+        synchronized (pool) {
+          // A caller that found the pool empty may have refilled it meanwhile
+          if (pool.available.get() <= lowWaterMark) {
+            pool.fill(allocateBlock(pool.incompleteKey));
+          }
+        }
+      } catch (RuntimeException exp) {
+        // The pool is refilled by the caller that finds it empty.
+      } finally {
+        pool.refilling.set(false);
+      }
+    }
+  }
+}
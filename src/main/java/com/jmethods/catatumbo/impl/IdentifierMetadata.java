@@ -17,6 +17,9 @@
 package com.jmethods.catatumbo.impl;
 
 import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.IdGenerator;
+import com.jmethods.catatumbo.IdGeneratorFactory;
+import com.jmethods.catatumbo.idgenerators.UuidGenerator;
 import java.lang.reflect.Field;
 
 /**
@@ -32,6 +35,8 @@ public class IdentifierMetadata extends FieldMetadata {
   private final IdClassMetadata idClassMetadata;
   /** If identifier is to be auto generated or not */
   private boolean autoGenerated;
+  /** Generator of auto generated String identifiers */
+  private IdGenerator idGenerator;
 
   /**
    * Creates a new instance of <code>IdentifierMetadata</code>.
@@ -42,6 +47,7 @@ public class IdentifierMetadata extends FieldMetadata {
   public IdentifierMetadata(Field field, boolean autoGenerated) {
     super(field);
     this.autoGenerated = autoGenerated;
+    this.idGenerator = IdGeneratorFactory.getInstance().getIdGenerator(UuidGenerator.class);
     DataType dataType = DataType.forClass(field.getType());
     if (dataType == null) {
       idClassMetadata = new IdClassMetadata(getDeclaredType());
@@ -77,6 +83,24 @@ public class IdentifierMetadata extends FieldMetadata {
     this.autoGenerated = autoGenerated;
   }
 
+  /**
+   * Returns the generator of auto generated String identifiers.
+   *
+   * @return the generator of auto generated String identifiers.
+   */
+  public IdGenerator getIdGenerator() {
+    return idGenerator;
+  }
+
+  /**
+   * Sets the generator of auto generated String identifiers.
+   *
+   * @param idGenerator the generator of auto generated String identifiers.
+   */
+  public void setIdGenerator(IdGenerator idGenerator) {
+    this.idGenerator = idGenerator;
+  }
+
   /**
    * Returns the type of the ID.
    *
@@ -19,6 +19,7 @@ package com.jmethods.catatumbo.impl;
 import com.jmethods.catatumbo.EntityManagerException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.List;
 
 /**
  * Introspector for listeners defined within the entity or mapped super class.
@@ -103,13 +104,6 @@ public class InternalListenerIntrospector {
               method.getName(), method.getDeclaringClass().getName());
       throw new EntityManagerException(message);
     }
-    if (Modifier.isStatic(modifiers)) {
-      String message =
-          String.format(
-              "Method %s in class %s must not be static",
-              method.getName(), method.getDeclaringClass().getName());
-      throw new EntityManagerException(message);
-    }
     if (Modifier.isAbstract(modifiers)) {
       String message =
           String.format(
@@ -118,7 +112,21 @@ public class InternalListenerIntrospector {
       throw new EntityManagerException(message);
     }
     Class<?>[] parameters = method.getParameterTypes();
-    if (parameters.length != 0) {
+    if (Modifier.isStatic(modifiers)) {
+      if (!CallbackMetadata.isBatchCallback(method)) {
+        String pattern =
+            "Method %s in class %s is not a valid %s callback method. Static callback methods "
+                + "must have exactly one parameter of type %s. ";
+        String message =
+            String.format(
+                pattern,
+                method.getName(),
+                method.getDeclaringClass().getName(),
+                callbackType,
+                List.class.getName());
+        throw new EntityManagerException(message);
+      }
+    } else if (parameters.length != 0) {
       String pattern =
           "Method %s in class %s is not a valid %s callback method. Method must not "
               + "have any parameters. ";
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.jmethods.catatumbo.DefaultQueryResponse;
+
+/**
+ * Response of an entity query executed in KEYS_THEN_LOOKUP mode. Entities that were deleted after
+ * the keys query ran are not included in the results, so the response also records the number of
+ * keys the query returned, which tells whether the query reached its limit.
+ *
+ * @param <T> the expected result type
+ * @author Sai Pullabhotla
+ */
+class KeysThenLookupQueryResponse<T> extends DefaultQueryResponse<T> {
+
+  /** Number of keys returned by the keys query */
+  private final int keyCount;
+
+  /**
+   * Creates a new instance of <code>KeysThenLookupQueryResponse</code>.
+   *
+   * @param keyCount the number of keys returned by the keys query
+   */
+  KeysThenLookupQueryResponse(int keyCount) {
+    this.keyCount = keyCount;
+  }
+
+  /**
+   * Returns the number of keys returned by the keys query.
+   *
+   * @return the number of keys returned by the keys query.
+   */
+  int getKeyCount() {
+    return keyCount;
+  }
+}
@@ -28,6 +28,7 @@ import com.google.cloud.datastore.ValueBuilder;
 import com.google.cloud.datastore.ValueType;
 import com.jmethods.catatumbo.DatastoreKey;
 import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.IdGenerator;
 import com.jmethods.catatumbo.Indexer;
 import com.jmethods.catatumbo.impl.IdentifierMetadata.DataType;
 import java.time.Instant;
@@ -37,7 +38,6 @@ import java.time.ZonedDateTime;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
-import java.util.UUID;
 
 /**
  * Converts application's entities (POJOs) to the format needed for the underlying Cloud Datastore
@@ -61,17 +61,23 @@ public class Marshaller {
   /** Key */
   private IncompleteKey key;
 
+  /** Whether or not allocation of auto-generated numeric IDs is deferred to the commit */
+  private final boolean deferIdAllocation;
+
   /**
    * Creates a new instance of <code>Marshaller</code>.
    *
    * @param entityManager reference to the entity manager
    * @param entity the Entity to marshal
    * @param intent the intent of marshalling
+   * @param deferIdAllocation whether or not allocation of auto-generated numeric IDs is deferred
    */
-  private Marshaller(DefaultEntityManager entityManager, Object entity, Intent intent) {
+  private Marshaller(
+      DefaultEntityManager entityManager, Object entity, Intent intent, boolean deferIdAllocation) {
     this.entityManager = entityManager;
     this.entity = entity;
     this.intent = intent;
+    this.deferIdAllocation = deferIdAllocation;
     entityMetadata = EntityIntrospector.introspect(entity.getClass());
     validateIntent();
   }
@@ -90,7 +96,29 @@ public class Marshaller {
   @SuppressWarnings("rawtypes")
   public static BaseEntity marshal(
       DefaultEntityManager entityManager, Object entity, Intent intent) {
-    Marshaller marshaller = new Marshaller(entityManager, entity, intent);
+    return marshal(entityManager, entity, intent, false);
+  }
+
+  /**
+   * Marshals the given entity (POJO) into the format needed for the low level Cloud Datastore API.
+   * If the entity needs an auto-generated numeric ID, and the entity manager pre-allocates IDs, the
+   * returned entity has a complete key with a pre-allocated ID, unless the allocation is deferred.
+   *
+   * @param entityManager the entity manager
+   * @param entity the entity to marshal
+   * @param intent the intent or purpose of marshalling
+   * @param deferIdAllocation whether or not allocation of auto-generated numeric IDs is deferred to
+   *     the commit of a batch or transaction, in which case the returned entity has an incomplete
+   *     key.
+   * @return the marshaled object
+   */
+  @SuppressWarnings("rawtypes")
+  public static BaseEntity marshal(
+      DefaultEntityManager entityManager,
+      Object entity,
+      Intent intent,
+      boolean deferIdAllocation) {
+    Marshaller marshaller = new Marshaller(entityManager, entity, intent, deferIdAllocation);
     return marshaller.marshal();
   }
 
@@ -103,7 +131,7 @@ public class Marshaller {
    * @return extracted key.
    */
   public static Key marshalKey(DefaultEntityManager entityManager, Object entity) {
-    Marshaller marshaller = new Marshaller(entityManager, entity, Intent.DELETE);
+    Marshaller marshaller = new Marshaller(entityManager, entity, Intent.DELETE, false);
     marshaller.marshalKey();
     return (Key) marshaller.key;
   }
@@ -303,7 +331,7 @@ public class Marshaller {
   private void createCompleteKey(Key parent, long id) {
     String kind = entityMetadata.getKind();
     if (parent == null) {
-      key = entityManager.newNativeKeyFactory().setKind(kind).newKey(id);
+      key = entityManager.newNativeKey(kind, id);
     } else {
       key = Key.newBuilder(parent, kind, id).build();
     }
@@ -318,40 +346,45 @@ public class Marshaller {
   private void createCompleteKey(Key parent, String id) {
     String kind = entityMetadata.getKind();
     if (parent == null) {
-      key = entityManager.newNativeKeyFactory().setKind(kind).newKey(id);
+      key = entityManager.newNativeKey(kind, id);
     } else {
       key = Key.newBuilder(parent, kind, id).build();
     }
   }
 
   /**
-   * Creates a CompleteKey using the given parameters. The actual ID is generated using <code>
-   * UUID.randomUUID().toString()</code>.
+   * Creates a CompleteKey using the given parameters. The actual ID is generated using the {@link
+   * IdGenerator} of the identifier.
    *
    * @param parent the parent key, may be <code>null</code>.
    */
   private void createCompleteKey(Key parent) {
     String kind = entityMetadata.getKind();
-    String id = UUID.randomUUID().toString();
+    String id = entityMetadata.getIdentifierMetadata().getIdGenerator().generate();
     if (parent == null) {
-      key = entityManager.newNativeKeyFactory().setKind(kind).newKey(id);
+      key = entityManager.newNativeKey(kind, id);
     } else {
       key = Key.newBuilder(parent, kind, id).build();
     }
   }
 
   /**
-   * Creates an IncompleteKey.
+   * Creates an IncompleteKey. If the entity manager pre-allocates IDs, the allocation is not
+   * deferred, and the key does not have a parent, the incomplete key is completed with a
+   * pre-allocated ID. Keys with a parent are left incomplete, and get their IDs when they are
+   * written.
    *
    * @param parent the parent key, may be <code>null</code>.
    */
   private void createIncompleteKey(Key parent) {
     String kind = entityMetadata.getKind();
-    if (parent == null) {
-      key = entityManager.newNativeKeyFactory().setKind(kind).newKey();
-    } else {
+    if (parent != null) {
       key = IncompleteKey.newBuilder(parent, kind).build();
+      return;
     }
+    IncompleteKey incompleteKey = entityManager.newNativeKeyFactory().setKind(kind).newKey();
+    IdAllocator idAllocator = deferIdAllocation ? null : entityManager.getIdAllocator();
+    key = idAllocator == null ? incompleteKey : idAllocator.allocate(incompleteKey);
   }
 
   /** Marshals all the fields. */
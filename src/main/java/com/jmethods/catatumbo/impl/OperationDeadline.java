@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.jmethods.catatumbo.Deadline;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of a deadline, which can be carried to, and bound to, other threads. The public
+ * {@link Deadline} class only manages the deadline of the current thread. This class is used for
+ * propagating that deadline to the threads that do the work of an operation, such as lookup
+ * batches, prefetched pages and hedged lookups, and for combining it with the timeout of a query
+ * request.
+ *
+ * @author Sai Pullabhotla
+ */
+class OperationDeadline {
+
+  /** Message of the exceptions thrown when a deadline passes */
+  static final String EXCEEDED_MESSAGE = "Deadline exceeded";
+
+  /**
+   * Longest timeout, in nanoseconds (about 146 years). Longer timeouts are capped, so that adding
+   * them to System.nanoTime() does not overflow.
+   */
+  private static final long MAX_TIMEOUT_NANOS = Long.MAX_VALUE / 2;
+
+  /** A deadline that never expires */
+  private static final OperationDeadline NONE = new OperationDeadline(false, 0L);
+
+  /** Whether or not this deadline expires */
+  private final boolean bounded;
+
+  /** Time at which this deadline expires, as per System.nanoTime() */
+  private final long expiration;
+
+  /**
+   * Creates a new instance of <code>OperationDeadline</code>.
+   *
+   * @param bounded whether or not this deadline expires
+   * @param expiration time at which this deadline expires, as per System.nanoTime()
+   */
+  private OperationDeadline(boolean bounded, long expiration) {
+    this.bounded = bounded;
+    this.expiration = expiration;
+  }
+
+  /**
+   * Returns the deadline of the current thread.
+   *
+   * @return the deadline of the current thread.
+   */
+  static OperationDeadline current() {
+    if (!Deadline.isSet()) {
+      return NONE;
+    }
+    return new OperationDeadline(
+        true, System.nanoTime() + Deadline.getRemainingTime(TimeUnit.NANOSECONDS));
+  }
+
+  /**
+   * Returns the earlier of the deadline of the current thread and the given timeout from now.
+   *
+   * @param timeout the timeout, in milliseconds. Zero or less means no timeout.
+   * @return the earlier of the deadline of the current thread and the given timeout from now.
+   */
+  static OperationDeadline current(long timeout) {
+    OperationDeadline deadline = current();
+    if (timeout <= 0) {
+      return deadline;
+    }
+    long expiration =
+        System.nanoTime() + Math.min(TimeUnit.MILLISECONDS.toNanos(timeout), MAX_TIMEOUT_NANOS);
+    if (deadline.bounded && deadline.expiration - expiration <= 0) {
+      return deadline;
+    }
+    return new OperationDeadline(true, expiration);
+  }
+
+  /**
+   * Removes the deadline of the current thread, for work that must be done regardless of the
+   * deadline, such as rolling back a transaction.
+   *
+   * @return the previous deadline of the current thread, which should be bound again once the work
+   *     is done.
+   */
+  static OperationDeadline suspend() {
+    return NONE.bind();
+  }
+
+  /**
+   * Throws a {@link DeadlineExceededException}, if the deadline of the current thread has passed.
+   *
+   * @throws DeadlineExceededException if the deadline of the current thread has passed.
+   */
+  static void checkCurrent() {
+    if (Deadline.isExpired()) {
+      throw new DeadlineExceededException(EXCEEDED_MESSAGE);
+    }
+  }
+
+  /**
+   * Tells whether or not this deadline expires.
+   *
+   * @return <code>true</code>, if this deadline expires; <code>false</code>, otherwise.
+   */
+  boolean isBounded() {
+    return bounded;
+  }
+
+  /**
+   * Returns the time remaining until this deadline.
+   *
+   * @return the time remaining, in nanoseconds, which is zero or negative if this deadline has
+   *     passed. Returns {@link Long#MAX_VALUE}, if this deadline does not expire.
+   */
+  long getRemainingNanos() {
+    return bounded ? expiration - System.nanoTime() : Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns the later of this deadline and the given deadline.
+   *
+   * @param other the other deadline
+   * @return the later of the two deadlines. A deadline that does not expire is later than any
+   *     other.
+   */
+  OperationDeadline later(OperationDeadline other) {
+    if (!bounded) {
+      return this;
+    }
+    if (!other.bounded) {
+      return other;
+    }
+    return other.expiration - expiration > 0 ? other : this;
+  }
+
+  /**
+   * Throws a {@link DeadlineExceededException}, if this deadline has passed.
+   *
+   * @throws DeadlineExceededException if this deadline has passed.
+   */
+  void check() {
+    if (bounded && expiration - System.nanoTime() <= 0) {
+      throw new DeadlineExceededException(EXCEEDED_MESSAGE);
+    }
+  }
+
+  /**
+   * Makes this deadline the deadline of the current thread.
+   *
+   * @return the previous deadline of the current thread, which should be bound again once the work
+   *     under this deadline is done.
+   */
+  OperationDeadline bind() {
+    OperationDeadline previous = current();
+    if (bounded) {
+      Deadline.setTimeout(Math.max(0L, expiration - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } else {
+      Deadline.clear();
+    }
+    return previous;
+  }
+
+  /**
+   * Returns a task that runs the given task with this deadline bound to the executing thread.
+   *
+   * @param <T> the type of result
+   * @param task the task
+   * @return a task that runs the given task under this deadline.
+   */
+  <T> Callable<T> wrap(Callable<T> task) {
+    return bounded ? new BoundTask<>(this, task) : task;
+  }
+
+  /**
+   * Runs a task with a deadline bound to the executing thread.
+   *
+   * @author Sai Pullabhotla
+   * @param <T> the type of result
+   */
+  private static class BoundTask<T> implements Callable<T> {
+
+    /** The deadline */
+    private final OperationDeadline deadline;
+
+    /** The task */
+    private final Callable<T> task;
+
+    /**
+     * Creates a new instance of <code>BoundTask</code>.
+     *
+     * @param deadline the deadline
+     * @param task the task
+     */
+    BoundTask(OperationDeadline deadline, Callable<T> task) {
+      this.deadline = deadline;
+      this.task = task;
+    }
+
+    @Override
+    public T call() throws Exception {
+      OperationDeadline previous = deadline.bind();
+      try {
+        deadline.check();
+        return task.call();
+      } finally {
+        previous.bind();
+      }
+    }
+  }
+}
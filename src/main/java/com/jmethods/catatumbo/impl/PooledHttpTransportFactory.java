@@ -0,0 +1,222 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import java.io.IOException;
+import java.net.ProxySelector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.conn.SystemDefaultRoutePlanner;
+import org.apache.http.protocol.HttpContext;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+import com.google.auth.http.HttpTransportFactory;
+import com.jmethods.catatumbo.ConnectionParameters;
+import com.jmethods.catatumbo.EntityManagerException;
+
+/**
+ * The default {@link HttpTransportFactory}, which creates transports backed by a pool of persistent
+ * HTTP connections. Each transport, and hence each <code>EntityManager</code>, has its own pool.
+ * The size of the pool, how long idle connections are kept open and evicted, and whether request
+ * bodies are gzip compressed are configured using {@link ConnectionParameters}. The factory keeps
+ * track of the HTTP clients it created, and {@link #close()} releases their connections and their
+ * idle connection evictor threads.
+ *
+ * @author Sai Pullabhotla
+ */
+public class PooledHttpTransportFactory implements HttpTransportFactory {
+
+  /** Maximum number of pooled connections */
+  private final int maxConnections;
+
+  /** Time, in milliseconds, for which an idle connection is kept open for reuse */
+  private final long keepAliveTime;
+
+  /** Time, in milliseconds, after which idle connections are evicted */
+  private final long idleTimeout;
+
+  /** Whether or not request bodies are compressed */
+  private final boolean requestCompressionEnabled;
+
+  /** Minimum size, in bytes, of request bodies that are compressed */
+  private final int requestCompressionThreshold;
+
+  /**
+   * HTTP clients created by this factory, which are closed by {@link #close()}
+   */
+  private final List<CloseableHttpClient> httpClients;
+
+  /**
+   * Creates a new instance of <code>PooledHttpTransportFactory</code>.
+   *
+   * @param parameters the connection parameters that contain the pool and compression settings
+   */
+  public PooledHttpTransportFactory(ConnectionParameters parameters) {
+    this.maxConnections = parameters.getMaxConnections();
+    this.keepAliveTime = parameters.getKeepAliveTime();
+    this.idleTimeout = parameters.getIdleTimeout();
+    this.requestCompressionEnabled = parameters.isRequestCompressionEnabled();
+    this.requestCompressionThreshold = parameters.getRequestCompressionThreshold();
+    this.httpClients = new ArrayList<>();
+  }
+
+  @Override
+  public HttpTransport create() {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setMaxTotal(maxConnections);
+    // All requests go to the same host
+    connectionManager.setDefaultMaxPerRoute(maxConnections);
+    HttpClientBuilder builder =
+        HttpClientBuilder.create()
+            .setConnectionManager(connectionManager)
+            .setRoutePlanner(new SystemDefaultRoutePlanner(ProxySelector.getDefault()))
+            .disableRedirectHandling()
+            .disableAutomaticRetries()
+            .disableCookieManagement();
+    if (keepAliveTime == 0) {
+      builder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
+    } else {
+      builder.setKeepAliveStrategy(new KeepAliveStrategy(keepAliveTime));
+    }
+    if (idleTimeout > 0) {
+      builder.evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+    }
+    if (requestCompressionEnabled) {
+      builder.addInterceptorFirst(new CompressionInterceptor(requestCompressionThreshold));
+    }
+    CloseableHttpClient httpClient = builder.build();
+    synchronized (httpClients) {
+      httpClients.add(httpClient);
+    }
+    return new ApacheHttpTransport(httpClient);
+  }
+
+  /**
+   * Closes the HTTP clients created by this factory, which closes their pooled connections and
+   * stops their idle connection evictor threads. Transports created by this factory cannot be used
+   * after they are closed.
+   *
+   * @throws EntityManagerException if any of the HTTP clients could not be closed. The remaining
+   *     clients are closed nonetheless.
+   */
+  public void close() {
+    List<CloseableHttpClient> clients;
+    synchronized (httpClients) {
+      clients = new ArrayList<>(httpClients);
+      httpClients.clear();
+    }
+    IOException failure = null;
+    for (CloseableHttpClient httpClient : clients) {
+      try {
+        httpClient.close();
+      } catch (IOException exp) {
+        failure = exp;
+      }
+    }
+    if (failure != null) {
+      throw new EntityManagerException("Failed to close HTTP client", failure);
+    }
+  }
+
+  /**
+   * Keeps connections alive for the configured time, or for the time requested by the server, if
+   * that is shorter.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class KeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+    /** Time, in milliseconds, for which an idle connection is kept open */
+    private final long keepAliveTime;
+
+    /**
+     * Creates a new instance of <code>KeepAliveStrategy</code>.
+     *
+     * @param keepAliveTime the time, in milliseconds, for which an idle connection is kept open
+     */
+    KeepAliveStrategy(long keepAliveTime) {
+      this.keepAliveTime = keepAliveTime;
+    }
+
+    @Override
+    public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+      long serverKeepAliveTime =
+          DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+      return serverKeepAliveTime > 0 ? Math.min(serverKeepAliveTime, keepAliveTime) : keepAliveTime;
+    }
+  }
+
+  /**
+   * Gzip compresses request bodies that are at least as large as the threshold and are not encoded
+   * already.
+   *
+   * @author Sai Pullabhotla
+   */
+  private static class CompressionInterceptor implements HttpRequestInterceptor {
+
+    /** Minimum size, in bytes, of request bodies that are compressed */
+    private final int threshold;
+
+    /**
+     * Creates a new instance of <code>CompressionInterceptor</code>.
+     *
+     * @param threshold the minimum size, in bytes, of request bodies that are compressed
+     */
+    CompressionInterceptor(int threshold) {
+      this.threshold = threshold;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+      if (!(request instanceof HttpEntityEnclosingRequest)
+          || request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+        return;
+      }
+      HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+      HttpEntity entity = entityRequest.getEntity();
+      if (entity == null) {
+        return;
+      }
+      // A negative length means the length is unknown, and the body may be of any size
+      long contentLength = entity.getContentLength();
+      if (contentLength >= 0 && contentLength < threshold) {
+        return;
+      }
+      Header contentEncoding = entity.getContentEncoding();
+      if (contentEncoding == null) {
+        entityRequest.setEntity(new GzipCompressingEntity(entity));
+      }
+    }
+  }
+}
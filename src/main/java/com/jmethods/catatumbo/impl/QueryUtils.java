@@ -16,25 +16,12 @@
 
 package com.jmethods.catatumbo.impl;
 
-import com.google.cloud.Timestamp;
-import com.google.cloud.datastore.Blob;
-import com.google.cloud.datastore.Cursor;
 import com.google.cloud.datastore.GqlQuery;
-import com.jmethods.catatumbo.DatastoreCursor;
-import com.jmethods.catatumbo.DatastoreKey;
-import com.jmethods.catatumbo.GeoLocation;
-import com.jmethods.catatumbo.mappers.LocalDateTimeMapper;
-import com.jmethods.catatumbo.mappers.LocalTimeMapper;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.OffsetDateTime;
-import java.time.ZonedDateTime;
-import java.util.Calendar;
-import java.util.Date;
+import com.jmethods.catatumbo.EntityManagerException;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Utility methods for GQL Queries.
@@ -43,6 +30,10 @@ import java.util.concurrent.TimeUnit;
  */
 public class QueryUtils {
 
+  /** Matches the <code>SELECT *</code> clause of an entity query */
+  private static final Pattern SELECT_ALL_PATTERN =
+      Pattern.compile("^\\s*SELECT\\s+\\*\\s+FROM\\s", Pattern.CASE_INSENSITIVE);
+
   /** Hide the default constructor. */
   private QueryUtils() {
     // Do nothing
@@ -83,50 +74,11 @@ public class QueryUtils {
    *
    * @param queryBuilder the query builder
    * @param binding the positional binding to add
+   * @throws IllegalArgumentException if the binding is <code>null</code>, or if its type cannot be
+   *     used as a binding.
    */
   static void addPositionalBinding(GqlQuery.Builder<?> queryBuilder, Object binding) {
-    if (binding == null) {
-      throw new IllegalArgumentException("binding cannot be null. Use IS NULL in your query");
-    }
-    if (binding instanceof Short) {
-      queryBuilder.addBinding((short) binding);
-    } else if (binding instanceof Integer) {
-      queryBuilder.addBinding((int) binding);
-    } else if (binding instanceof Long) {
-      queryBuilder.addBinding((long) binding);
-    } else if (binding instanceof Float) {
-      queryBuilder.addBinding((float) binding);
-    } else if (binding instanceof Double) {
-      queryBuilder.addBinding((double) binding);
-    } else if (binding instanceof Boolean) {
-      queryBuilder.addBinding((boolean) binding);
-    } else if (binding instanceof Character) {
-      queryBuilder.addBinding(String.valueOf((char) binding));
-    } else if (binding instanceof String) {
-      queryBuilder.addBinding((String) binding);
-    } else if (binding instanceof Calendar) {
-      queryBuilder.addBinding(toTimestamp((Calendar) binding));
-    } else if (binding instanceof Date) {
-      queryBuilder.addBinding(toTimestamp((Date) binding));
-    } else if (binding instanceof LocalDate) {
-      queryBuilder.addBinding(((LocalDate) binding).toString());
-    } else if (binding instanceof LocalTime) {
-      queryBuilder.addBinding(((LocalTime) binding).format(LocalTimeMapper.FORMATTER));
-    } else if (binding instanceof LocalDateTime) {
-      queryBuilder.addBinding(((LocalDateTime) binding).format(LocalDateTimeMapper.FORMATTER));
-    } else if (binding instanceof OffsetDateTime) {
-      queryBuilder.addBinding(toTimestamp((OffsetDateTime) binding));
-    } else if (binding instanceof ZonedDateTime) {
-      queryBuilder.addBinding(toTimestamp((ZonedDateTime) binding));
-    } else if (binding instanceof byte[]) {
-      queryBuilder.addBinding(Blob.copyFrom((byte[]) binding));
-    } else if (binding instanceof DatastoreKey) {
-      queryBuilder.addBinding(((DatastoreKey) binding).nativeKey());
-    } else if (binding instanceof DatastoreCursor) {
-      queryBuilder.addBinding(Cursor.fromUrlSafe(((DatastoreCursor) binding).getEncoded()));
-    } else if (binding instanceof GeoLocation) {
-      // TODO no support for GeoLocation in the gcloud API
-    }
+    BinderRegistry.bind(queryBuilder, null, binding);
   }
 
   /**
@@ -134,100 +86,64 @@ public class QueryUtils {
    *
    * @param queryBuilder the query builder
    * @param namedBindings the named bindings to apply
+   * @throws IllegalArgumentException if any of the bindings is <code>null</code>, or if its type
+   *     cannot be used as a binding.
    */
   static void applyNamedBindings(
       GqlQuery.Builder<?> queryBuilder, Map<String, Object> namedBindings) {
     if (namedBindings != null) {
       for (Map.Entry<String, Object> entry : namedBindings.entrySet()) {
-        String bindingName = entry.getKey();
-        Object bindingValue = entry.getValue();
-        if (bindingValue instanceof Short) {
-          queryBuilder.setBinding(bindingName, (short) bindingValue);
-        } else if (bindingValue instanceof Integer) {
-          queryBuilder.setBinding(bindingName, (int) bindingValue);
-        } else if (bindingValue instanceof Long) {
-          queryBuilder.setBinding(bindingName, (long) bindingValue);
-        } else if (bindingValue instanceof Float) {
-          queryBuilder.setBinding(bindingName, (float) bindingValue);
-        } else if (bindingValue instanceof Double) {
-          queryBuilder.setBinding(bindingName, (double) bindingValue);
-        } else if (bindingValue instanceof Boolean) {
-          queryBuilder.setBinding(bindingName, (boolean) bindingValue);
-        } else if (bindingValue instanceof String) {
-          queryBuilder.setBinding(bindingName, (String) bindingValue);
-        } else if (bindingValue instanceof Calendar) {
-          queryBuilder.setBinding(bindingName, toTimestamp((Calendar) bindingValue));
-        } else if (bindingValue instanceof Date) {
-          queryBuilder.setBinding(bindingName, toTimestamp((Date) bindingValue));
-        } else if (bindingValue instanceof LocalDate) {
-          queryBuilder.setBinding(bindingName, ((LocalDate) bindingValue).toString());
-        } else if (bindingValue instanceof LocalTime) {
-          queryBuilder.setBinding(
-              bindingName, ((LocalTime) bindingValue).format(LocalTimeMapper.FORMATTER));
-        } else if (bindingValue instanceof LocalDateTime) {
-          queryBuilder.setBinding(
-              bindingName, ((LocalDateTime) bindingValue).format(LocalDateTimeMapper.FORMATTER));
-        } else if (bindingValue instanceof OffsetDateTime) {
-          queryBuilder.setBinding(bindingName, toTimestamp((OffsetDateTime) bindingValue));
-        } else if (bindingValue instanceof ZonedDateTime) {
-          queryBuilder.setBinding(bindingName, toTimestamp((ZonedDateTime) bindingValue));
-        } else if (bindingValue instanceof byte[]) {
-          queryBuilder.setBinding(bindingName, Blob.copyFrom((byte[]) bindingValue));
-        } else if (bindingValue instanceof DatastoreKey) {
-          queryBuilder.setBinding(bindingName, ((DatastoreKey) bindingValue).nativeKey());
-        } else if (bindingValue instanceof DatastoreCursor) {
-          queryBuilder.setBinding(
-              bindingName, Cursor.fromUrlSafe(((DatastoreCursor) bindingValue).getEncoded()));
-        } else if (bindingValue instanceof GeoLocation) {
-          // TODO no support for GeoLocation in the gcloud API
-        }
+        BinderRegistry.bind(queryBuilder, entry.getKey(), entry.getValue());
       }
     }
   }
 
   /**
-   * Converts the given Calendar to a Timestamp.
+   * Converts the given entity query (<code>SELECT * FROM ...</code>) to the equivalent keys-only
+   * query (<code>SELECT __key__ FROM ...</code>).
    *
-   * @param calendar the Calendar to convert
-   * @return Timestamp object that is equivalent to the given Calendar.
+   * @param query the entity query
+   * @return the keys-only query
+   * @throws EntityManagerException if the given query does not select all properties.
    */
-  private static Timestamp toTimestamp(Calendar calendar) {
-    return Timestamp.of(calendar.getTime());
+  static String toKeysOnlyQuery(String query) {
+    return replaceSelectAll(query, "__key__");
   }
 
   /**
-   * Converts the given Date to a Timestamp.
+   * Converts the given entity query (<code>SELECT * FROM ...</code>) to a projection query that
+   * selects the given properties.
    *
-   * @param date the Date to convert
-   * @return Timestamp object that is equivalent to the given Date.
+   * @param query the entity query
+   * @param properties the names of the properties to select
+   * @return the projection query
+   * @throws EntityManagerException if the given query does not select all properties.
    */
-  private static Timestamp toTimestamp(Date date) {
-    return Timestamp.of(date);
-  }
-
-  /**
-   * Converts the given OffsetDateTime to a Timestamp.
-   *
-   * @param offsetDateTime the OffsetDateTime to convert
-   * @return Timestamp object that is equivalent to the given OffsetDateTime.
-   */
-  private static Timestamp toTimestamp(OffsetDateTime offsetDateTime) {
-    long seconds = offsetDateTime.toEpochSecond();
-    int nanos = offsetDateTime.getNano();
-    long microseconds = TimeUnit.SECONDS.toMicros(seconds) + TimeUnit.NANOSECONDS.toMicros(nanos);
-    return Timestamp.ofTimeMicroseconds(microseconds);
+  static String toProjectionQuery(String query, List<String> properties) {
+    StringBuilder selectList = new StringBuilder();
+    for (String property : properties) {
+      if (selectList.length() > 0) {
+        selectList.append(", ");
+      }
+      selectList.append('`').append(property.replace("`", "``")).append('`');
+    }
+    return replaceSelectAll(query, selectList.toString());
   }
 
   /**
-   * Converts the given OffsetDateTime to a Timestamp.
+   * Replaces the <code>SELECT *</code> clause of the given query with the given select list.
    *
-   * @param zonedDateTime the {@link ZonedDateTime} to convert
-   * @return Timestamp object that is equivalent to the given OffsetDateTime.
+   * @param query the entity query
+   * @param selectList the select list
+   * @return the modified query
+   * @throws EntityManagerException if the given query does not select all properties.
    */
-  private static Timestamp toTimestamp(ZonedDateTime zonedDateTime) {
-    long seconds = zonedDateTime.toEpochSecond();
-    int nanos = zonedDateTime.getNano();
-    long microseconds = TimeUnit.SECONDS.toMicros(seconds) + TimeUnit.NANOSECONDS.toMicros(nanos);
-    return Timestamp.ofTimeMicroseconds(microseconds);
+  private static String replaceSelectAll(String query, String selectList) {
+    Matcher matcher = SELECT_ALL_PATTERN.matcher(query);
+    if (!matcher.find()) {
+      throw new EntityManagerException(
+          String.format("Query %s cannot be rewritten; expecting SELECT * FROM ...", query));
+    }
+    return "SELECT " + selectList + " FROM " + query.substring(matcher.end());
   }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.jmethods.catatumbo.stats.StatBase;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of Datastore statistics. Statistic entities are refreshed by the Datastore only every few
+ * hours (or days), so it is safe to serve them from a cache. Each entry records the time it was
+ * fetched, and the caller decides how old an entry may be, so the same cache can be shared by
+ * callers with different expiration requirements. <code>null</code> values are cached as well, to
+ * remember that a statistic is not available. The cache holds at most {@link #MAX_ENTRIES}
+ * entries. When it is full, the entry that was fetched first is evicted.
+ *
+ * <p>Statistic entities, and lists of them, are copied when they are added and every read returns
+ * a new copy, so a caller that modifies the statistics it received does not affect the cached value
+ * or other callers. Any other values are cached as they are, and must be immutable.
+ *
+ * @author Sai Pullabhotla
+ */
+public class StatsCache {
+
+  /** Maximum number of entries */
+  public static final int MAX_ENTRIES = 1024;
+
+  /** Cached entries, by key */
+  private final ConcurrentHashMap<String, Entry> entries;
+
+  /** Creates a new instance of <code>StatsCache</code>. */
+  public StatsCache() {
+    entries = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Creates the cache key for the given statistic kind, namespace and qualifier.
+   *
+   * @param statKind the kind of the statistic entity (e.g. __Stat_Total__)
+   * @param namespace the namespace, may be <code>null</code>
+   * @param qualifier additional qualifier (e.g. the entity kind), may be <code>null</code>
+   * @return the cache key
+   */
+  public static String createKey(String statKind, String namespace, String qualifier) {
+    StringBuilder key = new StringBuilder(statKind).append('/');
+    if (namespace != null) {
+      key.append(namespace);
+    }
+    if (qualifier != null) {
+      key.append('/').append(qualifier);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Returns the entry with the given key, if it exists and is not older than the given age.
+   *
+   * @param key the key
+   * @param maxAgeMillis the maximum age of the entry, in milliseconds
+   * @return the entry, or <code>null</code>, if the cache does not have a fresh enough entry.
+   */
+  public Entry get(String key, long maxAgeMillis) {
+    if (maxAgeMillis <= 0) {
+      return null;
+    }
+    Entry entry = entries.get(key);
+    if (entry == null || System.currentTimeMillis() - entry.fetchTime > maxAgeMillis) {
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Adds or replaces the entry with the given key. If the cache is full, the entry that was
+   * fetched first is evicted.
+   *
+   * @param key the key
+   * @param value the value, may be <code>null</code>
+   */
+  public void put(String key, Object value) {
+    if (!entries.containsKey(key) && entries.size() >= MAX_ENTRIES) {
+      evictOldest();
+    }
+    entries.put(key, new Entry(copy(value), System.currentTimeMillis()));
+  }
+
+  /** Removes all entries from this cache. */
+  public void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Returns the number of entries in this cache.
+   *
+   * @return the number of entries in this cache.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /** Removes the entry that was fetched first. */
+  private void evictOldest() {
+    Map.Entry<String, Entry> oldest = null;
+    for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+      if (oldest == null || entry.getValue().fetchTime < oldest.getValue().fetchTime) {
+        oldest = entry;
+      }
+    }
+    if (oldest != null) {
+      entries.remove(oldest.getKey(), oldest.getValue());
+    }
+  }
+
+  /**
+   * Copies the given value. Statistic entities are copied with {@link StatBase#copy()}, lists are
+   * copied along with their elements, and any other value is returned as it is.
+   *
+   * @param value the value, may be <code>null</code>
+   * @return the copy of the value
+   */
+  private static Object copy(Object value) {
+    if (value instanceof StatBase) {
+      return ((StatBase) value).copy();
+    }
+    if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      List<Object> copy = new ArrayList<>(list.size());
+      for (Object element : list) {
+        copy.add(copy(element));
+      }
+      return copy;
+    }
+    return value;
+  }
+
+  /**
+   * An entry in the cache.
+   *
+   * @author Sai Pullabhotla
+   */
+  public static class Entry {
+
+    /** The cached value */
+    private final Object value;
+
+    /** Time the value was fetched, in milliseconds since the epoch */
+    private final long fetchTime;
+
+    /**
+     * Creates a new instance of <code>Entry</code>.
+     *
+     * @param value the value
+     * @param fetchTime the time the value was fetched
+     */
+    Entry(Object value, long fetchTime) {
+      this.value = value;
+      this.fetchTime = fetchTime;
+    }
+
+    /**
+     * Returns a new copy of the cached value.
+     *
+     * @return a new copy of the cached value, may be <code>null</code>.
+     */
+    public Object getValue() {
+      return copy(value);
+    }
+
+    /**
+     * Returns the time the value was fetched.
+     *
+     * @return the time the value was fetched, in milliseconds since the epoch.
+     */
+    public long getFetchTime() {
+      return fetchTime;
+    }
+  }
+}
@@ -18,7 +18,6 @@ package com.jmethods.catatumbo.impl;
 
 import com.google.cloud.datastore.DatastoreException;
 import com.google.cloud.datastore.Entity;
-import com.google.cloud.datastore.Key;
 import com.google.cloud.datastore.Transaction;
 import com.jmethods.catatumbo.OptimisticLockException;
 import com.jmethods.catatumbo.impl.Marshaller.Intent;
@@ -74,38 +73,14 @@ public class TransactionalWriter extends DefaultDatastoreWriter {
   }
 
   @Override
-  @SuppressWarnings("unchecked")
-  public <E> List<E> updateWithOptimisticLockInternal(
-      List<E> entities, PropertyMetadata versionMetadata) {
+  protected <E> List<E> updateWithOptimisticLockInternal(List<E> entities) {
     try {
       entityManager.executeEntityListeners(CallbackType.PRE_UPDATE, entities);
       Entity[] nativeEntities =
           DatastoreUtils.toNativeEntities(entities, entityManager, Intent.UPDATE);
-      // The above native entities already have the version incremented by
-      // the marshalling process
-      Key[] nativeKeys = new Key[nativeEntities.length];
-      for (int i = 0; i < nativeEntities.length; i++) {
-        nativeKeys[i] = nativeEntities[i].getKey();
-      }
-      List<Entity> storedNativeEntities = nativeTransaction.fetch(nativeKeys);
-      String versionPropertyName = versionMetadata.getMappedName();
-
-      for (int i = 0; i < nativeEntities.length; i++) {
-        long version = nativeEntities[i].getLong(versionPropertyName) - 1;
-        Entity storedNativeEntity = storedNativeEntities.get(i);
-        if (storedNativeEntity == null) {
-          throw new OptimisticLockException(
-              String.format("Entity does not exist: %s", nativeKeys[i]));
-        }
-        long storedVersion = storedNativeEntities.get(i).getLong(versionPropertyName);
-        if (version != storedVersion) {
-          throw new OptimisticLockException(
-              String.format("Expecting version %d, but found %d", version, storedVersion));
-        }
-      }
+      checkVersions(nativeTransaction, entities, nativeEntities);
       nativeTransaction.update(nativeEntities);
-      List<E> updatedEntities =
-          (List<E>) DatastoreUtils.toEntities(entities.get(0).getClass(), nativeEntities);
+      List<E> updatedEntities = DatastoreUtils.toEntities(entities, nativeEntities);
       entityManager.executeEntityListeners(CallbackType.POST_UPDATE, updatedEntities);
       return updatedEntities;
 
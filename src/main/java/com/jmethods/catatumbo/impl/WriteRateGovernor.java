@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import com.google.cloud.datastore.DatastoreException;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.WriteRateOptions;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Governs the rate of writes to each Kind, as configured by {@link WriteRateOptions}. Each Kind has
+ * a token bucket whose rate ramps up while the Kind is written, and is cut when the Datastore
+ * reports contention. The buckets are shared by all threads writing through an entity manager;
+ * admitting a write takes a single compare-and-set, and the caller then waits, outside of any
+ * lock, until its share of the rate is available.
+ *
+ * @author Sai Pullabhotla
+ */
+public class WriteRateGovernor {
+
+  /** Minimum rate, in operations per second, to which backoffs can cut the rate */
+  private static final double MIN_RATE = 1.0;
+
+  /** Maximum time, in nanoseconds, for which unused capacity is saved for a burst */
+  private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /** Minimum time, in nanoseconds, between two backoffs of the same Kind */
+  private static final long BACKOFF_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /** The options */
+  private final WriteRateOptions options;
+
+  /** Growth interval, in nanoseconds */
+  private final long growthIntervalNanos;
+
+  /** Buckets, keyed by Kind */
+  private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new instance of <code>WriteRateGovernor</code>.
+   *
+   * @param options the options. The options are copied, so changes made to them later have no
+   *     effect on this governor.
+   */
+  public WriteRateGovernor(WriteRateOptions options) {
+    this.options = copy(options);
+    this.growthIntervalNanos = TimeUnit.MILLISECONDS.toNanos(options.getGrowthInterval());
+  }
+
+  /**
+   * Waits until the given number of writes to the given Kind can be admitted.
+   *
+   * @param kind the Kind
+   * @param permits the number of writes
+   * @throws DeadlineExceededException if the writes cannot be admitted before the deadline of the
+   *     current thread.
+   * @throws EntityManagerException if interrupted while waiting.
+   */
+  public void acquire(String kind, int permits) {
+    if (permits <= 0) {
+      return;
+    }
+    long wait = getBucket(kind).reserve(permits, OperationDeadline.current());
+    if (wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (InterruptedException exp) {
+        Thread.currentThread().interrupt();
+        throw new EntityManagerException(exp);
+      }
+    }
+  }
+
+  /**
+   * Waits until the given numbers of writes can be admitted.
+   *
+   * @param permits the number of writes, keyed by Kind
+   * @throws DeadlineExceededException if the writes cannot be admitted before the deadline of the
+   *     current thread.
+   * @throws EntityManagerException if interrupted while waiting.
+   */
+  public void acquire(Map<String, Integer> permits) {
+    for (Map.Entry<String, Integer> entry : permits.entrySet()) {
+      acquire(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /**
+   * Cuts the rate of the given Kinds, if the given exception indicates contention or throttling.
+   *
+   * @param exp the exception thrown by a write
+   * @param kinds the Kinds written
+   */
+  public void onFailure(DatastoreException exp, Iterable<String> kinds) {
+    if (!DatastoreUtils.isContention(exp)) {
+      return;
+    }
+    for (String kind : kinds) {
+      getBucket(kind).backOff(System.nanoTime());
+    }
+  }
+
+  /**
+   * Returns the current rate of the given Kind.
+   *
+   * @param kind the Kind
+   * @return the current rate of the given Kind, in operations per second.
+   */
+  public double getRate(String kind) {
+    Bucket bucket = buckets.get(kind);
+    return bucket == null ? initialRate(kind) : bucket.getRate();
+  }
+
+  /**
+   * Returns the bucket of the given Kind, creating it, if needed.
+   *
+   * @param kind the Kind
+   * @return the bucket of the given Kind.
+   */
+  private Bucket getBucket(String kind) {
+    Bucket bucket = buckets.get(kind);
+    if (bucket == null) {
+      Bucket newBucket = new Bucket(initialRate(kind), System.nanoTime());
+      bucket = buckets.putIfAbsent(kind, newBucket);
+      if (bucket == null) {
+        bucket = newBucket;
+      }
+    }
+    return bucket;
+  }
+
+  /**
+   * Returns the initial rate of the given Kind, capped at the maximum rate.
+   *
+   * @param kind the Kind
+   * @return the initial rate of the given Kind.
+   */
+  private double initialRate(String kind) {
+    return cap(options.getInitialRate(kind));
+  }
+
+  /**
+   * Caps the given rate at the maximum rate.
+   *
+   * @param rate the rate
+   * @return the capped rate
+   */
+  private double cap(double rate) {
+    double maxRate = options.getMaxRate();
+    return maxRate > 0 ? Math.min(rate, maxRate) : rate;
+  }
+
+  /**
+   * Returns a copy of the given options.
+   *
+   * @param options the options
+   * @return a copy of the given options.
+   */
+  private static WriteRateOptions copy(WriteRateOptions options) {
+    WriteRateOptions copy = new WriteRateOptions();
+    copy.setInitialRate(options.getInitialRate());
+    copy.setGrowthFactor(options.getGrowthFactor());
+    copy.setGrowthInterval(options.getGrowthInterval());
+    copy.setMaxRate(options.getMaxRate());
+    copy.setBackoffFactor(options.getBackoffFactor());
+    for (Map.Entry<String, Double> entry : options.getKindInitialRates().entrySet()) {
+      copy.setInitialRate(entry.getKey(), entry.getValue());
+    }
+    return copy;
+  }
+
+  /**
+   * Converts the given rate to the time between two writes.
+   *
+   * @param rate the rate, in operations per second
+   * @return the time between two writes, in nanoseconds.
+   */
+  private static long toInterval(double rate) {
+    return Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+  }
+
+  /**
+   * Token bucket of a single Kind. Instead of counting tokens, the bucket tracks the time at which
+   * the next write can be admitted, which is advanced by each admitted write.
+   *
+   * @author Sai Pullabhotla
+   */
+  private class Bucket {
+
+    /** Time at which the next write can be admitted, as per System.nanoTime() */
+    private final AtomicLong nextFreeTime;
+
+    /** Time between two writes at the current rate, in nanoseconds */
+    private volatile long interval;
+
+    /** Time at which the rate grows next, as per System.nanoTime() */
+    private volatile long nextGrowthTime;
+
+    /** Time of the last write, as per System.nanoTime() */
+    private volatile long lastWriteTime;
+
+    /** Current rate, in operations per second. Guarded by this. */
+    private double rate;
+
+    /** Time of the last backoff, as per System.nanoTime(). Guarded by this. */
+    private long lastBackoffTime;
+
+    /**
+     * Creates a new instance of <code>Bucket</code>.
+     *
+     * @param rate the initial rate, in operations per second
+     * @param now the current time, as per System.nanoTime()
+     */
+    Bucket(double rate, long now) {
+      this.rate = rate;
+      this.interval = toInterval(rate);
+      this.nextFreeTime = new AtomicLong(now);
+      this.nextGrowthTime = now + growthIntervalNanos;
+      this.lastWriteTime = now;
+      this.lastBackoffTime = now - BACKOFF_COOLDOWN_NANOS;
+    }
+
+    /**
+     * Reserves the given number of writes.
+     *
+     * @param permits the number of writes
+     * @param deadline the deadline by which the writes must be admitted
+     * @return the time, in nanoseconds, the caller must wait before writing.
+     * @throws DeadlineExceededException if the writes cannot be admitted before the deadline.
+     */
+    long reserve(int permits, OperationDeadline deadline) {
+      long now = System.nanoTime();
+      if (now - nextGrowthTime >= 0) {
+        grow(now);
+      }
+      long cost = permits * interval;
+      while (true) {
+        long next = nextFreeTime.get();
+        long start = next - (now - BURST_NANOS) > 0 ? next : now - BURST_NANOS;
+        long wait = start - now;
+        if (wait > 0 && wait > deadline.getRemainingNanos()) {
+          throw new DeadlineExceededException(OperationDeadline.EXCEEDED_MESSAGE);
+        }
+        if (nextFreeTime.compareAndSet(next, start + cost)) {
+          lastWriteTime = now;
+          return wait;
+        }
+        now = System.nanoTime();
+      }
+    }
+
+    /**
+     * Grows the rate for each growth interval that has passed. If the Kind has not been written
+     * for a whole growth interval, the rate is kept, and the next interval starts now.
+     *
+     * @param now the current time, as per System.nanoTime()
+     */
+    synchronized void grow(long now) {
+      if (now - nextGrowthTime < 0) {
+        return;
+      }
+      if (now - lastWriteTime > growthIntervalNanos) {
+        nextGrowthTime = now + growthIntervalNanos;
+        return;
+      }
+      long growthTime = nextGrowthTime;
+      while (now - growthTime >= 0) {
+        rate = cap(rate * options.getGrowthFactor());
+        growthTime += growthIntervalNanos;
+      }
+      interval = toInterval(rate);
+      nextGrowthTime = growthTime;
+    }
+
+    /**
+     * Cuts the rate by the backoff factor, and restarts the growth interval. Backoffs that follow
+     * an earlier one too closely are ignored, so a burst of failures cuts the rate only once.
+     *
+     * @param now the current time, as per System.nanoTime()
+     */
+    synchronized void backOff(long now) {
+      if (now - lastBackoffTime < BACKOFF_COOLDOWN_NANOS) {
+        return;
+      }
+      lastBackoffTime = now;
+      rate = Math.max(MIN_RATE, rate * options.getBackoffFactor());
+      interval = toInterval(rate);
+      nextGrowthTime = now + growthIntervalNanos;
+    }
+
+    /**
+     * Returns the current rate.
+     *
+     * @return the current rate, in operations per second.
+     */
+    synchronized double getRate() {
+      return rate;
+    }
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.stats;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable snapshot of the summary statistics ({@link StatTotalNs}) of several namespaces.
+ * Instances of this class are returned by the bulk statistics methods of {@link
+ * com.jmethods.catatumbo.DatastoreStats}. Rather than holding one entity object per namespace,
+ * the snapshot stores the statistics in parallel arrays of primitives, sorted by namespace, which
+ * keeps the memory footprint small when there are thousands of namespaces.
+ *
+ * <p>Namespaces for which the statistics were not available are not included in the snapshot.
+ *
+ * @author Sai Pullabhotla
+ */
+public class NamespaceSummarySnapshot implements Serializable {
+
+  /** Serial version UID */
+  private static final long serialVersionUID = 2741385946325092734L;
+
+  /** Namespaces, sorted */
+  private final String[] namespaces;
+
+  /** Number of entities */
+  private final long[] counts;
+
+  /** Total size, in bytes */
+  private final long[] bytes;
+
+  /** Size of entities, in bytes */
+  private final long[] entityBytes;
+
+  /** Size of built-in indexes, in bytes */
+  private final long[] builtinIndexBytes;
+
+  /** Number of built-in indexes */
+  private final long[] builtinIndexCounts;
+
+  /** Size of composite indexes, in bytes */
+  private final long[] compositeIndexBytes;
+
+  /** Number of composite indexes */
+  private final long[] compositeIndexCounts;
+
+  /** Time the statistics were last updated, in milliseconds since the epoch, or zero */
+  private final long[] timestamps;
+
+  /**
+   * Creates a new instance of <code>NamespaceSummarySnapshot</code>.
+   *
+   * @param summaries the summary statistics, by namespace. <code>null</code> values are ignored.
+   */
+  public NamespaceSummarySnapshot(Map<String, StatTotalNs> summaries) {
+    TreeMap<String, StatTotalNs> sortedSummaries = new TreeMap<>();
+    for (Map.Entry<String, StatTotalNs> entry : summaries.entrySet()) {
+      if (entry.getValue() != null) {
+        sortedSummaries.put(entry.getKey(), entry.getValue());
+      }
+    }
+    int size = sortedSummaries.size();
+    namespaces = new String[size];
+    counts = new long[size];
+    bytes = new long[size];
+    entityBytes = new long[size];
+    builtinIndexBytes = new long[size];
+    builtinIndexCounts = new long[size];
+    compositeIndexBytes = new long[size];
+    compositeIndexCounts = new long[size];
+    timestamps = new long[size];
+    int i = 0;
+    for (Map.Entry<String, StatTotalNs> entry : sortedSummaries.entrySet()) {
+      StatTotalNs summary = entry.getValue();
+      namespaces[i] = entry.getKey();
+      counts[i] = summary.getCount();
+      bytes[i] = summary.getBytes();
+      entityBytes[i] = summary.getEntityBytes();
+      builtinIndexBytes[i] = summary.getBuiltinIndexBytes();
+      builtinIndexCounts[i] = summary.getBuiltinIndexCount();
+      compositeIndexBytes[i] = summary.getCompositeIndexBytes();
+      compositeIndexCounts[i] = summary.getCompositeIndexCount();
+      timestamps[i] = summary.getTimestamp() == null ? 0L : summary.getTimestamp().getTime();
+      i++;
+    }
+  }
+
+  /**
+   * Returns the number of namespaces in this snapshot.
+   *
+   * @return the number of namespaces in this snapshot.
+   */
+  public int size() {
+    return namespaces.length;
+  }
+
+  /**
+   * Returns the index of the given namespace in this snapshot.
+   *
+   * @param namespace the namespace
+   * @return the index of the given namespace, or a negative number, if this snapshot does not
+   *     contain the given namespace.
+   */
+  public int indexOf(String namespace) {
+    return Arrays.binarySearch(namespaces, namespace);
+  }
+
+  /**
+   * Returns the namespace at the given index.
+   *
+   * @param index the index
+   * @return the namespace at the given index.
+   */
+  public String getNamespace(int index) {
+    return namespaces[index];
+  }
+
+  /**
+   * Returns the number of entities in the namespace at the given index.
+   *
+   * @param index the index
+   * @return the number of entities in the namespace at the given index.
+   */
+  public long getCount(int index) {
+    return counts[index];
+  }
+
+  /**
+   * Returns the total size, in bytes, of the namespace at the given index.
+   *
+   * @param index the index
+   * @return the total size, in bytes, of the namespace at the given index.
+   */
+  public long getBytes(int index) {
+    return bytes[index];
+  }
+
+  /**
+   * Returns the size of entities, in bytes, in the namespace at the given index.
+   *
+   * @param index the index
+   * @return the size of entities, in bytes, in the namespace at the given index.
+   */
+  public long getEntityBytes(int index) {
+    return entityBytes[index];
+  }
+
+  /**
+   * Returns the size of built-in indexes, in bytes, in the namespace at the given index.
+   *
+   * @param index the index
+   * @return the size of built-in indexes, in bytes, in the namespace at the given index.
+   */
+  public long getBuiltinIndexBytes(int index) {
+    return builtinIndexBytes[index];
+  }
+
+  /**
+   * Returns the number of built-in indexes in the namespace at the given index.
+   *
+   * @param index the index
+   * @return the number of built-in indexes in the namespace at the given index.
+   */
+  public long getBuiltinIndexCount(int index) {
+    return builtinIndexCounts[index];
+  }
+
+  /**
+   * Returns the size of composite indexes, in bytes, in the namespace at the given index.
+   *
+   * @param index the index
+   * @return the size of composite indexes, in bytes, in the namespace at the given index.
+   */
+  public long getCompositeIndexBytes(int index) {
+    return compositeIndexBytes[index];
+  }
+
+  /**
+   * Returns the number of composite indexes in the namespace at the given index.
+   *
+   * @param index the index
+   * @return the number of composite indexes in the namespace at the given index.
+   */
+  public long getCompositeIndexCount(int index) {
+    return compositeIndexCounts[index];
+  }
+
+  /**
+   * Returns the time the statistics of the namespace at the given index were last updated.
+   *
+   * @param index the index
+   * @return the time the statistics were last updated, in milliseconds since the epoch, or zero,
+   *     if not known.
+   */
+  public long getTimestamp(int index) {
+    return timestamps[index];
+  }
+
+  /**
+   * Returns the total number of entities across all namespaces in this snapshot.
+   *
+   * @return the total number of entities across all namespaces in this snapshot.
+   */
+  public long getTotalCount() {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    return total;
+  }
+
+  /**
+   * Returns the total size, in bytes, of all namespaces in this snapshot.
+   *
+   * @return the total size, in bytes, of all namespaces in this snapshot.
+   */
+  public long getTotalBytes() {
+    long total = 0;
+    for (long size : bytes) {
+      total += size;
+    }
+    return total;
+  }
+}
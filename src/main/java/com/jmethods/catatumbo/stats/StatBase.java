@@ -29,7 +29,7 @@ import java.util.Date;
  * @author Sai Pullabhotla
  */
 @MappedSuperClass
-public abstract class StatBase implements Serializable {
+public abstract class StatBase implements Serializable, Cloneable {
   /** Serial version UID */
   private static final long serialVersionUID = 6745596308816079953L;
 
@@ -120,4 +120,23 @@ public abstract class StatBase implements Serializable {
   public void setTimestamp(Date timestamp) {
     this.timestamp = timestamp;
   }
+
+  /**
+   * Returns a copy of this statistic entity. The copy shares the key and the string properties,
+   * which are immutable, and has its own timestamp.
+   *
+   * @return a copy of this statistic entity.
+   */
+  public StatBase copy() {
+    StatBase copy;
+    try {
+      copy = (StatBase) super.clone();
+    } catch (CloneNotSupportedException exp) {
+      throw new IllegalStateException(exp);
+    }
+    if (timestamp != null) {
+      copy.timestamp = new Date(timestamp.getTime());
+    }
+    return copy;
+  }
 }
@@ -32,14 +32,14 @@ import com.jmethods.catatumbo.entities.Task;
  *
  */
 @RunWith(Suite.class)
-@SuiteClasses({ CustomTypeTest.class, DatastoreBatchTest.class, DatastoreMetadataTest.class,
-    DatastoreStatsTest.class, DatastoreTransactionTest.class, DecimalFieldsTest.class,
-    DefaultAndExternalListenersTest.class, DefaultListenerTest.class, EmbeddedCollectionTest.class,
-    EntityManagerFactoryTest.class, EntityManagerTest.class, ExcludeDefaultListenerTest.class,
-    ExternalListenerTest.class, IndexerFactoryTest.class, InternalListenerTest.class,
-    ListenerInheritanceTest.class, MapperFactoryTest.class, OptionalFieldsTest.class,
-    SecondaryIndexTest.class, TenantTest.class, TwoDefaultListenersTest.class,
-    TwoExternalListenersTest.class })
+@SuiteClasses({ BatchListenerTest.class, CustomTypeTest.class, DatastoreBatchTest.class,
+    DatastoreMetadataTest.class, DatastoreStatsTest.class, DatastoreTransactionTest.class,
+    DecimalFieldsTest.class, DefaultAndExternalListenersTest.class, DefaultListenerTest.class,
+    EmbeddedCollectionTest.class, EntityManagerFactoryTest.class, EntityManagerTest.class,
+    ExcludeDefaultListenerTest.class, ExternalListenerTest.class, IdGeneratorFactoryTest.class,
+    IndexerFactoryTest.class, InternalListenerTest.class, ListenerInheritanceTest.class,
+    MapperFactoryTest.class, OptionalFieldsTest.class, SecondaryIndexTest.class, TenantTest.class,
+    TwoDefaultListenersTest.class, TwoExternalListenersTest.class })
 
 public class AllTests {
 
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jmethods.catatumbo.entities.BatchCalculatorEntity;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class BatchListenerTest {
+
+  private static EntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = TestUtils.getEntityManager();
+  }
+
+  @Test
+  public void testPreInsert() {
+    BatchCalculatorEntity entity = new BatchCalculatorEntity(7, 5);
+    BatchCalculatorEntity insertedEntity = em.insert(entity);
+    assertEquals(1, entity.getBatchSize());
+    assertEquals(1, entity.getBatchCount());
+    assertEquals(12, insertedEntity.getSum());
+  }
+
+  @Test
+  public void testPreInsert_List() {
+    List<BatchCalculatorEntity> entities = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      entities.add(new BatchCalculatorEntity(i + 2, i + 4));
+    }
+    List<BatchCalculatorEntity> insertedEntities = em.insert(entities);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(3, entities.get(i).getBatchSize());
+      assertEquals(1, entities.get(i).getBatchCount());
+      assertEquals(2 * i + 6, insertedEntities.get(i).getSum());
+    }
+  }
+
+  @Test
+  public void testPreUpsert_List() {
+    List<BatchCalculatorEntity> entities = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      entities.add(new BatchCalculatorEntity(i, i));
+    }
+    List<BatchCalculatorEntity> upsertedEntities = em.upsert(entities);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(5, entities.get(i).getBatchSize());
+      assertEquals(1, entities.get(i).getBatchCount());
+      assertEquals(2 * i, upsertedEntities.get(i).getSum());
+    }
+  }
+
+}
@@ -16,6 +16,7 @@
 
 package com.jmethods.catatumbo;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -78,6 +79,24 @@ public class DatastoreBatchTest {
     assertTrue(insertedEntities.equals(retrievedEntities));
   }
 
+  @Test
+  public void testInsertWithDeferredIdAllocation_AutoFlush() {
+    BatchOptions options = new BatchOptions();
+    options.setParallelism(4);
+    DatastoreBatch batch = em.newBatch(options);
+    List<LongId> entities = new ArrayList<>();
+    for (int i = 0; i < 1200; i++) {
+      LongId entity = new LongId();
+      entity.setField1("Auto Flush Test " + i);
+      entities.add(entity);
+    }
+    batch.insertWithDeferredIdAllocation(entities);
+    List<DatastoreKey> keys = batch.submit().getGeneratedKeys();
+    assertEquals(1200, keys.size());
+    LongId last = em.load(LongId.class, keys.get(1199).id());
+    assertEquals("Auto Flush Test 1199", last.getField1());
+  }
+
   @Test
   public void testInsertWithDeferredIdAllocation_LongId() {
     DatastoreBatch batch = em.newBatch();
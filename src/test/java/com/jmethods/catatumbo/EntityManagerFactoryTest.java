@@ -17,6 +17,7 @@
 package com.jmethods.catatumbo;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -24,13 +25,18 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.junit.Test;
 
 import com.google.auth.oauth2.ServiceAccountCredentials;
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreOptions;
+import com.google.cloud.http.HttpTransportOptions;
+import com.jmethods.catatumbo.impl.DatastoreClientPool;
 import com.jmethods.catatumbo.impl.DefaultEntityManager;
+import com.jmethods.catatumbo.impl.PooledHttpTransportFactory;
 
 /**
  * @author Sai Pullabhotla
@@ -341,4 +347,68 @@ public class EntityManagerFactoryTest {
     assertEquals(namespace, options.getNamespace());
   }
 
+  @Test
+  public void testCreateEntityManager_PooledHttpTransport() {
+    ConnectionParameters parameters = new ConnectionParameters();
+    parameters.setServiceURL("http://localhost:9999");
+    parameters.setProjectId("my-project");
+    EntityManagerFactory emf = EntityManagerFactory.getInstance();
+    DefaultEntityManager em = (DefaultEntityManager) emf.createEntityManager(parameters);
+    HttpTransportOptions options = (HttpTransportOptions) em.getDatastore().getOptions()
+        .getTransportOptions();
+    assertTrue(options.getHttpTransportFactory() instanceof PooledHttpTransportFactory);
+  }
+
+  @Test
+  public void testConnectionParameters_PoolDefaults() {
+    ConnectionParameters parameters = new ConnectionParameters();
+    assertEquals(ConnectionParameters.DEFAULT_MAX_CONNECTIONS, parameters.getMaxConnections());
+    assertEquals(ConnectionParameters.DEFAULT_KEEP_ALIVE_TIME, parameters.getKeepAliveTime());
+    assertEquals(ConnectionParameters.DEFAULT_IDLE_TIMEOUT, parameters.getIdleTimeout());
+    assertFalse(parameters.isRequestCompressionEnabled());
+    assertEquals(ConnectionParameters.DEFAULT_REQUEST_COMPRESSION_THRESHOLD,
+        parameters.getRequestCompressionThreshold());
+    parameters.setMaxConnections(0);
+    parameters.setKeepAliveTime(-1);
+    parameters.setIdleTimeout(-1);
+    parameters.setRequestCompressionThreshold(-1);
+    assertEquals(ConnectionParameters.DEFAULT_MAX_CONNECTIONS, parameters.getMaxConnections());
+    assertEquals(ConnectionParameters.DEFAULT_KEEP_ALIVE_TIME, parameters.getKeepAliveTime());
+    assertEquals(ConnectionParameters.DEFAULT_IDLE_TIMEOUT, parameters.getIdleTimeout());
+    assertEquals(ConnectionParameters.DEFAULT_REQUEST_COMPRESSION_THRESHOLD,
+        parameters.getRequestCompressionThreshold());
+  }
+
+  @Test
+  public void testCreateEntityManager_ClientPool() {
+    ConnectionParameters parameters = new ConnectionParameters();
+    parameters.setServiceURL("http://localhost:9999");
+    parameters.setProjectId("my-project");
+    parameters.setClientPoolSize(4);
+    parameters.setClientSelectionPolicy(ClientSelectionPolicy.LEAST_IN_FLIGHT);
+    EntityManagerFactory emf = EntityManagerFactory.getInstance();
+    DefaultEntityManager em = (DefaultEntityManager) emf.createEntityManager(parameters);
+    DatastoreClientPool pool = em.getClientPool();
+    assertEquals(4, pool.size());
+    Set<Datastore> clients = new HashSet<>();
+    for (int i = 0; i < pool.size(); i++) {
+      clients.add(pool.getClient(i));
+      assertEquals("my-project", pool.getClient(i).getOptions().getProjectId());
+    }
+    assertEquals(4, clients.size());
+  }
+
+  @Test
+  public void testConnectionParameters_ClientPoolDefaults() {
+    ConnectionParameters parameters = new ConnectionParameters();
+    assertEquals(ConnectionParameters.DEFAULT_CLIENT_POOL_SIZE, parameters.getClientPoolSize());
+    assertEquals(ConnectionParameters.DEFAULT_CLIENT_SELECTION_POLICY,
+        parameters.getClientSelectionPolicy());
+    parameters.setClientPoolSize(0);
+    parameters.setClientSelectionPolicy(null);
+    assertEquals(ConnectionParameters.DEFAULT_CLIENT_POOL_SIZE, parameters.getClientPoolSize());
+    assertEquals(ConnectionParameters.DEFAULT_CLIENT_SELECTION_POLICY,
+        parameters.getClientSelectionPolicy());
+  }
+
 }
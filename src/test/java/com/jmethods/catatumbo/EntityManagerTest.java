@@ -46,6 +46,9 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -57,6 +60,7 @@ import org.junit.Test;
 import com.jmethods.catatumbo.custommappers.DeviceTypeMapper;
 import com.jmethods.catatumbo.entities.AccessorTestEntity;
 import com.jmethods.catatumbo.entities.ArrayIndex;
+import com.jmethods.catatumbo.entities.Article;
 import com.jmethods.catatumbo.entities.AutoTimestampCalendar;
 import com.jmethods.catatumbo.entities.AutoTimestampDate;
 import com.jmethods.catatumbo.entities.AutoTimestampLong;
@@ -1993,6 +1997,332 @@ public class EntityManagerTest {
 
   }
 
+  @Test
+  public void testExecute_KeysThenLookup() {
+    EntityQueryRequest request = em.createEntityQueryRequest(
+        "SELECT * FROM Task WHERE priority = @1 ORDER BY __key__ LIMIT @2");
+    request.addPositionalBindings(0, 8);
+    request.setExecutionMode(EntityQueryRequest.ExecutionMode.KEYS_THEN_LOOKUP);
+    request.setLookupBatchSize(3);
+    QueryResponse<Task> response = em.executeEntityQueryRequest(Task.class, request);
+    List<Task> tasks = response.getResults();
+    assertEquals(8, tasks.size());
+    for (int i = 0; i < tasks.size(); i++) {
+      assertEquals((i + 1) * 5, tasks.get(i).getId());
+      assertEquals("My Task " + tasks.get(i).getId(), tasks.get(i).getName());
+    }
+    assertNotNull(response.getEndCursor());
+
+    EntityQueryRequest nextRequest = em.createEntityQueryRequest(
+        "SELECT * FROM Task WHERE priority = @1 ORDER BY __key__ OFFSET @2");
+    nextRequest.addPositionalBindings(0, response.getEndCursor());
+    nextRequest.setExecutionMode(EntityQueryRequest.ExecutionMode.KEYS_THEN_LOOKUP);
+    tasks = em.executeEntityQueryRequest(Task.class, nextRequest).getResults();
+    assertEquals(2, tasks.size());
+    assertEquals(45, tasks.get(0).getId());
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testExecute_KeysThenLookup_Projection() {
+    EntityQueryRequest request = em.createEntityQueryRequest("SELECT name FROM Task");
+    request.setExecutionMode(EntityQueryRequest.ExecutionMode.KEYS_THEN_LOOKUP);
+    em.executeEntityQueryRequest(Task.class, request);
+  }
+
+  @Test
+  public void testExecute_FetchGroup() {
+    Article article = new Article();
+    article.setTitle("Fetch Groups");
+    article.setAuthor("John Doe");
+    article.setBody("Only a few properties are needed");
+    article.setNotes("Not indexed");
+    article = em.insert(article);
+    try {
+      EntityQueryRequest request = em.createEntityQueryRequest("SELECT * FROM Article");
+      request.setFetchGroup("summary");
+      List<Article> articles = em.executeEntityQueryRequest(Article.class, request).getResults();
+      assertEquals(1, articles.size());
+      Article summary = articles.get(0);
+      assertEquals(article.getId(), summary.getId());
+      assertEquals("Fetch Groups", summary.getTitle());
+      assertEquals("John Doe", summary.getAuthor());
+      assertNull(summary.getBody());
+      assertNull(summary.getNotes());
+
+      request.setFetchFields("body");
+      Article body = em.executeEntityQueryRequest(Article.class, request).getResults().get(0);
+      assertEquals("Only a few properties are needed", body.getBody());
+      assertNull(body.getTitle());
+    } finally {
+      em.delete(article);
+    }
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testExecute_FetchGroup_Unknown() {
+    EntityQueryRequest request = em.createEntityQueryRequest("SELECT * FROM Article");
+    request.setFetchGroup("unknown");
+    em.executeEntityQueryRequest(Article.class, request);
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testExecute_FetchFields_Unindexed() {
+    EntityQueryRequest request = em.createEntityQueryRequest("SELECT * FROM Article");
+    request.setFetchFields("title", "notes");
+    em.executeEntityQueryRequest(Article.class, request);
+  }
+
+  @Test
+  public void testExecuteQuery_Compiled() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("priority", QueryBuilder.Operator.EQUAL).build();
+    assertEquals(1, query.getParameterCount());
+    for (int priority = 0; priority < 5; priority++) {
+      List<Task> tasks = em.executeQuery(query, priority).getResults();
+      assertEquals(10, tasks.size());
+      for (Task task : tasks) {
+        assertEquals(priority, task.getPriority());
+      }
+    }
+  }
+
+  @Test
+  public void testExecuteQuery_Constant() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("priority", QueryBuilder.Operator.GREATER_THAN_OR_EQUAL, 3)
+        .orderBy("priority", QueryBuilder.Direction.DESCENDING).limit(5).build();
+    assertEquals(0, query.getParameterCount());
+    List<Task> tasks = em.executeQuery(query).getResults();
+    assertEquals(5, tasks.size());
+    for (Task task : tasks) {
+      assertEquals(4, task.getPriority());
+    }
+  }
+
+  @Test
+  public void testExecuteQuery_Cursor() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("complete", QueryBuilder.Operator.EQUAL).limit(3).build();
+    QueryResponse<Task> response = em.executeQuery(query, true);
+    assertEquals(3, response.getResults().size());
+    response = em.executeQuery(query, response.getEndCursor(), true);
+    assertEquals(2, response.getResults().size());
+    for (Task task : response.getResults()) {
+      assertTrue(task.isComplete());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExecuteQuery_MissingParameter() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("priority", QueryBuilder.Operator.EQUAL).build();
+    em.executeQuery(query);
+  }
+
+  @Test
+  public void testAggregate_Count() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class).build();
+    AggregationResult result = em.aggregate(query, new AggregationOptions());
+    assertEquals(50, result.getCount());
+    assertTrue(result.getGroups().isEmpty());
+  }
+
+  @Test
+  public void testAggregate_Sum() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class).build();
+    AggregationOptions options = new AggregationOptions();
+    options.setValueField("priority");
+    options.setPageSize(7);
+    AggregationResult result = em.aggregate(query, options);
+    assertEquals(50, result.getCount());
+    assertEquals(100.0, result.getSum(), 0.0);
+    assertEquals(0.0, result.getMin(), 0.0);
+    assertEquals(4.0, result.getMax(), 0.0);
+    assertEquals(2.0, result.getAverage(), 0.0);
+  }
+
+  @Test
+  public void testAggregate_GroupBy_Partitioned() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class).build();
+    AggregationOptions options = new AggregationOptions();
+    options.setGroupByField("priority");
+    options.setPartitions(4);
+    AggregationResult result = em.aggregate(query, options);
+    assertEquals(50, result.getCount());
+    assertEquals(5, result.getGroups().size());
+    for (long priority = 0; priority < 5; priority++) {
+      assertEquals(10, result.getGroups().get(priority).getCount());
+    }
+  }
+
+  @Test
+  public void testAggregate_Filter() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("priority", QueryBuilder.Operator.EQUAL).build();
+    AggregationResult result = em.aggregate(query, null, 3);
+    assertEquals(10, result.getCount());
+  }
+
+  @Test
+  public void testLoad_Hedged() {
+    HedgingOptions options = new HedgingOptions();
+    options.setDelay(1);
+    options.setMaxHedgeRate(1.0);
+    em.setHedgingOptions(options);
+    try {
+      Task task = em.load(Task.class, 10);
+      assertEquals(10, task.getId());
+      List<Task> tasks = em.loadById(Task.class, Arrays.asList(1L, 2L, 999999L));
+      assertEquals(3, tasks.size());
+      assertEquals(2, tasks.get(1).getId());
+      assertNull(tasks.get(2));
+      assertEquals(2, em.getHedgingMetrics().getLookups());
+    } finally {
+      em.setHedgingOptions(null);
+    }
+  }
+
+  @Test
+  public void testCounterService() {
+    ShardedCounterOptions options = new ShardedCounterOptions();
+    options.setInitialShards(4);
+    CounterService counters = em.newCounterService(options);
+    String name = "clicks-" + random.nextInt(Integer.MAX_VALUE);
+    try {
+      assertEquals(0, counters.getCount(name));
+      for (int i = 0; i < 10; i++) {
+        counters.increment(name);
+      }
+      counters.increment(name, 5);
+      counters.increment(name, -2);
+      assertEquals(13, counters.getCount(name));
+      assertEquals(4, counters.getShardCount(name));
+    } finally {
+      counters.delete(name);
+    }
+    assertEquals(0, counters.getCount(name));
+  }
+
+  @Test
+  public void testIdAllocation() {
+    IdAllocationOptions options = new IdAllocationOptions();
+    options.setBlockSize(10);
+    options.setLowWaterMark(2);
+    em.setIdAllocationOptions(options);
+    try {
+      Set<Long> ids = new HashSet<>();
+      List<Task> tasks = new ArrayList<>();
+      for (int i = 0; i < 25; i++) {
+        Task task = new Task();
+        task.setName("Pre-allocated " + i);
+        task = em.insert(task);
+        assertTrue(ids.add(task.getId()));
+        tasks.add(task);
+      }
+      ParentEntity parent = new ParentEntity();
+      DatastoreKey key = em.allocateId(parent);
+      assertTrue(key.id() > 0);
+      parent.setId(key.id());
+      parent = em.insert(parent);
+      assertEquals(key, parent.getKey());
+      em.delete(parent);
+      em.delete(tasks);
+    } finally {
+      em.setIdAllocationOptions(null);
+    }
+  }
+
+  @Test
+  public void testEntityGroupWrites() throws Exception {
+    ParentEntity parent = new ParentEntity();
+    parent.setField1("Group write parent");
+    parent = em.insert(parent);
+    final DatastoreKey parentKey = parent.getKey();
+    em.setEntityGroupWriteOptions(new EntityGroupWriteOptions());
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<ChildEntity>> futures = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        final String field1 = "Group write child " + i;
+        futures.add(executor.submit(() -> {
+          ChildEntity child = new ChildEntity();
+          child.setField1(field1);
+          child.setParentKey(parentKey);
+          child = em.insert(child);
+          child.setField1(field1 + " updated");
+          return em.update(child);
+        }));
+      }
+      Set<Long> ids = new HashSet<>();
+      for (Future<ChildEntity> future : futures) {
+        ChildEntity child = future.get();
+        assertTrue(ids.add(child.getId()));
+        ChildEntity loaded = em.load(ChildEntity.class, parentKey, child.getId());
+        assertEquals(child.getField1(), loaded.getField1());
+        em.delete(loaded);
+      }
+    } finally {
+      executor.shutdownNow();
+      em.setEntityGroupWriteOptions(null);
+      em.delete(parent);
+    }
+  }
+
+  @Test
+  public void testPaginate() {
+    EntityQueryRequest request = em.createEntityQueryRequest("SELECT * FROM Task ORDER BY __key__");
+    PaginationOptions options = new PaginationOptions();
+    options.setPageSize(7);
+    options.setPrefetchDepth(1);
+    int pageCount = 0;
+    long lastId = 0;
+    try (Paginator<Task> paginator = em.paginate(Task.class, request, options)) {
+      while (paginator.hasNext()) {
+        List<Task> tasks = paginator.next().getResults();
+        pageCount++;
+        for (Task task : tasks) {
+          assertTrue(task.getId() > lastId);
+          lastId = task.getId();
+        }
+      }
+    }
+    assertEquals(8, pageCount);
+    assertEquals(50, lastId);
+  }
+
+  @Test
+  public void testPaginate_KeysWithPositionalBinding() {
+    KeyQueryRequest request = em
+        .createKeyQueryRequest("SELECT __key__ FROM Task WHERE priority = @1 ORDER BY __key__");
+    request.addPositionalBinding(0);
+    PaginationOptions options = new PaginationOptions();
+    options.setPageSize(3);
+    List<DatastoreKey> keys = new ArrayList<>();
+    try (Paginator<DatastoreKey> paginator = em.paginate(request, options)) {
+      while (paginator.hasNext()) {
+        QueryResponse<DatastoreKey> page = paginator.next();
+        assertTrue(page.getResults().size() <= 3);
+        keys.addAll(page.getResults());
+      }
+    }
+    assertEquals(10, keys.size());
+    assertEquals(5L, keys.get(0).id());
+    assertEquals(50L, keys.get(9).id());
+  }
+
+  @Test
+  public void testPaginate_Cancel() {
+    EntityQueryRequest request = em.createEntityQueryRequest("SELECT * FROM Task ORDER BY __key__");
+    PaginationOptions options = new PaginationOptions();
+    options.setPageSize(5);
+    Paginator<Task> paginator = em.paginate(Task.class, request, options);
+    assertTrue(paginator.hasNext());
+    assertEquals(5, paginator.next().getResults().size());
+    paginator.cancel();
+    assertTrue(paginator.isCancelled());
+    assertFalse(paginator.hasNext());
+  }
+
   @Test
   public void testExecute() {
     EntityQueryRequest request = em.createEntityQueryRequest("SELECT * from Task");
@@ -3421,6 +3751,112 @@ public class EntityManagerTest {
     assertEquals(entities, loadedEntities);
   }
 
+  @Test
+  public void testLoad_ByKeys_MultipleKinds() {
+    ParentEntity parent = new ParentEntity();
+    parent.setField1("test for multi-kind load by key");
+    parent = em.insert(parent);
+    ChildEntity child = new ChildEntity();
+    child.setField1("test for multi-kind load by key");
+    child.setParentKey(parent.getKey());
+    child = em.insert(child);
+    ParentEntity deleted = new ParentEntity();
+    deleted = em.insert(deleted);
+    em.delete(deleted);
+    DatastoreKey missingKey = deleted.getKey();
+    List<DatastoreKey> keys = Arrays.asList(child.getKey(), missingKey, parent.getKey(),
+        child.getKey());
+    Map<DatastoreKey, Object> loadedEntities =
+        em.loadByKey(keys, ParentEntity.class, ChildEntity.class);
+    assertEquals(2, loadedEntities.size());
+    assertEquals(Arrays.asList(child.getKey(), parent.getKey()),
+        new ArrayList<>(loadedEntities.keySet()));
+    ChildEntity loadedChild = (ChildEntity) loadedEntities.get(child.getKey());
+    assertEquals(child.getField1(), loadedChild.getField1());
+    assertEquals(parent, loadedEntities.get(parent.getKey()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLoad_ByKeys_UnregisteredKind() {
+    ParentEntity parent = em.insert(new ParentEntity());
+    em.loadByKey(Arrays.asList(parent.getKey()), ChildEntity.class);
+  }
+
+  @Test
+  public void testInsert_MixedTypes() {
+    ParentEntity parent = new ParentEntity();
+    parent.setField1("test for mixed type insert");
+    LongId longId = new LongId();
+    longId.setField1("test for mixed type insert");
+    OptimisticLock1 versioned = new OptimisticLock1();
+    versioned.setName("test for mixed type insert");
+    List<Object> entities = em.insert(Arrays.<Object>asList(parent, longId, versioned));
+    assertEquals(3, entities.size());
+    ParentEntity insertedParent = (ParentEntity) entities.get(0);
+    LongId insertedLongId = (LongId) entities.get(1);
+    OptimisticLock1 insertedVersioned = (OptimisticLock1) entities.get(2);
+    assertEquals(insertedParent, em.loadByKey(ParentEntity.class,
+        Arrays.asList(insertedParent.getKey())).get(0));
+    assertEquals(longId.getField1(),
+        em.load(LongId.class, insertedLongId.getId()).getField1());
+    assertEquals(1, insertedVersioned.getVersion());
+  }
+
+  @Test
+  public void testUpsert_MixedTypes() {
+    LongId longId = new LongId();
+    longId.setField1("test for mixed type upsert");
+    StringId stringId = new StringId();
+    stringId.setGreetings("test for mixed type upsert");
+    List<Object> entities = em.upsert(Arrays.<Object>asList(longId, stringId));
+    LongId upsertedLongId = (LongId) entities.get(0);
+    StringId upsertedStringId = (StringId) entities.get(1);
+    assertTrue(upsertedLongId.getId() != 0);
+    assertEquals(stringId.getGreetings(),
+        em.load(StringId.class, upsertedStringId.getId()).getGreetings());
+  }
+
+  @Test
+  public void testUpdate_MixedTypes() {
+    LongId longId = new LongId();
+    longId.setField1("test for mixed type update");
+    OptimisticLock1 versioned = new OptimisticLock1();
+    versioned.setName("test for mixed type update");
+    List<Object> entities = em.insert(Arrays.<Object>asList(longId, versioned));
+    ((LongId) entities.get(0)).setField1("after mixed type update");
+    ((OptimisticLock1) entities.get(1)).setName("after mixed type update");
+    List<Object> updatedEntities = em.update(entities);
+    LongId updatedLongId = (LongId) updatedEntities.get(0);
+    OptimisticLock1 updatedVersioned = (OptimisticLock1) updatedEntities.get(1);
+    assertEquals(2, updatedVersioned.getVersion());
+    assertEquals("after mixed type update",
+        em.load(LongId.class, updatedLongId.getId()).getField1());
+    assertEquals(2, em.load(OptimisticLock1.class, updatedVersioned.getId()).getVersion());
+  }
+
+  @Test(expected = OptimisticLockException.class)
+  public void testUpdate_MixedTypes_StaleVersion() {
+    LongId longId = new LongId();
+    longId.setField1("test for mixed type update with stale version");
+    OptimisticLock1 versioned = new OptimisticLock1();
+    versioned.setName("test for mixed type update with stale version");
+    List<Object> entities = em.insert(Arrays.<Object>asList(longId, versioned));
+    em.update(entities.get(1));
+    em.update(entities);
+  }
+
+  @Test
+  public void testDelete_MixedTypes() {
+    LongId longId = new LongId();
+    longId.setField1("test for mixed type delete");
+    StringId stringId = new StringId();
+    stringId.setGreetings("test for mixed type delete");
+    List<Object> entities = em.insert(Arrays.<Object>asList(longId, stringId));
+    em.delete(entities);
+    assertNull(em.load(LongId.class, ((LongId) entities.get(0)).getId()));
+    assertNull(em.load(StringId.class, ((StringId) entities.get(1)).getId()));
+  }
+
   @Test
   public void testInsert_NestedMapEntity() {
     NestedMapEntity entity = NestedMapEntity.getSample1();
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.jmethods.catatumbo.idgenerators.RandomIdGenerator;
+import com.jmethods.catatumbo.idgenerators.UuidGenerator;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class IdGeneratorFactoryTest {
+
+  @Test
+  public void testGetIdGenerator_UuidGenerator() {
+    IdGenerator g1 = IdGeneratorFactory.getInstance().getIdGenerator(UuidGenerator.class);
+    IdGenerator g2 = IdGeneratorFactory.getInstance().getIdGenerator(UuidGenerator.class);
+    assertTrue(g1 == g2);
+  }
+
+  @Test
+  public void testGetIdGenerator_RandomIdGenerator() {
+    IdGenerator g1 = IdGeneratorFactory.getInstance().getIdGenerator(RandomIdGenerator.class);
+    IdGenerator g2 = IdGeneratorFactory.getInstance().getIdGenerator(RandomIdGenerator.class);
+    assertTrue(g1 == g2);
+  }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.entities;
+
+import java.util.List;
+
+import com.jmethods.catatumbo.Entity;
+import com.jmethods.catatumbo.EntityListeners;
+import com.jmethods.catatumbo.Ignore;
+import com.jmethods.catatumbo.PreInsert;
+import com.jmethods.catatumbo.PreUpsert;
+import com.jmethods.catatumbo.listeners.BatchSizeRecorder;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+@Entity
+@EntityListeners(BatchSizeRecorder.class)
+public class BatchCalculatorEntity extends CalculatorEntity {
+
+  @Ignore
+  private int batchSize;
+
+  @Ignore
+  private int batchCount;
+
+  /**
+   * 
+   */
+  public BatchCalculatorEntity() {
+    super();
+  }
+
+  /**
+   * @param operand1
+   * @param operand2
+   */
+  public BatchCalculatorEntity(long operand1, long operand2) {
+    super(operand1, operand2);
+  }
+
+  /**
+   * @return the batchSize
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @param batchSize
+   *          the batchSize to set
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * @return the batchCount
+   */
+  public int getBatchCount() {
+    return batchCount;
+  }
+
+  /**
+   * @param batchCount
+   *          the batchCount to set
+   */
+  public void setBatchCount(int batchCount) {
+    this.batchCount = batchCount;
+  }
+
+  @PreInsert
+  @PreUpsert
+  public static void beforeEvent(List<BatchCalculatorEntity> entities) {
+    for (BatchCalculatorEntity entity : entities) {
+      entity.setSum(entity.getOperand1() + entity.getOperand2());
+      entity.setBatchCount(entity.getBatchCount() + 1);
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.entities;
+
+import com.jmethods.catatumbo.Entity;
+import com.jmethods.catatumbo.Identifier;
+import com.jmethods.catatumbo.idgenerators.RandomIdGenerator;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+@Entity
+public class StringId3 {
+  @Identifier(generator = RandomIdGenerator.class)
+  private String id;
+  private String greetings;
+
+  /**
+   * @return the id
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @param id
+   *          the id to set
+   */
+  public void setId(String id) {
+    this.id = id;
+  }
+
+  /**
+   * @return the greetings
+   */
+  public String getGreetings() {
+    return greetings;
+  }
+
+  /**
+   * @param greetings
+   *          the greetings to set
+   */
+  public void setGreetings(String greetings) {
+    this.greetings = greetings;
+  }
+
+}
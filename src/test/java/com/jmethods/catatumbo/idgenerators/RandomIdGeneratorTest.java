@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.idgenerators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class RandomIdGeneratorTest {
+
+  private static final String ALPHABET =
+      "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+  @Test
+  public void testGenerate_Format() {
+    RandomIdGenerator generator = new RandomIdGenerator();
+    for (int i = 0; i < 1000; i++) {
+      String id = generator.generate();
+      assertEquals(RandomIdGenerator.LENGTH, id.length());
+      for (char c : id.toCharArray()) {
+        assertTrue(ALPHABET.indexOf(c) >= 0);
+      }
+    }
+  }
+
+  @Test
+  public void testGenerate_Unique() throws Exception {
+    RandomIdGenerator generator = new RandomIdGenerator();
+    Set<String> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        tasks.add(() -> {
+          for (int j = 0; j < 10000; j++) {
+            ids.add(generator.generate());
+          }
+          return null;
+        });
+      }
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(80000, ids.size());
+  }
+
+}
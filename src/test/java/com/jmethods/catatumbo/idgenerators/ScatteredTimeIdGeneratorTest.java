@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.idgenerators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class ScatteredTimeIdGeneratorTest {
+
+  @Test
+  public void testGenerate_Length() {
+    String id = new ScatteredTimeIdGenerator().generate();
+    assertEquals(ScatteredTimeIdGenerator.LENGTH, id.length());
+    assertEquals(20, id.length());
+  }
+
+  @Test
+  public void testGenerate_Scattered() {
+    ScatteredTimeIdGenerator generator = new ScatteredTimeIdGenerator();
+    Set<Character> prefixes = new HashSet<>();
+    for (int i = 0; i < 5000; i++) {
+      prefixes.add(generator.generate().charAt(0));
+    }
+    assertTrue(prefixes.size() > ScatteredTimeIdGenerator.SCATTER / 2);
+  }
+
+  @Test
+  public void testGenerate_SortedByTime() throws Exception {
+    ScatteredTimeIdGenerator generator = new ScatteredTimeIdGenerator();
+    Map<Character, List<String>> idsByPrefix = new HashMap<>();
+    for (int i = 0; i < 20; i++) {
+      for (int j = 0; j < 50; j++) {
+        String id = generator.generate();
+        idsByPrefix.computeIfAbsent(id.charAt(0), k -> new ArrayList<>()).add(id);
+      }
+      Thread.sleep(2);
+    }
+    for (List<String> ids : idsByPrefix.values()) {
+      List<String> sorted = new ArrayList<>(ids);
+      Collections.sort(sorted);
+      for (int i = 0; i < ids.size(); i++) {
+        assertEquals(ids.get(i).substring(0, 9), sorted.get(i).substring(0, 9));
+      }
+    }
+  }
+
+  @Test
+  public void testEncoding_Order() {
+    List<String> encoded = new ArrayList<>();
+    for (long value : new long[] { 0, 1, 63, 64, 4095, 4096, System.currentTimeMillis() }) {
+      StringBuilder builder = new StringBuilder();
+      IdEncoding.append(builder, value, IdEncoding.TIME_LENGTH);
+      encoded.add(builder.toString());
+    }
+    List<String> sorted = new ArrayList<>(encoded);
+    Collections.sort(sorted);
+    assertEquals(encoded, sorted);
+    assertEquals("--------", encoded.get(0));
+  }
+
+}
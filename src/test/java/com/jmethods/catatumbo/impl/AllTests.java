@@ -25,9 +25,17 @@ import org.junit.runners.Suite.SuiteClasses;
  *
  */
 @RunWith(Suite.class)
-@SuiteClasses({ EntityIntrospectorTest.class, ExternalListenerIntrospectorTest.class,
+@SuiteClasses({ AllocationBudgetTest.class, AsyncCallbackExecutorTest.class,
+    AutoFlushingBatchTest.class, BinderRegistryTest.class, ConcurrencyUtilsTest.class,
+    DatastoreClientPoolTest.class, DeadlineHttpTransportOptionsTest.class,
+    DefaultAggregatorTest.class, DefaultCounterServiceTest.class, DefaultPaginatorTest.class,
+    DefaultQueryBuilderTest.class, EntityGroupWriteSchedulerTest.class,
+    EntityIntrospectorTest.class, EntityKindRegistryTest.class,
+    ExternalListenerIntrospectorTest.class, HedgedLookupExecutorTest.class, IdAllocatorTest.class,
     InternalListenerIntrospectorTest.class, IntrospectionUtilsTest.class, LRUCacheTest.class,
-    MarshallerTest.class, UnmarshallerTest.class })
+    MarshallerTest.class, NamespaceViewTest.class, OperationDeadlineTest.class,
+    PooledHttpTransportFactoryTest.class, QueryUtilsTest.class, SchemaSnapshotTest.class,
+    StatsCacheTest.class, UnmarshallerTest.class, WriteRateGovernorTest.class })
 public class AllTests {
 
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.GqlQuery;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.Query.ResultType;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.entities.Contact;
+import com.jmethods.catatumbo.entities.Customer;
+import com.jmethods.catatumbo.entities.Task;
+import com.jmethods.catatumbo.impl.Marshaller.Intent;
+
+/**
+ * Allocation budget tests for the hot paths of the mapping layer. Each test warms up the JIT, then
+ * measures the number of bytes allocated by the current thread per operation and fails if the
+ * measured value exceeds the budget. The tests run offline - the EntityManager used here points to
+ * an emulator URL that is never contacted, because marshalling, unmarshalling and key construction
+ * do not make any RPCs.
+ *
+ * <p>
+ * Budgets are intentionally generous (roughly twice the observed allocation) so that they do not
+ * fail on JVM or JIT differences, but do fail when a change doubles the allocation rate of a path.
+ * If a change legitimately needs more memory, update the budget along with the change.
+ *
+ * <p>
+ * The budgets were measured on a JVM with compact strings (Java 9 and later, the default). On Java
+ * 8, or when compact strings are turned off with {@code -XX:-CompactStrings}, every string uses two
+ * bytes per character and the budgets are scaled by {@link #NON_COMPACT_STRINGS_FACTOR}.
+ *
+ * @author Sai Pullabhotla
+ *
+ */
+public class AllocationBudgetTest {
+
+  /**
+   * Number of warm up iterations before measuring
+   */
+  private static final int WARMUP_ITERATIONS = 20000;
+
+  /**
+   * Number of measured iterations
+   */
+  private static final int MEASURED_ITERATIONS = 5000;
+
+  /**
+   * Number of native entities used for the toEntities test
+   */
+  private static final int LIST_SIZE = 20;
+
+  /**
+   * Factor applied to every budget when the JVM does not use compact strings
+   */
+  private static final int NON_COMPACT_STRINGS_FACTOR = 2;
+
+  private static final long BUDGET_MARSHAL_TASK = 5120;
+  private static final long BUDGET_MARSHAL_CUSTOMER = 8192;
+  private static final long BUDGET_MARSHAL_CONTACT = 15360;
+  private static final long BUDGET_UNMARSHAL_TASK = 1024;
+  private static final long BUDGET_UNMARSHAL_CUSTOMER = 2048;
+  private static final long BUDGET_TO_ENTITIES = LIST_SIZE * 512L;
+  private static final long BUDGET_NAMED_BINDINGS = 2304;
+  private static final long BUDGET_MARSHAL_KEY = 3072;
+  private static final long BUDGET_NATIVE_KEY = 3072;
+  private static final long BUDGET_NATIVE_KEY_NAMESPACE_VIEW = 512;
+  private static final long BUDGET_NO_LISTENERS = 64;
+
+  private static com.sun.management.ThreadMXBean threadMXBean;
+  private static int budgetFactor;
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    threadMXBean = (com.sun.management.ThreadMXBean) bean;
+    Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+    if (!threadMXBean.isThreadAllocatedMemoryEnabled()) {
+      threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+    budgetFactor = isCompactStrings() ? 1 : NON_COMPACT_STRINGS_FACTOR;
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-allocation-test");
+  }
+
+  @Test
+  public void testMarshal_Task() {
+    Task task = createTask(10);
+    assertBudget("Marshaller.marshal(Task)", BUDGET_MARSHAL_TASK,
+        () -> Marshaller.marshal(em, task, Intent.UPSERT));
+  }
+
+  @Test
+  public void testMarshal_Customer() {
+    Customer customer = Customer.createSampleCustomer1();
+    customer.setId(20);
+    assertBudget("Marshaller.marshal(Customer)", BUDGET_MARSHAL_CUSTOMER,
+        () -> Marshaller.marshal(em, customer, Intent.UPSERT));
+  }
+
+  @Test
+  public void testMarshal_Contact() {
+    Contact contact = Contact.createContact2();
+    contact.setId(30);
+    assertBudget("Marshaller.marshal(Contact)", BUDGET_MARSHAL_CONTACT,
+        () -> Marshaller.marshal(em, contact, Intent.UPSERT));
+  }
+
+  @Test
+  public void testUnmarshal_Task() {
+    Entity nativeEntity = (Entity) Marshaller.marshal(em, createTask(40), Intent.UPSERT);
+    assertNotNull(Unmarshaller.unmarshal(nativeEntity, Task.class));
+    assertBudget("Unmarshaller.unmarshal(Task)", BUDGET_UNMARSHAL_TASK,
+        () -> Unmarshaller.unmarshal(nativeEntity, Task.class));
+  }
+
+  @Test
+  public void testUnmarshal_Customer() {
+    Customer customer = Customer.createSampleCustomer1();
+    customer.setId(50);
+    Entity nativeEntity = (Entity) Marshaller.marshal(em, customer, Intent.UPSERT);
+    assertBudget("Unmarshaller.unmarshal(Customer)", BUDGET_UNMARSHAL_CUSTOMER,
+        () -> Unmarshaller.unmarshal(nativeEntity, Customer.class));
+  }
+
+  @Test
+  public void testToEntities() {
+    List<Entity> nativeEntities = new ArrayList<>(LIST_SIZE);
+    for (int i = 1; i <= LIST_SIZE; i++) {
+      nativeEntities.add((Entity) Marshaller.marshal(em, createTask(i), Intent.UPSERT));
+    }
+    assertBudget("DatastoreUtils.toEntities(Task x " + LIST_SIZE + ")", BUDGET_TO_ENTITIES,
+        () -> DatastoreUtils.toEntities(Task.class, nativeEntities));
+  }
+
+  @Test
+  public void testApplyNamedBindings() {
+    GqlQuery.Builder<Entity> queryBuilder = Query.newGqlQueryBuilder(ResultType.ENTITY,
+        "SELECT * FROM Task WHERE name = @name AND priority = @priority AND complete = @complete");
+    Map<String, Object> bindings = new HashMap<>();
+    bindings.put("name", "My Task 1");
+    bindings.put("priority", 3);
+    bindings.put("complete", Boolean.TRUE);
+    assertBudget("QueryUtils.applyNamedBindings", BUDGET_NAMED_BINDINGS,
+        () -> {
+          QueryUtils.applyNamedBindings(queryBuilder, bindings);
+          return queryBuilder;
+        });
+  }
+
+  @Test
+  public void testMarshalKey() {
+    Task task = createTask(60);
+    assertBudget("Marshaller.marshalKey(Task)", BUDGET_MARSHAL_KEY,
+        () -> Marshaller.marshalKey(em, task));
+  }
+
+  @Test
+  public void testNativeKey() {
+    Key key = em.newNativeKeyFactory().setKind("Task").newKey(70);
+    assertNotNull(key);
+    assertBudget("DefaultEntityManager.newNativeKeyFactory().newKey", BUDGET_NATIVE_KEY,
+        () -> em.newNativeKeyFactory().setKind("Task").newKey(70));
+  }
+
+  @Test
+  public void testNativeKey_NamespaceView() {
+    DefaultEntityManager view = em.forNamespace("tenant1");
+    assertBudget("DefaultEntityManager.forNamespace().newNativeKey",
+        BUDGET_NATIVE_KEY_NAMESPACE_VIEW, () -> view.newNativeKey("Task", 70));
+  }
+
+  @Test
+  public void testExecuteEntityListeners_NoListeners() {
+    List<Task> tasks = new ArrayList<>(LIST_SIZE);
+    for (int i = 1; i <= LIST_SIZE; i++) {
+      tasks.add(createTask(i));
+    }
+    assertBudget("DefaultEntityManager.executeEntityListeners(Task x " + LIST_SIZE + ")",
+        BUDGET_NO_LISTENERS, () -> {
+          em.executeEntityListeners(CallbackType.PRE_INSERT, tasks);
+          return tasks;
+        });
+  }
+
+  /**
+   * Runs the given operation, first to warm up the JIT and then to measure the average number of
+   * bytes allocated per invocation, and asserts that the average is within the given budget.
+   *
+   * @param name
+   *          name of the operation, used in messages
+   * @param compactBudget
+   *          maximum allowed bytes per operation on a JVM with compact strings
+   * @param operation
+   *          the operation to measure
+   */
+  private static void assertBudget(String name, long compactBudget, Operation operation) {
+    long budget = compactBudget * budgetFactor;
+    Object sink = null;
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      sink = operation.run();
+    }
+    long threadId = Thread.currentThread().getId();
+    long start = threadMXBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      sink = operation.run();
+    }
+    long end = threadMXBean.getThreadAllocatedBytes(threadId);
+    assertNotNull(sink);
+    long bytesPerOperation = (end - start) / MEASURED_ITERATIONS;
+    System.out.printf("%s: %d bytes/op (budget %d)%n", name, bytesPerOperation, budget);
+    assertTrue(String.format("%s allocated %d bytes/op, which exceeds the budget of %d bytes/op",
+        name, bytesPerOperation, budget), bytesPerOperation <= budget);
+  }
+
+  /**
+   * Tells whether the current JVM stores Latin-1 strings in one byte per character.
+   *
+   * @return <code>true</code>, if compact strings are in use; <code>false</code>, otherwise.
+   */
+  private static boolean isCompactStrings() {
+    if (System.getProperty("java.specification.version").startsWith("1.")) {
+      return false;
+    }
+    List<String> arguments = ManagementFactory.getRuntimeMXBean().getInputArguments();
+    return !arguments.contains("-XX:-CompactStrings");
+  }
+
+  private static Task createTask(long id) {
+    Calendar cal = Calendar.getInstance();
+    cal.set(2017, Calendar.JANUARY, 1, 0, 0, 0);
+    Date completionDate = cal.getTime();
+    Task task = new Task(id, "My Task " + id, (int) (id % 5), id % 10 == 0);
+    task.setCompletionDate(completionDate);
+    return task;
+  }
+
+  /**
+   * An operation whose allocations are measured. Returns a value so the JIT cannot eliminate the
+   * work.
+   */
+  @FunctionalInterface
+  private interface Operation {
+    Object run();
+  }
+
+}
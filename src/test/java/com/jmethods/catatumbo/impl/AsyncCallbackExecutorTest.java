@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.jmethods.catatumbo.AsyncCallbackErrorHandler;
+import com.jmethods.catatumbo.AsyncCallbackOptions;
+import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.PostInsert;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class AsyncCallbackExecutorTest {
+
+  @Test
+  public void testOrderingByRoutingKey() throws Exception {
+    AsyncCallbackOptions options = new AsyncCallbackOptions();
+    options.setThreads(4);
+    AsyncCallbackExecutor executor = new AsyncCallbackExecutor(options);
+    CallbackMetadata callback = createCallback("record");
+    List<List<Integer>> expected = new ArrayList<>();
+    List<List<Integer>> actual = new ArrayList<>();
+    for (int key = 0; key < 4; key++) {
+      expected.add(new ArrayList<Integer>());
+      actual.add(Collections.synchronizedList(new ArrayList<Integer>()));
+    }
+    for (int i = 0; i < 1000; i++) {
+      int key = i % 4;
+      expected.get(key).add(i);
+      executor.execute(key, callback, new Event(actual.get(key), i));
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testErrorHandler() throws Exception {
+    final List<Object> failedEntities = new ArrayList<>();
+    final List<EntityManagerException> exceptions = new ArrayList<>();
+    AsyncCallbackOptions options = new AsyncCallbackOptions();
+    options.setErrorHandler(new AsyncCallbackErrorHandler() {
+      @Override
+      public void handleError(Object entity, EntityManagerException exception) {
+        failedEntities.add(entity);
+        exceptions.add(exception);
+      }
+    });
+    AsyncCallbackExecutor executor = new AsyncCallbackExecutor(options);
+    Event event = new Event(null, 1);
+    executor.execute(0, createCallback("fail"), event);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(1, failedEntities.size());
+    assertSame(event, failedEntities.get(0));
+    assertTrue(exceptions.get(0).getCause() instanceof IllegalStateException);
+  }
+
+  @Test
+  public void testRun_ErrorHandler() throws Exception {
+    final List<Object> failedEntities = new ArrayList<>();
+    AsyncCallbackOptions options = new AsyncCallbackOptions();
+    options.setErrorHandler(new AsyncCallbackErrorHandler() {
+      @Override
+      public void handleError(Object entity, EntityManagerException exception) {
+        failedEntities.add(entity);
+      }
+    });
+    AsyncCallbackExecutor executor = new AsyncCallbackExecutor(options);
+    executor.shutdown();
+    Event event = new Event(null, 1);
+    assertFalse(executor.execute(0, createCallback("fail"), event));
+    executor.run(createCallback("fail"), event);
+    assertEquals(1, failedEntities.size());
+    assertSame(event, failedEntities.get(0));
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    AsyncCallbackOptions options = new AsyncCallbackOptions();
+    options.setThreads(1);
+    options.setQueueCapacity(1);
+    final AsyncCallbackExecutor executor = new AsyncCallbackExecutor(options);
+    final CallbackMetadata callback = createCallback("await");
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Event event = new Event(null, 0);
+    event.latch = latch;
+    // The first callback blocks the only thread, the second one fills the queue
+    executor.execute(0, callback, event);
+    executor.execute(0, callback, event);
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        executor.execute(0, callback, event);
+      }
+    };
+    producer.start();
+    producer.join(200);
+    assertTrue(producer.isAlive());
+    latch.countDown();
+    producer.join(10000);
+    assertFalse(producer.isAlive());
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testBackpressure_Shutdown() throws Exception {
+    AsyncCallbackOptions options = new AsyncCallbackOptions();
+    options.setThreads(1);
+    options.setQueueCapacity(1);
+    final AsyncCallbackExecutor executor = new AsyncCallbackExecutor(options);
+    final CallbackMetadata callback = createCallback("await");
+    final CountDownLatch latch = new CountDownLatch(1);
+    final Event event = new Event(null, 0);
+    event.latch = latch;
+    executor.execute(0, callback, event);
+    executor.execute(0, callback, event);
+    final AtomicReference<Boolean> accepted = new AtomicReference<>();
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        accepted.set(executor.execute(0, callback, event));
+      }
+    };
+    producer.start();
+    producer.join(200);
+    assertTrue(producer.isAlive());
+    executor.shutdown();
+    producer.join(10000);
+    assertFalse(producer.isAlive());
+    assertEquals(Boolean.FALSE, accepted.get());
+    latch.countDown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  private static CallbackMetadata createCallback(String methodName) throws Exception {
+    return new CallbackMetadata(EntityListenerType.EXTERNAL, CallbackType.POST_INSERT,
+        AsyncListener.class.getMethod(methodName, Event.class));
+  }
+
+  public static class Event {
+    private final List<Integer> sink;
+    private final int sequence;
+    private CountDownLatch latch;
+
+    public Event(List<Integer> sink, int sequence) {
+      this.sink = sink;
+      this.sequence = sequence;
+    }
+  }
+
+  public static class AsyncListener {
+
+    @PostInsert(async = true)
+    public void record(Event event) {
+      event.sink.add(event.sequence);
+    }
+
+    @PostInsert(async = true)
+    public void fail(Event event) {
+      throw new IllegalStateException("Failed to process " + event.sequence);
+    }
+
+    @PostInsert(async = true)
+    public void await(Event event) throws InterruptedException {
+      event.latch.await();
+    }
+  }
+
+}
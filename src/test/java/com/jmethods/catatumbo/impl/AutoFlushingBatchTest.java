@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.cloud.datastore.Batch;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.Key;
+import com.jmethods.catatumbo.BatchOptions;
+import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.EntityManagerFactory;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class AutoFlushingBatchTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-batch-test");
+  }
+
+  @Test
+  public void testOptions_Defaults() {
+    BatchOptions options = new BatchOptions();
+    assertEquals(BatchOptions.DEFAULT_MAX_MUTATIONS, options.getMaxMutations());
+    assertEquals(BatchOptions.DEFAULT_MAX_BYTES, options.getMaxBytes());
+    assertEquals(BatchOptions.DEFAULT_PARALLELISM, options.getParallelism());
+  }
+
+  @Test
+  public void testOptions_InvalidValues() {
+    BatchOptions options = new BatchOptions();
+    options.setMaxMutations(BatchOptions.MAX_MUTATIONS + 1);
+    assertEquals(BatchOptions.DEFAULT_MAX_MUTATIONS, options.getMaxMutations());
+    options.setMaxBytes(BatchOptions.MAX_BYTES + 1);
+    assertEquals(BatchOptions.DEFAULT_MAX_BYTES, options.getMaxBytes());
+    options.setParallelism(0);
+    assertEquals(BatchOptions.DEFAULT_PARALLELISM, options.getParallelism());
+  }
+
+  @Test
+  public void testFlush_MaxMutations() {
+    FakeDatastore fake = new FakeDatastore();
+    AutoFlushingBatch batch = newBatch(fake, 3, BatchOptions.DEFAULT_MAX_BYTES, 1);
+    for (int i = 1; i <= 7; i++) {
+      batch.put(newEntity(i, "x"));
+    }
+    assertEquals(2, fake.commits.size());
+    batch.submit();
+    assertEquals(3, fake.commits.size());
+    assertEquals(3, fake.commits.get(0).size());
+    assertEquals(3, fake.commits.get(1).size());
+    assertEquals(1, fake.commits.get(2).size());
+  }
+
+  @Test
+  public void testFlush_RepeatedKeys() {
+    FakeDatastore fake = new FakeDatastore();
+    AutoFlushingBatch batch = newBatch(fake, 3, BatchOptions.DEFAULT_MAX_BYTES, 1);
+    for (int i = 0; i < 5; i++) {
+      batch.put(newEntity(1, "x" + i));
+    }
+    batch.update(newEntity(2, "y"), newEntity(1, "z"));
+    batch.delete(newEntity(3, "").getKey());
+    batch.submit();
+    assertEquals(1, fake.commits.size());
+  }
+
+  @Test
+  public void testFlush_MaxBytes() {
+    FakeDatastore fake = new FakeDatastore();
+    AutoFlushingBatch batch = newBatch(fake, BatchOptions.MAX_MUTATIONS, 1000, 1);
+    String text = String.join("", Collections.nCopies(400, "a"));
+    for (int i = 1; i <= 5; i++) {
+      batch.put(newEntity(i, text));
+    }
+    batch.submit();
+    assertEquals(3, fake.commits.size());
+    assertEquals(2, fake.commits.get(0).size());
+  }
+
+  @Test
+  public void testFlush_OversizedMutation() {
+    FakeDatastore fake = new FakeDatastore();
+    AutoFlushingBatch batch = newBatch(fake, BatchOptions.MAX_MUTATIONS, 100, 1);
+    String text = String.join("", Collections.nCopies(400, "a"));
+    try {
+      batch.put(newEntity(1, text));
+      fail("Expected an IllegalArgumentException");
+    } catch (IllegalArgumentException exp) {
+      // Expected
+    }
+    batch.put(newEntity(2, "x"));
+    batch.submit();
+    assertEquals(1, fake.commits.size());
+  }
+
+  @Test
+  public void testGeneratedKeys_Parallel() {
+    FakeDatastore fake = new FakeDatastore();
+    AutoFlushingBatch batch = newBatch(fake, 10, BatchOptions.DEFAULT_MAX_BYTES, 4);
+    IncompleteKey incompleteKey = em.newNativeKeyFactory().setKind("Task").newKey();
+    for (int i = 0; i < 95; i++) {
+      batch.addWithDeferredIdAllocation(
+          FullEntity.newBuilder(incompleteKey).set("name", "Task " + i).build());
+    }
+    List<Key> keys = batch.submit().getGeneratedKeys();
+    assertEquals(10, fake.commits.size());
+    assertEquals(95, keys.size());
+    for (int i = 1; i < keys.size(); i++) {
+      assertTrue(keys.get(i - 1).getId() < keys.get(i).getId());
+    }
+  }
+
+  @Test
+  public void testFlush_ParallelKeepsOrderOfKey() {
+    FakeDatastore fake = new FakeDatastore();
+    AutoFlushingBatch batch = newBatch(fake, 2, BatchOptions.DEFAULT_MAX_BYTES, 4);
+    for (int i = 0; i < 20; i++) {
+      batch.put(newEntity(100 + i, "other"));
+      batch.put(newEntity(1, "v" + i));
+    }
+    batch.submit();
+    String last = null;
+    for (List<Object> commit : fake.commits) {
+      for (Object mutation : commit) {
+        Entity entity = (Entity) mutation;
+        if (entity.getKey().getId() == 1) {
+          last = entity.getString("name");
+        }
+      }
+    }
+    assertEquals("v19", last);
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testSubmit_Inactive() {
+    AutoFlushingBatch batch = newBatch(new FakeDatastore(), 10, BatchOptions.DEFAULT_MAX_BYTES, 1);
+    batch.put(newEntity(1, "x"));
+    batch.submit();
+    batch.put(newEntity(2, "x"));
+  }
+
+  @Test
+  public void testPut_AfterParallelFailure() throws InterruptedException {
+    FakeDatastore fake = new FakeDatastore();
+    fake.failingBatch = 1;
+    AutoFlushingBatch batch = newBatch(fake, 1, BatchOptions.DEFAULT_MAX_BYTES, 4);
+    batch.put(newEntity(1, "x"));
+    batch.put(newEntity(2, "x"));
+    for (int i = 0; i < 200 && batch.isActive(); i++) {
+      Thread.sleep(10);
+    }
+    try {
+      batch.put(newEntity(3, "x"));
+      fail("Expected EntityManagerException");
+    } catch (EntityManagerException exp) {
+      assertTrue(exp.getCause() instanceof DatastoreException);
+    }
+  }
+
+  @Test
+  public void testEstimateSize() {
+    String text = String.join("", Collections.nCopies(100, "é"));
+    int size = AutoFlushingBatch.estimateSize(newEntity(1, text));
+    assertTrue(size >= 200);
+    assertTrue(size < 300);
+  }
+
+  private static AutoFlushingBatch newBatch(FakeDatastore fake, int maxMutations, long maxBytes,
+      int parallelism) {
+    BatchOptions options = new BatchOptions();
+    options.setMaxMutations(maxMutations);
+    options.setMaxBytes(maxBytes);
+    options.setParallelism(parallelism);
+    return new AutoFlushingBatch(em, fake.proxy(), options);
+  }
+
+  private static Entity newEntity(long id, String name) {
+    return Entity.newBuilder(em.newNativeKeyFactory().setKind("Task").newKey(id))
+        .set("name", name).build();
+  }
+
+  /**
+   * A Datastore that records the mutations of each batch, and assigns the generated IDs in the
+   * order the batches were created.
+   */
+  private static class FakeDatastore implements InvocationHandler {
+
+    private final List<List<Object>> commits = Collections.synchronizedList(new ArrayList<>());
+
+    private final AtomicInteger batchCount = new AtomicInteger();
+
+    private volatile int failingBatch;
+
+    Datastore proxy() {
+      return (Datastore) Proxy.newProxyInstance(Datastore.class.getClassLoader(),
+          new Class<?>[] { Datastore.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+      if (!method.getName().equals("newBatch")) {
+        throw new UnsupportedOperationException(method.getName());
+      }
+      int batchNumber = batchCount.incrementAndGet();
+      long firstId = batchNumber * 1000L;
+      List<Object> mutations = new ArrayList<>();
+      return Proxy.newProxyInstance(Batch.class.getClassLoader(), new Class<?>[] { Batch.class },
+          (batchProxy, batchMethod, batchArgs) -> {
+            switch (batchMethod.getName()) {
+              case "submit":
+                Thread.sleep(5);
+                if (batchNumber == failingBatch) {
+                  throw new DatastoreException(14, "Unavailable", "UNAVAILABLE");
+                }
+                commits.add(mutations);
+                List<Key> keys = new ArrayList<>();
+                for (Object mutation : mutations) {
+                  if (mutation instanceof FullEntity
+                      && !(((FullEntity<?>) mutation).getKey() instanceof Key)) {
+                    IncompleteKey key = ((FullEntity<?>) mutation).getKey();
+                    keys.add(Key.newBuilder(key, firstId + keys.size()).build());
+                  }
+                }
+                return (Batch.Response) () -> keys;
+              case "put":
+              case "add":
+                Object entity = batchArgs[0];
+                mutations.add(entity);
+                return entity;
+              default:
+                for (Object arg : (Object[]) batchArgs[0]) {
+                  mutations.add(arg);
+                }
+                return null;
+            }
+          });
+    }
+  }
+
+}
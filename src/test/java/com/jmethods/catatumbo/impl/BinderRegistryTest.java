@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.DoubleValue;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.GqlQuery;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyValue;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.LongValue;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.Query.ResultType;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.TimestampValue;
+import com.google.cloud.datastore.Value;
+import com.google.cloud.datastore.ValueBuilder;
+import com.jmethods.catatumbo.DefaultDatastoreCursor;
+import com.jmethods.catatumbo.DefaultDatastoreKey;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.GeoLocation;
+import com.jmethods.catatumbo.Mapper;
+import com.jmethods.catatumbo.MapperFactory;
+import com.jmethods.catatumbo.entities.Color;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class BinderRegistryTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-binder-test");
+  }
+
+  @Test
+  public void testGetBinder_Cached() {
+    assertSame(BinderRegistry.getBinder(Integer.class), BinderRegistry.getBinder(Integer.class));
+  }
+
+  @Test
+  public void testGetBinder_DefaultMapperChanged() {
+    MapperFactory.getInstance().setDefaultMapper(Code.class, new CodeMapper("a"));
+    assertEquals(StringValue.of("a:1"), bindNamed(new Code(1)));
+    MapperFactory.getInstance().setDefaultMapper(Code.class, new CodeMapper("b"));
+    assertEquals(StringValue.of("b:1"), bindNamed(new Code(1)));
+  }
+
+  @Test
+  public void testBind_Primitives() {
+    assertEquals(LongValue.of(5), bindNamed((short) 5));
+    assertEquals(LongValue.of(5), bindNamed(5));
+    assertEquals(LongValue.of(5), bindNamed(5L));
+    assertEquals(DoubleValue.of(2.5), bindNamed(2.5f));
+    assertEquals(StringValue.of("x"), bindNamed('x'));
+    assertEquals(StringValue.of("abc"), bindNamed("abc"));
+  }
+
+  @Test
+  public void testBind_Enum() {
+    assertEquals(StringValue.of(Color.values()[0].name()), bindNamed(Color.values()[0]));
+  }
+
+  @Test
+  public void testBind_BigDecimal() {
+    assertEquals(DoubleValue.of(12.5), bindNamed(new BigDecimal("12.5")));
+  }
+
+  @Test
+  public void testBind_CalendarSubclass() {
+    GregorianCalendar calendar = new GregorianCalendar(2017, 0, 1);
+    assertEquals(TimestampValue.of(Timestamp.of(calendar.getTime())), bindNamed(calendar));
+  }
+
+  @Test
+  public void testBind_DateSubclass() {
+    java.sql.Timestamp timestamp = new java.sql.Timestamp(1000L);
+    assertEquals(TimestampValue.of(Timestamp.of(new Date(1000L))), bindNamed(timestamp));
+  }
+
+  @Test
+  public void testBind_DatastoreKey() {
+    Key key = em.newNativeKeyFactory().setKind("Task").newKey(10);
+    assertEquals(KeyValue.of(key), bindNamed(new DefaultDatastoreKey(key)));
+  }
+
+  @Test
+  public void testBind_Cursor() {
+    GqlQuery.Builder<Entity> builder = newBuilder();
+    QueryUtils.addPositionalBinding(builder, new DefaultDatastoreCursor("CgA="));
+    assertEquals(Cursor.fromUrlSafe("CgA="), builder.build().getNumberArgs().get(0));
+  }
+
+  @Test
+  public void testBind_Collection() {
+    ListValue expected = ListValue.of(LongValue.of(1), LongValue.of(2), LongValue.of(3));
+    assertEquals(expected, bindNamed(Arrays.asList(1, 2L, (short) 3)));
+  }
+
+  @Test
+  public void testBind_CollectionPositional() {
+    GqlQuery.Builder<Entity> builder = newBuilder();
+    QueryUtils.addPositionalBinding(builder, Arrays.asList("a", "b"));
+    assertEquals(ListValue.of(StringValue.of("a"), StringValue.of("b")),
+        builder.build().getNumberArgs().get(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBind_CollectionMixedTypes() {
+    bindNamed(new HashSet<>(Arrays.asList(1, "a")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBind_CollectionEmpty() {
+    bindNamed(Collections.emptyList());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBind_GeoLocation() {
+    bindNamed(new GeoLocation(1.0, 2.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBind_UnsupportedType() {
+    bindNamed(new Object());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBind_NullNamed() {
+    bindNamed(null);
+  }
+
+  /**
+   * Binds the given value as a named binding and returns the native value of the binding.
+   * 
+   * @param value
+   *          the value to bind
+   * @return the native value of the binding
+   */
+  private static Object bindNamed(Object value) {
+    GqlQuery.Builder<Entity> builder = newBuilder();
+    QueryUtils.applyNamedBindings(builder, Collections.singletonMap("value", value));
+    return builder.build().getNamedBindings().get("value");
+  }
+
+  private static GqlQuery.Builder<Entity> newBuilder() {
+    return Query.newGqlQueryBuilder(ResultType.ENTITY, "SELECT * FROM Task WHERE x = @value");
+  }
+
+  private static class Code {
+    private final int value;
+
+    Code(int value) {
+      this.value = value;
+    }
+  }
+
+  private static class CodeMapper implements Mapper {
+    private final String prefix;
+
+    CodeMapper(String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public ValueBuilder<?, ?, ?> toDatastore(Object input) {
+      return StringValue.newBuilder(prefix + ":" + ((Code) input).value);
+    }
+
+    @Override
+    public Object toModel(Value<?> input) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
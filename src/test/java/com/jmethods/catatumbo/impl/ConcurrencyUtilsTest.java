@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.jmethods.catatumbo.EntityManagerException;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class ConcurrencyUtilsTest {
+
+  @Test
+  public void testInvokeAll_PreservesOrder() {
+    List<Callable<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      final int value = i;
+      tasks.add(() -> {
+        Thread.sleep(20 - value);
+        return value;
+      });
+    }
+    List<Integer> results = ConcurrencyUtils.invokeAll(tasks, 4, "test-");
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, results.get(i).intValue());
+    }
+  }
+
+  @Test
+  public void testInvokeAll_CallingThread() {
+    Thread caller = Thread.currentThread();
+    List<Callable<Thread>> tasks = Arrays.asList(() -> Thread.currentThread(),
+        () -> Thread.currentThread());
+    for (Thread thread : ConcurrencyUtils.invokeAll(tasks, 1, "test-")) {
+      assertSame(caller, thread);
+    }
+  }
+
+  @Test
+  public void testInvokeAll_DaemonThreads() {
+    List<Callable<Thread>> tasks = Arrays.asList(() -> Thread.currentThread(),
+        () -> Thread.currentThread());
+    for (Thread thread : ConcurrencyUtils.invokeAll(tasks, 2, "test-")) {
+      assertTrue(thread.isDaemon());
+      assertTrue(thread.getName().startsWith("test-"));
+    }
+  }
+
+  @Test
+  public void testInvokeAll_EntityManagerException() {
+    EntityManagerException exception = new EntityManagerException("Failed");
+    List<Callable<Object>> tasks = Arrays.asList(() -> "ok", () -> {
+      throw exception;
+    });
+    try {
+      ConcurrencyUtils.invokeAll(tasks, 2, "test-");
+      fail("Expected an EntityManagerException");
+    } catch (EntityManagerException exp) {
+      assertSame(exception, exp);
+    }
+  }
+
+  @Test
+  public void testInvokeAll_OtherException() {
+    IOException exception = new IOException("Failed");
+    List<Callable<Object>> tasks = Arrays.asList(() -> "ok", () -> {
+      throw exception;
+    });
+    try {
+      ConcurrencyUtils.invokeAll(tasks, 2, "test-");
+      fail("Expected an EntityManagerException");
+    } catch (EntityManagerException exp) {
+      assertSame(exception, exp.getCause());
+    }
+  }
+
+  @Test
+  public void testInvokeAll_SharedExecutor_LimitsParallelism() {
+    ExecutorService executor = ConcurrencyUtils.newSharedExecutor(8, "test-");
+    try {
+      AtomicInteger running = new AtomicInteger();
+      AtomicInteger maxRunning = new AtomicInteger();
+      List<Callable<Integer>> tasks = new ArrayList<>();
+      for (int i = 0; i < 20; i++) {
+        final int value = i;
+        tasks.add(() -> {
+          maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+          Thread.sleep(5);
+          running.decrementAndGet();
+          return value;
+        });
+      }
+      List<Integer> results = ConcurrencyUtils.invokeAll(executor, tasks, 2);
+      for (int i = 0; i < 20; i++) {
+        assertEquals(i, results.get(i).intValue());
+      }
+      assertTrue(maxRunning.get() <= 2);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testInvokeAll_SharedExecutor_Reused() {
+    ExecutorService executor = ConcurrencyUtils.newSharedExecutor(2, "test-");
+    try {
+      List<Callable<Thread>> tasks = Arrays.asList(() -> Thread.currentThread(),
+          () -> Thread.currentThread());
+      Set<Thread> threads = new HashSet<>();
+      for (int i = 0; i < 5; i++) {
+        threads.addAll(ConcurrencyUtils.invokeAll(executor, tasks, 2));
+      }
+      assertTrue(threads.size() <= 2);
+      assertFalse(executor.isShutdown());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testInvokeAll_SharedExecutor_Shutdown() {
+    ExecutorService executor = ConcurrencyUtils.newSharedExecutor(2, "test-");
+    executor.shutdown();
+    List<Callable<Object>> tasks = Arrays.asList(() -> "a", () -> "b");
+    ConcurrencyUtils.invokeAll(executor, tasks, 2);
+  }
+
+}
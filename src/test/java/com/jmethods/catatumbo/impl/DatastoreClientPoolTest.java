@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.cloud.NoCredentials;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.DatastoreOptions;
+import com.jmethods.catatumbo.ClientSelectionPolicy;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class DatastoreClientPoolTest {
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNewPool_NoClients() {
+    new DatastoreClientPool(Collections.<Datastore> emptyList(), ClientSelectionPolicy.ROUND_ROBIN);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNewPool_NullPolicy() {
+    new DatastoreClientPool(createClients(2), null);
+  }
+
+  @Test
+  public void testAcquire_SingleClient() {
+    DatastoreClientPool pool = new DatastoreClientPool(createClients(1),
+        ClientSelectionPolicy.LEAST_IN_FLIGHT);
+    assertEquals(0, pool.acquire());
+    assertEquals(0, pool.acquire());
+    assertEquals(0, pool.getInFlight(0));
+  }
+
+  @Test
+  public void testAcquire_RoundRobin() {
+    DatastoreClientPool pool = new DatastoreClientPool(createClients(3),
+        ClientSelectionPolicy.ROUND_ROBIN);
+    int[] counts = new int[3];
+    for (int i = 0; i < 30; i++) {
+      counts[pool.acquire()]++;
+    }
+    assertEquals(10, counts[0]);
+    assertEquals(10, counts[1]);
+    assertEquals(10, counts[2]);
+    assertEquals(10, pool.getInFlight(1));
+  }
+
+  @Test
+  public void testAcquire_LeastInFlight() {
+    DatastoreClientPool pool = new DatastoreClientPool(createClients(3),
+        ClientSelectionPolicy.LEAST_IN_FLIGHT);
+    int first = pool.acquire();
+    int second = pool.acquire();
+    int third = pool.acquire();
+    assertEquals(3, new HashSet<>(Arrays.asList(first, second, third)).size());
+    pool.acquire();
+    pool.acquire();
+    pool.release(second);
+    pool.release(second);
+    // The second client now has no operations in progress, while the others have at least one
+    for (int i = 0; i < 5; i++) {
+      assertEquals(second, pool.acquire());
+      pool.release(second);
+    }
+  }
+
+  @Test
+  public void testRelease() {
+    DatastoreClientPool pool = new DatastoreClientPool(createClients(2),
+        ClientSelectionPolicy.LEAST_IN_FLIGHT);
+    int client = pool.acquire();
+    assertEquals(1, pool.getInFlight(client));
+    pool.release(client);
+    assertEquals(0, pool.getInFlight(client));
+  }
+
+  @Test
+  public void testSelect_DoesNotCountInFlight() {
+    DatastoreClientPool pool = new DatastoreClientPool(createClients(2),
+        ClientSelectionPolicy.LEAST_IN_FLIGHT);
+    pool.select();
+    pool.select();
+    assertEquals(0, pool.getInFlight(0));
+    assertEquals(0, pool.getInFlight(1));
+  }
+
+  @Test
+  public void testNewBatch_PinnedToClient() {
+    List<Datastore> clients = createClients(2);
+    DefaultEntityManager em = new DefaultEntityManager(
+        new DatastoreClientPool(clients, ClientSelectionPolicy.ROUND_ROBIN));
+    assertSame(clients.get(0), em.getDatastore());
+    Set<Datastore> used = new HashSet<>();
+    for (int i = 0; i < 4; i++) {
+      DefaultDatastoreBatch batch = (DefaultDatastoreBatch) em.newBatch();
+      used.add(batch.getDatastore());
+    }
+    assertEquals(new HashSet<>(clients), used);
+  }
+
+  @Test
+  public void testNamespaceView_SharesPool() {
+    DefaultEntityManager em = new DefaultEntityManager(
+        new DatastoreClientPool(createClients(2), ClientSelectionPolicy.ROUND_ROBIN));
+    DefaultEntityManager view = em.forNamespace("tenant1");
+    assertSame(em.getClientPool(), view.getClientPool());
+  }
+
+  /**
+   * Creates the given number of Datastore clients that point to an emulator URL that is never
+   * contacted.
+   *
+   * @param count
+   *          the number of clients
+   * @return the clients
+   */
+  private static List<Datastore> createClients(int count) {
+    DatastoreOptions options = DatastoreOptions.newBuilder().setHost("http://localhost:8081")
+        .setProjectId("catatumbo-client-pool-test").setCredentials(NoCredentials.getInstance())
+        .build();
+    List<Datastore> clients = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      clients.add(options.toBuilder().build().getService());
+    }
+    return clients;
+  }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jmethods.catatumbo.Deadline;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityManager;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.EntityQueryRequest;
+import com.jmethods.catatumbo.entities.Task;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for {@link DeadlineHttpTransportOptions}. The entity manager talks to a local HTTP server
+ * that never answers in time.
+ *
+ * @author Sai Pullabhotla
+ *
+ */
+public class DeadlineHttpTransportOptionsTest {
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private EntityManager em;
+  private final AtomicInteger requestCount = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+    em = EntityManagerFactory.getInstance().createLocalEntityManager(
+        "http://127.0.0.1:" + server.getAddress().getPort(), "catatumbo-deadline-test");
+  }
+
+  @After
+  public void tearDown() {
+    Deadline.clear();
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testLoad_DeadlineExceeded() {
+    Deadline.setTimeout(300, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    try {
+      em.load(Task.class, 1L);
+      fail("Expected DeadlineExceededException");
+    } catch (DeadlineExceededException exp) {
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+  }
+
+  @Test
+  public void testLoad_AlreadyExpired() {
+    Deadline.setTimeout(0, TimeUnit.MILLISECONDS);
+    try {
+      em.load(Task.class, 1L);
+      fail("Expected DeadlineExceededException");
+    } catch (DeadlineExceededException exp) {
+      assertEquals(0, requestCount.get());
+    }
+  }
+
+  @Test
+  public void testQueryTimeout() {
+    EntityQueryRequest request = em.createEntityQueryRequest("SELECT * FROM Task");
+    request.setTimeout(300);
+    long start = System.nanoTime();
+    try {
+      em.executeEntityQueryRequest(Task.class, request);
+      fail("Expected DeadlineExceededException");
+    } catch (DeadlineExceededException exp) {
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+    assertFalse(Deadline.isSet());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testQueryTimeout_Negative() {
+    em.createEntityQueryRequest("SELECT * FROM Task").setTimeout(-1);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requestCount.incrementAndGet();
+    try {
+      Thread.sleep(30000);
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.KeyQuery;
+import com.google.cloud.datastore.PathElement;
+import com.google.cloud.datastore.ProjectionEntityQuery;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.jmethods.catatumbo.AggregationOptions;
+import com.jmethods.catatumbo.AggregationResult;
+import com.jmethods.catatumbo.CompiledQuery;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.QueryBuilder.Direction;
+import com.jmethods.catatumbo.QueryBuilder.Operator;
+import com.jmethods.catatumbo.entities.Article;
+import com.jmethods.catatumbo.entities.Task;
+import com.jmethods.catatumbo.impl.DefaultAggregator.Accumulator;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class DefaultAggregatorTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-aggregator-test");
+  }
+
+  @Test
+  public void testCreateQuery_Count() {
+    DefaultAggregator aggregator = createAggregator(em.newQueryBuilder(Task.class).build(), null,
+        null);
+    Query<?> query = aggregator.createQuery(null, null, 100);
+    assertTrue(query instanceof KeyQuery);
+    KeyQuery keyQuery = (KeyQuery) query;
+    assertEquals("Task", keyQuery.getKind());
+    assertEquals(Integer.valueOf(100), keyQuery.getLimit());
+  }
+
+  @Test
+  public void testCreateQuery_Projection() {
+    DefaultAggregator aggregator = createAggregator(em.newQueryBuilder(Article.class).build(),
+        "title", "author");
+    ProjectionEntityQuery query = (ProjectionEntityQuery) aggregator.createQuery(null, null, 10);
+    assertEquals(Arrays.asList("title", "authorName"), query.getProjection());
+  }
+
+  @Test
+  public void testCreateQuery_GroupByOnly() {
+    DefaultAggregator aggregator = createAggregator(em.newQueryBuilder(Task.class).build(), null,
+        "priority");
+    ProjectionEntityQuery query = (ProjectionEntityQuery) aggregator.createQuery(null, null, 10);
+    assertEquals(Collections.singletonList("priority"), query.getProjection());
+  }
+
+  @Test
+  public void testCreateQuery_LimitAppliesOrder() {
+    CompiledQuery<Task> compiledQuery = em.newQueryBuilder(Task.class)
+        .orderBy("priority", Direction.DESCENDING).orderBy("name", Direction.ASCENDING).limit(5)
+        .build();
+    DefaultAggregator aggregator = createAggregator(compiledQuery, null, null);
+    Query<?> query = aggregator.createQuery(null, null, 5);
+    assertEquals(Arrays.asList(OrderBy.desc("priority"), OrderBy.asc("name")),
+        ((KeyQuery) query).getOrderBy());
+  }
+
+  @Test
+  public void testCreateQuery_NoLimitIgnoresOrder() {
+    CompiledQuery<Task> compiledQuery = em.newQueryBuilder(Task.class)
+        .orderBy("priority", Direction.DESCENDING).build();
+    DefaultAggregator aggregator = createAggregator(compiledQuery, "priority", null);
+    ProjectionEntityQuery query = (ProjectionEntityQuery) aggregator.createQuery(null, null, 10);
+    assertTrue(query.getOrderBy().isEmpty());
+  }
+
+  @Test
+  public void testCreatePartitionFilter() {
+    CompiledQuery<Task> compiledQuery = em.newQueryBuilder(Task.class)
+        .where("complete", Operator.EQUAL).build();
+    DefaultAggregator aggregator = createAggregator(compiledQuery, null, null, true);
+    assertEquals(PropertyFilter.eq("complete", true), aggregator.createPartitionFilter(null, null));
+    Key lower = newKey(10);
+    Key upper = newKey(20);
+    assertEquals(
+        CompositeFilter.and(PropertyFilter.eq("complete", true),
+            PropertyFilter.ge("__key__", lower), PropertyFilter.lt("__key__", upper)),
+        aggregator.createPartitionFilter(lower, upper));
+  }
+
+  @Test
+  public void testCreatePartitionFilter_NoFilter() {
+    DefaultAggregator aggregator = createAggregator(em.newQueryBuilder(Task.class).build(), null,
+        null);
+    assertNull(aggregator.createPartitionFilter(null, null));
+    Key upper = newKey(20);
+    assertEquals(PropertyFilter.lt("__key__", upper),
+        aggregator.createPartitionFilter(null, upper));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownField() {
+    createAggregator(em.newQueryBuilder(Task.class).build(), "owner", null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnindexedField() {
+    createAggregator(em.newQueryBuilder(Article.class).build(), null, "notes");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingParameter() {
+    createAggregator(em.newQueryBuilder(Task.class).where("complete", Operator.EQUAL).build(),
+        null, null);
+  }
+
+  @Test
+  public void testKeyComparator() {
+    KeyFactory factory = em.newNativeKeyFactory();
+    Key id1 = factory.setKind("Task").newKey(1);
+    Key id2 = factory.setKind("Task").newKey(2);
+    Key name = factory.setKind("Task").newKey("a");
+    Key otherKind = factory.setKind("Tasl").newKey(1);
+    Key child = em.newNativeKeyFactory().setKind("Note").addAncestor(PathElement.of("Task", 1))
+        .newKey(1);
+    List<Key> keys = new ArrayList<>(Arrays.asList(otherKind, name, child, id2, id1));
+    Collections.sort(keys, DefaultAggregator.KEY_COMPARATOR);
+    assertEquals(Arrays.asList(id1, child, id2, name, otherKind), keys);
+  }
+
+  @Test
+  public void testPickSplitKeys() {
+    List<Key> sample = new ArrayList<>();
+    for (int i = 40; i > 0; i--) {
+      sample.add(newKey(i));
+    }
+    List<Key> splitKeys = DefaultAggregator.pickSplitKeys(sample, 4);
+    assertEquals(Arrays.asList(newKey(11), newKey(21), newKey(31)), splitKeys);
+  }
+
+  @Test
+  public void testPickSplitKeys_SmallSample() {
+    List<Key> splitKeys = DefaultAggregator.pickSplitKeys(Arrays.asList(newKey(5)), 4);
+    assertEquals(Collections.singletonList(newKey(5)), splitKeys);
+    assertTrue(DefaultAggregator.pickSplitKeys(Collections.<Key> emptyList(), 4).isEmpty());
+  }
+
+  @Test
+  public void testAccumulator() {
+    Accumulator first = new Accumulator();
+    first.add(3);
+    first.getGroup("a").add(3);
+    first.add(5);
+    first.getGroup("b").add(5);
+    Accumulator second = new Accumulator();
+    second.add(-1);
+    second.getGroup("a").add(-1);
+    first.merge(second);
+    AggregationResult result = first.toResult();
+    assertEquals(3, result.getCount());
+    assertEquals(7.0, result.getSum(), 0.0);
+    assertEquals(-1.0, result.getMin(), 0.0);
+    assertEquals(5.0, result.getMax(), 0.0);
+    assertEquals(7.0 / 3, result.getAverage(), 0.0);
+    assertEquals(2, result.getGroups().size());
+    AggregationResult groupA = result.getGroups().get("a");
+    assertEquals(2, groupA.getCount());
+    assertEquals(2.0, groupA.getSum(), 0.0);
+    assertEquals(1, result.getGroups().get("b").getCount());
+  }
+
+  @Test
+  public void testAccumulator_CountOnly() {
+    Accumulator accumulator = new Accumulator();
+    accumulator.increment();
+    accumulator.increment();
+    AggregationResult result = accumulator.toResult();
+    assertEquals(2, result.getCount());
+    assertEquals(0.0, result.getSum(), 0.0);
+    assertTrue(Double.isNaN(result.getMin()));
+    assertTrue(Double.isNaN(result.getMax()));
+    assertTrue(Double.isNaN(result.getAverage()));
+    assertTrue(result.getGroups().isEmpty());
+  }
+
+  private static DefaultAggregator createAggregator(CompiledQuery<?> query, String valueField,
+      String groupByField, Object... parameterValues) {
+    AggregationOptions options = new AggregationOptions();
+    options.setValueField(valueField);
+    options.setGroupByField(groupByField);
+    return new DefaultAggregator(em, query, options, parameterValues);
+  }
+
+  private static Key newKey(long id) {
+    return em.newNativeKeyFactory().setKind("Task").newKey(id);
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jmethods.catatumbo.CounterService;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.ShardedCounterOptions;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class DefaultCounterServiceTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-counter-test");
+  }
+
+  @Test
+  public void testOptions_Defaults() {
+    ShardedCounterOptions options = new ShardedCounterOptions();
+    assertEquals(10, options.getInitialShards());
+    assertEquals(500, options.getMaxShards());
+    assertEquals(3, options.getMaxAttempts());
+    assertEquals(0L, options.getCacheExpiration());
+  }
+
+  @Test
+  public void testOptions_InvalidValues() {
+    ShardedCounterOptions options = new ShardedCounterOptions();
+    options.setInitialShards(0);
+    options.setMaxShards(-1);
+    options.setMaxAttempts(0);
+    options.setCacheExpiration(-1);
+    assertEquals(ShardedCounterOptions.DEFAULT_INITIAL_SHARDS, options.getInitialShards());
+    assertEquals(ShardedCounterOptions.DEFAULT_MAX_SHARDS, options.getMaxShards());
+    assertEquals(ShardedCounterOptions.DEFAULT_MAX_ATTEMPTS, options.getMaxAttempts());
+    assertEquals(ShardedCounterOptions.DEFAULT_CACHE_EXPIRATION, options.getCacheExpiration());
+  }
+
+  @Test
+  public void testShardName() {
+    assertEquals("clicks:0", DefaultCounterService.shardName("clicks", 0));
+    assertEquals("a:1:10", DefaultCounterService.shardName("a:1", 10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIncrement_NullName() {
+    em.newCounterService(null).increment(null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetCount_EmptyName() {
+    em.newCounterService(new ShardedCounterOptions()).getCount("");
+  }
+
+  @Test
+  public void testNewCounterService() {
+    CounterService counters = em.newCounterService(null);
+    assertEquals(DefaultCounterService.class, counters.getClass());
+  }
+
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.jmethods.catatumbo.DatastoreCursor;
+import com.jmethods.catatumbo.DefaultDatastoreCursor;
+import com.jmethods.catatumbo.DefaultQueryResponse;
+import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.EntityQueryRequest;
+import com.jmethods.catatumbo.PaginationOptions;
+import com.jmethods.catatumbo.QueryResponse;
+import com.jmethods.catatumbo.impl.DefaultPaginator.PageFetcher;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class DefaultPaginatorTest {
+
+  @Test
+  public void testPages() {
+    NumberFetcher fetcher = new NumberFetcher(23);
+    DefaultPaginator<Integer> paginator = createPaginator(fetcher, 5, 2);
+    List<Integer> numbers = new ArrayList<>();
+    int pageCount = 0;
+    while (paginator.hasNext()) {
+      numbers.addAll(paginator.next().getResults());
+      pageCount++;
+    }
+    assertEquals(5, pageCount);
+    assertEquals(23, numbers.size());
+    for (int i = 0; i < numbers.size(); i++) {
+      assertEquals(i, numbers.get(i).intValue());
+    }
+    assertFalse(paginator.hasNext());
+  }
+
+  @Test
+  public void testEmptyLastPageIsSkipped() {
+    NumberFetcher fetcher = new NumberFetcher(10);
+    DefaultPaginator<Integer> paginator = createPaginator(fetcher, 5, 2);
+    assertEquals(5, paginator.next().getResults().size());
+    assertEquals(5, paginator.next().getResults().size());
+    assertFalse(paginator.hasNext());
+    assertEquals(3, fetcher.fetchCount.get());
+  }
+
+  @Test
+  public void testKeysThenLookup_DeletedEntities() {
+    // Every third entity was deleted after its key was queried
+    NumberFetcher fetcher = new NumberFetcher(23) {
+      @Override
+      public QueryResponse<Integer> fetch(DatastoreCursor cursor, int limit) {
+        QueryResponse<Integer> keysResponse = super.fetch(cursor, limit);
+        List<Integer> results = new ArrayList<>();
+        for (Integer number : keysResponse.getResults()) {
+          if (number % 3 != 0) {
+            results.add(number);
+          }
+        }
+        DefaultQueryResponse<Integer> response =
+            new KeysThenLookupQueryResponse<>(keysResponse.getResults().size());
+        response.setResults(results);
+        response.setEndCursor(keysResponse.getEndCursor());
+        return response;
+      }
+    };
+    DefaultPaginator<Integer> paginator = createPaginator(fetcher, 5, 2);
+    List<Integer> numbers = new ArrayList<>();
+    while (paginator.hasNext()) {
+      numbers.addAll(paginator.next().getResults());
+    }
+    assertEquals(15, numbers.size());
+    assertEquals(22, numbers.get(numbers.size() - 1).intValue());
+  }
+
+  @Test
+  public void testNoResults() {
+    DefaultPaginator<Integer> paginator = createPaginator(new NumberFetcher(0), 5, 2);
+    assertFalse(paginator.hasNext());
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testNext_NoMorePages() {
+    DefaultPaginator<Integer> paginator = createPaginator(new NumberFetcher(3), 5, 2);
+    paginator.next();
+    paginator.next();
+  }
+
+  @Test
+  public void testPrefetchIsBounded() throws InterruptedException {
+    NumberFetcher fetcher = new NumberFetcher(1000);
+    DefaultPaginator<Integer> paginator = createPaginator(fetcher, 10, 3);
+    Thread.sleep(200);
+    // Three pages in the queue, plus the one waiting to be queued
+    assertEquals(4, fetcher.fetchCount.get());
+    paginator.next();
+    Thread.sleep(100);
+    assertEquals(5, fetcher.fetchCount.get());
+    paginator.close();
+  }
+
+  @Test
+  public void testCancel() throws InterruptedException {
+    NumberFetcher fetcher = new NumberFetcher(1000);
+    DefaultPaginator<Integer> paginator = createPaginator(fetcher, 10, 1);
+    assertTrue(paginator.hasNext());
+    paginator.cancel();
+    assertTrue(paginator.isCancelled());
+    assertFalse(paginator.hasNext());
+    Thread.sleep(100);
+    int fetchCount = fetcher.fetchCount.get();
+    Thread.sleep(100);
+    assertEquals(fetchCount, fetcher.fetchCount.get());
+  }
+
+  @Test
+  public void testStartCursor() {
+    NumberFetcher fetcher = new NumberFetcher(20);
+    PaginationOptions options = new PaginationOptions();
+    options.setPageSize(5);
+    options.setStartCursor(new DefaultDatastoreCursor("12"));
+    DefaultPaginator<Integer> paginator = new DefaultPaginator<>(fetcher, options);
+    paginator.start();
+    assertEquals(Arrays.asList(12, 13, 14, 15, 16), paginator.next().getResults());
+    paginator.close();
+  }
+
+  @Test
+  public void testError() {
+    final EntityManagerException exception = new EntityManagerException("Failed");
+    NumberFetcher fetcher = new NumberFetcher(100) {
+      @Override
+      public QueryResponse<Integer> fetch(DatastoreCursor cursor, int limit) {
+        if (cursor != null && Integer.parseInt(cursor.getEncoded()) >= 10) {
+          throw exception;
+        }
+        return super.fetch(cursor, limit);
+      }
+    };
+    DefaultPaginator<Integer> paginator = createPaginator(fetcher, 5, 2);
+    paginator.next();
+    paginator.next();
+    try {
+      paginator.hasNext();
+      fail("Expected an EntityManagerException");
+    } catch (EntityManagerException exp) {
+      assertSame(exception, exp);
+    }
+    assertFalse(paginator.hasNext());
+  }
+
+  @Test
+  public void testPreparePageRequest_NamedBindings() {
+    EntityQueryRequest request = new EntityQueryRequest("SELECT * FROM Task WHERE priority = @p");
+    request.setNamedBinding("p", 1);
+    EntityQueryRequest pageRequest = new EntityQueryRequest(request.getQuery());
+    DatastoreCursor cursor = new DefaultDatastoreCursor("abc");
+    DefaultPaginator.preparePageRequest(request, pageRequest, cursor, 10);
+    assertEquals("SELECT * FROM Task WHERE priority = @p LIMIT @CatatumboPageLimit"
+        + " OFFSET @CatatumboPageCursor", pageRequest.getQuery());
+    assertEquals(10, pageRequest.getNamedBindings().get(DefaultPaginator.LIMIT_BINDING));
+    assertSame(cursor, pageRequest.getNamedBindings().get(DefaultPaginator.CURSOR_BINDING));
+    assertEquals(1, request.getNamedBindings().size());
+    assertEquals("SELECT * FROM Task WHERE priority = @p", request.getQuery());
+  }
+
+  @Test
+  public void testPreparePageRequest_PositionalBindings() {
+    EntityQueryRequest request = new EntityQueryRequest("SELECT * FROM Task WHERE priority = @1");
+    request.addPositionalBinding(1);
+    EntityQueryRequest pageRequest = new EntityQueryRequest(request.getQuery());
+    DefaultPaginator.preparePageRequest(request, pageRequest, null, 10);
+    assertEquals("SELECT * FROM Task WHERE priority = @1 LIMIT @2", pageRequest.getQuery());
+    assertEquals(Arrays.<Object>asList(1, 10), pageRequest.getPositionalBindings());
+    assertTrue(pageRequest.getNamedBindings().isEmpty());
+    assertEquals(1, request.getPositionalBindings().size());
+  }
+
+  @Test
+  public void testPreparePageRequest_TrailingWhitespace() {
+    EntityQueryRequest request = new EntityQueryRequest("SELECT * FROM Task ORDER BY priority \n");
+    EntityQueryRequest pageRequest = new EntityQueryRequest(request.getQuery());
+    DefaultPaginator.preparePageRequest(request, pageRequest, null, 10);
+    assertEquals("SELECT * FROM Task ORDER BY priority LIMIT @CatatumboPageLimit",
+        pageRequest.getQuery());
+  }
+
+  @Test
+  public void testValidateQuery() {
+    DefaultPaginator.validateQuery("SELECT * FROM Task WHERE name = 'limit' ORDER BY `offset`");
+    DefaultPaginator.validateQuery("SELECT * FROM Task WHERE name = 'it''s no limit'");
+    DefaultPaginator.validateQuery("SELECT * FROM Task WHERE name = \"no \\\" offset\"");
+    DefaultPaginator.validateQuery("SELECT * FROM Task WHERE limitless = true");
+  }
+
+  @Test
+  public void testValidateQuery_Limit() {
+    try {
+      DefaultPaginator.validateQuery("SELECT * FROM Task ORDER BY priority limit 10");
+      fail("Expected an exception");
+    } catch (IllegalArgumentException exp) {
+      assertTrue(exp.getMessage().contains("LIMIT"));
+    }
+  }
+
+  @Test
+  public void testValidateQuery_Offset() {
+    try {
+      DefaultPaginator.validateQuery("SELECT * FROM Task WHERE priority = @1 OFFSET @2");
+      fail("Expected an exception");
+    } catch (IllegalArgumentException exp) {
+      assertTrue(exp.getMessage().contains("OFFSET"));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testForEntityQuery_Limit() {
+    DefaultEntityManager em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-paginator-test");
+    DefaultPaginator.forEntityQuery(em, Object.class,
+        new EntityQueryRequest("SELECT * FROM Task LIMIT 5"), new PaginationOptions());
+  }
+
+  @Test
+  public void testOptions_Defaults() {
+    PaginationOptions options = new PaginationOptions();
+    options.setPageSize(0);
+    options.setPrefetchDepth(-1);
+    assertEquals(PaginationOptions.DEFAULT_PAGE_SIZE, options.getPageSize());
+    assertEquals(PaginationOptions.DEFAULT_PREFETCH_DEPTH, options.getPrefetchDepth());
+    assertNull(options.getStartCursor());
+  }
+
+  private static DefaultPaginator<Integer> createPaginator(NumberFetcher fetcher, int pageSize,
+      int prefetchDepth) {
+    PaginationOptions options = new PaginationOptions();
+    options.setPageSize(pageSize);
+    options.setPrefetchDepth(prefetchDepth);
+    DefaultPaginator<Integer> paginator = new DefaultPaginator<>(fetcher, options);
+    paginator.start();
+    return paginator;
+  }
+
+  /**
+   * Fetches pages of consecutive numbers, starting at zero. The cursor is the next number.
+   */
+  private static class NumberFetcher implements PageFetcher<Integer> {
+
+    private final int count;
+    private final AtomicInteger fetchCount = new AtomicInteger();
+
+    NumberFetcher(int count) {
+      this.count = count;
+    }
+
+    @Override
+    public QueryResponse<Integer> fetch(DatastoreCursor cursor, int limit) {
+      fetchCount.incrementAndGet();
+      int start = cursor == null ? 0 : Integer.parseInt(cursor.getEncoded());
+      int end = Math.min(start + limit, count);
+      List<Integer> results = new ArrayList<>();
+      for (int i = start; i < end; i++) {
+        results.add(i);
+      }
+      DefaultQueryResponse<Integer> response = new DefaultQueryResponse<>();
+      response.setResults(results);
+      response.setEndCursor(new DefaultDatastoreCursor(String.valueOf(end)));
+      return response;
+    }
+  }
+
+}
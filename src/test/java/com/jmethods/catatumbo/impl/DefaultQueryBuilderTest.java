@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.jmethods.catatumbo.CompiledQuery;
+import com.jmethods.catatumbo.DatastoreKey;
+import com.jmethods.catatumbo.DefaultDatastoreCursor;
+import com.jmethods.catatumbo.DefaultDatastoreKey;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.QueryBuilder;
+import com.jmethods.catatumbo.QueryBuilder.Direction;
+import com.jmethods.catatumbo.QueryBuilder.Operator;
+import com.jmethods.catatumbo.entities.Article;
+import com.jmethods.catatumbo.entities.Task;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class DefaultQueryBuilderTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-query-builder-test");
+  }
+
+  @Test
+  public void testBuild_NoFilters() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class).build();
+    assertEquals(Task.class, query.getEntityClass());
+    assertEquals(0, query.getParameterCount());
+    EntityQuery nativeQuery = toNativeQuery(query, "tenant1");
+    assertEquals("Task", nativeQuery.getKind());
+    assertEquals("tenant1", nativeQuery.getNamespace());
+    assertNull(nativeQuery.getFilter());
+    assertNull(nativeQuery.getLimit());
+    assertTrue(nativeQuery.getOrderBy().isEmpty());
+  }
+
+  @Test
+  public void testBuild_Parameters() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("priority", Operator.EQUAL).where("complete", Operator.EQUAL).build();
+    assertEquals(2, query.getParameterCount());
+    EntityQuery nativeQuery = toNativeQuery(query, null, 3, true);
+    CompositeFilter expected = CompositeFilter.and(PropertyFilter.eq("priority", 3),
+        PropertyFilter.eq("complete", true));
+    assertEquals(expected, nativeQuery.getFilter());
+    nativeQuery = toNativeQuery(query, null, 4, false);
+    expected = CompositeFilter.and(PropertyFilter.eq("priority", 4),
+        PropertyFilter.eq("complete", false));
+    assertEquals(expected, nativeQuery.getFilter());
+  }
+
+  @Test
+  public void testBuild_Operators() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("priority", Operator.GREATER_THAN, 1)
+        .where("priority", Operator.LESS_THAN_OR_EQUAL, 4).build();
+    assertEquals(0, query.getParameterCount());
+    CompositeFilter expected = CompositeFilter.and(PropertyFilter.gt("priority", 1),
+        PropertyFilter.le("priority", 4));
+    assertEquals(expected, toNativeQuery(query, null).getFilter());
+  }
+
+  @Test
+  public void testBuild_ConstantFilterIsReused() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("name", Operator.EQUAL, "My Task 1").build();
+    assertSame(toNativeQuery(query, null).getFilter(), toNativeQuery(query, null).getFilter());
+  }
+
+  @Test
+  public void testBuild_MappedName() {
+    CompiledQuery<Article> query = em.newQueryBuilder(Article.class)
+        .where("author", Operator.EQUAL, "John Doe").build();
+    assertEquals(PropertyFilter.eq("authorName", "John Doe"),
+        toNativeQuery(query, null).getFilter());
+  }
+
+  @Test
+  public void testBuild_NullValue() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("name", Operator.EQUAL).build();
+    assertEquals(PropertyFilter.isNull("name"), toNativeQuery(query, null, (Object) null)
+        .getFilter());
+  }
+
+  @Test
+  public void testBuild_Ancestor() {
+    DatastoreKey parentKey = new DefaultDatastoreKey(
+        em.newNativeKeyFactory().setKind("Parent").newKey(10));
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class).whereAncestor().build();
+    assertEquals(1, query.getParameterCount());
+    assertEquals(PropertyFilter.hasAncestor(parentKey.nativeKey()),
+        toNativeQuery(query, null, parentKey).getFilter());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBuild_AncestorParameterNotAKey() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class).whereAncestor().build();
+    toNativeQuery(query, null, "Parent");
+  }
+
+  @Test
+  public void testBuild_OrderAndLimit() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .orderBy("priority", Direction.DESCENDING).orderBy("name", Direction.ASCENDING).limit(10)
+        .build();
+    EntityQuery nativeQuery = toNativeQuery(query, null);
+    assertEquals(2, nativeQuery.getOrderBy().size());
+    assertEquals(OrderBy.desc("priority"), nativeQuery.getOrderBy().get(0));
+    assertEquals(OrderBy.asc("name"), nativeQuery.getOrderBy().get(1));
+    assertEquals(Integer.valueOf(10), nativeQuery.getLimit());
+  }
+
+  @Test
+  public void testBuild_BuilderReuse() {
+    QueryBuilder<Task> builder = em.newQueryBuilder(Task.class)
+        .where("priority", Operator.EQUAL);
+    CompiledQuery<Task> first = builder.build();
+    CompiledQuery<Task> second = builder.where("complete", Operator.EQUAL).build();
+    assertEquals(1, first.getParameterCount());
+    assertEquals(2, second.getParameterCount());
+  }
+
+  @Test
+  public void testToNativeQuery_StartCursor() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class).build();
+    EntityQuery nativeQuery = ((DefaultCompiledQuery<Task>) query).toNativeQuery(null,
+        new DefaultDatastoreCursor("CgA="), new Object[0]);
+    assertEquals("CgA=", nativeQuery.getStartCursor().toUrlSafe());
+    assertNull(toNativeQuery(query, null).getStartCursor());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testToNativeQuery_WrongParameterCount() {
+    CompiledQuery<Task> query = em.newQueryBuilder(Task.class)
+        .where("priority", Operator.EQUAL).build();
+    toNativeQuery(query, null, 1, 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWhere_UnknownField() {
+    em.newQueryBuilder(Task.class).where("owner", Operator.EQUAL);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWhere_UnindexedField() {
+    em.newQueryBuilder(Article.class).where("notes", Operator.EQUAL, "x");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOrderBy_UnknownField() {
+    em.newQueryBuilder(Task.class).orderBy("owner", Direction.ASCENDING);
+  }
+
+  /**
+   * Converts the given compiled query to a native query.
+   * 
+   * @param query
+   *          the compiled query
+   * @param namespace
+   *          the namespace
+   * @param values
+   *          the parameter values
+   * @return the native query
+   */
+  private static <E> EntityQuery toNativeQuery(CompiledQuery<E> query, String namespace,
+      Object... values) {
+    return ((DefaultCompiledQuery<E>) query).toNativeQuery(namespace, null, values);
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.PathElement;
+import com.jmethods.catatumbo.Deadline;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityGroupWriteOptions;
+import com.jmethods.catatumbo.EntityManagerFactory;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class EntityGroupWriteSchedulerTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-group-write-test");
+  }
+
+  @Test
+  public void testOptions_Defaults() {
+    EntityGroupWriteOptions options = new EntityGroupWriteOptions();
+    assertEquals(EntityGroupWriteOptions.DEFAULT_MAX_BATCH_SIZE, options.getMaxBatchSize());
+    options.setMaxBatchSize(EntityGroupWriteOptions.MAX_BATCH_SIZE);
+    assertEquals(EntityGroupWriteOptions.MAX_BATCH_SIZE, options.getMaxBatchSize());
+    options.setMaxBatchSize(1);
+    assertEquals(1, options.getMaxBatchSize());
+  }
+
+  @Test
+  public void testOptions_InvalidValues() {
+    EntityGroupWriteOptions options = new EntityGroupWriteOptions();
+    options.setMaxBatchSize(0);
+    assertEquals(EntityGroupWriteOptions.DEFAULT_MAX_BATCH_SIZE, options.getMaxBatchSize());
+    options.setMaxBatchSize(EntityGroupWriteOptions.MAX_BATCH_SIZE + 1);
+    assertEquals(EntityGroupWriteOptions.DEFAULT_MAX_BATCH_SIZE, options.getMaxBatchSize());
+  }
+
+  @Test
+  public void testGetRootKey_Root() {
+    Key key = em.newNativeKeyFactory().setKind("Task").newKey(1);
+    assertEquals(key, EntityGroupWriteScheduler.getRootKey(key));
+  }
+
+  @Test
+  public void testGetRootKey_Child() {
+    Key key = em.newNativeKeyFactory().setKind("Note").addAncestor(PathElement.of("Task", 1))
+        .newKey("a");
+    assertEquals(em.newNativeKeyFactory().setKind("Task").newKey(1),
+        EntityGroupWriteScheduler.getRootKey(key));
+  }
+
+  @Test
+  public void testGetRootKey_Grandchild() {
+    IncompleteKey key = em.newNativeKeyFactory().setKind("Comment")
+        .addAncestors(PathElement.of("Project", "p1"), PathElement.of("Task", 1)).newKey();
+    assertEquals(em.newNativeKeyFactory().setKind("Project").newKey("p1"),
+        EntityGroupWriteScheduler.getRootKey(key));
+  }
+
+  @Test
+  public void testGetRootKey_Namespace() {
+    Key key = em.newNativeKeyFactory().setNamespace("junit").setKind("Note")
+        .addAncestor(PathElement.of("Task", 1)).newKey(2);
+    Key rootKey = EntityGroupWriteScheduler.getRootKey(key);
+    assertEquals("junit", rootKey.getNamespace());
+    assertEquals("Task", rootKey.getKind());
+    assertEquals(Long.valueOf(1), rootKey.getId());
+  }
+
+  @Test
+  public void testIsSchedulable() {
+    assertTrue(EntityGroupWriteScheduler
+        .isSchedulable(em.newNativeKeyFactory().setKind("Task").newKey(1)));
+    assertTrue(EntityGroupWriteScheduler.isSchedulable(em.newNativeKeyFactory().setKind("Note")
+        .addAncestor(PathElement.of("Task", 1)).newKey()));
+    assertFalse(EntityGroupWriteScheduler
+        .isSchedulable(em.newNativeKeyFactory().setKind("Task").newKey()));
+  }
+
+  @Test
+  public void testPut_DeadlineExceeded() {
+    EntityGroupWriteScheduler scheduler =
+        new EntityGroupWriteScheduler(em, new EntityGroupWriteOptions());
+    Entity entity = Entity.newBuilder(em.newNativeKeyFactory().setKind("Task").newKey(1)).build();
+    Deadline.setTimeout(0, TimeUnit.MILLISECONDS);
+    try {
+      scheduler.put(entity);
+      fail("Expected a DeadlineExceededException");
+    } catch (DeadlineExceededException exp) {
+      // Expected
+    } finally {
+      Deadline.clear();
+    }
+  }
+
+  @Test
+  public void testSetEntityGroupWriteOptions() {
+    DefaultEntityManager entityManager = (DefaultEntityManager) EntityManagerFactory
+        .getInstance().createLocalEntityManager("http://localhost:8081", "catatumbo-group-test");
+    assertNull(entityManager.getEntityGroupWriteScheduler());
+    entityManager.setEntityGroupWriteOptions(new EntityGroupWriteOptions());
+    assertNotNull(entityManager.getEntityGroupWriteScheduler());
+    assertNotNull(entityManager.forNamespace("junit").getEntityGroupWriteScheduler());
+    entityManager.setEntityGroupWriteOptions(null);
+    assertNull(entityManager.getEntityGroupWriteScheduler());
+    entityManager.forNamespace("junit").setEntityGroupWriteOptions(new EntityGroupWriteOptions());
+    assertNotNull(entityManager.getEntityGroupWriteScheduler());
+  }
+
+}
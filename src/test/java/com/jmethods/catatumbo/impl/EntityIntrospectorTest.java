@@ -23,6 +23,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Button;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
 
@@ -33,10 +34,12 @@ import com.jmethods.catatumbo.NoAccessorMethodException;
 import com.jmethods.catatumbo.NoMutatorMethodException;
 import com.jmethods.catatumbo.NoSuitableMapperException;
 import com.jmethods.catatumbo.UnsupportedConstructionStrategyException;
+import com.jmethods.catatumbo.entities.Article;
 import com.jmethods.catatumbo.entities.BadBuilderEntity1;
 import com.jmethods.catatumbo.entities.BadBuilderEntity2;
 import com.jmethods.catatumbo.entities.BadBuilderEntity3;
 import com.jmethods.catatumbo.entities.BadBuilderEntity4;
+import com.jmethods.catatumbo.entities.BadFetchGroupEntity;
 import com.jmethods.catatumbo.entities.Cat;
 import com.jmethods.catatumbo.entities.Contact;
 import com.jmethods.catatumbo.entities.Customer;
@@ -54,10 +57,14 @@ import com.jmethods.catatumbo.entities.OptionalUpdatedTimestamp;
 import com.jmethods.catatumbo.entities.OptionalVersion;
 import com.jmethods.catatumbo.entities.StringField;
 import com.jmethods.catatumbo.entities.StringId;
+import com.jmethods.catatumbo.entities.StringId2;
+import com.jmethods.catatumbo.entities.StringId3;
 import com.jmethods.catatumbo.entities.Task;
 import com.jmethods.catatumbo.entities.TaskName;
 import com.jmethods.catatumbo.entities.WrappedIntegerIdEntity;
 import com.jmethods.catatumbo.entities.WrappedLongIdEntity;
+import com.jmethods.catatumbo.idgenerators.RandomIdGenerator;
+import com.jmethods.catatumbo.idgenerators.UuidGenerator;
 import com.jmethods.catatumbo.impl.IdentifierMetadata.DataType;
 
 /**
@@ -76,6 +83,20 @@ public class EntityIntrospectorTest {
 
   }
 
+  @Test
+  public void testIntrospect_IdGenerator() {
+    IdentifierMetadata identifierMetadata = EntityIntrospector.introspect(StringId3.class)
+        .getIdentifierMetadata();
+    assertTrue(identifierMetadata.getIdGenerator() instanceof RandomIdGenerator);
+  }
+
+  @Test
+  public void testIntrospect_DefaultIdGenerator() {
+    IdentifierMetadata identifierMetadata = EntityIntrospector.introspect(StringId2.class)
+        .getIdentifierMetadata();
+    assertTrue(identifierMetadata.getIdGenerator() instanceof UuidGenerator);
+  }
+
   @Test
   public void testIntrospect_OptimisticLock1() {
     EntityMetadata metadata = EntityIntrospector.introspect(OptimisticLock1.class);
@@ -314,4 +335,22 @@ public class EntityIntrospectorTest {
 
   }
 
+  @Test
+  public void testFetchGroups() {
+    EntityMetadata metadata = EntityIntrospector.introspect(Article.class);
+    assertEquals(Arrays.asList("title", "authorName"), metadata.getFetchGroup("summary"));
+    assertEquals(Arrays.asList("title", "body"), metadata.getFetchGroup("full"));
+    assertNull(metadata.getFetchGroup("other"));
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testFetchGroup_Unindexed() {
+    try {
+      EntityIntrospector.introspect(BadFetchGroupEntity.class);
+    } catch (EntityManagerException exp) {
+      System.err.println(exp);
+      throw exp;
+    }
+  }
+
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.jmethods.catatumbo.entities.Contact;
+import com.jmethods.catatumbo.entities.ContactProjection;
+import com.jmethods.catatumbo.entities.LongId;
+import com.jmethods.catatumbo.entities.StringId;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class EntityKindRegistryTest {
+
+  @Test
+  public void testGetEntityClass() {
+    EntityKindRegistry registry =
+        new EntityKindRegistry(LongId.class, StringId.class, Contact.class);
+    assertEquals(LongId.class, registry.getEntityClass("LongId"));
+    assertEquals(StringId.class, registry.getEntityClass("StringId"));
+    assertEquals(Contact.class, registry.getEntityClass("Contact"));
+  }
+
+  @Test
+  public void testGetEntityClass_ProjectedEntity() {
+    EntityKindRegistry registry = new EntityKindRegistry(ContactProjection.class);
+    assertEquals(ContactProjection.class, registry.getEntityClass("Contact"));
+  }
+
+  @Test
+  public void testRegister_SameClassTwice() {
+    EntityKindRegistry registry = new EntityKindRegistry(LongId.class, LongId.class);
+    assertEquals(LongId.class, registry.getEntityClass("LongId"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRegister_DuplicateKind() {
+    new EntityKindRegistry(Contact.class, ContactProjection.class);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetEntityClass_UnregisteredKind() {
+    EntityKindRegistry registry = new EntityKindRegistry(LongId.class);
+    registry.getEntityClass("StringId");
+  }
+}
@@ -27,6 +27,7 @@ import com.jmethods.catatumbo.EntityManagerException;
 import com.jmethods.catatumbo.listeners.BadExternalListener1;
 import com.jmethods.catatumbo.listeners.BadExternalListener2;
 import com.jmethods.catatumbo.listeners.BadExternalListener3;
+import com.jmethods.catatumbo.listeners.BatchSizeRecorder;
 import com.jmethods.catatumbo.listeners.GoodExternalListener1;
 
 /**
@@ -76,4 +77,14 @@ public class ExternalListenerIntrospectorTest {
     assertTrue(callbacks.containsKey(CallbackType.POST_LOAD));
   }
 
+  @Test
+  public void testIntrospect_BatchCallback() {
+    ExternalListenerMetadata metadata = ExternalListenerIntrospector
+        .introspect(BatchSizeRecorder.class);
+    Map<CallbackType, Method> callbacks = metadata.getCallbacks();
+    assertTrue(callbacks.size() == 2);
+    assertTrue(CallbackMetadata.isBatchCallback(callbacks.get(CallbackType.PRE_INSERT)));
+    assertTrue(CallbackMetadata.isBatchCallback(callbacks.get(CallbackType.PRE_UPSERT)));
+  }
+
 }
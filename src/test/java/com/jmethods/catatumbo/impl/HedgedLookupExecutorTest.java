@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.cloud.datastore.DatastoreException;
+import com.jmethods.catatumbo.EntityAlreadyExistsException;
+import com.jmethods.catatumbo.EntityManagerException;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.HedgingMetrics;
+import com.jmethods.catatumbo.HedgingOptions;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class HedgedLookupExecutorTest {
+
+  private HedgedLookupExecutor executor;
+
+  @After
+  public void tearDown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testExecute_FastLookup() {
+    executor = createExecutor(200, 1.0);
+    assertEquals("lookup", executor.execute(new Lookup("lookup", 0), new Lookup("hedge", 0)));
+    HedgingMetrics metrics = executor.getMetrics();
+    assertEquals(1, metrics.getLookups());
+    assertEquals(0, metrics.getHedgesFired());
+    assertEquals(0, metrics.getHedgesWon());
+  }
+
+  @Test
+  public void testExecute_HedgeWins() {
+    executor = createExecutor(20, 1.0);
+    assertEquals("hedge", executor.execute(new Lookup("lookup", 2000), new Lookup("hedge", 0)));
+    HedgingMetrics metrics = executor.getMetrics();
+    assertEquals(1, metrics.getHedgesFired());
+    assertEquals(1, metrics.getHedgesWon());
+  }
+
+  @Test
+  public void testExecute_LookupWinsAfterHedge() {
+    executor = createExecutor(20, 1.0);
+    assertEquals("lookup", executor.execute(new Lookup("lookup", 100), new Lookup("hedge", 2000)));
+    HedgingMetrics metrics = executor.getMetrics();
+    assertEquals(1, metrics.getHedgesFired());
+    assertEquals(0, metrics.getHedgesWon());
+  }
+
+  @Test
+  public void testExecute_LookupFailsHedgeSucceeds() {
+    executor = createExecutor(20, 1.0);
+    Callable<String> failingLookup = () -> {
+      Thread.sleep(100);
+      throw new EntityManagerException("lookup failed");
+    };
+    assertEquals("hedge", executor.execute(failingLookup, new Lookup("hedge", 200)));
+    assertEquals(1, executor.getMetrics().getHedgesWon());
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testExecute_Failure() {
+    executor = createExecutor(200, 1.0);
+    executor.execute(() -> {
+      throw new EntityManagerException("lookup failed");
+    }, new Lookup("hedge", 0));
+  }
+
+  @Test
+  public void testExecute_DatastoreException() {
+    executor = createExecutor(200, 1.0);
+    DatastoreException exception = new DatastoreException(6, "exists", "ALREADY_EXISTS");
+    try {
+      executor.execute(() -> {
+        throw exception;
+      }, new Lookup("hedge", 0));
+      fail("Expected an EntityAlreadyExistsException");
+    } catch (EntityAlreadyExistsException exp) {
+      assertSame(exception, exp.getCause());
+    }
+  }
+
+  @Test
+  public void testExecute_MaxHedgeRate() {
+    executor = createExecutor(1, 0.25);
+    for (int i = 0; i < 8; i++) {
+      assertEquals("lookup", executor.execute(new Lookup("lookup", 30), new Lookup("hedge", 1000)));
+    }
+    HedgingMetrics metrics = executor.getMetrics();
+    assertEquals(8, metrics.getLookups());
+    assertEquals(2, metrics.getHedgesFired());
+  }
+
+  @Test
+  public void testAdaptiveDelay() {
+    HedgingOptions options = new HedgingOptions();
+    options.setMinDelay(15);
+    executor = new HedgedLookupExecutor(options);
+    assertEquals(-1, executor.getMetrics().getDelay());
+    for (int i = 0; i < 19; i++) {
+      executor.execute(new Lookup("lookup", 0), new Lookup("hedge", 0));
+    }
+    assertEquals(-1, executor.getMetrics().getDelay());
+    executor.execute(new Lookup("lookup", 0), new Lookup("hedge", 0));
+    assertEquals(15, executor.getMetrics().getDelay());
+    assertEquals(0, executor.getMetrics().getHedgesFired());
+  }
+
+  @Test
+  public void testEntityManager_HedgingOptions() {
+    DefaultEntityManager em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-hedging-test");
+    assertNull(em.getHedgedLookupExecutor());
+    assertEquals(-1, em.getHedgingMetrics().getDelay());
+    HedgingOptions options = new HedgingOptions();
+    options.setDelay(50);
+    em.setHedgingOptions(options);
+    assertNotNull(em.getHedgedLookupExecutor());
+    assertSame(em.getHedgedLookupExecutor(), em.forNamespace("tenant1").getHedgedLookupExecutor());
+    assertEquals(50, em.getHedgingMetrics().getDelay());
+    em.setHedgingOptions(null);
+    assertNull(em.getHedgedLookupExecutor());
+  }
+
+  /**
+   * Creates an executor with a fixed delay.
+   *
+   * @param delay
+   *          the hedge delay, in milliseconds
+   * @param maxHedgeRate
+   *          the maximum hedge rate
+   * @return the executor
+   */
+  private static HedgedLookupExecutor createExecutor(long delay, double maxHedgeRate) {
+    HedgingOptions options = new HedgingOptions();
+    options.setDelay(delay);
+    options.setMaxHedgeRate(maxHedgeRate);
+    return new HedgedLookupExecutor(options);
+  }
+
+  /**
+   * A lookup that returns a given result after a given time.
+   */
+  private static class Lookup implements Callable<String> {
+
+    private final String result;
+    private final long latency;
+
+    Lookup(String result, long latency) {
+      this.result = result;
+      this.latency = latency;
+    }
+
+    @Override
+    public String call() throws Exception {
+      if (latency > 0) {
+        Thread.sleep(latency);
+      }
+      return result;
+    }
+  }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.Key;
+import com.jmethods.catatumbo.DefaultDatastoreKey;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.IdAllocationOptions;
+import com.jmethods.catatumbo.entities.GrandchildEntity;
+import com.jmethods.catatumbo.entities.ParentEntity;
+import com.jmethods.catatumbo.impl.Marshaller.Intent;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class IdAllocatorTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-id-allocator-test");
+  }
+
+  @Test
+  public void testOptions_Defaults() {
+    IdAllocationOptions options = new IdAllocationOptions();
+    assertEquals(IdAllocationOptions.DEFAULT_BLOCK_SIZE, options.getBlockSize());
+    assertEquals(IdAllocationOptions.DEFAULT_LOW_WATER_MARK, options.getLowWaterMark());
+    options.setBlockSize(50);
+    options.setLowWaterMark(0);
+    assertEquals(50, options.getBlockSize());
+    assertEquals(0, options.getLowWaterMark());
+  }
+
+  @Test
+  public void testOptions_InvalidValues() {
+    IdAllocationOptions options = new IdAllocationOptions();
+    options.setBlockSize(0);
+    assertEquals(IdAllocationOptions.DEFAULT_BLOCK_SIZE, options.getBlockSize());
+    options.setBlockSize(IdAllocationOptions.MAX_BLOCK_SIZE + 1);
+    assertEquals(IdAllocationOptions.DEFAULT_BLOCK_SIZE, options.getBlockSize());
+    options.setLowWaterMark(-1);
+    assertEquals(IdAllocationOptions.DEFAULT_LOW_WATER_MARK, options.getLowWaterMark());
+  }
+
+  @Test
+  public void testSetIdAllocationOptions() {
+    DefaultEntityManager entityManager = (DefaultEntityManager) EntityManagerFactory
+        .getInstance().createLocalEntityManager("http://localhost:8081", "catatumbo-id-test");
+    assertNull(entityManager.getIdAllocator());
+    entityManager.forNamespace("junit").setIdAllocationOptions(new IdAllocationOptions());
+    IdAllocator allocator = entityManager.getIdAllocator();
+    assertNotNull(allocator);
+    assertEquals(0, allocator.getAvailable(entityManager.newNativeKeyFactory().setKind("Task")
+        .newKey()));
+    entityManager.setIdAllocationOptions(null);
+    assertNull(entityManager.getIdAllocator());
+  }
+
+  @Test
+  public void testMarshal_DeferredIdAllocation() {
+    DefaultEntityManager entityManager = (DefaultEntityManager) EntityManagerFactory
+        .getInstance().createLocalEntityManager("http://localhost:8081", "catatumbo-id-test");
+    entityManager.setIdAllocationOptions(new IdAllocationOptions());
+    try {
+      FullEntity<?> entity = (FullEntity<?>) Marshaller.marshal(entityManager,
+          new ParentEntity(), Intent.INSERT, true);
+      assertFalse(entity.getKey() instanceof Key);
+      assertEquals("ParentEntity", entity.getKey().getKind());
+    } finally {
+      entityManager.setIdAllocationOptions(null);
+    }
+  }
+
+  @Test
+  public void testMarshal_ParentKeyLeftIncomplete() {
+    DefaultEntityManager entityManager = (DefaultEntityManager) EntityManagerFactory
+        .getInstance().createLocalEntityManager("http://localhost:8081", "catatumbo-id-test");
+    entityManager.setIdAllocationOptions(new IdAllocationOptions());
+    try {
+      GrandchildEntity grandchild = new GrandchildEntity();
+      grandchild.setParentKey(new DefaultDatastoreKey(
+          entityManager.newNativeKeyFactory().setKind("ParentEntity").newKey(1)));
+      FullEntity<?> entity = (FullEntity<?>) Marshaller.marshal(entityManager, grandchild,
+          Intent.INSERT);
+      assertFalse(entity.getKey() instanceof Key);
+      assertEquals("ParentEntity", entity.getKey().getParent().getKind());
+      assertEquals(0, entityManager.getIdAllocator().getAvailable(
+          IncompleteKey.newBuilder(entity.getKey().getParent(), "GrandchildEntity").build()));
+    } finally {
+      entityManager.setIdAllocationOptions(null);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAllocate_ParentKey() {
+    IdAllocator allocator = new IdAllocator(em, new IdAllocationOptions());
+    try {
+      Key parent = em.newNativeKeyFactory().setKind("ParentEntity").newKey(1);
+      allocator.allocate(IncompleteKey.newBuilder(parent, "GrandchildEntity").build());
+    } finally {
+      allocator.shutdown();
+    }
+  }
+
+}
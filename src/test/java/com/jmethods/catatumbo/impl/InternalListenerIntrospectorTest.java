@@ -19,11 +19,13 @@ package com.jmethods.catatumbo.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
 import com.jmethods.catatumbo.EntityManagerException;
 import com.jmethods.catatumbo.entities.Animal;
+import com.jmethods.catatumbo.entities.BatchCalculatorEntity;
 import com.jmethods.catatumbo.entities.Dog;
 import com.jmethods.catatumbo.entities.Pet;
 import com.jmethods.catatumbo.entities.StringField;
@@ -31,6 +33,7 @@ import com.jmethods.catatumbo.listeners.BadInternalListener1;
 import com.jmethods.catatumbo.listeners.BadInternalListener2;
 import com.jmethods.catatumbo.listeners.BadInternalListener3;
 import com.jmethods.catatumbo.listeners.BadInternalListener4;
+import com.jmethods.catatumbo.listeners.BadInternalListener5;
 
 /**
  * @author Sai Pullabhotla
@@ -108,4 +111,25 @@ public class InternalListenerIntrospectorTest {
     }
   }
 
+  @Test(expected = EntityManagerException.class)
+  public void testIntrospect_InvalidBatchCallback() {
+    try {
+      InternalListenerIntrospector.introspect(BadInternalListener5.class);
+    } catch (EntityManagerException exp) {
+      System.out.println(exp);
+      throw exp;
+    }
+  }
+
+  @Test
+  public void testIntrospect_BatchCallback() {
+    InternalListenerMetadata metadata = InternalListenerIntrospector
+        .introspect(BatchCalculatorEntity.class);
+    assertEquals(2, metadata.getCallbacks().size());
+    assertTrue(CallbackMetadata
+        .isBatchCallback(metadata.getCallbacks().get(CallbackType.PRE_INSERT)));
+    assertTrue(CallbackMetadata
+        .isBatchCallback(metadata.getCallbacks().get(CallbackType.PRE_UPSERT)));
+  }
+
 }
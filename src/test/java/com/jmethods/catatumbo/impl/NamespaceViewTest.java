@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.cloud.datastore.Key;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.HedgingOptions;
+import com.jmethods.catatumbo.Tenant;
+import com.jmethods.catatumbo.entities.Task;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class NamespaceViewTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-namespace-test");
+  }
+
+  @After
+  public void tearDown() {
+    Tenant.setNamespace(null);
+  }
+
+  @Test
+  public void testForNamespace_Cached() {
+    DefaultEntityManager view = em.forNamespace("tenant1");
+    assertSame(view, em.forNamespace("tenant1"));
+    assertSame(view, view.forNamespace("tenant1"));
+    assertSame(view, em.forNamespace("tenant2").forNamespace("tenant1"));
+    assertEquals("tenant1", view.getBoundNamespace());
+    assertNull(em.getBoundNamespace());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testForNamespace_Null() {
+    em.forNamespace(null);
+  }
+
+  @Test
+  public void testMarshalKey_IgnoresTenant() {
+    Tenant.setNamespace("other");
+    Task task = new Task();
+    task.setId(10);
+    Key key = Marshaller.marshalKey(em.forNamespace("tenant1"), task);
+    assertEquals("tenant1", key.getNamespace());
+    assertEquals("Task", key.getKind());
+    assertEquals(10L, (long) key.getId());
+    assertEquals("other", Marshaller.marshalKey(em, task).getNamespace());
+  }
+
+  @Test
+  public void testNewNativeKey() {
+    DefaultEntityManager view = em.forNamespace("tenant1");
+    assertEquals(view.newNativeKeyFactory().setKind("Task").newKey(20),
+        view.newNativeKey("Task", 20));
+    assertEquals(view.newNativeKeyFactory().setKind("Task").newKey("abc"),
+        view.newNativeKey("Task", "abc"));
+    assertEquals(em.newNativeKeyFactory().setKind("Task").newKey(20), em.newNativeKey("Task", 20));
+  }
+
+  @Test
+  public void testGetEffectiveNamespace() {
+    Tenant.setNamespace("other");
+    assertEquals("other", em.getEffectiveNamespace());
+    assertEquals("tenant1", em.forNamespace("tenant1").getEffectiveNamespace());
+    assertEquals("", em.forNamespace("").getEffectiveNamespace());
+  }
+
+  @Test
+  public void testGetLookupExecutor_Shared() {
+    DefaultEntityManager view = em.forNamespace("tenant1");
+    assertSame(em.getLookupExecutor(), view.getLookupExecutor());
+  }
+
+  @Test
+  public void testClose_ClosesRoot() {
+    DefaultEntityManager root = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-namespace-test");
+    ExecutorService executor = root.getLookupExecutor();
+    root.forNamespace("tenant1").close();
+    assertTrue(executor.isShutdown());
+  }
+
+  @Test
+  public void testClose_ReleasesExecutors() {
+    DefaultEntityManager root = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-namespace-test");
+    root.setHedgingOptions(new HedgingOptions());
+    ExecutorService executor = root.getLookupExecutor();
+    root.close();
+    assertNull(root.getHedgedLookupExecutor());
+    ExecutorService newExecutor = root.getLookupExecutor();
+    assertNotSame(executor, newExecutor);
+    assertFalse(newExecutor.isShutdown());
+    root.close();
+    assertTrue(newExecutor.isShutdown());
+  }
+
+}
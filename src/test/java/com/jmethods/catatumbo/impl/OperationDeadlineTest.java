@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.jmethods.catatumbo.Deadline;
+import com.jmethods.catatumbo.DeadlineExceededException;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class OperationDeadlineTest {
+
+  @After
+  public void tearDown() {
+    Deadline.clear();
+  }
+
+  @Test
+  public void testDeadline_NotSet() {
+    assertFalse(Deadline.isSet());
+    assertFalse(Deadline.isExpired());
+    assertEquals(Long.MAX_VALUE, Deadline.getRemainingTime(TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testDeadline_Set() {
+    Deadline.setTimeout(10, TimeUnit.SECONDS);
+    assertTrue(Deadline.isSet());
+    assertFalse(Deadline.isExpired());
+    long remaining = Deadline.getRemainingTime(TimeUnit.MILLISECONDS);
+    assertTrue(remaining > 9000 && remaining <= 10000);
+    Deadline.clear();
+    assertFalse(Deadline.isSet());
+  }
+
+  @Test
+  public void testDeadline_Expired() {
+    Deadline.setTimeout(0, TimeUnit.MILLISECONDS);
+    assertTrue(Deadline.isExpired());
+    assertTrue(Deadline.getRemainingTime(TimeUnit.NANOSECONDS) <= 0);
+  }
+
+  @Test
+  public void testDeadline_LargeTimeout() {
+    Deadline.setTimeout(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    assertFalse(Deadline.isExpired());
+    assertTrue(Deadline.getRemainingTime(TimeUnit.DAYS) > 100 * 365);
+    OperationDeadline.checkCurrent();
+    OperationDeadline deadline = OperationDeadline.current(Long.MAX_VALUE);
+    assertTrue(deadline.isBounded());
+    assertTrue(deadline.getRemainingNanos() > 0);
+  }
+
+  @Test
+  public void testCurrent_LargeTimeout() {
+    OperationDeadline deadline = OperationDeadline.current(Long.MAX_VALUE);
+    assertTrue(deadline.isBounded());
+    assertTrue(deadline.getRemainingNanos() > TimeUnit.DAYS.toNanos(100 * 365));
+    Deadline.setTimeout(100, TimeUnit.MILLISECONDS);
+    assertTrue(
+        OperationDeadline.current(Long.MAX_VALUE).getRemainingNanos()
+            <= TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDeadline_NegativeTimeout() {
+    Deadline.setTimeout(-1, TimeUnit.MILLISECONDS);
+  }
+
+  @Test(expected = DeadlineExceededException.class)
+  public void testCheckCurrent() {
+    Deadline.setTimeout(0, TimeUnit.MILLISECONDS);
+    OperationDeadline.checkCurrent();
+  }
+
+  @Test
+  public void testCurrent_NoDeadline() {
+    OperationDeadline deadline = OperationDeadline.current();
+    assertFalse(deadline.isBounded());
+    assertEquals(Long.MAX_VALUE, deadline.getRemainingNanos());
+    deadline.check();
+  }
+
+  @Test
+  public void testCurrent_Timeout() {
+    OperationDeadline deadline = OperationDeadline.current(1000);
+    assertTrue(deadline.isBounded());
+    assertTrue(deadline.getRemainingNanos() <= TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @Test
+  public void testCurrent_EarlierOfTimeoutAndDeadline() {
+    Deadline.setTimeout(100, TimeUnit.MILLISECONDS);
+    assertTrue(
+        OperationDeadline.current(10000).getRemainingNanos() <= TimeUnit.MILLISECONDS.toNanos(100));
+    Deadline.setTimeout(100, TimeUnit.SECONDS);
+    assertTrue(
+        OperationDeadline.current(1000).getRemainingNanos() <= TimeUnit.MILLISECONDS.toNanos(1000));
+  }
+
+  @Test
+  public void testBind() {
+    Deadline.setTimeout(10, TimeUnit.SECONDS);
+    OperationDeadline previous = OperationDeadline.current(100).bind();
+    assertTrue(Deadline.getRemainingTime(TimeUnit.MILLISECONDS) <= 100);
+    previous.bind();
+    assertTrue(Deadline.getRemainingTime(TimeUnit.MILLISECONDS) > 9000);
+    previous = OperationDeadline.suspend();
+    assertFalse(Deadline.isSet());
+    previous.bind();
+    assertTrue(Deadline.isSet());
+  }
+
+  @Test
+  public void testLater() {
+    OperationDeadline none = OperationDeadline.current();
+    OperationDeadline shorter = OperationDeadline.current(100);
+    OperationDeadline longer = OperationDeadline.current(10000);
+    assertSame(longer, shorter.later(longer));
+    assertSame(longer, longer.later(shorter));
+    assertSame(none, shorter.later(none));
+    assertSame(none, none.later(longer));
+  }
+
+  @Test
+  public void testWrap() throws Exception {
+    Deadline.setTimeout(10, TimeUnit.SECONDS);
+    Callable<Boolean> task = OperationDeadline.current().wrap(Deadline::isSet);
+    Deadline.clear();
+    assertTrue(task.call());
+    assertFalse(Deadline.isSet());
+  }
+
+  @Test
+  public void testInvokeAll_DeadlinePropagated() {
+    Deadline.setTimeout(10, TimeUnit.SECONDS);
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      tasks.add(Deadline::isSet);
+    }
+    List<Boolean> results = ConcurrencyUtils.invokeAll(tasks, 4, "deadline-test-");
+    assertEquals(Arrays.asList(true, true, true, true), results);
+  }
+
+  @Test
+  public void testInvokeAll_DeadlineExceeded() {
+    Deadline.setTimeout(200, TimeUnit.MILLISECONDS);
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      tasks.add(() -> {
+        Thread.sleep(5000);
+        return true;
+      });
+    }
+    long start = System.nanoTime();
+    try {
+      ConcurrencyUtils.invokeAll(tasks, 2, "deadline-test-");
+      fail("Expected DeadlineExceededException");
+    } catch (DeadlineExceededException exp) {
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+  }
+
+  @Test(expected = DeadlineExceededException.class)
+  public void testInvokeAll_Sequential() {
+    Deadline.setTimeout(0, TimeUnit.MILLISECONDS);
+    List<Callable<Boolean>> tasks = new ArrayList<>();
+    tasks.add(() -> true);
+    ConcurrencyUtils.invokeAll(tasks, 1, "deadline-test-");
+  }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.InputStreamContent;
+import com.jmethods.catatumbo.ConnectionParameters;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests for {@link PooledHttpTransportFactory}. The transports are exercised against a local HTTP
+ * server that records the client port, content encoding and body of each request.
+ *
+ * @author Sai Pullabhotla
+ *
+ */
+public class PooledHttpTransportFactoryTest {
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private GenericUrl url;
+  private final List<Integer> clientPorts = new ArrayList<>();
+  private final List<String> contentEncodings = new ArrayList<>();
+  private final List<byte[]> bodies = new ArrayList<>();
+  private final AtomicInteger activeRequests = new AtomicInteger();
+  private final AtomicInteger maxActiveRequests = new AtomicInteger();
+  private volatile long responseDelay;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", this::handle);
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+    url = new GenericUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testConnectionReuse() throws Exception {
+    HttpRequestFactory requestFactory = createRequestFactory(new ConnectionParameters());
+    for (int i = 0; i < 5; i++) {
+      get(requestFactory);
+    }
+    assertEquals(5, clientPorts.size());
+    assertEquals(1, new HashSet<>(clientPorts).size());
+  }
+
+  @Test
+  public void testConnectionReuse_Disabled() throws Exception {
+    ConnectionParameters parameters = new ConnectionParameters();
+    parameters.setKeepAliveTime(0);
+    HttpRequestFactory requestFactory = createRequestFactory(parameters);
+    for (int i = 0; i < 3; i++) {
+      get(requestFactory);
+    }
+    assertEquals(3, new HashSet<>(clientPorts).size());
+  }
+
+  @Test
+  public void testMaxConnections() throws Exception {
+    ConnectionParameters parameters = new ConnectionParameters();
+    parameters.setMaxConnections(2);
+    HttpRequestFactory requestFactory = createRequestFactory(parameters);
+    responseDelay = 100;
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    try {
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+        tasks.add(() -> {
+          get(requestFactory);
+          return null;
+        });
+      }
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(6, clientPorts.size());
+    assertTrue(maxActiveRequests.get() <= 2);
+    assertTrue(new HashSet<>(clientPorts).size() <= 2);
+  }
+
+  @Test
+  public void testRequestCompression() throws Exception {
+    ConnectionParameters parameters = new ConnectionParameters();
+    parameters.setRequestCompressionEnabled(true);
+    parameters.setRequestCompressionThreshold(100);
+    HttpRequestFactory requestFactory = createRequestFactory(parameters);
+    byte[] body = createBody(1000);
+    post(requestFactory, body);
+    assertEquals("gzip", contentEncodings.get(0));
+    assertArrayEquals(body, bodies.get(0));
+  }
+
+  @Test
+  public void testRequestCompression_BelowThreshold() throws Exception {
+    ConnectionParameters parameters = new ConnectionParameters();
+    parameters.setRequestCompressionEnabled(true);
+    parameters.setRequestCompressionThreshold(100);
+    HttpRequestFactory requestFactory = createRequestFactory(parameters);
+    byte[] body = createBody(99);
+    post(requestFactory, body);
+    assertNull(contentEncodings.get(0));
+    assertArrayEquals(body, bodies.get(0));
+  }
+
+  @Test
+  public void testRequestCompression_UnknownLength() throws Exception {
+    ConnectionParameters parameters = new ConnectionParameters();
+    parameters.setRequestCompressionEnabled(true);
+    parameters.setRequestCompressionThreshold(100);
+    HttpRequestFactory requestFactory = createRequestFactory(parameters);
+    byte[] body = createBody(10);
+    post(requestFactory,
+        new InputStreamContent("application/octet-stream", new ByteArrayInputStream(body)));
+    assertEquals("gzip", contentEncodings.get(0));
+    assertArrayEquals(body, bodies.get(0));
+  }
+
+  @Test
+  public void testRequestCompression_Disabled() throws Exception {
+    HttpRequestFactory requestFactory = createRequestFactory(new ConnectionParameters());
+    byte[] body = createBody(10000);
+    post(requestFactory, body);
+    assertNull(contentEncodings.get(0));
+    assertArrayEquals(body, bodies.get(0));
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    PooledHttpTransportFactory factory = new PooledHttpTransportFactory(new ConnectionParameters());
+    HttpRequestFactory requestFactory = factory.create().createRequestFactory();
+    get(requestFactory);
+    factory.close();
+    try {
+      get(requestFactory);
+      fail("Expected the request to fail after the factory was closed");
+    } catch (IllegalStateException exp) {
+      assertTrue(exp.getMessage().contains("shut down"));
+    }
+    factory.close();
+  }
+
+  private static HttpRequestFactory createRequestFactory(ConnectionParameters parameters) {
+    HttpTransport transport = new PooledHttpTransportFactory(parameters).create();
+    return transport.createRequestFactory();
+  }
+
+  private void get(HttpRequestFactory requestFactory) throws IOException {
+    HttpResponse response = requestFactory.buildGetRequest(url).execute();
+    try {
+      assertEquals("ok", response.parseAsString());
+    } finally {
+      response.disconnect();
+    }
+  }
+
+  private void post(HttpRequestFactory requestFactory, byte[] body) throws IOException {
+    post(requestFactory, new ByteArrayContent("application/octet-stream", body));
+  }
+
+  private void post(HttpRequestFactory requestFactory, HttpContent content) throws IOException {
+    HttpResponse response = requestFactory.buildPostRequest(url, content).execute();
+    try {
+      assertEquals("ok", response.parseAsString());
+    } finally {
+      response.disconnect();
+    }
+  }
+
+  private static byte[] createBody(int length) {
+    byte[] body = new byte[length];
+    for (int i = 0; i < length; i++) {
+      body[i] = (byte) ('a' + i % 26);
+    }
+    return body;
+  }
+
+  /**
+   * Records the request and responds with "ok".
+   *
+   * @param exchange
+   *          the HTTP exchange
+   * @throws IOException
+   *           if any error occurs while reading the request or writing the response
+   */
+  private void handle(HttpExchange exchange) throws IOException {
+    int active = activeRequests.incrementAndGet();
+    maxActiveRequests.accumulateAndGet(active, Math::max);
+    try {
+      String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+      InputStream in = exchange.getRequestBody();
+      if ("gzip".equals(contentEncoding)) {
+        in = new GZIPInputStream(in);
+      }
+      byte[] body = readFully(in);
+      synchronized (this) {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        contentEncodings.add(contentEncoding);
+        bodies.add(body);
+      }
+      if (responseDelay > 0) {
+        Thread.sleep(responseDelay);
+      }
+      byte[] response = "ok".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(response);
+      }
+    } catch (InterruptedException exp) {
+      Thread.currentThread().interrupt();
+    } finally {
+      activeRequests.decrementAndGet();
+      exchange.close();
+    }
+  }
+
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int count;
+    while ((count = in.read(buffer)) != -1) {
+      out.write(buffer, 0, count);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.jmethods.catatumbo.EntityManagerException;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class QueryUtilsTest {
+
+  @Test
+  public void testToKeysOnlyQuery() {
+    assertEquals("SELECT __key__ FROM Task WHERE priority = @1",
+        QueryUtils.toKeysOnlyQuery("SELECT * FROM Task WHERE priority = @1"));
+  }
+
+  @Test
+  public void testToKeysOnlyQuery_CaseAndWhitespace() {
+    assertEquals("SELECT __key__ FROM Task ORDER BY __key__",
+        QueryUtils.toKeysOnlyQuery("  select\t*\nfrom Task ORDER BY __key__"));
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testToKeysOnlyQuery_Projection() {
+    QueryUtils.toKeysOnlyQuery("SELECT name FROM Task");
+  }
+
+  @Test(expected = EntityManagerException.class)
+  public void testToKeysOnlyQuery_Distinct() {
+    QueryUtils.toKeysOnlyQuery("SELECT DISTINCT * FROM Task");
+  }
+
+  @Test
+  public void testToProjectionQuery() {
+    assertEquals("SELECT `title`, `author``s name` FROM Article WHERE title > @1",
+        QueryUtils.toProjectionQuery("SELECT * FROM Article WHERE title > @1",
+            Arrays.asList("title", "author`s name")));
+  }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jmethods.catatumbo.DatastoreMetadata;
+import com.jmethods.catatumbo.DatastoreProperty;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.SchemaSnapshot;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class SchemaSnapshotTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-schema-snapshot-test");
+  }
+
+  @Test
+  public void testOrdering() {
+    SchemaSnapshot snapshot = createSnapshot(100L);
+    assertEquals(Arrays.asList("", "tenant1"), snapshot.getNamespaces());
+    assertEquals(Arrays.asList("Customer", "Task"), snapshot.getKinds("tenant1"));
+    assertEquals(2, snapshot.getProperties("tenant1", "Task").size());
+    assertEquals(100L, snapshot.getCreationTime());
+  }
+
+  @Test
+  public void testMissing() {
+    SchemaSnapshot snapshot = createSnapshot(100L);
+    assertTrue(snapshot.getKinds("tenant2").isEmpty());
+    assertNull(snapshot.getProperties("tenant1", "Order"));
+    assertNull(snapshot.getSchema("tenant2"));
+  }
+
+  @Test
+  public void testIsCopy() {
+    Map<String, Map<String, List<DatastoreProperty>>> schema = new HashMap<>();
+    Map<String, List<DatastoreProperty>> kinds = new HashMap<>();
+    kinds.put("Task", new ArrayList<DatastoreProperty>());
+    schema.put("", kinds);
+    SchemaSnapshot snapshot = new SchemaSnapshot(schema, 0L);
+    kinds.put("Customer", new ArrayList<DatastoreProperty>());
+    schema.put("tenant1", kinds);
+    assertEquals(Collections.singletonList(""), snapshot.getNamespaces());
+    assertEquals(Collections.singletonList("Task"), snapshot.getKinds(""));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testUnmodifiable() {
+    createSnapshot(0L).getProperties("tenant1", "Task").clear();
+  }
+
+  @Test
+  public void testWithCache_ServedFromCache() {
+    SchemaSnapshot snapshot = createSnapshot(System.currentTimeMillis());
+    em.setSchemaSnapshot(snapshot);
+    DatastoreMetadata metadata = em.getDatastoreMetadata().withCache(1, TimeUnit.HOURS);
+    assertSame(snapshot, metadata.getSchemaSnapshot());
+    assertSame(snapshot,
+        em.forNamespace("tenant1").getDatastoreMetadata().withCache(1, TimeUnit.HOURS)
+            .getSchemaSnapshot());
+  }
+
+  @Test
+  public void testGetSchemaSnapshot_NoNamespaces() {
+    SchemaSnapshot snapshot = em.getDatastoreMetadata()
+        .getSchemaSnapshot(Collections.<String>emptyList(), DatastoreMetadata.DEFAULT_PARALLELISM);
+    assertTrue(snapshot.getNamespaces().isEmpty());
+  }
+
+  private static SchemaSnapshot createSnapshot(long creationTime) {
+    Map<String, List<DatastoreProperty>> tenantKinds = new HashMap<>();
+    tenantKinds.put("Task", Arrays.asList(createProperty("name"), createProperty("priority")));
+    tenantKinds.put("Customer", Collections.singletonList(createProperty("name")));
+    Map<String, Map<String, List<DatastoreProperty>>> schema = new HashMap<>();
+    schema.put("tenant1", tenantKinds);
+    schema.put("", new HashMap<String, List<DatastoreProperty>>());
+    return new SchemaSnapshot(schema, creationTime);
+  }
+
+  private static DatastoreProperty createProperty(String name) {
+    DatastoreProperty property = new DatastoreProperty();
+    property.setName(name);
+    return property;
+  }
+
+}
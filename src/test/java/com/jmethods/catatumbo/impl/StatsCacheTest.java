@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.jmethods.catatumbo.DatastoreStats;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.stats.NamespaceSummarySnapshot;
+import com.jmethods.catatumbo.stats.StatConstants;
+import com.jmethods.catatumbo.stats.StatKind;
+import com.jmethods.catatumbo.stats.StatKindNs;
+import com.jmethods.catatumbo.stats.StatTotal;
+import com.jmethods.catatumbo.stats.StatTotalNs;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class StatsCacheTest {
+
+  private static DefaultEntityManager em;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-stats-cache-test");
+  }
+
+  @Test
+  public void testCreateKey() {
+    assertEquals("__Stat_Total__/", StatsCache.createKey(StatConstants.STAT_TOTAL, null, null));
+    assertEquals("__Stat_Ns_Kind__/tenant1/Task",
+        StatsCache.createKey(StatConstants.STAT_KIND_NS, "tenant1", "Task"));
+  }
+
+  @Test
+  public void testGet_Disabled() {
+    StatsCache cache = new StatsCache();
+    cache.put("key", "value");
+    assertNull(cache.get("key", 0));
+    assertNotNull(cache.get("key", 60000));
+  }
+
+  @Test
+  public void testGet_Stale() throws InterruptedException {
+    StatsCache cache = new StatsCache();
+    cache.put("key", "value");
+    Thread.sleep(20);
+    assertNull(cache.get("key", 5));
+    assertEquals("value", cache.get("key", 60000).getValue());
+  }
+
+  @Test
+  public void testGet_NullValue() {
+    StatsCache cache = new StatsCache();
+    cache.put("key", null);
+    StatsCache.Entry entry = cache.get("key", 60000);
+    assertNotNull(entry);
+    assertNull(entry.getValue());
+  }
+
+  @Test
+  public void testSharedByNamespaceViews() {
+    assertSame(em.getStatsCache(), em.forNamespace("tenant1").getStatsCache());
+  }
+
+  @Test
+  public void testWithCache_ServedFromCache() {
+    StatTotal summary = new StatTotal();
+    summary.setCount(42);
+    em.getStatsCache().put(StatsCache.createKey(StatConstants.STAT_TOTAL, null, null), summary);
+    StatKindNs kind = new StatKindNs();
+    kind.setKindName("Task");
+    em.getStatsCache()
+        .put(StatsCache.createKey(StatConstants.STAT_KIND_NS, "tenant1", "Task"), kind);
+    DatastoreStats stats = em.getDatastoreStats().withCache(1, TimeUnit.HOURS);
+    assertEquals(42, stats.getSummary().getCount());
+    assertEquals("Task", stats.getKindNs("tenant1", "Task").getKindName());
+    assertEquals("Task", em.forNamespace("tenant1").getDatastoreStats()
+        .withCache(1, TimeUnit.HOURS).getKindNs("Task").getKindName());
+  }
+
+  @Test
+  public void testGet_ReturnsCopies() {
+    StatsCache cache = new StatsCache();
+    StatTotal summary = new StatTotal();
+    summary.setCount(42);
+    cache.put("summary", summary);
+    summary.setCount(0);
+    StatTotal cachedSummary = (StatTotal) cache.get("summary", 60000).getValue();
+    assertEquals(42, cachedSummary.getCount());
+    cachedSummary.setCount(0);
+    assertEquals(42, ((StatTotal) cache.get("summary", 60000).getValue()).getCount());
+
+    StatKind kind = new StatKind();
+    kind.setKindName("Task");
+    cache.put("kinds", new ArrayList<>(Arrays.asList(kind)));
+    @SuppressWarnings("unchecked")
+    List<StatKind> cachedKinds = (List<StatKind>) cache.get("kinds", 60000).getValue();
+    cachedKinds.get(0).setKindName("Other");
+    cachedKinds.clear();
+    @SuppressWarnings("unchecked")
+    List<StatKind> kinds = (List<StatKind>) cache.get("kinds", 60000).getValue();
+    assertEquals(1, kinds.size());
+    assertEquals("Task", kinds.get(0).getKindName());
+  }
+
+  @Test
+  public void testGet_CopiesTimestamp() {
+    StatsCache cache = new StatsCache();
+    StatTotal summary = new StatTotal();
+    summary.setTimestamp(new Date(1000));
+    cache.put("summary", summary);
+    summary.getTimestamp().setTime(0);
+    StatTotal cachedSummary = (StatTotal) cache.get("summary", 60000).getValue();
+    assertEquals(1000, cachedSummary.getTimestamp().getTime());
+    cachedSummary.getTimestamp().setTime(0);
+    assertEquals(1000,
+        ((StatTotal) cache.get("summary", 60000).getValue()).getTimestamp().getTime());
+  }
+
+  @Test
+  public void testPut_EvictsOldest() throws InterruptedException {
+    StatsCache cache = new StatsCache();
+    cache.put("oldest", "value");
+    Thread.sleep(5);
+    for (int i = 1; i < StatsCache.MAX_ENTRIES; i++) {
+      cache.put("key" + i, "value");
+    }
+    assertEquals(StatsCache.MAX_ENTRIES, cache.size());
+    cache.put("key1", "other");
+    assertEquals(StatsCache.MAX_ENTRIES, cache.size());
+    cache.put("newest", "value");
+    assertEquals(StatsCache.MAX_ENTRIES, cache.size());
+    assertNull(cache.get("oldest", 60000));
+    assertNotNull(cache.get("newest", 60000));
+  }
+
+  @Test
+  public void testGetSummariesNs_ServedFromCache() {
+    Map<String, StatTotalNs> expected = new HashMap<>();
+    expected.put("tenant2", createSummary(10, 1000));
+    expected.put("", createSummary(5, 500));
+    expected.put("tenant1", createSummary(20, 2000));
+    for (Map.Entry<String, StatTotalNs> entry : expected.entrySet()) {
+      em.getStatsCache().put(
+          StatsCache.createKey(StatConstants.STAT_TOTAL_NS, entry.getKey(), null),
+          entry.getValue());
+    }
+    em.getStatsCache()
+        .put(StatsCache.createKey(StatConstants.STAT_TOTAL_NS, "empty", null), null);
+    NamespaceSummarySnapshot snapshot = em.getDatastoreStats().withCache(1, TimeUnit.HOURS)
+        .getSummariesNs(Arrays.asList("tenant2", "", "tenant1", "empty", "tenant1"), 2);
+    assertEquals(3, snapshot.size());
+    assertEquals("", snapshot.getNamespace(0));
+    assertEquals("tenant1", snapshot.getNamespace(1));
+    assertEquals("tenant2", snapshot.getNamespace(2));
+    assertTrue(snapshot.indexOf("empty") < 0);
+    assertEquals(10, snapshot.getCount(snapshot.indexOf("tenant2")));
+    assertEquals(35, snapshot.getTotalCount());
+    assertEquals(3500, snapshot.getTotalBytes());
+  }
+
+  private static StatTotalNs createSummary(long count, long bytes) {
+    StatTotalNs summary = new StatTotalNs();
+    summary.setCount(count);
+    summary.setBytes(bytes);
+    return summary;
+  }
+
+}
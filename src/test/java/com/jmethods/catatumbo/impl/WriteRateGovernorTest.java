@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Sai Pullabhotla.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jmethods.catatumbo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.cloud.datastore.DatastoreException;
+import com.jmethods.catatumbo.Deadline;
+import com.jmethods.catatumbo.DeadlineExceededException;
+import com.jmethods.catatumbo.EntityManagerFactory;
+import com.jmethods.catatumbo.WriteRateOptions;
+
+/**
+ * @author Sai Pullabhotla
+ *
+ */
+public class WriteRateGovernorTest {
+
+  @After
+  public void tearDown() {
+    Deadline.clear();
+  }
+
+  @Test
+  public void testOptions_Defaults() {
+    WriteRateOptions options = new WriteRateOptions();
+    assertEquals(500.0, options.getInitialRate(), 0.0);
+    assertEquals(1.5, options.getGrowthFactor(), 0.0);
+    assertEquals(300000L, options.getGrowthInterval());
+    assertEquals(0.0, options.getMaxRate(), 0.0);
+    assertEquals(0.5, options.getBackoffFactor(), 0.0);
+  }
+
+  @Test
+  public void testOptions_InvalidValues() {
+    WriteRateOptions options = new WriteRateOptions();
+    options.setInitialRate(0);
+    options.setGrowthFactor(0.9);
+    options.setGrowthInterval(-1);
+    options.setMaxRate(-1);
+    options.setBackoffFactor(1.5);
+    assertEquals(WriteRateOptions.DEFAULT_INITIAL_RATE, options.getInitialRate(), 0.0);
+    assertEquals(WriteRateOptions.DEFAULT_GROWTH_FACTOR, options.getGrowthFactor(), 0.0);
+    assertEquals(WriteRateOptions.DEFAULT_GROWTH_INTERVAL, options.getGrowthInterval());
+    assertEquals(WriteRateOptions.DEFAULT_MAX_RATE, options.getMaxRate(), 0.0);
+    assertEquals(WriteRateOptions.DEFAULT_BACKOFF_FACTOR, options.getBackoffFactor(), 0.0);
+  }
+
+  @Test
+  public void testInitialRate_Override() {
+    WriteRateOptions options = new WriteRateOptions();
+    options.setInitialRate("Warm", 2000);
+    options.setMaxRate(1000);
+    WriteRateGovernor governor = new WriteRateGovernor(options);
+    options.setInitialRate("Cold", 50);
+    assertEquals(1000.0, governor.getRate("Warm"), 0.0);
+    assertEquals(500.0, governor.getRate("Cold"), 0.0);
+    options.setInitialRate("Warm", 0);
+    assertEquals(500.0, options.getInitialRate("Warm"), 0.0);
+  }
+
+  @Test
+  public void testAcquire_Throttled() {
+    WriteRateOptions options = new WriteRateOptions();
+    options.setInitialRate(100);
+    WriteRateGovernor governor = new WriteRateGovernor(options);
+    long start = System.nanoTime();
+    governor.acquire("Task", 50);
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+    governor.acquire("Task", 1);
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(400));
+    // Other Kinds have their own rate
+    start = System.nanoTime();
+    governor.acquire("Note", 1);
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
+  @Test
+  public void testGrowth() throws Exception {
+    WriteRateOptions options = new WriteRateOptions();
+    options.setInitialRate(1000);
+    options.setGrowthFactor(2);
+    options.setGrowthInterval(50);
+    options.setMaxRate(3000);
+    WriteRateGovernor governor = new WriteRateGovernor(options);
+    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+    while (System.nanoTime() < end) {
+      governor.acquire("Task", 1);
+      Thread.sleep(5);
+    }
+    assertEquals(3000.0, governor.getRate("Task"), 0.0);
+  }
+
+  @Test
+  public void testGrowth_Idle() throws Exception {
+    WriteRateOptions options = new WriteRateOptions();
+    options.setInitialRate(1000);
+    options.setGrowthInterval(50);
+    WriteRateGovernor governor = new WriteRateGovernor(options);
+    governor.acquire("Task", 1);
+    Thread.sleep(200);
+    governor.acquire("Task", 1);
+    assertEquals(1000.0, governor.getRate("Task"), 0.0);
+  }
+
+  @Test
+  public void testBackoff() {
+    WriteRateGovernor governor = new WriteRateGovernor(new WriteRateOptions());
+    governor.onFailure(new DatastoreException(3, "Invalid argument", "INVALID_ARGUMENT"),
+        Collections.singleton("Task"));
+    assertEquals(500.0, governor.getRate("Task"), 0.0);
+    governor.onFailure(new DatastoreException(10, "Too much contention", "ABORTED"),
+        Collections.singleton("Task"));
+    assertEquals(250.0, governor.getRate("Task"), 0.0);
+    // A burst of failures cuts the rate only once
+    governor.onFailure(new DatastoreException(8, "Throttled", "RESOURCE_EXHAUSTED"),
+        Collections.singleton("Task"));
+    assertEquals(250.0, governor.getRate("Task"), 0.0);
+  }
+
+  @Test(expected = DeadlineExceededException.class)
+  public void testAcquire_DeadlineExceeded() {
+    WriteRateOptions options = new WriteRateOptions();
+    options.setInitialRate(1);
+    WriteRateGovernor governor = new WriteRateGovernor(options);
+    governor.acquire("Task", 5);
+    Deadline.setTimeout(100, TimeUnit.MILLISECONDS);
+    governor.acquire("Task", 1);
+  }
+
+  @Test
+  public void testEntityManager() {
+    DefaultEntityManager em = (DefaultEntityManager) EntityManagerFactory.getInstance()
+        .createLocalEntityManager("http://localhost:8081", "catatumbo-write-rate-test");
+    assertEquals(0.0, em.getWriteRate("Task"), 0.0);
+    WriteRateOptions options = new WriteRateOptions();
+    options.setInitialRate("Task", 100);
+    em.setWriteRateOptions(options);
+    assertEquals(100.0, em.getWriteRate("Task"), 0.0);
+    assertEquals(100.0, em.forNamespace("ns1").getWriteRate("Task"), 0.0);
+    em.setWriteRateOptions(null);
+    assertEquals(0.0, em.getWriteRate("Task"), 0.0);
+  }
+
+}